@@ -17,12 +17,16 @@ package nl.esciencecenter.xenon.adaptors.filesystems.local;
 
 import static nl.esciencecenter.xenon.utils.LocalFileSystemUtils.isWindows;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeFalse;
 
 import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
@@ -34,6 +38,8 @@ import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemTestParent;
 import nl.esciencecenter.xenon.adaptors.filesystems.LocationConfig;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
 import nl.esciencecenter.xenon.credentials.PasswordCredential;
+import nl.esciencecenter.xenon.filesystems.CopyMode;
+import nl.esciencecenter.xenon.filesystems.CopyStatus;
 import nl.esciencecenter.xenon.filesystems.DirectoryNotEmptyException;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
@@ -174,6 +180,85 @@ public class LocalFileSystemTest extends FileSystemTestParent {
         fileSystem.setPosixFilePermissions(new Path("/dev/null"), permissions);
     }
 
+    @Test
+    public void test_copy_multipleStreams() throws Throwable {
+        generateAndCreateTestDir();
+
+        byte[] data = new byte[100 * 1024 + 17];
+        new Random(42).nextBytes(data);
+
+        Path source = createTestFile(testDir, data);
+        Path target = createNewTestFileName(testDir);
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(LocalFileAdaptor.COPY_STREAMS, "4");
+        properties.put(LocalFileAdaptor.COPY_STREAMS_THRESHOLD, "1");
+
+        try (FileSystem f = FileSystem.create("file", null, new DefaultCredential(), properties)) {
+            String s = f.copy(source, fileSystem, target, CopyMode.CREATE, false);
+            CopyStatus status = f.waitUntilDone(s, 5000);
+            assertTrue(status.isDone());
+            assertNull(status.getException());
+            assertEquals(data.length, status.bytesCopied());
+        }
+
+        assertContents(target, data);
+    }
+
+    @Test
+    public void test_copy_delta() throws Throwable {
+        generateAndCreateTestDir();
+
+        byte[] data = new byte[10 * 1024 + 17];
+        new Random(42).nextBytes(data);
+
+        // The target differs from the source in one block, and misses the tail.
+        byte[] old = Arrays.copyOf(data, 8 * 1024);
+        old[3 * 1024 + 5]++;
+
+        Path source = createTestFile(testDir, data);
+        Path target = createTestFile(testDir, old);
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(LocalFileAdaptor.BUFFER_SIZE, "1K");
+
+        try (FileSystem f = FileSystem.create("file", null, new DefaultCredential(), properties)) {
+            String s = f.copy(source, fileSystem, target, CopyMode.DELTA, false);
+            CopyStatus status = f.waitUntilDone(s, 5000);
+            assertTrue(status.isDone());
+            assertNull(status.getException());
+            assertEquals(data.length, status.bytesCopied());
+        }
+
+        assertContents(target, data);
+    }
+
+    @Test
+    public void test_list_parallel() throws Throwable {
+        generateAndCreateTestDir();
+
+        for (int i = 0; i < 4; i++) {
+            Path sub = createTestSubDir(testDir);
+            createTestFile(sub, null);
+            createTestSubDir(createTestSubDir(sub));
+        }
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(LocalFileAdaptor.LIST_PARALLELISM, "4");
+
+        Set<PathAttributes> expected = listSet(testDir, true);
+        Set<PathAttributes> result = new HashSet<>();
+
+        try (FileSystem f = FileSystem.create("file", null, new DefaultCredential(), properties)) {
+            for (PathAttributes p : f.list(testDir, true)) {
+                result.add(p);
+            }
+        }
+
+        assertEquals(16, result.size());
+        assertListSetEqual(result, expected);
+    }
+
     @Test
     public void test_getAttributes_fileStartingWithDot_HiddenFile() throws Exception {
         // TODO move to FileSystemTestParent when we can detect
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.password.AcceptAllPasswordAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nl.esciencecenter.xenon.credentials.PasswordCredential;
+import nl.esciencecenter.xenon.filesystems.FileSystem;
+import nl.esciencecenter.xenon.filesystems.Path;
+
+/**
+ * Compares SFTP transfers with a single outstanding request to pipelined transfers with a window of requests (see
+ * {@link SftpFileAdaptor#TRANSFER_REQUESTS}).
+ *
+ * The file system connects to an embedded SFTP server through a local proxy that delays all data by half the <code>latency</code> in each direction, so
+ * every request/response round trip takes at least <code>latency</code> milliseconds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class SftpTransferBenchmark {
+
+    /** A TCP proxy that forwards data after a fixed delay, without limiting the throughput. */
+    private static class LatencyProxy implements Runnable {
+
+        private static final byte[] CLOSED = new byte[0];
+
+        private static final class Packet {
+            private final long due;
+            private final byte[] data;
+
+            Packet(long due, byte[] data) {
+                this.due = due;
+                this.data = data;
+            }
+        }
+
+        private final ServerSocket server;
+        private final int targetPort;
+        private final long delayNanos;
+
+        LatencyProxy(int targetPort, long delayMillis) throws IOException {
+            this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            this.targetPort = targetPort;
+            this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        int getPort() {
+            return server.getLocalPort();
+        }
+
+        private static void daemon(String name, Runnable r) {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        private void forward(Socket from, Socket to) {
+
+            BlockingQueue<Packet> queue = new LinkedBlockingQueue<>();
+
+            daemon("LatencyProxyReader", () -> {
+                byte[] buffer = new byte[64 * 1024];
+
+                try (InputStream in = from.getInputStream()) {
+                    int n = in.read(buffer);
+
+                    while (n != -1) {
+                        queue.add(new Packet(System.nanoTime() + delayNanos, Arrays.copyOf(buffer, n)));
+                        n = in.read(buffer);
+                    }
+                } catch (IOException e) {
+                    // connection closed
+                }
+
+                queue.add(new Packet(System.nanoTime() + delayNanos, CLOSED));
+            });
+
+            daemon("LatencyProxyWriter", () -> {
+                try (OutputStream out = to.getOutputStream()) {
+                    Packet p = queue.take();
+
+                    while (p.data != CLOSED) {
+                        long wait = p.due - System.nanoTime();
+
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+
+                        out.write(p.data);
+                        out.flush();
+                        p = queue.take();
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // connection closed
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Socket client = server.accept();
+                    Socket target = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+                    client.setTcpNoDelay(true);
+                    target.setTcpNoDelay(true);
+                    forward(client, target);
+                    forward(target, client);
+                }
+            } catch (IOException e) {
+                // proxy closed
+            }
+        }
+
+        void close() throws IOException {
+            server.close();
+        }
+    }
+
+    /** The simulated round trip time in milliseconds. */
+    @Param({ "0", "10", "50" })
+    public int latency;
+
+    /** The number of outstanding read or write requests. */
+    @Param({ "1", "4", "16", "64" })
+    public int requests;
+
+    /** The size of the transferred file. */
+    @Param({ "1048576" })
+    public int fileSize;
+
+    private java.nio.file.Path root;
+
+    private SshServer sshd;
+
+    private LatencyProxy proxy;
+
+    private FileSystem fs;
+
+    private byte[] data;
+
+    private final Path source = new Path("/source");
+
+    private final Path target = new Path("/target");
+
+    @Setup
+    public void setup() throws Exception {
+
+        root = Files.createTempDirectory("xenon-sftp-bench");
+
+        data = new byte[fileSize];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        Files.write(root.resolve("source"), data);
+
+        sshd = SshServer.setUpDefaultServer();
+        sshd.setHost("127.0.0.1");
+        sshd.setPort(0);
+        sshd.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        sshd.setPasswordAuthenticator(AcceptAllPasswordAuthenticator.INSTANCE);
+        sshd.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        sshd.setFileSystemFactory(new VirtualFileSystemFactory(root));
+        sshd.start();
+
+        proxy = new LatencyProxy(sshd.getPort(), latency / 2);
+
+        Thread t = new Thread(proxy, "LatencyProxy");
+        t.setDaemon(true);
+        t.start();
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(SftpFileAdaptor.STRICT_HOST_KEY_CHECKING, "false");
+        properties.put(SftpFileAdaptor.LOAD_STANDARD_KNOWN_HOSTS, "false");
+        properties.put(SftpFileAdaptor.LOAD_SSH_CONFIG, "false");
+        properties.put(SftpFileAdaptor.TRANSFER_REQUESTS, Integer.toString(requests));
+
+        fs = FileSystem.create("sftp", "127.0.0.1:" + proxy.getPort(), new PasswordCredential("xenon", "xenon"), properties);
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        fs.close();
+        proxy.close();
+        sshd.stop(true);
+
+        Files.deleteIfExists(root.resolve("source"));
+        Files.deleteIfExists(root.resolve("target"));
+        Files.delete(root);
+    }
+
+    @Benchmark
+    public long read(Blackhole blackhole) throws Exception {
+
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+
+        try (InputStream in = fs.readFromFile(source)) {
+            int n = in.read(buffer);
+
+            while (n != -1) {
+                blackhole.consume(buffer);
+                total += n;
+                n = in.read(buffer);
+            }
+        }
+
+        return total;
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+
+        if (fs.exists(target)) {
+            fs.delete(target, false);
+        }
+
+        try (OutputStream out = fs.writeToFile(target, data.length)) {
+            out.write(data);
+        }
+    }
+}
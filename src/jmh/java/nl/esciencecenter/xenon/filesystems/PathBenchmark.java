@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the {@link Path} operations used when listing and copying directory trees.
+ *
+ * The directory path is <code>depth</code> elements deep. <code>listing</code> resolves 1000 entries against one directory, as a listing does. Run with
+ * the <code>gc</code> profiler (the default in the build) and compare <code>gc.alloc.rate.norm</code> to see how much each operation allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathBenchmark {
+
+    private static final int LISTING_SIZE = 1000;
+
+    /** The number of elements of the directory path. */
+    @Param({ "4", "16" })
+    public int depth;
+
+    private Path dir;
+
+    private Path file;
+
+    private Path fileParsed;
+
+    private Path sibling;
+
+    private Path dotted;
+
+    private String[] names;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < depth; i++) {
+            sb.append("/directory").append(i);
+        }
+
+        dir = new Path(sb.toString());
+        file = dir.resolve("file.txt");
+        fileParsed = new Path(sb.toString() + "/file.txt");
+        sibling = dir.resolve("other.txt");
+        dotted = new Path(sb.toString() + "/./sub/../file.txt");
+
+        names = new String[LISTING_SIZE];
+
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "file" + i + ".txt";
+        }
+    }
+
+    @Benchmark
+    public Path resolve() {
+        return dir.resolve("file.txt");
+    }
+
+    @Benchmark
+    public void listing(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(dir.resolve(name));
+        }
+    }
+
+    @Benchmark
+    public Path getParent() {
+        return file.getParent();
+    }
+
+    @Benchmark
+    public Path relativize() {
+        return dir.relativize(file);
+    }
+
+    @Benchmark
+    public Path normalize() {
+        return file.normalize();
+    }
+
+    @Benchmark
+    public Path normalizeDots() {
+        return dotted.normalize();
+    }
+
+    @Benchmark
+    public boolean equalsShared() {
+        // Shares all elements but the last.
+        return file.equals(sibling);
+    }
+
+    @Benchmark
+    public boolean equalsParsed() {
+        // Equal, but shares no elements.
+        return file.equals(fileParsed);
+    }
+
+    @Benchmark
+    public int hashCodeAndToString() {
+        return file.hashCode() + file.toString().length();
+    }
+}
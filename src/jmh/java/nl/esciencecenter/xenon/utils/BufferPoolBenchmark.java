@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares allocating a new buffer for every copy (as done before the {@link BufferPool} was introduced) to taking one from the pool.
+ *
+ * Each operation copies a small file, as is typical for the many short copies and job streams the pool is intended for. Run with the <code>gc</code>
+ * profiler (the default in the build) and compare <code>gc.alloc.rate.norm</code>, the number of bytes allocated per copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class BufferPoolBenchmark {
+
+    /** An OutputStream that hands all data to a {@link Blackhole}. */
+    private static class BlackholeOutputStream extends OutputStream {
+
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+            blackhole.consume(len);
+        }
+    }
+
+    /** The buffer size, 1 KB is used by the stream forwarders, 64 KB is the default for copies. */
+    @Param({ "1024", "65536" })
+    public int bufferSize;
+
+    /** The size of the copied data. */
+    @Param({ "4096" })
+    public int fileSize;
+
+    private byte[] data;
+
+    private final BufferPool pool = new BufferPool(BufferPool.DEFAULT_MAX_POOLED_BYTES);
+
+    @Setup
+    public void setup() {
+        data = new byte[fileSize];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+
+        int size = in.read(buffer);
+
+        while (size > 0) {
+            out.write(buffer, 0, size);
+            size = in.read(buffer);
+        }
+    }
+
+    private static void copy(byte[] data, ByteBuffer buffer, Blackhole blackhole) {
+
+        int offset = 0;
+
+        while (offset < data.length) {
+            int size = Math.min(buffer.remaining(), data.length - offset);
+            buffer.put(data, offset, size);
+            buffer.flip();
+            blackhole.consume(buffer.get(size - 1));
+            buffer.clear();
+            offset += size;
+        }
+    }
+
+    @Benchmark
+    public void allocateHeap(Blackhole blackhole) throws IOException {
+        copy(new ByteArrayInputStream(data), new BlackholeOutputStream(blackhole), new byte[bufferSize]);
+    }
+
+    @Benchmark
+    public void pooledHeap(Blackhole blackhole) throws IOException {
+
+        byte[] buffer = pool.acquire(bufferSize);
+
+        try {
+            copy(new ByteArrayInputStream(data), new BlackholeOutputStream(blackhole), buffer);
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    @Benchmark
+    public void allocateDirect(Blackhole blackhole) {
+        copy(data, ByteBuffer.allocateDirect(bufferSize), blackhole);
+    }
+
+    @Benchmark
+    public void pooledDirect(Blackhole blackhole) {
+
+        ByteBuffer buffer = pool.acquireDirect(bufferSize);
+
+        try {
+            copy(data, buffer, blackhole);
+        } finally {
+            pool.release(buffer);
+        }
+    }
+}
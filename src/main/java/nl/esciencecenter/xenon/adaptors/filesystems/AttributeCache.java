@@ -0,0 +1,277 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAttributes;
+
+/**
+ * A bounded cache of path attributes and existence information, with a time-to-live and least-recently-used eviction.
+ *
+ * The cache remembers, for each path, whether it exists and (optionally) its attributes. Entries expire <code>ttl</code> milliseconds after they were added.
+ * If more than <code>maxEntries</code> entries are present, the least recently used entry is removed.
+ *
+ * The cached paths are also indexed by their parent directory, so invalidating a path only visits the cached paths below it, instead of the entire cache.
+ */
+public class AttributeCache {
+
+    private static class CachedAttributes {
+
+        final boolean exists;
+        final PathAttributes attributes;
+        final long expires;
+
+        CachedAttributes(boolean exists, PathAttributes attributes, long expires) {
+            this.exists = exists;
+            this.attributes = attributes;
+            this.expires = expires;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttl;
+    private final LinkedHashMap<Path, CachedAttributes> entries;
+
+    /**
+     * For each directory that has cached paths below it, the paths directly below it that are cached or have cached paths below them. Directories are only
+     * present while they have cached paths below them.
+     */
+    private final HashMap<Path, Set<Path>> children = new HashMap<>();
+
+    public AttributeCache(int maxEntries, long ttl) {
+
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache size must be 1 or larger: " + maxEntries);
+        }
+
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Cache time-to-live may not be negative: " + ttl);
+        }
+
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+
+        // An access ordered map, so the eldest entry is the least recently used one.
+        this.entries = new LinkedHashMap<Path, CachedAttributes>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, CachedAttributes> eldest) {
+                if (size() > AttributeCache.this.maxEntries) {
+                    // Removed here instead of by the map, so the index is updated as well.
+                    remove(eldest.getKey());
+                    unindex(eldest.getKey());
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the current time in milliseconds. Used to determine if entries have expired.
+     *
+     * @return the current time in milliseconds.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    // Adds path to the index, together with any of its ancestors that are not in the index yet.
+    private void index(Path path) {
+
+        Path child = path;
+        Path parent = path.getParent();
+
+        while (parent != null) {
+            Set<Path> set = children.get(parent);
+
+            if (set != null) {
+                // The parent, and therefore all its ancestors, are already indexed.
+                set.add(child);
+                return;
+            }
+
+            set = new HashSet<>();
+            set.add(child);
+            children.put(parent, set);
+
+            child = parent;
+            parent = parent.getParent();
+        }
+    }
+
+    // Removes a path that is no longer cached from the index, together with any of its ancestors that no longer lead to a cached path.
+    private void unindex(Path path) {
+
+        Path child = path;
+        Path parent = path.getParent();
+
+        while (parent != null && !entries.containsKey(child) && !children.containsKey(child)) {
+            Set<Path> set = children.get(parent);
+
+            if (set == null) {
+                return;
+            }
+
+            set.remove(child);
+
+            if (!set.isEmpty()) {
+                return;
+            }
+
+            children.remove(parent);
+
+            child = parent;
+            parent = parent.getParent();
+        }
+    }
+
+    private void put(Path path, CachedAttributes e) {
+        if (entries.put(path, e) == null) {
+            index(path);
+        }
+    }
+
+    private void remove(Path path) {
+        if (entries.remove(path) != null) {
+            unindex(path);
+        }
+    }
+
+    private CachedAttributes lookup(Path path) {
+
+        CachedAttributes e = entries.get(path);
+
+        if (e != null && e.expires <= currentTimeMillis()) {
+            remove(path);
+            return null;
+        }
+
+        return e;
+    }
+
+    /**
+     * Returns if <code>path</code> is known to exist.
+     *
+     * @param path
+     *            the path to look up.
+     * @return {@link Boolean#TRUE} or {@link Boolean#FALSE} if the existence of the path is cached, or <code>null</code> if it is not.
+     */
+    public synchronized Boolean exists(Path path) {
+        CachedAttributes e = lookup(path);
+        return e == null ? null : e.exists;
+    }
+
+    /**
+     * Returns the cached attributes of <code>path</code>.
+     *
+     * @param path
+     *            the path to look up.
+     * @return the attributes of the path, or <code>null</code> if they are not cached.
+     */
+    public synchronized PathAttributes getAttributes(Path path) {
+        CachedAttributes e = lookup(path);
+        return e == null ? null : e.attributes;
+    }
+
+    /**
+     * Add the attributes of an existing path to the cache.
+     *
+     * @param path
+     *            the path to add.
+     * @param attributes
+     *            the attributes of the path.
+     */
+    public synchronized void putAttributes(Path path, PathAttributes attributes) {
+        put(path, new CachedAttributes(true, attributes, currentTimeMillis() + ttl));
+    }
+
+    /**
+     * Add the existence of a path to the cache. If the path is known to exist, any cached attributes are kept.
+     *
+     * @param path
+     *            the path to add.
+     * @param exists
+     *            if the path exists.
+     */
+    public synchronized void putExists(Path path, boolean exists) {
+
+        CachedAttributes e = lookup(path);
+
+        if (exists && e != null && e.exists) {
+            return;
+        }
+
+        put(path, new CachedAttributes(exists, null, currentTimeMillis() + ttl));
+    }
+
+    /**
+     * Remove <code>path</code>, all paths below it, and its parent from the cache.
+     *
+     * The parent is removed as well, since its attributes (such as the modification time) change when one of its entries changes.
+     *
+     * @param path
+     *            the path to remove.
+     */
+    public synchronized void invalidate(Path path) {
+
+        ArrayDeque<Path> todo = new ArrayDeque<>();
+        todo.push(path);
+
+        while (!todo.isEmpty()) {
+            Path p = todo.pop();
+            entries.remove(p);
+
+            Set<Path> below = children.remove(p);
+
+            if (below != null) {
+                todo.addAll(below);
+            }
+        }
+
+        unindex(path);
+
+        Path parent = path.getParent();
+
+        if (parent != null) {
+            remove(parent);
+        }
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        children.clear();
+    }
+
+    /**
+     * Returns the number of entries in the cache, including any that have expired but have not been removed yet.
+     *
+     * @return the number of entries in the cache.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
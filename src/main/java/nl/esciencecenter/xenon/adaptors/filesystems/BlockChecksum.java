@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+
+/**
+ * The checksums of a single block of a file, as used in a delta copy.
+ *
+ * Each block has a cheap weak checksum (Adler-32) and a strong checksum (MD5). When comparing a block, the weak checksum is checked first, so the strong
+ * checksum only needs to be computed for blocks that are likely to be equal. The weak checksum is optional, as it may not be available when the checksums
+ * are computed remotely.
+ */
+public class BlockChecksum {
+
+    /** The value of the weak checksum if it is not known. */
+    public static final long UNKNOWN = -1;
+
+    private final long weak;
+    private final byte[] strong;
+
+    public BlockChecksum(long weak, byte[] strong) {
+
+        if (strong == null) {
+            throw new IllegalArgumentException("Strong checksum may not be null");
+        }
+
+        this.weak = weak;
+        this.strong = strong.clone();
+    }
+
+    /**
+     * Compute the weak and strong checksums of a block.
+     *
+     * @param data
+     *            the buffer containing the block.
+     * @param length
+     *            the length of the block.
+     * @return the checksums of the block.
+     */
+    public static BlockChecksum compute(byte[] data, int length) {
+        return new BlockChecksum(weak(data, length), strong(data, length));
+    }
+
+    private static long weak(byte[] data, int length) {
+        Adler32 adler = new Adler32();
+        adler.update(data, 0, length);
+        return adler.getValue();
+    }
+
+    private static byte[] strong(byte[] data, int length) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            md5.update(data, 0, length);
+            return md5.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 is required to be present in every Java platform.
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+
+    public long getWeak() {
+        return weak;
+    }
+
+    public byte[] getStrong() {
+        return strong.clone();
+    }
+
+    /**
+     * Check if a block of data matches these checksums.
+     *
+     * @param data
+     *            the buffer containing the block.
+     * @param length
+     *            the length of the block.
+     * @return if the block matches these checksums.
+     */
+    public boolean matches(byte[] data, int length) {
+
+        if (weak != UNKNOWN && weak != weak(data, length)) {
+            return false;
+        }
+
+        return Arrays.equals(strong, strong(data, length));
+    }
+}
@@ -17,9 +17,11 @@ package nl.esciencecenter.xenon.adaptors.filesystems;
 
 import java.util.Map;
 
+import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription;
 import nl.esciencecenter.xenon.adaptors.Adaptor;
+import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.FileSystemAdaptorDescription;
@@ -28,6 +30,12 @@ public abstract class FileAdaptor extends Adaptor implements FileSystemAdaptorDe
 
     public static final String ADAPTORS_PREFIX = "xenon.adaptors.filesystems.";
 
+    // The copy, listing and cache properties (relative to the adaptor prefix) that are interpreted by FileSystem itself.
+    private static final String[] AT_LEAST_ONE = { "copy.parallelism", "list.parallelism", "copy.streams" };
+    private static final String[] INTEGER_AT_LEAST_ZERO = { "cache.size", "cache.ttl" };
+    private static final String[] SIZE_AT_LEAST_ZERO = { "copy.streams.threshold", "copy.rate", "copy.rate.host", "copy.rate.burst" };
+    private static final String[] BOOLEAN = { "copy.pipeline" };
+
     protected FileAdaptor(String name, String description, String[] locations, XenonPropertyDescription[] properties) {
         super(name, description, locations, properties);
     }
@@ -81,6 +89,57 @@ public abstract class FileAdaptor extends Adaptor implements FileSystemAdaptorDe
         return false;
     }
 
+    /**
+     * Check the values of the copy, listing and cache properties that are interpreted by {@link FileSystem} itself. Only the properties supported by
+     * <code>properties</code> are checked. Adaptors call this from {@link #createFileSystem(String, Credential, Map)}, so an invalid value is reported
+     * when the FileSystem is created instead of when it is first used.
+     *
+     * @param properties
+     *            the properties of the FileSystem that is created.
+     * @throws XenonException
+     *             if one of the properties has an invalid value.
+     */
+    protected void checkFileSystemProperties(XenonProperties properties) throws XenonException {
+
+        String prefix = ADAPTORS_PREFIX + getName() + ".";
+
+        for (String name : AT_LEAST_ONE) {
+            if (properties.supportsProperty(prefix + name)) {
+                int value = properties.getIntegerProperty(prefix + name);
+
+                if (value < 1) {
+                    throw new InvalidPropertyException(getName(), "Invalid value for " + prefix + name + ": " + value + " (must be 1 or larger)");
+                }
+            }
+        }
+
+        for (String name : INTEGER_AT_LEAST_ZERO) {
+            if (properties.supportsProperty(prefix + name)) {
+                int value = properties.getIntegerProperty(prefix + name);
+
+                if (value < 0) {
+                    throw new InvalidPropertyException(getName(), "Invalid value for " + prefix + name + ": " + value + " (must be 0 or larger)");
+                }
+            }
+        }
+
+        for (String name : SIZE_AT_LEAST_ZERO) {
+            if (properties.supportsProperty(prefix + name)) {
+                long value = properties.getSizeProperty(prefix + name);
+
+                if (value < 0) {
+                    throw new InvalidPropertyException(getName(), "Invalid value for " + prefix + name + ": " + value + " (must be 0 or larger)");
+                }
+            }
+        }
+
+        for (String name : BOOLEAN) {
+            if (properties.supportsProperty(prefix + name)) {
+                properties.getBooleanProperty(prefix + name);
+            }
+        }
+    }
+
     public abstract FileSystem createFileSystem(String location, Credential credential, Map<String, String> properties)
             throws XenonException;
 }
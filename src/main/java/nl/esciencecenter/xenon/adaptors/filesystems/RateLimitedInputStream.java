@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+
+/**
+ * An InputStream that limits the rate at which data is read, using one or more {@link RateLimiter}s.
+ *
+ * The number of bytes returned by a read is not known in advance, so the bytes are taken from the limiters after they have been read.
+ */
+public class RateLimitedInputStream extends FilterInputStream {
+
+    private final RateLimiter[] limiters;
+
+    public RateLimitedInputStream(InputStream in, Collection<RateLimiter> limiters) {
+        super(in);
+        this.limiters = limiters.toArray(new RateLimiter[0]);
+    }
+
+    private void acquire(int bytes) throws IOException {
+        try {
+            for (RateLimiter limiter : limiters) {
+                limiter.acquire(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for rate limit");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+
+        if (b != -1) {
+            acquire(1);
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+
+        if (n > 0) {
+            acquire(n);
+        }
+
+        return n;
+    }
+}
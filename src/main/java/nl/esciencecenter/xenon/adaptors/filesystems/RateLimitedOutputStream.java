@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * An OutputStream that limits the rate at which data is written, using one or more {@link RateLimiter}s.
+ */
+public class RateLimitedOutputStream extends FilterOutputStream {
+
+    private final RateLimiter[] limiters;
+
+    public RateLimitedOutputStream(OutputStream out, Collection<RateLimiter> limiters) {
+        super(out);
+        this.limiters = limiters.toArray(new RateLimiter[0]);
+    }
+
+    private void acquire(int bytes) throws IOException {
+        try {
+            for (RateLimiter limiter : limiters) {
+                limiter.acquire(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for rate limit");
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        acquire(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        acquire(len);
+        out.write(b, off, len);
+    }
+}
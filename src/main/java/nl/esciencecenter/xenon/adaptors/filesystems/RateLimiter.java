@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A token bucket that limits the rate at which bytes are transferred.
+ *
+ * The bucket is filled at <code>bytesPerSecond</code>, up to <code>burst</code> bytes. Each transfer takes its size from the bucket. If the bucket runs
+ * empty, the transfer waits until enough bytes have been added again. A single RateLimiter may be shared by several threads, which then share the rate.
+ */
+public class RateLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateLimiter.class);
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final ConcurrentHashMap<String, RateLimiter> SHARED = new ConcurrentHashMap<>();
+
+    private final long bytesPerSecond;
+    private final long burst;
+
+    private double available;
+    private long last;
+
+    public RateLimiter(long bytesPerSecond, long burst) {
+
+        if (bytesPerSecond < 1) {
+            throw new IllegalArgumentException("Rate must be 1 or larger: " + bytesPerSecond);
+        }
+
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be 1 or larger: " + burst);
+        }
+
+        this.bytesPerSecond = bytesPerSecond;
+        this.burst = burst;
+        this.available = burst;
+        this.last = nanoTime();
+    }
+
+    /**
+     * Get the RateLimiter registered under <code>key</code>, creating it if it does not exist yet.
+     *
+     * This allows different users to share a single rate. The rate and burst are only used if the RateLimiter is created by this call. If an existing
+     * RateLimiter has a different rate or burst, it is returned unchanged and a warning is logged.
+     *
+     * @param key
+     *            the key under which the RateLimiter is registered.
+     * @param bytesPerSecond
+     *            the rate in bytes per second.
+     * @param burst
+     *            the maximum number of bytes that may be transferred at once.
+     * @return the shared RateLimiter.
+     */
+    public static RateLimiter shared(String key, long bytesPerSecond, long burst) {
+        RateLimiter limiter = SHARED.computeIfAbsent(key, k -> new RateLimiter(bytesPerSecond, burst));
+
+        if (limiter.bytesPerSecond != bytesPerSecond || limiter.burst != burst) {
+            LOGGER.warn("Ignoring rate of {} bytes per second (burst {}) for {}, which is already limited to {} bytes per second (burst {})", bytesPerSecond,
+                    burst, key, limiter.bytesPerSecond, limiter.burst);
+        }
+
+        return limiter;
+    }
+
+    /**
+     * Returns the current time in nanoseconds. Used to determine how many bytes have been added to the bucket.
+     *
+     * @return the current time in nanoseconds.
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Sleep for the given number of nanoseconds.
+     *
+     * @param nanos
+     *            the time to sleep.
+     * @throws InterruptedException
+     *             if the thread was interrupted while sleeping.
+     */
+    protected void sleep(long nanos) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(nanos);
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getBurst() {
+        return burst;
+    }
+
+    /**
+     * Take <code>bytes</code> from the bucket, waiting until they are available if needed.
+     *
+     * Transfers larger than the burst are allowed. They leave the bucket in debt, so the next transfers wait longer.
+     *
+     * @param bytes
+     *            the number of bytes to transfer.
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+
+        long wait;
+
+        synchronized (this) {
+            long now = nanoTime();
+            available = Math.min(burst, available + (double) (now - last) * bytesPerSecond / NANOS_PER_SECOND);
+            last = now;
+
+            available -= bytes;
+            wait = available < 0 ? (long) (-available * NANOS_PER_SECOND / bytesPerSecond) : 0;
+        }
+
+        if (wait > 0) {
+            sleep(wait);
+        }
+    }
+}
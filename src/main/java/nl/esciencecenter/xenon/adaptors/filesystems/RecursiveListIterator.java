@@ -19,20 +19,35 @@ import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Stack;
 import java.util.function.Function;
 
 // use this to implement recursive listing in case the system
 // does not support recursive listing or does not implement recursive listing
 // as we expect (we also list directories)
+//
+// The directories are listed lazily (depth first) while iterating, so only the
+// remaining entries of the directories on the current path are kept in memory.
 public class RecursiveListIterator implements Iterator<PathAttributes> {
 
     final Stack<Iterator<PathAttributes>> stack;
     final Function<Path,Iterator<PathAttributes>> list;
+    final int depthLimit;
 
     public RecursiveListIterator(Function<Path,Iterator<PathAttributes>> list, Path path) {
+        this(list, path, Integer.MAX_VALUE);
+    }
+
+    // depthLimit is the number of directory levels to list, so 1 only lists the
+    // entries of path itself.
+    public RecursiveListIterator(Function<Path,Iterator<PathAttributes>> list, Path path, int depthLimit) {
+        if (depthLimit < 1) {
+            throw new IllegalArgumentException("Depth limit must be 1 or larger: " + depthLimit);
+        }
         stack = new Stack<>();
         this.list = list;
+        this.depthLimit = depthLimit;
         Iterator<PathAttributes> it = list.apply(path);
         stack.push(it);
     }
@@ -55,8 +70,11 @@ public class RecursiveListIterator implements Iterator<PathAttributes> {
 
     @Override
     public PathAttributes next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more entries");
+        }
         PathAttributes nxt = stack.peek().next();
-        if (nxt.isDirectory()) {
+        if (nxt.isDirectory() && stack.size() < depthLimit) {
             stack.push(list.apply(nxt.getPath()));
         }
         popEmpties();
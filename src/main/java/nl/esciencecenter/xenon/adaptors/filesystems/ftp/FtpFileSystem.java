@@ -229,12 +229,17 @@ public class FtpFileSystem extends FileSystem {
         assertParentDirectoryExists(absTarget);
 
         try {
-            ftpClient.rename(absSource.toString(), absTarget.toString());
-        } catch (Exception e) {
-            throw new XenonException(ADAPTOR_NAME, "Failed to rename " + absSource.toString() + " to " + absTarget.toString(), e);
-        }
+            try {
+                ftpClient.rename(absSource.toString(), absTarget.toString());
+            } catch (Exception e) {
+                throw new XenonException(ADAPTOR_NAME, "Failed to rename " + absSource.toString() + " to " + absTarget.toString(), e);
+            }
 
-        checkClientReply("Failed to rename " + absSource.toString() + " to " + absTarget.toString());
+            checkClientReply("Failed to rename " + absSource.toString() + " to " + absTarget.toString());
+        } finally {
+            invalidateCachedAttributes(absSource);
+            invalidateCachedAttributes(absTarget);
+        }
     }
 
     @Override
@@ -248,12 +253,16 @@ public class FtpFileSystem extends FileSystem {
         assertParentDirectoryExists(absPath);
 
         try {
-            ftpClient.makeDirectory(absPath.toString());
-        } catch (Exception e) {
-            throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + absPath.toString(), e);
-        }
+            try {
+                ftpClient.makeDirectory(absPath.toString());
+            } catch (Exception e) {
+                throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + absPath.toString(), e);
+            }
 
-        checkClientReply("Failed to create directory: " + absPath.toString());
+            checkClientReply("Failed to create directory: " + absPath.toString());
+        } finally {
+            invalidateCachedAttributes(absPath);
+        }
     }
 
     @Override
@@ -266,13 +275,17 @@ public class FtpFileSystem extends FileSystem {
         assertParentDirectoryExists(absPath);
 
         try {
-            ByteArrayInputStream dummy = new ByteArrayInputStream(new byte[0]);
-            ftpClient.storeFile(absPath.toString(), dummy);
-        } catch (Exception e) {
-            throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + absPath.toString(), e);
-        }
+            try {
+                ByteArrayInputStream dummy = new ByteArrayInputStream(new byte[0]);
+                ftpClient.storeFile(absPath.toString(), dummy);
+            } catch (Exception e) {
+                throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + absPath.toString(), e);
+            }
 
-        checkClientReply("Failed to create file: " + absPath.toString());
+            checkClientReply("Failed to create file: " + absPath.toString());
+        } finally {
+            invalidateCachedAttributes(absPath);
+        }
     }
 
     @Override
@@ -424,8 +437,14 @@ public class FtpFileSystem extends FileSystem {
 
     @Override
     public InputStream readFromFile(Path path) throws XenonException {
-        LOGGER.debug("newInputStream path = {}", path);
+        return readFromFile(path, 0);
+    }
 
+    @Override
+    public InputStream readFromFile(Path path, long offset) throws XenonException {
+        LOGGER.debug("newInputStream path = {} offset = {}", path, offset);
+
+        assertValidOffset(offset);
         assertIsOpen();
         Path absPath = toAbsolutePath(path);
         assertPathExists(absPath);
@@ -437,11 +456,16 @@ public class FtpFileSystem extends FileSystem {
         newClient.enterLocalPassiveMode();
 
         try {
+            if (offset > 0) {
+                // Sends a REST command, so the server starts the transfer at the offset.
+                newClient.setRestartOffset(offset);
+            }
+
             InputStream in = newClient.retrieveFileStream(absPath.toString());
 
             checkClientReply(newClient, "Failed to read from path: " + absPath.toString());
 
-            return new TransferClientInputStream(in, new CloseableClient(newClient));
+            return limitRate(new TransferClientInputStream(in, new CloseableClient(newClient)));
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to read from path: " + absPath);
         }
@@ -465,9 +489,11 @@ public class FtpFileSystem extends FileSystem {
             newClient.setFileType(FTPClient.BINARY_FILE_TYPE);
             OutputStream out = newClient.storeFileStream(absPath.toString());
             checkClientReply(newClient, "Failed to write to path: " + absPath.toString());
-            return new TransferClientOutputStream(out, new CloseableClient(newClient));
+            return invalidateCachedAttributesOnClose(absPath, limitRate(new TransferClientOutputStream(out, new CloseableClient(newClient))));
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to write to path: " + absPath);
+        } finally {
+            invalidateCachedAttributes(absPath);
         }
     }
 
@@ -496,9 +522,11 @@ public class FtpFileSystem extends FileSystem {
                 checkClientReply("Failed to append to path: " + absPath.toString());
             }
 
-            return new TransferClientOutputStream(out, new CloseableClient(newClient));
+            return invalidateCachedAttributesOnClose(absPath, limitRate(new TransferClientOutputStream(out, new CloseableClient(newClient))));
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to append to path: " + absPath);
+        } finally {
+            invalidateCachedAttributes(absPath);
         }
     }
 
@@ -57,12 +57,33 @@ public class LocalFileAdaptor extends FileAdaptor {
     /** The buffer size to use when copying data. */
     public static final String BUFFER_SIZE = PREFIX + "bufferSize";
 
+    /** The number of files to transfer concurrently in a recursive copy. */
+    public static final String COPY_PARALLELISM = PREFIX + "copy.parallelism";
+
+    /** Transfer the files of a recursive copy while the source directory is still being listed. */
+    public static final String COPY_PIPELINE = PREFIX + "copy.pipeline";
+
+    /** The number of directories to list concurrently in a recursive listing. */
+    public static final String LIST_PARALLELISM = PREFIX + "list.parallelism";
+
+    /** The number of concurrent streams used to copy a single large file. */
+    public static final String COPY_STREAMS = PREFIX + "copy.streams";
+
+    /** The minimum size of a file before it is copied using multiple streams. */
+    public static final String COPY_STREAMS_THRESHOLD = PREFIX + "copy.streams.threshold";
+
     /** The locations supported by the adaptor */
     private static final String[] ADAPTOR_LOCATIONS = new String[] { "(null)", "(empty string)", "[/workdir]", "driveletter:[/workdir]" };
 
     /** List of properties supported by this FTP adaptor */
     private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
-            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes).") };
+            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes)."),
+            new XenonPropertyDescription(COPY_PARALLELISM, Type.INTEGER, "1", "The number of files to transfer concurrently in a recursive copy."),
+            new XenonPropertyDescription(COPY_PIPELINE, Type.BOOLEAN, "false",
+                    "Transfer the files of a recursive copy while the source directory is still being listed."),
+            new XenonPropertyDescription(LIST_PARALLELISM, Type.INTEGER, "1", "The number of directories to list concurrently in a recursive listing."),
+            new XenonPropertyDescription(COPY_STREAMS, Type.INTEGER, "1", "The number of concurrent streams used to copy a single large file."),
+            new XenonPropertyDescription(COPY_STREAMS_THRESHOLD, Type.SIZE, "64M", "The minimum size of a file before it is copied using multiple streams.") };
 
     public LocalFileAdaptor() {
         super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
@@ -89,6 +110,11 @@ public class LocalFileAdaptor extends FileAdaptor {
         return true;
     }
 
+    @Override
+    public boolean canWriteAtOffset() {
+        return true;
+    }
+
     @SuppressWarnings("rawtypes")
     @Override
     public Class[] getSupportedCredentials() {
@@ -119,6 +145,8 @@ public class LocalFileAdaptor extends FileAdaptor {
                     "Invalid value for " + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
         }
 
+        checkFileSystemProperties(xp);
+
         Path entry = new Path(LocalFileSystemUtils.getLocalSeparator(), path);
         // for Windows remove the drive letter from entry?
 
@@ -21,6 +21,9 @@ import static nl.esciencecenter.xenon.utils.LocalFileSystemUtils.getLocalRootles
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
@@ -43,10 +46,14 @@ import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
 import nl.esciencecenter.xenon.filesystems.PosixFilePermission;
+import nl.esciencecenter.xenon.utils.BufferPool;
 import nl.esciencecenter.xenon.utils.LocalFileSystemUtils;
 
 public class LocalFileSystem extends FileSystem {
 
+    /** The size of the direct buffer used when a file does not support {@link FileChannel#transferTo}. */
+    private static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+
     private final String root;
 
     protected LocalFileSystem(String uniqueID, String location, Credential credential, String root, Path entryPath, int bufferSize,
@@ -279,6 +286,23 @@ public class LocalFileSystem extends FileSystem {
         }
     }
 
+    @Override
+    public InputStream readFromFile(Path path, long offset) throws XenonException {
+
+        assertValidOffset(offset);
+
+        Path absPath = toAbsolutePath(path);
+        assertFileExists(absPath);
+
+        try {
+            FileChannel channel = FileChannel.open(javaPath(absPath), StandardOpenOption.READ);
+            channel.position(offset);
+            return Channels.newInputStream(channel);
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to create InputStream.", e);
+        }
+    }
+
     @Override
     public OutputStream writeToFile(Path path, long size) throws XenonException {
 
@@ -309,6 +333,80 @@ public class LocalFileSystem extends FileSystem {
         }
     }
 
+    @Override
+    public OutputStream writeToFileAt(Path path, long offset) throws XenonException {
+
+        assertValidOffset(offset);
+
+        Path absPath = toAbsolutePath(path);
+        assertPathIsNotDirectory(absPath);
+        assertParentDirectoryExists(absPath);
+
+        try {
+            FileChannel channel = FileChannel.open(javaPath(absPath), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            channel.position(offset);
+            return Channels.newOutputStream(channel);
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to create OutputStream.", e);
+        }
+    }
+
+    /**
+     * Copy a range of bytes to another local file using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which allows the
+     * operating system to copy the data without passing it through the JVM.
+     */
+    @Override
+    protected long directCopyRange(Path source, FileSystem destinationFS, Path destination, long position, long count) throws XenonException {
+
+        if (!(destinationFS instanceof LocalFileSystem)) {
+            return super.directCopyRange(source, destinationFS, destination, position, count);
+        }
+
+        LocalFileSystem target = (LocalFileSystem) destinationFS;
+
+        try (FileChannel in = FileChannel.open(javaPath(source), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target.javaPath(destination), StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            out.position(position);
+
+            long transferred = in.transferTo(position, count, out);
+
+            if (transferred == 0 && count > 0) {
+                // Some files (such as those in /proc) do not support transferTo, so copy through a direct buffer instead.
+                transferred = bufferedCopyRange(in, out, position, count);
+            }
+
+            return transferred;
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to copy " + source + " to " + destination, e);
+        }
+    }
+
+    // Copies at most one buffer of data from in to out, starting at position. Returns the number of bytes copied.
+    private static long bufferedCopyRange(FileChannel in, FileChannel out, long position, long count) throws IOException {
+
+        ByteBuffer buffer = BufferPool.getShared().acquireDirect(DIRECT_BUFFER_SIZE);
+
+        try {
+            buffer.limit((int) Math.min(DIRECT_BUFFER_SIZE, count));
+
+            int read = in.read(buffer, position);
+
+            if (read <= 0) {
+                return 0;
+            }
+
+            buffer.flip();
+
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+
+            return read;
+        } finally {
+            BufferPool.getShared().release(buffer);
+        }
+    }
+
     @Override
     public PathAttributes getAttributes(Path path) throws XenonException {
         Path absPath = toAbsolutePath(path);
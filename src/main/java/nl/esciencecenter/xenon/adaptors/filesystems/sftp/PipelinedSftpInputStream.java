@@ -0,0 +1,274 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+
+import org.apache.sshd.client.subsystem.sftp.RawSftpClient;
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.subsystem.sftp.SftpException;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+
+/**
+ * An InputStream that reads a remote file with a window of SFTP read requests in flight.
+ *
+ * A plain SFTP read sends one request and waits for its response, so its throughput is limited to one chunk per round trip. This stream keeps up to
+ * <code>requests</code> read requests of <code>chunkSize</code> bytes outstanding, and sends a new request each time a response is consumed.
+ *
+ * Servers may return less data than requested, for example because they limit the size of a single read. When this happens, the outstanding requests
+ * are reissued and the chunk size is reduced to the amount of data the server returned, so the following requests are not short again.
+ */
+class PipelinedSftpInputStream extends InputStream {
+
+    /** An outstanding read request. */
+    private static final class Request {
+        private final int id;
+        private final long offset;
+        private final int length;
+
+        Request(int id, long offset, int length) {
+            this.id = id;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final RawSftpClient client;
+
+    private final SftpClient.CloseableHandle handle;
+
+    private int chunkSize;
+
+    private final int requests;
+
+    private final ArrayDeque<Request> pending;
+
+    /** The offset of the next read request. */
+    private long nextOffset;
+
+    /** The offset in the file of the next byte returned by this stream. */
+    private long position;
+
+    /** Set once the server reported the end of the file. */
+    private boolean eof = false;
+
+    /** The data of the response that is currently being consumed. */
+    private Buffer current;
+
+    private int remaining = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Create a new PipelinedSftpInputStream.
+     *
+     * @param client
+     *            the client the handle belongs to.
+     * @param handle
+     *            the handle of the file, opened for reading. It is closed when the stream is closed.
+     * @param offset
+     *            the offset in the file at which to start reading.
+     * @param chunkSize
+     *            the number of bytes to request at a time.
+     * @param requests
+     *            the maximum number of outstanding requests.
+     */
+    PipelinedSftpInputStream(RawSftpClient client, SftpClient.CloseableHandle handle, long offset, int chunkSize, int requests) {
+        this.client = client;
+        this.handle = handle;
+        this.nextOffset = offset;
+        this.position = offset;
+        this.chunkSize = chunkSize;
+        this.requests = requests;
+        this.pending = new ArrayDeque<>(requests);
+    }
+
+    private void sendRequests() throws IOException {
+
+        byte[] id = handle.getIdentifier();
+
+        while (!eof && pending.size() < requests) {
+            Buffer buffer = new ByteArrayBuffer(id.length + Long.BYTES + 2 * Integer.BYTES, false);
+            buffer.putBytes(id);
+            buffer.putLong(nextOffset);
+            buffer.putInt(chunkSize);
+
+            pending.add(new Request(client.send(SftpConstants.SSH_FXP_READ, buffer), nextOffset, chunkSize));
+            nextOffset += chunkSize;
+        }
+    }
+
+    /**
+     * Receive and discard the responses to all outstanding requests.
+     */
+    private void discardPending() throws IOException {
+        while (!pending.isEmpty()) {
+            client.receive(pending.poll().id);
+        }
+    }
+
+    /**
+     * Receive the response to the oldest outstanding request.
+     *
+     * @return if data was received, or false if the end of the file was reached.
+     */
+    private boolean receive() throws IOException {
+
+        sendRequests();
+
+        if (pending.isEmpty()) {
+            return false;
+        }
+
+        Request request = pending.poll();
+
+        Buffer buffer = client.receive(request.id);
+
+        buffer.getInt(); // length
+        int type = buffer.getUByte();
+        buffer.getInt(); // id
+
+        if (type == SftpConstants.SSH_FXP_STATUS) {
+            int status = buffer.getInt();
+            String message = buffer.getString();
+
+            if (status != SftpConstants.SSH_FX_EOF) {
+                throw new SftpException(status, message);
+            }
+
+            eof = true;
+            discardPending();
+            return false;
+        }
+
+        if (type != SftpConstants.SSH_FXP_DATA) {
+            throw new IOException("Unexpected SFTP response type " + type + " to read request");
+        }
+
+        int length = buffer.getInt();
+
+        if (length < request.length) {
+            // A short read. The requests after it do not continue where this one ended, so they are discarded and reissued with the chunk size the
+            // server actually returned. At the end of the file the following requests are answered with EOF anyway.
+            discardPending();
+            nextOffset = request.offset + length;
+
+            if (length > 0) {
+                chunkSize = length;
+            }
+        }
+
+        current = buffer;
+        remaining = length;
+        return true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        ensureOpen();
+
+        if (len == 0) {
+            return 0;
+        }
+
+        while (remaining == 0) {
+            if (!receive()) {
+                return -1;
+            }
+        }
+
+        int n = Math.min(len, remaining);
+        current.getRawBytes(b, off, n);
+        remaining -= n;
+        position += n;
+        return n;
+    }
+
+    /**
+     * Skip <code>n</code> bytes. Bytes that have already been received are skipped locally. Beyond those, the outstanding requests are discarded and
+     * reading continues at the new position, so the skipped part of the file is not transferred.
+     *
+     * As with a {@link java.io.FileInputStream}, it is possible to skip beyond the end of the file, after which {@link #read()} returns -1.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+
+        ensureOpen();
+
+        if (n <= 0) {
+            return 0;
+        }
+
+        int local = (int) Math.min(n, remaining);
+
+        if (local > 0) {
+            current.rpos(current.rpos() + local);
+            remaining -= local;
+            position += local;
+        }
+
+        if (local == n || eof) {
+            return local;
+        }
+
+        discardPending();
+        position += n - local;
+        nextOffset = position;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return remaining;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        current = null;
+        remaining = 0;
+
+        try {
+            discardPending();
+        } finally {
+            handle.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+
+import org.apache.sshd.client.subsystem.sftp.RawSftpClient;
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.subsystem.sftp.SftpException;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+
+/**
+ * An OutputStream that writes a remote file with a window of SFTP write requests in flight.
+ *
+ * The data is sent in chunks of <code>chunkSize</code> bytes. Up to <code>requests</code> chunks are sent before the stream waits for the server to
+ * acknowledge the oldest one. Errors reported by the server are therefore thrown by a later write, or at the latest by {@link #flush()} or
+ * {@link #close()}.
+ */
+class PipelinedSftpOutputStream extends OutputStream {
+
+    private final RawSftpClient client;
+
+    private final SftpClient.CloseableHandle handle;
+
+    private final int requests;
+
+    /** The ids of the write requests that have not been acknowledged yet. */
+    private final ArrayDeque<Integer> pending;
+
+    private final byte[] chunk;
+
+    private int used = 0;
+
+    /** The offset in the file of the first byte in <code>chunk</code>. */
+    private long offset;
+
+    private boolean closed = false;
+
+    /**
+     * Create a new PipelinedSftpOutputStream.
+     *
+     * @param client
+     *            the client the handle belongs to.
+     * @param handle
+     *            the handle of the file, opened for writing. It is closed when the stream is closed.
+     * @param offset
+     *            the offset in the file at which to start writing.
+     * @param chunkSize
+     *            the number of bytes to send in each write request.
+     * @param requests
+     *            the maximum number of unacknowledged requests.
+     */
+    PipelinedSftpOutputStream(RawSftpClient client, SftpClient.CloseableHandle handle, long offset, int chunkSize, int requests) {
+        this.client = client;
+        this.handle = handle;
+        this.offset = offset;
+        this.requests = requests;
+        this.chunk = new byte[chunkSize];
+        this.pending = new ArrayDeque<>(requests);
+    }
+
+    /**
+     * Wait for the acknowledgement of the oldest outstanding request.
+     */
+    private void receive() throws IOException {
+
+        Buffer buffer = client.receive(pending.poll());
+
+        buffer.getInt(); // length
+        int type = buffer.getUByte();
+        buffer.getInt(); // id
+
+        if (type != SftpConstants.SSH_FXP_STATUS) {
+            throw new IOException("Unexpected SFTP response type " + type + " to write request");
+        }
+
+        int status = buffer.getInt();
+
+        if (status != SftpConstants.SSH_FX_OK) {
+            String message = buffer.getString();
+
+            // The responses to the remaining requests are discarded, so they do not linger in the client.
+            while (!pending.isEmpty()) {
+                client.receive(pending.poll());
+            }
+
+            throw new SftpException(status, message);
+        }
+    }
+
+    private void sendChunk() throws IOException {
+
+        if (used == 0) {
+            return;
+        }
+
+        while (pending.size() >= requests) {
+            receive();
+        }
+
+        byte[] id = handle.getIdentifier();
+
+        Buffer buffer = new ByteArrayBuffer(id.length + used + Long.BYTES + 2 * Integer.BYTES, false);
+        buffer.putBytes(id);
+        buffer.putLong(offset);
+        buffer.putBytes(chunk, 0, used);
+
+        pending.add(client.send(SftpConstants.SSH_FXP_WRITE, buffer));
+
+        offset += used;
+        used = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+        ensureOpen();
+
+        while (len > 0) {
+            int n = Math.min(len, chunk.length - used);
+            System.arraycopy(b, off, chunk, used, n);
+            used += n;
+            off += n;
+            len -= n;
+
+            if (used == chunk.length) {
+                sendChunk();
+            }
+        }
+    }
+
+    /**
+     * Send any buffered data, and wait until the server has acknowledged all outstanding requests.
+     */
+    @Override
+    public void flush() throws IOException {
+
+        ensureOpen();
+
+        sendChunk();
+
+        while (!pending.isEmpty()) {
+            receive();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+            return;
+        }
+
+        try {
+            flush();
+        } finally {
+            closed = true;
+            handle.close();
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
+
+/**
+ * A pool of SFTP channels (each with its own {@link SftpClient}) over a single SSH connection.
+ *
+ * A single SFTP channel handles its requests one after the other, so a slow read or write delays all other operations on the same channel. The pool
+ * spreads the operations and open streams of a file system over multiple channels. Each operation uses the channel with the fewest open streams.
+ *
+ * Channels are opened when they are first needed. If the server refuses to open another channel (for example, because of its <code>MaxSessions</code>
+ * limit), the pool continues with the channels it has. A new channel is opened without holding the lock of the pool, so other threads can keep using the
+ * channels that are already open while the server responds.
+ */
+class SftpClientPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SftpClientPool.class);
+
+    private final SSHConnection connection;
+
+    /** The clients of the channels. A slot is <code>null</code> while its channel is being opened, or if it could not be opened. */
+    private final SftpClient[] clients;
+
+    /** The number of open streams of each client. */
+    private final int[] streams;
+
+    /** The number of clients that have been opened. */
+    private int opened;
+
+    /** The number of slots that have been taken by clients that are open or being opened. */
+    private int reserved;
+
+    /** The maximum number of clients, reduced if the server refuses to open more. */
+    private int maximum;
+
+    /** Used to alternate between equally loaded clients. */
+    private int next;
+
+    private boolean closed = false;
+
+    /**
+     * Create a new SftpClientPool.
+     *
+     * @param connection
+     *            the connection used to open additional channels.
+     * @param first
+     *            the client of the first channel, which has already been opened.
+     * @param size
+     *            the maximum number of channels.
+     */
+    SftpClientPool(SSHConnection connection, SftpClient first, int size) {
+
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+
+        this.connection = connection;
+        this.clients = new SftpClient[size];
+        this.streams = new int[size];
+        this.clients[0] = first;
+        this.opened = 1;
+        this.reserved = 1;
+        this.maximum = size;
+    }
+
+    /**
+     * Get the client of the first channel. This client is always available, and is used for operations that do not need to be spread.
+     *
+     * @return the first client.
+     */
+    SftpClient first() {
+        return clients[0];
+    }
+
+    /**
+     * Get the number of channels that are currently open.
+     *
+     * @return the number of open channels.
+     */
+    synchronized int getOpened() {
+        return opened;
+    }
+
+    // Returns the open client with the fewest streams.
+    private int leastBusy() {
+
+        int best = -1;
+
+        for (int i = 0; i < reserved; i++) {
+            int index = (next + i) % reserved;
+
+            if (clients[index] != null && (best == -1 || streams[index] < streams[best])) {
+                best = index;
+            }
+        }
+
+        next = (best + 1) % reserved;
+        return best;
+    }
+
+    /**
+     * Select the client with the fewest streams. If all open clients are busy with a stream, another channel is opened if possible.
+     *
+     * @param stream
+     *            if the client is used for a stream, in which case it is counted as busy until {@link #release(int)} is called.
+     * @return the index of the selected client.
+     */
+    private int select(boolean stream) {
+
+        int slot;
+
+        synchronized (this) {
+            int best = leastBusy();
+
+            if (streams[best] == 0 || reserved >= maximum || closed) {
+                if (stream) {
+                    streams[best]++;
+                }
+                return best;
+            }
+
+            // All open channels are busy with a stream, so reserve a slot for another. Other threads skip the slot until the channel is open.
+            slot = reserved++;
+
+            if (stream) {
+                streams[slot]++;
+            }
+        }
+
+        SftpClient client = null;
+
+        try {
+            client = connection.createSftpClient();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to open SFTP channel " + (slot + 1) + ", continuing with the channels that are open", e);
+        }
+
+        int best;
+
+        synchronized (this) {
+            if (client != null && !closed) {
+                clients[slot] = client;
+                opened++;
+                return slot;
+            }
+
+            if (client == null) {
+                maximum = Math.min(maximum, slot);
+            }
+
+            // Continue with the channels that are open.
+            if (stream) {
+                streams[slot]--;
+            }
+
+            best = leastBusy();
+
+            if (stream) {
+                streams[best]++;
+            }
+        }
+
+        if (client != null) {
+            // The pool was closed while the channel was opened.
+            try {
+                client.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close SFTP channel", e);
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Get a client for a short operation.
+     *
+     * @return the client to use.
+     */
+    SftpClient get() {
+        return clients[select(false)];
+    }
+
+    private int acquire() {
+        return select(true);
+    }
+
+    private synchronized void release(int index) {
+        streams[index]--;
+    }
+
+    /**
+     * Operation that opens a stream on a client.
+     */
+    @FunctionalInterface
+    interface StreamOpener<T> {
+        T open(SftpClient client) throws IOException;
+    }
+
+    /**
+     * Open an InputStream on a client. The client is counted as busy until the stream is closed.
+     *
+     * @param opener
+     *            opens the stream on the client it is given.
+     * @return the stream.
+     * @throws IOException
+     *             If the stream could not be opened.
+     */
+    InputStream openInputStream(StreamOpener<InputStream> opener) throws IOException {
+
+        int index = acquire();
+
+        InputStream in;
+
+        try {
+            in = opener.open(clients[index]);
+        } catch (IOException | RuntimeException e) {
+            release(index);
+            throw e;
+        }
+
+        AtomicBoolean closed = new AtomicBoolean(false);
+
+        return new FilterInputStream(in) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return in.read(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (closed.compareAndSet(false, true)) {
+                        release(index);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Open an OutputStream on a client. The client is counted as busy until the stream is closed.
+     *
+     * @param opener
+     *            opens the stream on the client it is given.
+     * @return the stream.
+     * @throws IOException
+     *             If the stream could not be opened.
+     */
+    OutputStream openOutputStream(StreamOpener<OutputStream> opener) throws IOException {
+
+        int index = acquire();
+
+        OutputStream out;
+
+        try {
+            out = opener.open(clients[index]);
+        } catch (IOException | RuntimeException e) {
+            release(index);
+            throw e;
+        }
+
+        AtomicBoolean closed = new AtomicBoolean(false);
+
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (closed.compareAndSet(false, true)) {
+                        release(index);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns if the pool is open, that is, if its first channel is open.
+     *
+     * @return if the pool is open.
+     */
+    boolean isOpen() {
+        return clients[0].isOpen();
+    }
+
+    /**
+     * Close all channels.
+     *
+     * @throws IOException
+     *             If a channel could not be closed. All channels are closed regardless.
+     */
+    void close() throws IOException {
+
+        SftpClient[] tmp;
+
+        synchronized (this) {
+            closed = true;
+            tmp = clients.clone();
+        }
+
+        IOException ex = null;
+
+        for (SftpClient c : tmp) {
+            if (c != null) {
+                try {
+                    c.close();
+                } catch (IOException e) {
+                    ex = e;
+                }
+            }
+        }
+
+        if (ex != null) {
+            throw ex;
+        }
+    }
+}
@@ -18,6 +18,8 @@ package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.sshd.client.SshClient;
@@ -34,6 +36,7 @@ import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnectionCache;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHUtil;
 import nl.esciencecenter.xenon.credentials.CertificateCredential;
 import nl.esciencecenter.xenon.credentials.Credential;
@@ -90,6 +93,51 @@ public class SftpFileAdaptor extends FileAdaptor {
     /** The buffer size to use when copying data. */
     public static final String BUFFER_SIZE = PREFIX + "bufferSize";
 
+    /** The number of files to transfer concurrently in a recursive copy. */
+    public static final String COPY_PARALLELISM = PREFIX + "copy.parallelism";
+
+    /** Transfer the files of a recursive copy while the source directory is still being listed. */
+    public static final String COPY_PIPELINE = PREFIX + "copy.pipeline";
+
+    /** The number of directories to list concurrently in a recursive listing. */
+    public static final String LIST_PARALLELISM = PREFIX + "list.parallelism";
+
+    /** The maximum number of paths in the attribute cache, or 0 to disable the cache. */
+    public static final String CACHE_SIZE = PREFIX + "cache.size";
+
+    /** The time in milliseconds after which attribute cache entries expire. */
+    public static final String CACHE_TTL = PREFIX + "cache.ttl";
+
+    /** The number of concurrent streams used to copy a single large file. */
+    public static final String COPY_STREAMS = PREFIX + "copy.streams";
+
+    /** The minimum size of a file before it is copied using multiple streams. */
+    public static final String COPY_STREAMS_THRESHOLD = PREFIX + "copy.streams.threshold";
+
+    /** The maximum transfer rate in bytes per second, or 0 for no limit. */
+    public static final String COPY_RATE = PREFIX + "copy.rate";
+
+    /** The maximum transfer rate in bytes per second, shared by all file systems connected to the same host, or 0 for no limit. */
+    public static final String COPY_RATE_HOST = PREFIX + "copy.rate.host";
+
+    /** The number of bytes that may be transferred in a burst, or 0 to allow one second of transfer. */
+    public static final String COPY_RATE_BURST = PREFIX + "copy.rate.burst";
+
+    /** The number of SFTP channels used to perform operations concurrently. */
+    public static final String CHANNELS = PREFIX + "channels";
+
+    /** The number of SFTP read or write requests a stream keeps in flight. */
+    public static final String TRANSFER_REQUESTS = PREFIX + "transfer.requests";
+
+    /** The number of bytes read or written by a single SFTP request of a pipelined stream. */
+    public static final String TRANSFER_CHUNK_SIZE = PREFIX + "transfer.chunkSize";
+
+    /** The time in milliseconds an idle connection is kept in the JVM-wide connection cache, or 0 to disable the cache. */
+    public static final String CONNECTION_CACHE_TIMEOUT = PREFIX + "connection.cache.timeout";
+
+    /** The largest chunk size servers are required to accept. */
+    private static final int MAX_CHUNK_SIZE = 256 * 1024;
+
     /** The locations supported by this adaptor */
     private static final String[] ADAPTOR_LOCATIONS = new String[] { "host[:port][/workdir]" };
 
@@ -103,7 +151,28 @@ public class SftpFileAdaptor extends FileAdaptor {
             new XenonPropertyDescription(AGENT_FORWARDING, Type.BOOLEAN, "false", "Use ssh-agent forwarding when setting up a connection."),
             new XenonPropertyDescription(CONNECTION_TIMEOUT, Type.NATURAL, "10000",
                     "The timeout for creating and authenticating connections (in milliseconds)."),
-            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes).") };
+            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes)."),
+            new XenonPropertyDescription(COPY_PARALLELISM, Type.INTEGER, "1", "The number of files to transfer concurrently in a recursive copy."),
+            new XenonPropertyDescription(COPY_PIPELINE, Type.BOOLEAN, "false",
+                    "Transfer the files of a recursive copy while the source directory is still being listed."),
+            new XenonPropertyDescription(LIST_PARALLELISM, Type.INTEGER, "1", "The number of directories to list concurrently in a recursive listing."),
+            new XenonPropertyDescription(CACHE_SIZE, Type.INTEGER, "0", "The maximum number of paths in the attribute cache, or 0 to disable the cache."),
+            new XenonPropertyDescription(CACHE_TTL, Type.INTEGER, "5000", "The time in milliseconds after which attribute cache entries expire."),
+            new XenonPropertyDescription(COPY_STREAMS, Type.INTEGER, "1", "The number of concurrent streams used to copy a single large file."),
+            new XenonPropertyDescription(COPY_STREAMS_THRESHOLD, Type.SIZE, "64M", "The minimum size of a file before it is copied using multiple streams."),
+            new XenonPropertyDescription(COPY_RATE, Type.SIZE, "0", "The maximum transfer rate in bytes per second, or 0 for no limit."),
+            new XenonPropertyDescription(COPY_RATE_HOST, Type.SIZE, "0",
+                    "The maximum transfer rate in bytes per second, shared by all file systems connected to the same host, or 0 for no limit."),
+            new XenonPropertyDescription(COPY_RATE_BURST, Type.SIZE, "0", "The number of bytes that may be transferred in a burst, or 0 to allow one second of transfer."),
+            new XenonPropertyDescription(CHANNELS, Type.INTEGER, "1",
+                    "The number of SFTP channels, opened over the same SSH connection, used to perform operations and transfers concurrently."),
+            new XenonPropertyDescription(TRANSFER_REQUESTS, Type.INTEGER, "1",
+                    "The number of SFTP read or write requests a stream keeps in flight. Values larger than 1 hide the network latency of transfers."),
+            new XenonPropertyDescription(TRANSFER_CHUNK_SIZE, Type.SIZE, "32K",
+                    "The number of bytes read or written by a single SFTP request when " + TRANSFER_REQUESTS + " is larger than 1."),
+            new XenonPropertyDescription(CONNECTION_CACHE_TIMEOUT, Type.NATURAL, "0",
+                    "The time in milliseconds an idle SSH connection is kept, so it can be reused by other file systems and schedulers connecting to the same "
+                            + "location with the same credential. 0 disables reuse.") };
 
     public SftpFileAdaptor() {
         super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
@@ -119,6 +188,81 @@ public class SftpFileAdaptor extends FileAdaptor {
 
         LOGGER.debug("new SftpFileSystem location = {} credential = {} properties = {}", location, credential, properties);
 
+        checkLocationAndCredential(location, credential);
+
+        XenonProperties xp = getProperties(properties);
+
+        boolean loadKnownHosts = xp.getBooleanProperty(LOAD_STANDARD_KNOWN_HOSTS);
+        boolean loadSSHConfig = xp.getBooleanProperty(LOAD_SSH_CONFIG);
+        boolean strictHostCheck = xp.getBooleanProperty(STRICT_HOST_KEY_CHECKING);
+        boolean useSSHAgent = xp.getBooleanProperty(AGENT);
+        boolean useAgentForwarding = xp.getBooleanProperty(AGENT_FORWARDING);
+
+        long timeout = xp.getNaturalProperty(CONNECTION_TIMEOUT);
+        int bufferSize = (int) xp.getSizeProperty(BUFFER_SIZE);
+        long cacheTimeout = xp.getNaturalProperty(CONNECTION_CACHE_TIMEOUT);
+
+        SSHConnection session;
+
+        if (cacheTimeout > 0) {
+            List<Boolean> options = Arrays.asList(loadKnownHosts, loadSSHConfig, strictHostCheck, useSSHAgent, useAgentForwarding);
+
+            session = SSHConnectionCache.getShared().get(ADAPTOR_NAME, location, credential, options, cacheTimeout, () -> {
+                SshClient client = SSHUtil.createSSHClient(loadKnownHosts, loadSSHConfig, strictHostCheck, useSSHAgent, useAgentForwarding);
+                return SSHUtil.connect(ADAPTOR_NAME, client, location, credential, bufferSize, timeout);
+            });
+        } else {
+            SshClient client = SSHUtil.createSSHClient(loadKnownHosts, loadSSHConfig, strictHostCheck, useSSHAgent, useAgentForwarding);
+            session = SSHUtil.connect(ADAPTOR_NAME, client, location, credential, bufferSize, timeout);
+        }
+
+        return createFileSystem(location, credential, xp, session);
+    }
+
+    /**
+     * Create a new SftpFileSystem that opens its SFTP channels on an existing SSH connection, instead of setting up a connection of its own.
+     *
+     * The file system registers itself as a user of the connection (see {@link SSHConnection#acquire()}) and releases the connection when it is closed.
+     * The connection related properties (such as {@link #STRICT_HOST_KEY_CHECKING}) are ignored, as the connection has already been set up.
+     *
+     * @param location
+     *            the location the connection is connected to.
+     * @param credential
+     *            the credential used to set up the connection.
+     * @param properties
+     *            the properties of the file system.
+     * @param connection
+     *            the connection to use.
+     * @return the new file system.
+     * @throws XenonException
+     *             If the properties are invalid, or the SFTP channel could not be opened.
+     */
+    public FileSystem createFileSystem(String location, Credential credential, Map<String, String> properties, SSHConnection connection)
+            throws XenonException {
+
+        LOGGER.debug("new SftpFileSystem on existing connection location = {} credential = {} properties = {}", location, credential, properties);
+
+        checkLocationAndCredential(location, credential);
+
+        if (connection == null) {
+            throw new IllegalArgumentException("Connection may not be null");
+        }
+
+        XenonProperties xp = getProperties(properties);
+
+        SSHConnection session;
+
+        try {
+            session = connection.acquire();
+        } catch (IllegalStateException e) {
+            throw new XenonException(ADAPTOR_NAME, "Connection is closed", e);
+        }
+
+        return createFileSystem(location, credential, xp, session);
+    }
+
+    private void checkLocationAndCredential(String location, Credential credential) throws XenonException {
+
         if (location == null || location.isEmpty()) {
             throw new InvalidLocationException(ADAPTOR_NAME, "Location may not be empty");
         }
@@ -126,6 +270,9 @@ public class SftpFileAdaptor extends FileAdaptor {
         if (credential == null) {
             throw new InvalidCredentialException(ADAPTOR_NAME, "Credential may not be null");
         }
+    }
+
+    private XenonProperties getProperties(Map<String, String> properties) throws XenonException {
 
         XenonProperties xp = new XenonProperties(VALID_PROPERTIES, properties);
 
@@ -136,17 +283,35 @@ public class SftpFileAdaptor extends FileAdaptor {
                     "Invalid value for " + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
         }
 
-        boolean loadKnownHosts = xp.getBooleanProperty(LOAD_STANDARD_KNOWN_HOSTS);
-        boolean loadSSHConfig = xp.getBooleanProperty(LOAD_SSH_CONFIG);
-        boolean strictHostCheck = xp.getBooleanProperty(STRICT_HOST_KEY_CHECKING);
-        boolean useSSHAgent = xp.getBooleanProperty(AGENT);
-        boolean useAgentForwarding = xp.getBooleanProperty(AGENT_FORWARDING);
+        checkFileSystemProperties(xp);
 
-        SshClient client = SSHUtil.createSSHClient(loadKnownHosts, loadSSHConfig, strictHostCheck, useSSHAgent, useAgentForwarding);
+        int channels = xp.getIntegerProperty(CHANNELS);
 
-        long timeout = xp.getNaturalProperty(CONNECTION_TIMEOUT);
+        if (channels < 1) {
+            throw new InvalidPropertyException(ADAPTOR_NAME, "Invalid value for " + CHANNELS + ": " + channels + " (must be at least 1)");
+        }
 
-        SSHConnection session = SSHUtil.connect(ADAPTOR_NAME, client, location, credential, (int) bufferSize, timeout);
+        int transferRequests = xp.getIntegerProperty(TRANSFER_REQUESTS);
+
+        if (transferRequests < 1) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + TRANSFER_REQUESTS + ": " + transferRequests + " (must be at least 1)");
+        }
+
+        long chunkSize = xp.getSizeProperty(TRANSFER_CHUNK_SIZE);
+
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + TRANSFER_CHUNK_SIZE + ": " + chunkSize + " (must be between 1 and " + MAX_CHUNK_SIZE + ")");
+        }
+
+        return xp;
+    }
+
+    /**
+     * Open the first SFTP channel on <code>session</code> and create the file system. The session is released if this fails.
+     */
+    private FileSystem createFileSystem(String location, Credential credential, XenonProperties xp, SSHConnection session) throws XenonException {
 
         SftpClient sftpClient = null;
 
@@ -154,7 +319,6 @@ public class SftpFileAdaptor extends FileAdaptor {
             sftpClient = session.createSftpClient();
         } catch (IOException e) {
             session.close();
-            client.close(true);
             throw new XenonException(ADAPTOR_NAME, "Failed to create SFTP session", e);
         }
 
@@ -163,12 +327,21 @@ public class SftpFileAdaptor extends FileAdaptor {
         try {
             cwd = getCurrentWorkingDirectory(sftpClient, location);
         } catch (Exception e) {
+            // The connection may be shared, so the channel is closed explicitly.
+            try {
+                sftpClient.close();
+            } catch (IOException e1) {
+                // ignored
+            }
+
             session.close();
-            client.close(true);
             throw e;
         }
 
-        return new SftpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, credential, new Path(cwd), (int) bufferSize, session, sftpClient, xp);
+        int bufferSize = (int) xp.getSizeProperty(BUFFER_SIZE);
+        int channels = xp.getIntegerProperty(CHANNELS);
+
+        return new SftpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, credential, new Path(cwd), bufferSize, session, sftpClient, channels, xp);
     }
 
     private String getCurrentWorkingDirectory(SftpClient sftpClient, String location) throws XenonException {
@@ -209,6 +382,11 @@ public class SftpFileAdaptor extends FileAdaptor {
         return true;
     }
 
+    @Override
+    public boolean canWriteAtOffset() {
+        return true;
+    }
+
     @SuppressWarnings("rawtypes")
     @Override
     public Class[] getSupportedCredentials() {
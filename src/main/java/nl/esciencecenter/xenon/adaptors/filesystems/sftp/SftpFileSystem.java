@@ -17,31 +17,53 @@ package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
 
 import static nl.esciencecenter.xenon.adaptors.filesystems.sftp.SftpFileAdaptor.ADAPTOR_NAME;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.subsystem.sftp.RawSftpClient;
 import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.apache.sshd.client.subsystem.sftp.extensions.CheckFileNameExtension;
+import org.apache.sshd.client.subsystem.sftp.extensions.CopyDataExtension;
+import org.apache.sshd.client.subsystem.sftp.extensions.CopyFileExtension;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.subsystem.sftp.SftpException;
+import org.apache.sshd.common.util.io.NullOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.NotConnectedException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
+import nl.esciencecenter.xenon.adaptors.filesystems.BlockChecksum;
 import nl.esciencecenter.xenon.adaptors.filesystems.EndOfFileException;
 import nl.esciencecenter.xenon.adaptors.filesystems.NoSpaceException;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
 import nl.esciencecenter.xenon.adaptors.filesystems.PermissionDeniedException;
 import nl.esciencecenter.xenon.adaptors.filesystems.PosixFileUtils;
+import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingUtils;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
 import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.filesystems.ChecksumAlgorithm;
 import nl.esciencecenter.xenon.filesystems.DirectoryNotEmptyException;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.InvalidPathException;
@@ -55,13 +77,34 @@ public class SftpFileSystem extends FileSystem {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SftpFileSystem.class);
 
-    private final SftpClient client;
+    private static final String TRANSFER_REQUESTS = "transfer.requests";
+
+    private static final String TRANSFER_CHUNK_SIZE = "transfer.chunkSize";
+
+    private static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+
+    /**
+     * Prints the MD5 checksum of each block of the file given as first argument, using the block size given as second argument. Exits with a non-zero
+     * status if the file cannot be read.
+     */
+    private static final String BLOCK_CHECKSUM_SCRIPT = "perl -MDigest::MD5=md5_hex -e 'open(F, \"<\", $ARGV[0]) or exit 1; binmode F; "
+            + "while ($n = read(F, $b, $ARGV[1])) { print md5_hex($b), \"\\n\" } exit(defined($n) ? 0 : 1)'";
+
+    private final SftpClientPool clients;
     private final SSHConnection connection;
 
+    /** The connection may be shared with a scheduler, so it may remain open after this file system is closed. */
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
     protected SftpFileSystem(String uniqueID, String name, String location, Credential credential, Path entryPath, int bufferSize, SSHConnection connection,
             SftpClient client, XenonProperties properties) {
+        this(uniqueID, name, location, credential, entryPath, bufferSize, connection, client, 1, properties);
+    }
+
+    protected SftpFileSystem(String uniqueID, String name, String location, Credential credential, Path entryPath, int bufferSize, SSHConnection connection,
+            SftpClient client, int channels, XenonProperties properties) {
         super(uniqueID, name, location, credential, entryPath, bufferSize, properties);
-        this.client = client;
+        this.clients = new SftpClientPool(connection, client, channels);
         this.connection = connection;
     }
 
@@ -70,10 +113,15 @@ public class SftpFileSystem extends FileSystem {
 
         LOGGER.debug("close fileSystem = {}", this);
 
+        if (!closed.compareAndSet(false, true)) {
+            // The connection must only be released once.
+            return;
+        }
+
         IOException ex = null;
 
         try {
-            client.close();
+            clients.close();
         } catch (IOException e) {
             ex = e;
         }
@@ -90,7 +138,7 @@ public class SftpFileSystem extends FileSystem {
 
     @Override
     public boolean isOpen() throws XenonException {
-        return client.isOpen();
+        return !closed.get() && clients.isOpen();
     }
 
     @Override
@@ -111,9 +159,12 @@ public class SftpFileSystem extends FileSystem {
         assertParentDirectoryExists(absTarget);
 
         try {
-            client.rename(absSource.toString(), absTarget.toString());
+            clients.get().rename(absSource.toString(), absTarget.toString());
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Failed to rename path");
+        } finally {
+            invalidateCachedAttributes(absSource);
+            invalidateCachedAttributes(absTarget);
         }
 
         LOGGER.debug("move OK");
@@ -129,9 +180,11 @@ public class SftpFileSystem extends FileSystem {
         assertParentDirectoryExists(absDir);
 
         try {
-            client.mkdir(absDir.toString());
+            clients.get().mkdir(absDir.toString());
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Failed to mkdir");
+        } finally {
+            invalidateCachedAttributes(absDir);
         }
 
         LOGGER.debug("createDirectory OK");
@@ -170,16 +223,18 @@ public class SftpFileSystem extends FileSystem {
         assertParentDirectoryExists(absLink);
 
         try {
-            client.symLink(absLink.toString(), path.toString());
+            clients.get().symLink(absLink.toString(), path.toString());
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Cannot create link: " + absLink + " -> " + path);
+        } finally {
+            invalidateCachedAttributes(absLink);
         }
     }
 
     @Override
     protected void deleteFile(Path file) throws XenonException {
         try {
-            client.remove(file.toString());
+            clients.get().remove(file.toString());
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Cannot delete file: " + file);
         }
@@ -188,7 +243,7 @@ public class SftpFileSystem extends FileSystem {
     @Override
     protected void deleteDirectory(Path dir) throws XenonException {
         try {
-            client.rmdir(dir.toString());
+            clients.get().rmdir(dir.toString());
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Cannot delete directory: " + dir);
         }
@@ -201,7 +256,7 @@ public class SftpFileSystem extends FileSystem {
         SftpClient.Attributes result;
 
         try {
-            result = client.lstat(path.toString());
+            result = clients.get().lstat(path.toString());
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Failed to retrieve attributes from: " + path);
         }
@@ -231,7 +286,7 @@ public class SftpFileSystem extends FileSystem {
 
             ArrayList<PathAttributes> result = new ArrayList<>();
 
-            for (SftpClient.DirEntry f : client.readDir(path.toString())) {
+            for (SftpClient.DirEntry f : clients.get().readDir(path.toString())) {
                 result.add(convertAttributes(path.resolve(f.getFilename()), f.getAttributes()));
             }
 
@@ -243,7 +298,14 @@ public class SftpFileSystem extends FileSystem {
 
     @Override
     public InputStream readFromFile(Path path) throws XenonException {
-        LOGGER.debug("newInputStream path = {}", path);
+        return readFromFile(path, 0);
+    }
+
+    @Override
+    public InputStream readFromFile(Path path, long offset) throws XenonException {
+        LOGGER.debug("newInputStream path = {} offset = {}", path, offset);
+
+        assertValidOffset(offset);
 
         Path absPath = toAbsolutePath(path);
 
@@ -252,14 +314,44 @@ public class SftpFileSystem extends FileSystem {
         InputStream in;
 
         try {
-            in = client.read(absPath.toString());
+            int requests = getTransferRequests();
+            int chunkSize = getTransferChunkSize();
+
+            in = clients.openInputStream(c -> {
+                if ((requests > 1 || offset > 0) && c instanceof RawSftpClient) {
+                    // Reads start at the offset on the server side, so the data before it is not transferred.
+                    return new PipelinedSftpInputStream((RawSftpClient) c, c.open(absPath.toString(), SftpClient.OpenMode.Read), offset, chunkSize,
+                            requests);
+                }
+
+                InputStream stream = c.read(absPath.toString());
+
+                try {
+                    long left = offset;
+
+                    while (left > 0) {
+                        long skipped = stream.skip(left);
+
+                        if (skipped <= 0) {
+                            break;
+                        }
+
+                        left -= skipped;
+                    }
+                } catch (IOException e) {
+                    stream.close();
+                    throw e;
+                }
+
+                return stream;
+            });
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to open stream to read from " + absPath, e);
         }
 
         LOGGER.debug("newInputStream OK");
 
-        return in;
+        return limitRate(in);
     }
 
     @Override
@@ -270,9 +362,24 @@ public class SftpFileSystem extends FileSystem {
         assertParentDirectoryExists(absPath);
 
         try {
-            return client.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate);
+            int requests = getTransferRequests();
+            int chunkSize = getTransferChunkSize();
+
+            OutputStream out = clients.openOutputStream(c -> {
+                if (requests > 1 && c instanceof RawSftpClient) {
+                    SftpClient.CloseableHandle handle = c.open(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create,
+                            SftpClient.OpenMode.Truncate);
+                    return new PipelinedSftpOutputStream((RawSftpClient) c, handle, 0, chunkSize, requests);
+                }
+
+                return c.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate);
+            });
+
+            return invalidateCachedAttributesOnClose(absPath, limitRate(out));
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed open stream to write to: " + absPath, e);
+        } finally {
+            invalidateCachedAttributes(absPath);
         }
     }
 
@@ -288,12 +395,323 @@ public class SftpFileSystem extends FileSystem {
         assertFileExists(absPath);
 
         try {
-            return client.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Append);
+            OutputStream out = clients.openOutputStream(c -> c.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Append));
+            return invalidateCachedAttributesOnClose(absPath, limitRate(out));
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed open stream to write to: " + absPath, e);
+        } finally {
+            invalidateCachedAttributes(absPath);
         }
     }
 
+    @Override
+    public OutputStream writeToFileAt(Path path, long offset) throws XenonException {
+
+        assertValidOffset(offset);
+
+        Path absPath = toAbsolutePath(path);
+        assertPathIsNotDirectory(absPath);
+        assertParentDirectoryExists(absPath);
+
+        try {
+            int requests = getTransferRequests();
+            int chunkSize = getTransferChunkSize();
+
+            OutputStream out = clients.openOutputStream(c -> {
+                if (requests > 1 && c instanceof RawSftpClient) {
+                    SftpClient.CloseableHandle handle = c.open(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create);
+                    return new PipelinedSftpOutputStream((RawSftpClient) c, handle, offset, chunkSize, requests);
+                }
+
+                FileChannel channel = c.openRemoteFileChannel(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create);
+                channel.position(offset);
+                return Channels.newOutputStream(channel);
+            });
+
+            return invalidateCachedAttributesOnClose(absPath, limitRate(out));
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed open stream to write to: " + absPath, e);
+        } finally {
+            invalidateCachedAttributes(absPath);
+        }
+    }
+
+    /**
+     * Get the number of read or write requests a stream keeps in flight. Streams are only pipelined if this is larger than 1.
+     */
+    private int getTransferRequests() throws XenonException {
+        return getIntegerProperty(TRANSFER_REQUESTS, 1);
+    }
+
+    private int getTransferChunkSize() throws XenonException {
+        return (int) getSizeProperty(TRANSFER_CHUNK_SIZE, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Copy a file on the server, if <code>destinationFS</code> is connected to the same server as this file system.
+     *
+     * The SFTP <code>copy-file</code> or <code>copy-data</code> extensions are used if the server supports them. Otherwise the file is copied by running
+     * <code>cp</code> over the SSH connection of this file system.
+     */
+    @Override
+    protected void serverSideCopy(Path source, FileSystem destinationFS, Path destination) throws XenonException {
+
+        if (!(destinationFS instanceof SftpFileSystem) || !hasSameLocation(destinationFS)) {
+            super.serverSideCopy(source, destinationFS, destination);
+            return;
+        }
+
+        String src = toAbsolutePath(source).toString();
+        String dst = ((SftpFileSystem) destinationFS).toAbsolutePath(destination).toString();
+
+        LOGGER.debug("serverSideCopy source = {} destination = {}", src, dst);
+
+        // Handles belong to a channel, so all steps must use the same client.
+        SftpClient client = clients.get();
+
+        CopyFileExtension copyFile = client.getExtension(CopyFileExtension.class);
+
+        if (copyFile != null && copyFile.isSupported()) {
+            try {
+                copyFile.copyFile(src, dst, false);
+                return;
+            } catch (IOException e) {
+                LOGGER.debug("serverSideCopy using copy-file failed", e);
+            }
+        }
+
+        CopyDataExtension copyData = client.getExtension(CopyDataExtension.class);
+
+        if (copyData != null && copyData.isSupported()) {
+            try (SftpClient.CloseableHandle in = client.open(src, SftpClient.OpenMode.Read);
+                    SftpClient.CloseableHandle out = client.open(dst, SftpClient.OpenMode.Write, SftpClient.OpenMode.Create,
+                            SftpClient.OpenMode.Truncate)) {
+                // A length of 0 copies all data until the end of the file.
+                copyData.copyData(in, 0, 0, out, 0);
+                return;
+            } catch (IOException e) {
+                LOGGER.debug("serverSideCopy using copy-data failed", e);
+            }
+        }
+
+        try {
+            connection.getSession()
+                    .executeRemoteCommand("cp " + ScriptingUtils.protectAgainstShellMetas(src) + " " + ScriptingUtils.protectAgainstShellMetas(dst));
+            return;
+        } catch (IOException e) {
+            LOGGER.debug("serverSideCopy using cp failed", e);
+        }
+
+        throw new UnsupportedOperationException(ADAPTOR_NAME, "Server side copy of " + src + " failed");
+    }
+
+    /**
+     * Compute the checksum of an existing file on the remote machine.
+     *
+     * The SFTP <code>check-file-name</code> extension is used if the server supports it. Otherwise the checksum is computed by running
+     * <code>md5sum</code>, <code>sha1sum</code> or <code>sha256sum</code> over the SSH connection of this file system. If this fails as well, the file is
+     * read and the checksum is computed locally.
+     */
+    @Override
+    public String checksum(Path file, ChecksumAlgorithm algorithm) throws XenonException {
+
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Checksum algorithm is null");
+        }
+
+        Path absFile = toAbsolutePath(file);
+        assertFileExists(absFile);
+
+        LOGGER.debug("checksum path = {} algorithm = {}", absFile, algorithm);
+
+        String result = checkFileChecksum(absFile, algorithm);
+
+        if (result == null) {
+            result = commandChecksum(absFile, algorithm);
+        }
+
+        if (result == null) {
+            return super.checksum(absFile, algorithm);
+        }
+
+        LOGGER.debug("checksum OK result = {}", result);
+        return result;
+    }
+
+    private String checkFileChecksum(Path absFile, ChecksumAlgorithm algorithm) {
+
+        String name;
+
+        switch (algorithm) {
+        case MD5:
+            name = "md5";
+            break;
+        case SHA1:
+            name = "sha1";
+            break;
+        default:
+            name = "sha256";
+            break;
+        }
+
+        CheckFileNameExtension extension = clients.get().getExtension(CheckFileNameExtension.class);
+
+        if (extension == null || !extension.isSupported()) {
+            return null;
+        }
+
+        try {
+            Map.Entry<String, Collection<byte[]>> result = extension.checkFileName(absFile.toString(), Collections.singletonList(name), 0, 0, 0);
+
+            if (name.equalsIgnoreCase(result.getKey()) && result.getValue().size() == 1) {
+                return toHexString(result.getValue().iterator().next());
+            }
+        } catch (IOException e) {
+            LOGGER.debug("checksum using check-file-name failed", e);
+        }
+
+        return null;
+    }
+
+    private String commandChecksum(Path absFile, ChecksumAlgorithm algorithm) {
+
+        String command;
+        int length;
+
+        switch (algorithm) {
+        case MD5:
+            command = "md5sum";
+            length = 32;
+            break;
+        case SHA1:
+            command = "sha1sum";
+            length = 40;
+            break;
+        default:
+            command = "sha256sum";
+            length = 64;
+            break;
+        }
+
+        try {
+            String output = connection.getSession().executeRemoteCommand(command + " " + ScriptingUtils.protectAgainstShellMetas(absFile.toString()));
+            String hex = output.trim().split("\\s+")[0].toLowerCase(Locale.ROOT);
+
+            if (hex.length() == length && hex.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+                return hex;
+            }
+
+            LOGGER.debug("checksum using {} got unexpected output: {}", command, output);
+        } catch (IOException e) {
+            LOGGER.debug("checksum using " + command + " failed", e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Compute the checksums of each block of <code>file</code> on the remote machine.
+     *
+     * The MD5 checksum of each block is computed by a single <code>perl</code> process, started over the SSH connection of this file system, that reads the
+     * file once and prints one checksum per block. The file therefore does not need to be transferred, and the checksums are parsed as they arrive. If this
+     * fails, for example because <code>perl</code> is not available or the file cannot be read, the file is read and the checksums are computed locally
+     * instead.
+     */
+    @Override
+    protected List<BlockChecksum> computeBlockChecksums(Path file, int blockSize) throws XenonException {
+
+        Path absPath = toAbsolutePath(file);
+
+        long size = getAttributes(absPath).getSize();
+        long blocks = (size + blockSize - 1) / blockSize;
+
+        if (blocks == 0) {
+            return new ArrayList<>(0);
+        }
+
+        String command = BLOCK_CHECKSUM_SCRIPT + " " + ScriptingUtils.protectAgainstShellMetas(absPath.toString()) + " " + blockSize;
+
+        LOGGER.debug("computeBlockChecksums path = {} blocks = {}", absPath, blocks);
+
+        try {
+            List<BlockChecksum> result = remoteBlockChecksums(command, blocks);
+
+            if (result != null) {
+                return result;
+            }
+
+            LOGGER.debug("computeBlockChecksums got unexpected output, falling back to local checksums");
+        } catch (IOException e) {
+            LOGGER.debug("computeBlockChecksums failed, falling back to local checksums", e);
+        }
+
+        return super.computeBlockChecksums(absPath, blockSize);
+    }
+
+    // Runs the checksum command and parses its output, one line per block. Returns null if the output is not valid or the command failed.
+    private List<BlockChecksum> remoteBlockChecksums(String command, long blocks) throws IOException {
+
+        List<BlockChecksum> result = new ArrayList<>();
+
+        try (ChannelExec channel = connection.getSession().createExecChannel(command)) {
+
+            channel.setErr(new NullOutputStream());
+            channel.open().verify();
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(channel.getInvertedOut(), StandardCharsets.US_ASCII))) {
+
+                String line = reader.readLine();
+
+                while (line != null) {
+
+                    BlockChecksum checksum = parseBlockChecksum(line);
+
+                    if (checksum == null || result.size() == blocks) {
+                        return null;
+                    }
+
+                    result.add(checksum);
+                    line = reader.readLine();
+                }
+            }
+
+            channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED, ClientChannelEvent.EXIT_STATUS), 0L);
+
+            Integer status = channel.getExitStatus();
+
+            if (status == null || status != 0 || result.size() != blocks) {
+                return null;
+            }
+        }
+
+        return result;
+    }
+
+    // Parses a single MD5 checksum in hexadecimal. Returns null if the line is not valid.
+    private static BlockChecksum parseBlockChecksum(String line) {
+
+        String hex = line.trim();
+
+        if (hex.length() != 32) {
+            return null;
+        }
+
+        byte[] md5 = new byte[16];
+
+        for (int i = 0; i < md5.length; i++) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+
+            md5[i] = (byte) ((hi << 4) | lo);
+        }
+
+        return new BlockChecksum(BlockChecksum.UNKNOWN, md5);
+    }
+
     @Override
     public PathAttributes getAttributes(Path path) throws XenonException {
         Path absPath = toAbsolutePath(path);
@@ -309,7 +727,7 @@ public class SftpFileSystem extends FileSystem {
         Path result;
         assertFileIsSymbolicLink(absLink);
         try {
-            String target = client.readLink(absLink.toString());
+            String target = clients.get().readLink(absLink.toString());
 
             if (!target.startsWith(File.separator)) {
                 Path parent = absLink.getParent();
@@ -346,9 +764,11 @@ public class SftpFileSystem extends FileSystem {
             // be changed (learned this the hard way).
             SftpClient.Attributes a = new SftpClient.Attributes();
             a.setPermissions(PosixFileUtils.permissionsToBits(permissions));
-            client.setStat(absPath.toString(), a);
+            clients.get().setStat(absPath.toString(), a);
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Failed to set permissions on: " + absPath);
+        } finally {
+            invalidateCachedAttributes(absPath);
         }
         LOGGER.debug("setPosixFilePermissions OK");
     }
@@ -56,12 +56,54 @@ public class WebdavFileAdaptor extends FileAdaptor {
     /** The buffer size to use when copying data. */
     public static final String BUFFER_SIZE = PREFIX + "bufferSize";
 
+    /** The number of files to transfer concurrently in a recursive copy. */
+    public static final String COPY_PARALLELISM = PREFIX + "copy.parallelism";
+
+    /** Transfer the files of a recursive copy while the source directory is still being listed. */
+    public static final String COPY_PIPELINE = PREFIX + "copy.pipeline";
+
+    /** The number of directories to list concurrently in a recursive listing. */
+    public static final String LIST_PARALLELISM = PREFIX + "list.parallelism";
+
+    /** The maximum number of paths in the attribute cache, or 0 to disable the cache. */
+    public static final String CACHE_SIZE = PREFIX + "cache.size";
+
+    /** The time in milliseconds after which attribute cache entries expire. */
+    public static final String CACHE_TTL = PREFIX + "cache.ttl";
+
+    /** The number of concurrent streams used to copy a single large file. */
+    public static final String COPY_STREAMS = PREFIX + "copy.streams";
+
+    /** The minimum size of a file before it is copied using multiple streams. */
+    public static final String COPY_STREAMS_THRESHOLD = PREFIX + "copy.streams.threshold";
+
+    /** The maximum transfer rate in bytes per second, or 0 for no limit. */
+    public static final String COPY_RATE = PREFIX + "copy.rate";
+
+    /** The maximum transfer rate in bytes per second, shared by all file systems connected to the same host, or 0 for no limit. */
+    public static final String COPY_RATE_HOST = PREFIX + "copy.rate.host";
+
+    /** The number of bytes that may be transferred in a burst, or 0 to allow one second of transfer. */
+    public static final String COPY_RATE_BURST = PREFIX + "copy.rate.burst";
+
     /** The locations supported by this adaptor */
     private static final String[] ADAPTOR_LOCATIONS = new String[] { "http://host[:port][/workdir]", "https://host[:port][/workdir]" };
 
     /** List of properties supported by this FTP adaptor */
     private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
-            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes).") };
+            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes)."),
+            new XenonPropertyDescription(COPY_PARALLELISM, Type.INTEGER, "1", "The number of files to transfer concurrently in a recursive copy."),
+            new XenonPropertyDescription(COPY_PIPELINE, Type.BOOLEAN, "false",
+                    "Transfer the files of a recursive copy while the source directory is still being listed."),
+            new XenonPropertyDescription(LIST_PARALLELISM, Type.INTEGER, "1", "The number of directories to list concurrently in a recursive listing."),
+            new XenonPropertyDescription(CACHE_SIZE, Type.INTEGER, "0", "The maximum number of paths in the attribute cache, or 0 to disable the cache."),
+            new XenonPropertyDescription(CACHE_TTL, Type.INTEGER, "5000", "The time in milliseconds after which attribute cache entries expire."),
+            new XenonPropertyDescription(COPY_STREAMS, Type.INTEGER, "1", "The number of concurrent streams used to copy a single large file."),
+            new XenonPropertyDescription(COPY_STREAMS_THRESHOLD, Type.SIZE, "64M", "The minimum size of a file before it is copied using multiple streams."),
+            new XenonPropertyDescription(COPY_RATE, Type.SIZE, "0", "The maximum transfer rate in bytes per second, or 0 for no limit."),
+            new XenonPropertyDescription(COPY_RATE_HOST, Type.SIZE, "0",
+                    "The maximum transfer rate in bytes per second, shared by all file systems connected to the same host, or 0 for no limit."),
+            new XenonPropertyDescription(COPY_RATE_BURST, Type.SIZE, "0", "The number of bytes that may be transferred in a burst, or 0 to allow one second of transfer.") };
 
     public static final int OK_CODE = 200;
 
@@ -120,6 +162,8 @@ public class WebdavFileAdaptor extends FileAdaptor {
                     "Invalid value for " + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
         }
 
+        checkFileSystemProperties(xp);
+
         URI uri;
 
         try {
@@ -17,15 +17,20 @@ package nl.esciencecenter.xenon.adaptors.filesystems.webdav;
 
 import static nl.esciencecenter.xenon.adaptors.filesystems.webdav.WebdavFileAdaptor.ADAPTOR_NAME;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
+import javax.xml.namespace.QName;
+
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,13 +38,16 @@ import org.slf4j.LoggerFactory;
 import com.github.sardine.DavResource;
 import com.github.sardine.Sardine;
 import com.github.sardine.impl.SardineException;
+import com.github.sardine.impl.io.ContentLengthInputStream;
 
 import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
 import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.filesystems.ChecksumAlgorithm;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
+import nl.esciencecenter.xenon.filesystems.InvalidPathException;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
 import nl.esciencecenter.xenon.filesystems.PosixFilePermission;
@@ -70,6 +78,9 @@ public class WebdavFileSystem extends FileSystem {
         }
     }
 
+    /** The property in which ownCloud and Nextcloud servers publish the checksums of a file. */
+    private static final QName CHECKSUMS = new QName("http://owncloud.org/ns", "checksums", "oc");
+
     private final Sardine client;
     private final String server;
 
@@ -166,7 +177,7 @@ public class WebdavFileSystem extends FileSystem {
         assertParentDirectoryExists(absTarget);
         assertPathNotExists(absTarget);
 
-        PathAttributes a = getAttributes(absSource);
+        PathAttributes a = cachedAttributes(absSource);
 
         try {
             if (a.isDirectory()) {
@@ -181,6 +192,9 @@ public class WebdavFileSystem extends FileSystem {
             throw new XenonException(ADAPTOR_NAME, "Failed to move from " + absSource + " to " + absTarget, e);
         } catch (Exception e1) {
             throw new XenonException(ADAPTOR_NAME, "Failed to move from " + absSource + " to " + absTarget, e1);
+        } finally {
+            invalidateCachedAttributes(absSource);
+            invalidateCachedAttributes(absTarget);
         }
     }
 
@@ -196,6 +210,8 @@ public class WebdavFileSystem extends FileSystem {
             client.createDirectory(getDirectoryPath(absDir));
         } catch (Exception e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to create directory: " + absDir, e);
+        } finally {
+            invalidateCachedAttributes(absDir);
         }
     }
 
@@ -211,6 +227,8 @@ public class WebdavFileSystem extends FileSystem {
             client.put(getFilePath(absFile), new byte[0]);
         } catch (Exception e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to create file: " + absFile, e);
+        } finally {
+            invalidateCachedAttributes(absFile);
         }
     }
 
@@ -256,12 +274,58 @@ public class WebdavFileSystem extends FileSystem {
         assertFileExists(absPath);
 
         try {
-            return client.get(getFilePath(absPath));
+            return limitRate(client.get(getFilePath(absPath)));
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to access file: " + absPath, e);
         }
     }
 
+    @Override
+    public InputStream readFromFile(Path path, long offset) throws XenonException {
+
+        assertValidOffset(offset);
+
+        if (offset == 0) {
+            return readFromFile(path);
+        }
+
+        Path absPath = toAbsolutePath(path);
+        PathAttributes attributes = getAttributes(absPath);
+
+        if (!attributes.isRegular()) {
+            throw new InvalidPathException(ADAPTOR_NAME, "Path is not a file: " + absPath);
+        }
+
+        if (offset >= attributes.getSize()) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        InputStream in;
+
+        try {
+            in = client.get(getFilePath(absPath), Collections.singletonMap("Range", "bytes=" + offset + "-"));
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to access file: " + absPath, e);
+        }
+
+        // Servers may ignore the Range header and return the entire file. We can only detect this from the content length.
+        if (in instanceof ContentLengthInputStream) {
+            Long length = ((ContentLengthInputStream) in).getLength();
+
+            if (length != null && length == attributes.getSize() - offset) {
+                return limitRate(in);
+            }
+        }
+
+        try {
+            in.close();
+        } catch (IOException e) {
+            // ignore
+        }
+
+        return super.readFromFile(absPath, offset);
+    }
+
     @Override
     public OutputStream writeToFile(Path file, long size) throws XenonException {
 
@@ -276,9 +340,11 @@ public class WebdavFileSystem extends FileSystem {
             // Create a separate thread here to handle the writing
             new StreamToFileWriter(getFilePath(absFile), in).start();
 
-            return out;
+            return invalidateCachedAttributesOnClose(absFile, limitRate(out));
         } catch (Exception e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to open stream for writing", e);
+        } finally {
+            invalidateCachedAttributes(absFile);
         }
     }
 
@@ -306,6 +372,78 @@ public class WebdavFileSystem extends FileSystem {
         }
     }
 
+    /**
+     * Copy a file on the server using the WebDAV <code>COPY</code> method, if <code>destinationFS</code> is connected to the same server as this file system.
+     */
+    @Override
+    protected void serverSideCopy(Path source, FileSystem destinationFS, Path destination) throws XenonException {
+
+        if (!(destinationFS instanceof WebdavFileSystem) || !hasSameLocation(destinationFS)) {
+            super.serverSideCopy(source, destinationFS, destination);
+            return;
+        }
+
+        Path absSource = toAbsolutePath(source);
+        Path absDestination = ((WebdavFileSystem) destinationFS).toAbsolutePath(destination);
+
+        try {
+            client.copy(getFilePath(absSource), getFilePath(absDestination), false);
+        } catch (IOException e) {
+            throw new UnsupportedOperationException(ADAPTOR_NAME, "Server side copy of " + absSource + " failed", e);
+        }
+    }
+
+    /**
+     * Compute the checksum of an existing file.
+     *
+     * If the server publishes checksums using the <code>oc:checksums</code> property (as used by ownCloud and Nextcloud), the checksum is retrieved with a
+     * single PROPFIND. Otherwise, the file is read and the checksum is computed locally.
+     */
+    @Override
+    public String checksum(Path file, ChecksumAlgorithm algorithm) throws XenonException {
+
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Checksum algorithm is null");
+        }
+
+        Path absFile = toAbsolutePath(file);
+        assertFileExists(absFile);
+
+        try {
+            List<DavResource> result = client.propfind(getFilePath(absFile), 0, Collections.singleton(CHECKSUMS));
+
+            if (!result.isEmpty() && result.get(0).getCustomPropsNS() != null) {
+                String checksum = findChecksum(result.get(0).getCustomPropsNS().get(CHECKSUMS), algorithm);
+
+                if (checksum != null) {
+                    return checksum;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to retrieve checksums for file: " + absFile, e);
+        }
+
+        return super.checksum(absFile, algorithm);
+    }
+
+    // The checksums property contains entries such as "SHA1:<hex> MD5:<hex>".
+    private static String findChecksum(String checksums, ChecksumAlgorithm algorithm) {
+
+        if (checksums == null) {
+            return null;
+        }
+
+        String prefix = algorithm.name() + ":";
+
+        for (String entry : checksums.trim().split("\\s+")) {
+            if (entry.regionMatches(true, 0, prefix, 0, prefix.length()) && entry.length() > prefix.length()) {
+                return entry.substring(prefix.length()).toLowerCase(Locale.ROOT);
+            }
+        }
+
+        return null;
+    }
+
     @Override
     public Path readSymbolicLink(Path link) throws XenonException {
         throw new XenonException(ADAPTOR_NAME, "Operation not supported");
@@ -16,6 +16,9 @@
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,6 +78,10 @@ public class JobExecutor implements Runnable {
 
     private XenonException error;
 
+    // A lock rather than a monitor, so waiting does not pin the carrier when running on a virtual thread.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
     public JobExecutor(String adaptorName, FileSystem filesystem, Path workingDirectory, InteractiveProcessFactory factory, JobDescription description,
             String jobIdentifier, boolean interactive, long pollingDelay, long startupTimeout) {
 
@@ -92,27 +99,42 @@ public class JobExecutor implements Runnable {
                 pollingDelay, startupTimeout, description);
     }
 
-    public synchronized boolean hasRun() {
-        return hasRun;
+    public boolean hasRun() {
+        lock.lock();
+        try {
+            return hasRun;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized boolean kill() {
-        if (done) {
-            return true;
-        }
+    public boolean kill() {
+        lock.lock();
+        try {
+            if (done) {
+                return true;
+            }
 
-        killed = true;
+            killed = true;
 
-        if (!isRunning) {
-            updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));
-            return true;
-        }
+            if (!isRunning) {
+                updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));
+                return true;
+            }
 
-        return false;
+            return false;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized boolean isDone() {
-        return done;
+    public boolean isDone() {
+        lock.lock();
+        try {
+            return done;
+        } finally {
+            lock.unlock();
+        }
     }
 
     public String getJobIdentifier() {
@@ -123,125 +145,171 @@ public class JobExecutor implements Runnable {
         return description;
     }
 
-    public synchronized JobStatus getStatus() {
-        if (!done && RUNNING_STATE.equals(state)) {
-            triggerStatusUpdate();
-            waitForStatusUpdate(pollingDelay);
-        }
+    public JobStatus getStatus() {
+        lock.lock();
+        try {
+            if (!done && RUNNING_STATE.equals(state)) {
+                triggerStatusUpdate();
+                waitForStatusUpdate(pollingDelay);
+            }
 
-        return new JobStatusImplementation(jobIdentifier, description.getName(), state, exitStatus, error, RUNNING_STATE.equals(state), done, null);
+            return new JobStatusImplementation(jobIdentifier, description.getName(), state, exitStatus, error, RUNNING_STATE.equals(state), done, null);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized String getState() {
-        return state;
+    public String getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized Exception getError() {
-        return error;
+    public Exception getError() {
+        lock.lock();
+        try {
+            return error;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private synchronized void updateState(String state, int exitStatus, XenonException e) {
+    private void updateState(String state, int exitStatus, XenonException e) {
+        lock.lock();
+        try {
+            if (ERROR_STATE.equals(state) || KILLED_STATE.equals(state)) {
+                error = e;
+                done = true;
+            } else if (DONE_STATE.equals(state)) {
+                this.exitStatus = exitStatus;
+                done = true;
+            } else if (RUNNING_STATE.equals(state)) {
+                hasRun = true;
+            } else {
+                throw new InternalError("Illegal state: " + state);
+            }
 
-        if (ERROR_STATE.equals(state) || KILLED_STATE.equals(state)) {
-            error = e;
-            done = true;
-        } else if (DONE_STATE.equals(state)) {
-            this.exitStatus = exitStatus;
-            done = true;
-        } else if (RUNNING_STATE.equals(state)) {
-            hasRun = true;
-        } else {
-            throw new InternalError("Illegal state: " + state);
+            this.state = state;
+            clearUpdateRequest();
+        } finally {
+            lock.unlock();
         }
-
-        this.state = state;
-        clearUpdateRequest();
     }
 
-    private synchronized boolean getKilled() {
-        isRunning = true;
-        return killed;
+    private boolean getKilled() {
+        lock.lock();
+        try {
+            isRunning = true;
+            return killed;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private synchronized void setStreams(Streams streams) {
-        this.streams = streams;
+    private void setStreams(Streams streams) {
+        lock.lock();
+        try {
+            this.streams = streams;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized Streams getStreams() throws XenonException {
+    public Streams getStreams() throws XenonException {
+        lock.lock();
+        try {
+            if (streams == null) {
+                throw new XenonException(adaptorName, "Streams not available");
+            }
 
-        if (streams == null) {
-            throw new XenonException(adaptorName, "Streams not available");
+            return streams;
+        } finally {
+            lock.unlock();
         }
-
-        return streams;
     }
 
-    public synchronized JobStatus waitUntilRunning(long timeout) {
+    public JobStatus waitUntilRunning(long timeout) {
+        lock.lock();
+        try {
+            long deadline = Deadline.getDeadline(timeout);
 
-        long deadline = Deadline.getDeadline(timeout);
+            triggerStatusUpdate();
 
-        triggerStatusUpdate();
+            long leftover = deadline - System.currentTimeMillis();
 
-        long leftover = deadline - System.currentTimeMillis();
+            LOGGER.debug("{}/{} waiting for job to START timeout={} leftover={} state={}", adaptorName, jobIdentifier, timeout, leftover, state);
 
-        LOGGER.debug("{}/{} waiting for job to START timeout={} leftover={} state={}", adaptorName, jobIdentifier, timeout, leftover, state);
+            while (leftover > 0 && PENDING_STATE.equals(state)) {
+                try {
+                    changed.await(leftover, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // We were interrupted
+                    Thread.currentThread().interrupt();
+                    break;
+                }
 
-        while (leftover > 0 && PENDING_STATE.equals(state)) {
-            try {
-                wait(leftover);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
+                leftover = deadline - System.currentTimeMillis();
             }
 
-            leftover = deadline - System.currentTimeMillis();
-        }
-
-        LOGGER.debug("{}/{} done waiting for job to START {}", adaptorName, jobIdentifier, getStatus());
+            LOGGER.debug("{}/{} done waiting for job to START {}", adaptorName, jobIdentifier, getStatus());
 
-        return getStatus();
+            return getStatus();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized JobStatus waitUntilDone(long timeout) {
+    public JobStatus waitUntilDone(long timeout) {
+        lock.lock();
+        try {
+            long deadline = Deadline.getDeadline(timeout);
+
+            triggerStatusUpdate();
 
-        long deadline = Deadline.getDeadline(timeout);
+            long leftover = deadline - System.currentTimeMillis();
 
-        triggerStatusUpdate();
+            LOGGER.debug("{}/{} waiting for job to FINISH timeout={} leftover={} state={}", adaptorName, jobIdentifier, timeout, leftover, state);
 
-        long leftover = deadline - System.currentTimeMillis();
+            while (leftover > 0 && !done) {
 
-        LOGGER.debug("{}/{} waiting for job to FINISH timeout={} leftover={} state={}", adaptorName, jobIdentifier, timeout, leftover, state);
+                try {
+                    changed.await(leftover, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // We were interrupted
+                    Thread.currentThread().interrupt();
+                    break;
+                }
 
-        while (leftover > 0 && !done) {
+                leftover = deadline - System.currentTimeMillis();
 
-            try {
-                wait(leftover);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
             }
 
-            leftover = deadline - System.currentTimeMillis();
+            LOGGER.debug("{}/{} done waiting for job to FINISH {}", adaptorName, jobIdentifier, getStatus());
 
+            return getStatus();
+        } finally {
+            lock.unlock();
         }
-
-        LOGGER.debug("{}/{} done waiting for job to FINISH {}", adaptorName, jobIdentifier, getStatus());
-
-        return getStatus();
     }
 
     /**
      * Signal the polling thread to produce a status update.
      */
-    private synchronized void triggerStatusUpdate() {
-        if (done) {
-            return;
-        }
+    private void triggerStatusUpdate() {
+        lock.lock();
+        try {
+            if (done) {
+                return;
+            }
 
-        updateSignal = true;
-        notifyAll();
+            updateSignal = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -250,37 +318,46 @@ public class JobExecutor implements Runnable {
      * @param maxDelay
      *            the maximum time to wait
      */
-    private synchronized void waitForStatusUpdate(long maxDelay) {
-
-        if (done || !updateSignal) {
-            return;
-        }
+    private void waitForStatusUpdate(long maxDelay) {
+        lock.lock();
+        try {
+            if (done || !updateSignal) {
+                return;
+            }
 
-        long deadline = Deadline.getDeadline(maxDelay);
+            long deadline = Deadline.getDeadline(maxDelay);
 
-        long left = maxDelay > 0 ? maxDelay : POLLING_DELAY;
+            long left = maxDelay > 0 ? maxDelay : POLLING_DELAY;
 
-        while (!done && updateSignal && left > 0) {
-            try {
-                wait(left);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
-            }
+            while (!done && updateSignal && left > 0) {
+                try {
+                    changed.await(left, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // We were interrupted
+                    Thread.currentThread().interrupt();
+                    break;
+                }
 
-            if (maxDelay > 0) {
-                left = deadline - System.currentTimeMillis();
+                if (maxDelay > 0) {
+                    left = deadline - System.currentTimeMillis();
+                }
             }
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
      * Clear the update signal and wake up any waiting threads
      */
-    private synchronized void clearUpdateRequest() {
-        updateSignal = false;
-        notifyAll();
+    private void clearUpdateRequest() {
+        lock.lock();
+        try {
+            updateSignal = false;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -289,26 +366,30 @@ public class JobExecutor implements Runnable {
      * @param maxDelay
      *            the maximum amount of time to wait
      */
-    private synchronized void sleep(long maxDelay) {
+    private void sleep(long maxDelay) {
+        lock.lock();
+        try {
+            if (done || updateSignal || maxDelay <= 0) {
+                return;
+            }
 
-        if (done || updateSignal || maxDelay <= 0) {
-            return;
-        }
+            long deadline = Deadline.getDeadline(maxDelay);
 
-        long deadline = Deadline.getDeadline(maxDelay);
+            long left = deadline - System.currentTimeMillis();
 
-        long left = deadline - System.currentTimeMillis();
+            while (!done && !updateSignal && left > 0) {
+                try {
+                    changed.await(left, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // We were interrupted
+                    Thread.currentThread().interrupt();
+                    break;
+                }
 
-        while (!done && !updateSignal && left > 0) {
-            try {
-                wait(left);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
+                left = deadline - System.currentTimeMillis();
             }
-
-            left = deadline - System.currentTimeMillis();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -467,7 +467,15 @@ public class JobQueueScheduler extends Scheduler {
         singleExecutor.shutdownNow();
         multiExecutor.shutdownNow();
         unlimitedExecutor.shutdownNow();
-        factory.close();
+
+        try {
+            factory.close();
+        } finally {
+            // The file system was created for this scheduler, and may share its connection.
+            if (filesystem.isOpen()) {
+                filesystem.close();
+            }
+        }
     }
 
     @Override
@@ -28,6 +28,9 @@ public class SshInteractiveProcessFactory implements InteractiveProcessFactory {
 
     private final SSHConnection connection;
 
+    /** The connection may be shared with the file system of the scheduler, so it may remain open after this factory is closed. */
+    private boolean closed = false;
+
     protected SshInteractiveProcessFactory(SSHConnection session) {
 
         if (session == null) {
@@ -41,7 +44,7 @@ public class SshInteractiveProcessFactory implements InteractiveProcessFactory {
     public InteractiveProcess createInteractiveProcess(JobDescription description, String workdir, String jobIdentifier, long timeoutInMillis)
             throws XenonException {
 
-        if (connection.isClosed()) {
+        if (closed || connection.isClosed()) {
             throw new SchedulerClosedException(ADAPTOR_NAME, "Scheduler is closed");
         }
 
@@ -51,10 +54,12 @@ public class SshInteractiveProcessFactory implements InteractiveProcessFactory {
     @Override
     public void close() throws XenonException {
 
-        if (connection.isClosed()) {
+        if (closed || connection.isClosed()) {
             throw new SchedulerClosedException(ADAPTOR_NAME, "Scheduler already closed");
         }
 
+        closed = true;
+
         try {
             connection.close();
         } catch (Exception e) {
@@ -64,6 +69,6 @@ public class SshInteractiveProcessFactory implements InteractiveProcessFactory {
 
     @Override
     public boolean isOpen() throws XenonException {
-        return connection.isOpen();
+        return !closed && connection.isOpen();
     }
 }
@@ -15,6 +15,8 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers.ssh;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.sshd.client.SshClient;
@@ -24,11 +26,13 @@ import org.slf4j.LoggerFactory;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription;
 import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
+import nl.esciencecenter.xenon.adaptors.AdaptorLoader;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.sftp.SftpFileAdaptor;
 import nl.esciencecenter.xenon.adaptors.schedulers.JobQueueScheduler;
 import nl.esciencecenter.xenon.adaptors.schedulers.SchedulerAdaptor;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnectionCache;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHUtil;
 import nl.esciencecenter.xenon.credentials.CertificateCredential;
 import nl.esciencecenter.xenon.credentials.Credential;
@@ -81,6 +85,9 @@ public class SshSchedulerAdaptor extends SchedulerAdaptor {
     /** Add gateway to access machine. */
     public static final String TIMEOUT = PREFIX + "timeout";
 
+    /** The time in milliseconds an idle connection is kept in the JVM-wide connection cache, or 0 to disable the cache. */
+    public static final String CONNECTION_CACHE_TIMEOUT = PREFIX + "connection.cache.timeout";
+
     /** All our own queue properties start with this prefix. */
     public static final String QUEUE = PREFIX + "queue.";
 
@@ -119,6 +126,9 @@ public class SshSchedulerAdaptor extends SchedulerAdaptor {
             new XenonPropertyDescription(AGENT, Type.BOOLEAN, "false", "Use a (local) ssh-agent."),
             new XenonPropertyDescription(AGENT_FORWARDING, Type.BOOLEAN, "false", "Use ssh-agent forwarding"),
             new XenonPropertyDescription(TIMEOUT, Type.LONG, "10000", "The timeout for the connection setup and authetication (in milliseconds)."),
+            new XenonPropertyDescription(CONNECTION_CACHE_TIMEOUT, Type.NATURAL, "0",
+                    "The time in milliseconds an idle SSH connection is kept, so it can be reused by other schedulers and file systems connecting to the same "
+                            + "location with the same credential. 0 disables reuse."),
             new XenonPropertyDescription(POLLING_DELAY, Type.LONG, "1000", "The polling delay for monitoring running jobs (in milliseconds)."),
             new XenonPropertyDescription(MULTIQ_MAX_CONCURRENT, Type.INTEGER, "4", "The maximum number of concurrent jobs in the multiq..") };
 
@@ -158,19 +168,40 @@ public class SshSchedulerAdaptor extends SchedulerAdaptor {
         boolean useSSHAgent = xp.getBooleanProperty(AGENT);
         boolean useAgentForwarding = xp.getBooleanProperty(AGENT_FORWARDING);
 
-        SshClient client = SSHUtil.createSSHClient(loadKnownHosts, loadSSHConfig, strictHostCheck, useSSHAgent, useAgentForwarding);
-
         long timeout = xp.getLongProperty(TIMEOUT);
+        long cacheTimeout = xp.getNaturalProperty(CONNECTION_CACHE_TIMEOUT);
+
+        SSHConnection connection;
+
+        if (cacheTimeout > 0) {
+            List<Boolean> options = Arrays.asList(loadKnownHosts, loadSSHConfig, strictHostCheck, useSSHAgent, useAgentForwarding);
 
-        SSHConnection connection = SSHUtil.connect(ADAPTOR_NAME, client, location, credential, 0, timeout);
+            connection = SSHConnectionCache.getShared().get(ADAPTOR_NAME, location, credential, options, cacheTimeout, () -> {
+                SshClient client = SSHUtil.createSSHClient(loadKnownHosts, loadSSHConfig, strictHostCheck, useSSHAgent, useAgentForwarding);
+                return SSHUtil.connect(ADAPTOR_NAME, client, location, credential, 0, timeout);
+            });
+        } else {
+            SshClient client = SSHUtil.createSSHClient(loadKnownHosts, loadSSHConfig, strictHostCheck, useSSHAgent, useAgentForwarding);
+            connection = SSHUtil.connect(ADAPTOR_NAME, client, location, credential, 0, timeout);
+        }
 
         // We must convert the relevant SSH properties to SFTP here.
         Map<String, String> sftpProperties = SSHUtil.translateProperties(properties, SshSchedulerAdaptor.PREFIX,
                 FileSystem.getAdaptorDescription("sftp").getSupportedProperties(), SftpFileAdaptor.PREFIX);
 
         // Create a file system that point to the same location as the
-        // scheduler.
-        FileSystem fs = FileSystem.create("sftp", location, credential, sftpProperties);
+        // scheduler. It opens its SFTP channel on the connection of the
+        // scheduler, instead of setting up a second connection.
+        SftpFileAdaptor sftp = (SftpFileAdaptor) AdaptorLoader.getFileAdaptor(SftpFileAdaptor.ADAPTOR_NAME);
+
+        FileSystem fs;
+
+        try {
+            fs = sftp.createFileSystem(location, credential, sftpProperties, connection);
+        } catch (XenonException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
 
         long pollingDelay = xp.getLongProperty(POLLING_DELAY);
         int multiQThreads = xp.getIntegerProperty(MULTIQ_MAX_CONCURRENT);
@@ -24,6 +24,13 @@ import org.apache.sshd.client.subsystem.sftp.SftpClientFactory;
 
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHUtil.Tunnel;
 
+/**
+ * A connection to an SSH server, possibly tunneled through one or more gateways.
+ *
+ * A single connection can be shared by several users, such as a scheduler and its file system, which each open their own channels on it. Every user
+ * except the one that created the connection must call {@link #acquire()} first, and every user calls {@link #close()} when it is done. The connection
+ * is only closed when its last user closes it.
+ */
 public class SSHConnection implements AutoCloseable {
 
     private final SshClient client;
@@ -32,6 +39,9 @@ public class SSHConnection implements AutoCloseable {
     private final int hops;
     private boolean closed = false;
 
+    /** The number of users of this connection. */
+    private int references = 1;
+
     private ClientSession session;
 
     protected SSHConnection(SshClient client, int hops) {
@@ -58,22 +68,58 @@ public class SSHConnection implements AutoCloseable {
         return session;
     }
 
-    public boolean isClosed() {
+    /**
+     * Register an additional user of this connection. The connection remains open until {@link #close()} has been called once for the creator and once
+     * for every call to this method.
+     *
+     * @return this connection.
+     * @throws IllegalStateException
+     *             If the connection is already closed.
+     */
+    public synchronized SSHConnection acquire() {
+
+        if (closed) {
+            throw new IllegalStateException("Connection is closed");
+        }
+
+        references++;
+        return this;
+    }
+
+    /**
+     * Get the number of users of this connection.
+     *
+     * @return the number of users, or 0 if the connection is closed.
+     */
+    public synchronized int getReferences() {
+        return references;
+    }
+
+    public synchronized boolean isClosed() {
         return closed;
     }
 
-    public boolean isOpen() {
+    public synchronized boolean isOpen() {
         return !closed;
     }
 
+    /**
+     * Release this connection. The connection is closed when its last user releases it.
+     */
     @Override
     public void close() {
 
-        if (closed) {
-            return;
-        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            if (--references > 0) {
+                return;
+            }
 
-        closed = true;
+            closed = true;
+        }
 
         try {
             if (session != null) {
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.util.net.SshdSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+
+/**
+ * A cache of SSH connections, so FileSystems and Schedulers that connect to the same host can reuse a live connection instead of setting up a new one.
+ *
+ * Connections are identified by the host and port of the destination and of every gateway, the credential used for each of them, and the options of the
+ * SSH client. The cache holds one reference to each connection (see {@link SSHConnection#acquire()}), and hands out an additional reference to every
+ * user. A connection that has had no other users than the cache for longer than its idle timeout is closed and removed. Connections that were closed by
+ * the server are removed when they are next requested, or by the periodic eviction.
+ */
+public class SSHConnectionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SSHConnectionCache.class);
+
+    /** The interval at which idle connections are evicted, in milliseconds. */
+    private static final long EVICTION_INTERVAL = 1000;
+
+    private static final SSHConnectionCache SHARED = new SSHConnectionCache();
+
+    /**
+     * Operation that sets up a new connection when the cache does not contain a usable one.
+     */
+    @FunctionalInterface
+    public interface Connector {
+        SSHConnection connect() throws XenonException;
+    }
+
+    private static final class Entry {
+        private final SSHConnection connection;
+
+        /** The time in milliseconds after which the connection is closed when it is idle. */
+        private long timeout;
+
+        /** The time at which the connection was first seen idle, or -1 if it is in use. */
+        private long idleSince = -1;
+
+        Entry(SSHConnection connection, long timeout) {
+            this.connection = connection;
+            this.timeout = timeout;
+        }
+    }
+
+    private final Map<List<Object>, Entry> entries = new HashMap<>();
+
+    private ScheduledExecutorService evictor;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Get the cache shared by all adaptors in this JVM.
+     *
+     * @return the shared cache.
+     */
+    public static SSHConnectionCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the current time in milliseconds. Used to determine how long connections have been idle.
+     *
+     * @return the current time in milliseconds.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static List<Object> createKey(String adaptorName, String location, Credential credential, List<?> options) throws XenonException {
+
+        SshdSocketAddress[] locations = SSHUtil.extractLocations(adaptorName, location);
+
+        List<Object> key = new ArrayList<>();
+        key.addAll(Arrays.asList(locations));
+        key.addAll(Arrays.asList(SSHUtil.extractCredentials(adaptorName, locations, credential)));
+        key.add(options);
+        return key;
+    }
+
+    private static boolean isUsable(SSHConnection connection) {
+        ClientSession session = connection.getSession();
+        return connection.isOpen() && session != null && session.isOpen();
+    }
+
+    /**
+     * Get a connection to <code>location</code>, reusing a cached connection if possible.
+     *
+     * The caller becomes a user of the returned connection, and must call {@link SSHConnection#close()} when it no longer needs it. The connection then
+     * remains in the cache until it has been idle for <code>idleTimeout</code> milliseconds.
+     *
+     * @param adaptorName
+     *            the adaptor calling this method (used in exceptions).
+     * @param location
+     *            the location to connect to, which may include gateways.
+     * @param credential
+     *            the credential used to connect.
+     * @param options
+     *            the options of the SSH client. Connections are only reused for requests with equal options.
+     * @param idleTimeout
+     *            the time in milliseconds an idle connection is kept.
+     * @param connector
+     *            sets up a new connection if no usable connection is cached.
+     * @return the connection.
+     * @throws XenonException
+     *             If the location or credential is invalid, or a new connection could not be set up.
+     */
+    public SSHConnection get(String adaptorName, String location, Credential credential, List<?> options, long idleTimeout, Connector connector)
+            throws XenonException {
+
+        if (idleTimeout < 1) {
+            throw new IllegalArgumentException("Idle timeout must be 1 or larger: " + idleTimeout);
+        }
+
+        List<Object> key = createKey(adaptorName, location, credential, options);
+
+        SSHConnection stale = null;
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+
+            if (entry != null) {
+                if (isUsable(entry.connection)) {
+                    hits++;
+                    entry.timeout = idleTimeout;
+                    entry.idleSince = -1;
+                    return entry.connection.acquire();
+                }
+
+                entries.remove(key);
+                evictions++;
+                stale = entry.connection;
+            }
+
+            misses++;
+        }
+
+        if (stale != null) {
+            LOGGER.debug("Closing stale SSH connection to {}", location);
+            stale.close();
+        }
+
+        SSHConnection connection = connector.connect();
+
+        SSHConnection unused = null;
+
+        try {
+            synchronized (this) {
+                Entry entry = entries.get(key);
+
+                if (entry != null) {
+                    if (isUsable(entry.connection)) {
+                        // Another thread connected to the same location at the same time.
+                        unused = connection;
+                        entry.idleSince = -1;
+                        return entry.connection.acquire();
+                    }
+
+                    evictions++;
+                    unused = entry.connection;
+                }
+
+                entries.put(key, new Entry(connection, idleTimeout));
+
+                if (evictor == null) {
+                    evictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("SSHConnectionCache"));
+                    evictor.scheduleWithFixedDelay(this::evictIdle, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+
+                return connection.acquire();
+            }
+        } finally {
+            if (unused != null) {
+                unused.close();
+            }
+        }
+    }
+
+    /**
+     * Close and remove the connections that have been idle for longer than their timeout, or that are no longer usable.
+     */
+    void evictIdle() {
+
+        List<SSHConnection> evicted = new ArrayList<>();
+
+        synchronized (this) {
+            long now = currentTimeMillis();
+
+            Iterator<Entry> it = entries.values().iterator();
+
+            while (it.hasNext()) {
+                Entry entry = it.next();
+
+                if (!isUsable(entry.connection)) {
+                    it.remove();
+                    evicted.add(entry.connection);
+                } else if (entry.connection.getReferences() > 1) {
+                    entry.idleSince = -1;
+                } else if (entry.idleSince < 0) {
+                    entry.idleSince = now;
+                } else if (now - entry.idleSince >= entry.timeout) {
+                    it.remove();
+                    evicted.add(entry.connection);
+                }
+            }
+
+            evictions += evicted.size();
+
+            if (entries.isEmpty() && evictor != null) {
+                evictor.shutdown();
+                evictor = null;
+            }
+        }
+
+        for (SSHConnection c : evicted) {
+            c.close();
+        }
+    }
+
+    /**
+     * Remove all connections from the cache. Connections that are not in use are closed, the others are closed when their last user releases them.
+     */
+    public void clear() {
+
+        List<Entry> removed;
+
+        synchronized (this) {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+            evictions += removed.size();
+        }
+
+        for (Entry e : removed) {
+            e.connection.close();
+        }
+    }
+
+    /**
+     * Get the number of connections in the cache.
+     *
+     * @return the number of connections.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of requests that reused a cached connection.
+     *
+     * @return the number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of requests that set up a new connection.
+     *
+     * @return the number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of connections that were removed from the cache, because they were idle, no longer usable, or the cache was cleared.
+     *
+     * @return the number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
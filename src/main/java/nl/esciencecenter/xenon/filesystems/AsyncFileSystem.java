@@ -0,0 +1,374 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+
+/**
+ * AsyncFileSystem provides an asynchronous view of a {@link FileSystem}, where each operation returns a {@link CompletableFuture}.
+ *
+ * Operations are run on an {@link Executor}, which can be provided when the AsyncFileSystem is created. By default, a shared pool of
+ * {@value #DEFAULT_THREADS} daemon threads is used. Copies are run by the {@link TransferManager} as usual, and do not occupy a thread of the executor
+ * while they are running.
+ *
+ * If an operation fails, the future completes exceptionally with the {@link XenonException} thrown by the FileSystem (wrapped in a
+ * {@link java.util.concurrent.CompletionException} by {@link CompletableFuture#join()}).
+ */
+public final class AsyncFileSystem {
+
+    /** The number of threads in the default executor. */
+    public static final int DEFAULT_THREADS = 16;
+
+    private static final class DefaultExecutor {
+        // Only created when an AsyncFileSystem uses the default executor.
+        static final ExecutorService INSTANCE = Executors.newFixedThreadPool(DEFAULT_THREADS, new DaemonThreadFactory("AsyncFileSystem."));
+    }
+
+    @FunctionalInterface
+    private interface Operation<T> {
+        T call() throws XenonException;
+    }
+
+    private final FileSystem fileSystem;
+
+    private final Executor executor;
+
+    /**
+     * Create an AsyncFileSystem for <code>fileSystem</code> that uses the default executor.
+     *
+     * @param fileSystem
+     *            the FileSystem to perform the operations on.
+     * @throws IllegalArgumentException
+     *             If <code>fileSystem</code> is null.
+     */
+    public AsyncFileSystem(FileSystem fileSystem) {
+        this(fileSystem, DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * Create an AsyncFileSystem for <code>fileSystem</code> that runs operations on <code>executor</code>.
+     *
+     * @param fileSystem
+     *            the FileSystem to perform the operations on.
+     * @param executor
+     *            the executor used to run the operations.
+     * @throws IllegalArgumentException
+     *             If <code>fileSystem</code> or <code>executor</code> is null.
+     */
+    public AsyncFileSystem(FileSystem fileSystem, Executor executor) {
+
+        if (fileSystem == null) {
+            throw new IllegalArgumentException("FileSystem may not be null");
+        }
+
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor may not be null");
+        }
+
+        this.fileSystem = fileSystem;
+        this.executor = executor;
+    }
+
+    /**
+     * Get the FileSystem the operations are performed on.
+     *
+     * @return the FileSystem.
+     */
+    public FileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        try {
+            executor.execute(() -> {
+                if (result.isDone()) {
+                    // Cancelled before it was started.
+                    return;
+                }
+
+                try {
+                    result.complete(operation.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#exists(Path)}.
+     *
+     * @param path
+     *            the path to test.
+     * @return a future that completes with the result of {@link FileSystem#exists(Path)}.
+     */
+    public CompletableFuture<Boolean> exists(Path path) {
+        return submit(() -> fileSystem.exists(path));
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#getAttributes(Path)}.
+     *
+     * @param path
+     *            the path to get the attributes for.
+     * @return a future that completes with the result of {@link FileSystem#getAttributes(Path)}.
+     */
+    public CompletableFuture<PathAttributes> getAttributes(Path path) {
+        return submit(() -> fileSystem.getAttributes(path));
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#list(Path, boolean)}. The future completes once the entire listing has been retrieved.
+     *
+     * @param dir
+     *            the directory to list.
+     * @param recursive
+     *            if the listing should also include the content of all subdirectories.
+     * @return a future that completes with the entries returned by {@link FileSystem#list(Path, boolean)}.
+     */
+    public CompletableFuture<List<PathAttributes>> list(Path dir, boolean recursive) {
+        return submit(() -> {
+            List<PathAttributes> result = new ArrayList<>();
+
+            for (PathAttributes p : fileSystem.list(dir, recursive)) {
+                result.add(p);
+            }
+
+            return result;
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#createDirectory(Path)}.
+     *
+     * @param dir
+     *            the directory to create.
+     * @return a future that completes when the directory has been created.
+     */
+    public CompletableFuture<Void> createDirectory(Path dir) {
+        return submit(() -> {
+            fileSystem.createDirectory(dir);
+            return null;
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#createDirectories(Path)}.
+     *
+     * @param dir
+     *            the directory to create.
+     * @return a future that completes when the directory and its missing parents have been created.
+     */
+    public CompletableFuture<Void> createDirectories(Path dir) {
+        return submit(() -> {
+            fileSystem.createDirectories(dir);
+            return null;
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#createFile(Path)}.
+     *
+     * @param file
+     *            the file to create.
+     * @return a future that completes when the file has been created.
+     */
+    public CompletableFuture<Void> createFile(Path file) {
+        return submit(() -> {
+            fileSystem.createFile(file);
+            return null;
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#delete(Path, boolean)}.
+     *
+     * @param path
+     *            the path to delete.
+     * @param recursive
+     *            if the delete must be done recursively.
+     * @return a future that completes when the path has been deleted.
+     */
+    public CompletableFuture<Void> delete(Path path, boolean recursive) {
+        return submit(() -> {
+            fileSystem.delete(path, recursive);
+            return null;
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#rename(Path, Path)}.
+     *
+     * @param source
+     *            the existing source path.
+     * @param target
+     *            the non existing target path.
+     * @return a future that completes when the path has been renamed.
+     */
+    public CompletableFuture<Void> rename(Path source, Path target) {
+        return submit(() -> {
+            fileSystem.rename(source, target);
+            return null;
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#readSymbolicLink(Path)}.
+     *
+     * @param link
+     *            the link to read.
+     * @return a future that completes with the target of the link.
+     */
+    public CompletableFuture<Path> readSymbolicLink(Path link) {
+        return submit(() -> fileSystem.readSymbolicLink(link));
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#setPosixFilePermissions(Path, Set)}.
+     *
+     * @param path
+     *            the target path.
+     * @param permissions
+     *            the permissions to set.
+     * @return a future that completes when the permissions have been set.
+     */
+    public CompletableFuture<Void> setPosixFilePermissions(Path path, Set<PosixFilePermission> permissions) {
+        return submit(() -> {
+            fileSystem.setPosixFilePermissions(path, permissions);
+            return null;
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#checksum(Path, ChecksumAlgorithm)}.
+     *
+     * @param file
+     *            the file to compute the checksum of.
+     * @param algorithm
+     *            the checksum algorithm to use.
+     * @return a future that completes with the checksum as a lower case hexadecimal string.
+     */
+    public CompletableFuture<String> checksum(Path file, ChecksumAlgorithm algorithm) {
+        return submit(() -> fileSystem.checksum(file, algorithm));
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#copy(Path, FileSystem, Path, CopyMode, boolean)}.
+     *
+     * See {@link #copy(Path, FileSystem, Path, CopyMode, boolean, int, ChecksumAlgorithm, CopyJournal)} for details.
+     *
+     * @param source
+     *            the source path (on this filesystem) to copy from.
+     * @param destinationFS
+     *            the destination filesystem to copy to.
+     * @param destination
+     *            the destination path (on the destination filesystem) to copy to.
+     * @param mode
+     *            how to react if the destination already exists.
+     * @param recursive
+     *            if the copy should be recursive.
+     * @return a future that completes with the final status of the copy.
+     */
+    public CompletableFuture<CopyStatus> copy(Path source, FileSystem destinationFS, Path destination, CopyMode mode, boolean recursive) {
+        return copy(source, destinationFS, destination, mode, recursive, TransferManager.DEFAULT_PRIORITY, null, null);
+    }
+
+    /**
+     * Asynchronous version of {@link FileSystem#copy(Path, FileSystem, Path, CopyMode, boolean, int, ChecksumAlgorithm, CopyJournal)}.
+     *
+     * The copy is started immediately. The future completes with the final {@link CopyStatus} when the copy is done, or completes exceptionally with the
+     * exception of the copy if it failed. Cancelling the future cancels the copy. The copy identifier is used internally, so the copy cannot be inspected
+     * with {@link FileSystem#getStatus(String)}.
+     *
+     * @param source
+     *            the source path (on this filesystem) to copy from.
+     * @param destinationFS
+     *            the destination filesystem to copy to.
+     * @param destination
+     *            the destination path (on the destination filesystem) to copy to.
+     * @param mode
+     *            how to react if the destination already exists.
+     * @param recursive
+     *            if the copy should be recursive.
+     * @param priority
+     *            the priority of the copy.
+     * @param verify
+     *            the checksum algorithm used to verify the copy, or <code>null</code> to copy without verification.
+     * @param journal
+     *            the journal of the copy, or <code>null</code> to copy without a journal.
+     * @return a future that completes with the final status of the copy.
+     */
+    public CompletableFuture<CopyStatus> copy(Path source, FileSystem destinationFS, Path destination, CopyMode mode, boolean recursive, int priority,
+            ChecksumAlgorithm verify, CopyJournal journal) {
+
+        CompletableFuture<CopyStatus> result = new CompletableFuture<>();
+
+        String copyID;
+        CompletableFuture<Void> done;
+
+        try {
+            copyID = fileSystem.copy(source, destinationFS, destination, mode, recursive, priority, verify, journal);
+            done = fileSystem.whenCopyDone(copyID);
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        // Retrieving the final status does not block, so it is done by the thread that completed the copy.
+        done.thenRun(() -> {
+            try {
+                CopyStatus status = fileSystem.waitUntilDone(copyID, 0);
+
+                if (status.hasException()) {
+                    result.completeExceptionally(status.getException());
+                } else {
+                    result.complete(status);
+                }
+            } catch (XenonException e) {
+                result.completeExceptionally(e);
+            }
+        });
+
+        result.whenComplete((status, e) -> {
+            if (result.isCancelled()) {
+                try {
+                    fileSystem.cancel(copyID);
+                } catch (XenonException ignored) {
+                    // the copy has already completed
+                }
+            }
+        });
+
+        return result;
+    }
+}
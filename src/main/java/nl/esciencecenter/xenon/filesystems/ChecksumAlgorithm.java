@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+/**
+ * ChecksumAlgorithm is an enumeration containing the supported algorithms for {@link FileSystem#checksum(Path, ChecksumAlgorithm)}.
+ */
+public enum ChecksumAlgorithm {
+
+    /** The MD5 message digest. */
+    MD5("MD5"),
+
+    /** The SHA-1 message digest. */
+    SHA1("SHA-1"),
+
+    /** The SHA-256 message digest. */
+    SHA256("SHA-256");
+
+    private final String algorithmName;
+
+    ChecksumAlgorithm(String algorithmName) {
+        this.algorithmName = algorithmName;
+    }
+
+    /**
+     * Get the standard name of this algorithm, as used by {@link java.security.MessageDigest}.
+     *
+     * @return the standard name of this algorithm.
+     */
+    public String getAlgorithmName() {
+        return algorithmName;
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * CompactListing is a memory efficient listing of a (large) directory tree.
+ *
+ * Instead of one {@link PathAttributes} object per entry, the attributes of all entries are stored in arrays: the file names in a single shared character
+ * buffer, the sizes and times in <code>long</code> arrays, and the file type, flags and permissions as bits in an <code>int</code> array. Directories,
+ * owners and groups are stored once and referred to by index. This takes a few dozen bytes per entry plus the file name, instead of several hundred.
+ *
+ * The {@link PathAttributes} returned by {@link #get(int)} and the iterator are lightweight views that are created on access. Their {@link Path} and
+ * permissions are created each time they are requested.
+ *
+ * A CompactListing is not thread safe while it is being filled, but can safely be read by multiple threads once {@link FileSystem#listCompact(Path, boolean)}
+ * has returned it.
+ *
+ * @see FileSystem#listCompact(Path, boolean)
+ */
+public final class CompactListing implements Iterable<PathAttributes> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int INITIAL_NAME_CAPACITY = 256;
+
+    // The first 9 bits of the flags contain the permissions, one bit per PosixFilePermission ordinal.
+    private static final int HAS_PERMISSIONS = 1 << 9;
+    private static final int DIRECTORY = 1 << 10;
+    private static final int REGULAR = 1 << 11;
+    private static final int SYMBOLIC_LINK = 1 << 12;
+    private static final int OTHER = 1 << 13;
+    private static final int EXECUTABLE = 1 << 14;
+    private static final int READABLE = 1 << 15;
+    private static final int WRITABLE = 1 << 16;
+    private static final int HIDDEN = 1 << 17;
+
+    private static final PosixFilePermission[] PERMISSIONS = PosixFilePermission.values();
+
+    /** The number of entries. */
+    private int size = 0;
+
+    /** The characters of all file names. */
+    private char[] names = new char[INITIAL_NAME_CAPACITY];
+
+    /** The number of characters used in names. */
+    private int namesLength = 0;
+
+    /** The end offset of the name of each entry in names. The name starts at the end offset of the previous entry. */
+    private int[] nameEnds = new int[INITIAL_CAPACITY];
+
+    /** The index of the directory of each entry in directories. */
+    private int[] directoryIndices = new int[INITIAL_CAPACITY];
+
+    private int[] flags = new int[INITIAL_CAPACITY];
+
+    private long[] sizes = new long[INITIAL_CAPACITY];
+    private long[] creationTimes = new long[INITIAL_CAPACITY];
+    private long[] lastAccessTimes = new long[INITIAL_CAPACITY];
+    private long[] lastModifiedTimes = new long[INITIAL_CAPACITY];
+
+    /** The index of the owner and group of each entry in strings, or -1 if not available. */
+    private int[] owners = new int[INITIAL_CAPACITY];
+    private int[] groups = new int[INITIAL_CAPACITY];
+
+    private final List<Path> directories = new ArrayList<>();
+    private final Map<Path, Integer> directoryIndex = new HashMap<>();
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+
+    // Entries are usually added directory by directory, so remember the last one.
+    private Path lastDirectory;
+    private int lastDirectoryIndex = -1;
+
+    /** A view of one entry of the listing. */
+    private final class Entry implements PathAttributes {
+
+        private final int index;
+
+        private Entry(int index) {
+            this.index = index;
+        }
+
+        private boolean flag(int bit) {
+            return (flags[index] & bit) != 0;
+        }
+
+        @Override
+        public Path getPath() {
+            return CompactListing.this.getPath(index);
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return flag(DIRECTORY);
+        }
+
+        @Override
+        public boolean isRegular() {
+            return flag(REGULAR);
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return flag(SYMBOLIC_LINK);
+        }
+
+        @Override
+        public boolean isOther() {
+            return flag(OTHER);
+        }
+
+        @Override
+        public boolean isExecutable() {
+            return flag(EXECUTABLE);
+        }
+
+        @Override
+        public boolean isReadable() {
+            return flag(READABLE);
+        }
+
+        @Override
+        public boolean isWritable() {
+            return flag(WRITABLE);
+        }
+
+        @Override
+        public boolean isHidden() {
+            return flag(HIDDEN);
+        }
+
+        @Override
+        public long getCreationTime() {
+            return creationTimes[index];
+        }
+
+        @Override
+        public long getLastAccessTime() {
+            return lastAccessTimes[index];
+        }
+
+        @Override
+        public long getLastModifiedTime() {
+            return lastModifiedTimes[index];
+        }
+
+        @Override
+        public long getSize() {
+            return sizes[index];
+        }
+
+        @Override
+        public String getOwner() {
+            return string(owners[index]);
+        }
+
+        @Override
+        public String getGroup() {
+            return string(groups[index]);
+        }
+
+        @Override
+        public Set<PosixFilePermission> getPermissions() {
+
+            if (!flag(HAS_PERMISSIONS)) {
+                return null;
+            }
+
+            Set<PosixFilePermission> result = EnumSet.noneOf(PosixFilePermission.class);
+
+            for (PosixFilePermission p : PERMISSIONS) {
+                if ((flags[index] & (1 << p.ordinal())) != 0) {
+                    result.add(p);
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "CompactListing.Entry [path=" + getPath() + ", isDirectory=" + isDirectory() + ", isRegular=" + isRegular() + ", isSymbolicLink="
+                    + isSymbolicLink() + ", isOther=" + isOther() + ", size=" + getSize() + ", lastModifiedTime=" + getLastModifiedTime() + "]";
+        }
+    }
+
+    /**
+     * Create a new, empty, CompactListing.
+     */
+    CompactListing() {
+        // empty
+    }
+
+    /**
+     * Add an entry to the listing. The attributes are copied, so <code>attributes</code> can be discarded afterwards.
+     *
+     * @param attributes
+     *            the attributes of the entry.
+     */
+    void add(PathAttributes attributes) {
+
+        if (size == flags.length) {
+            grow(size + (size >> 1) + 1);
+        }
+
+        Path path = attributes.getPath();
+
+        String name = path.getFileNameAsString();
+        Path directory = path.getParent();
+
+        if (name == null) {
+            // Should not occur in a listing, but can be represented by an empty name.
+            name = "";
+            directory = path;
+        } else if (directory == null) {
+            // An entry in the root directory.
+            directory = new Path(path.getSeparator(), path.isAbsolute());
+        }
+
+        if (namesLength + name.length() > names.length) {
+            names = Arrays.copyOf(names, Math.max(namesLength + name.length(), names.length + (names.length >> 1)));
+        }
+
+        name.getChars(0, name.length(), names, namesLength);
+        namesLength += name.length();
+
+        nameEnds[size] = namesLength;
+        directoryIndices[size] = directoryIndex(directory);
+        flags[size] = flags(attributes);
+        sizes[size] = attributes.getSize();
+        creationTimes[size] = attributes.getCreationTime();
+        lastAccessTimes[size] = attributes.getLastAccessTime();
+        lastModifiedTimes[size] = attributes.getLastModifiedTime();
+
+        try {
+            owners[size] = stringIndex(attributes.getOwner());
+        } catch (AttributeNotSupportedException e) {
+            owners[size] = -1;
+        }
+
+        try {
+            groups[size] = stringIndex(attributes.getGroup());
+        } catch (AttributeNotSupportedException e) {
+            groups[size] = -1;
+        }
+
+        size++;
+    }
+
+    private static int flags(PathAttributes attributes) {
+
+        int result = 0;
+
+        try {
+            Set<PosixFilePermission> permissions = attributes.getPermissions();
+
+            if (permissions != null) {
+                result |= HAS_PERMISSIONS;
+
+                for (PosixFilePermission p : permissions) {
+                    result |= 1 << p.ordinal();
+                }
+            }
+        } catch (AttributeNotSupportedException e) {
+            // permissions not available
+        }
+
+        result |= attributes.isDirectory() ? DIRECTORY : 0;
+        result |= attributes.isRegular() ? REGULAR : 0;
+        result |= attributes.isSymbolicLink() ? SYMBOLIC_LINK : 0;
+        result |= attributes.isOther() ? OTHER : 0;
+        result |= attributes.isExecutable() ? EXECUTABLE : 0;
+        result |= attributes.isReadable() ? READABLE : 0;
+        result |= attributes.isWritable() ? WRITABLE : 0;
+        result |= attributes.isHidden() ? HIDDEN : 0;
+
+        return result;
+    }
+
+    private int directoryIndex(Path directory) {
+
+        if (directory.equals(lastDirectory)) {
+            return lastDirectoryIndex;
+        }
+
+        Integer index = directoryIndex.get(directory);
+
+        if (index == null) {
+            index = directories.size();
+            directories.add(directory);
+            directoryIndex.put(directory, index);
+        }
+
+        lastDirectory = directory;
+        lastDirectoryIndex = index;
+        return index;
+    }
+
+    private int stringIndex(String s) {
+
+        if (s == null) {
+            return -1;
+        }
+
+        Integer index = stringIndex.get(s);
+
+        if (index == null) {
+            index = strings.size();
+            strings.add(s);
+            stringIndex.put(s, index);
+        }
+
+        return index;
+    }
+
+    private String string(int index) {
+        return index < 0 ? null : strings.get(index);
+    }
+
+    private void grow(int capacity) {
+        nameEnds = Arrays.copyOf(nameEnds, capacity);
+        directoryIndices = Arrays.copyOf(directoryIndices, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        creationTimes = Arrays.copyOf(creationTimes, capacity);
+        lastAccessTimes = Arrays.copyOf(lastAccessTimes, capacity);
+        lastModifiedTimes = Arrays.copyOf(lastModifiedTimes, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+        groups = Arrays.copyOf(groups, capacity);
+    }
+
+    /**
+     * Release the unused capacity of the arrays, and the lookup tables that are only needed while entries are added.
+     */
+    void trimToSize() {
+        grow(size);
+        names = Arrays.copyOf(names, namesLength);
+        directoryIndex.clear();
+        stringIndex.clear();
+        lastDirectory = null;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Get the number of entries in the listing.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the file name of an entry, without creating its {@link Path}.
+     *
+     * @param index
+     *            the index of the entry.
+     * @return the file name of the entry.
+     * @throws IndexOutOfBoundsException
+     *             If the index is negative or greater or equal to the number of entries.
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        int start = index == 0 ? 0 : nameEnds[index - 1];
+        return new String(names, start, nameEnds[index] - start);
+    }
+
+    /**
+     * Get the path of an entry. Entries in the same directory share the elements of the directory path.
+     *
+     * @param index
+     *            the index of the entry.
+     * @return the path of the entry.
+     * @throws IndexOutOfBoundsException
+     *             If the index is negative or greater or equal to the number of entries.
+     */
+    public Path getPath(int index) {
+        String name = getName(index);
+        Path directory = directories.get(directoryIndices[index]);
+        return name.isEmpty() ? directory : directory.resolve(name);
+    }
+
+    /**
+     * Get a view of the attributes of an entry.
+     *
+     * @param index
+     *            the index of the entry.
+     * @return the attributes of the entry.
+     * @throws IndexOutOfBoundsException
+     *             If the index is negative or greater or equal to the number of entries.
+     */
+    public PathAttributes get(int index) {
+        checkIndex(index);
+        return new Entry(index);
+    }
+
+    @Override
+    public Iterator<PathAttributes> iterator() {
+        return new Iterator<PathAttributes>() {
+
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public PathAttributes next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("No more elements available!");
+                }
+
+                return new Entry(next++);
+            }
+        };
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A journal of a recursive copy, stored in a local file, that allows an interrupted copy to be continued.
+ *
+ * The journal is an append-only text file. It records the files that a copy plans to transfer, and each file that has been copied completely, together
+ * with the size and modification time of its source. When a recursive copy is started with a journal that already contains entries of the same copy,
+ * files that were copied completely (and whose source has not changed since) are skipped. Use {@link CopyMode#REPLACE} or {@link CopyMode#RESUME} to
+ * continue a copy, as the destination directories and partially copied files already exist.
+ *
+ * A journal is opened when a copy starts and closed when it ends. It must not be used by more than one copy at a time. The journal file is not removed
+ * when the copy completes.
+ *
+ * @see FileSystem#copy(Path, FileSystem, Path, CopyMode, boolean, int, ChecksumAlgorithm, CopyJournal)
+ */
+public final class CopyJournal {
+
+    private static final String HEADER = "XENON-COPY-JOURNAL 1";
+
+    private static final String PLANNED = "P";
+
+    private static final String COPIED = "C";
+
+    private final java.nio.file.Path file;
+
+    // The size and modification time of the files that have been copied, by relative path.
+    private final Map<String, long[]> copied = new HashMap<>();
+
+    private FileChannel channel;
+
+    /**
+     * Create a new CopyJournal that is stored in <code>file</code>. The file is created when the copy starts, if it does not exist yet.
+     *
+     * @param file
+     *            the local file to store the journal in.
+     * @throws IllegalArgumentException
+     *             If <code>file</code> is null.
+     */
+    public CopyJournal(java.nio.file.Path file) {
+
+        if (file == null) {
+            throw new IllegalArgumentException("Journal file may not be null");
+        }
+
+        this.file = file;
+    }
+
+    /**
+     * Get the local file the journal is stored in.
+     *
+     * @return the journal file.
+     */
+    public java.nio.file.Path getFile() {
+        return file;
+    }
+
+    private static String encode(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String s) {
+        return URLDecoder.decode(s, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Open the journal for a copy from <code>source</code> to <code>destination</code>, and read the files that have already been copied.
+     *
+     * @param source
+     *            a description of the source of the copy.
+     * @param destination
+     *            a description of the destination of the copy.
+     * @throws IOException
+     *             If the journal could not be read or written, or belongs to a different copy.
+     */
+    synchronized void open(String source, String destination) throws IOException {
+
+        if (channel != null) {
+            throw new IOException("Journal " + file + " is already in use");
+        }
+
+        String header = HEADER + " " + encode(source) + " " + encode(destination);
+
+        copied.clear();
+
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+
+        // The length of the journal up to and including the last newline.
+        long complete = 0;
+
+        if (exists) {
+            byte[] data = Files.readAllBytes(file);
+
+            for (int i = data.length - 1; i >= 0 && complete == 0; i--) {
+                if (data[i] == '\n') {
+                    complete = i + 1;
+                }
+            }
+
+            String[] lines = new String(data, StandardCharsets.UTF_8).split("\n");
+
+            if (!lines[0].equals(header)) {
+                throw new IOException("Journal " + file + " belongs to a different copy");
+            }
+
+            // If the journal does not end with a newline, the JVM died while writing the last line. It may still look like a valid entry (for
+            // example, with a truncated path), so it is skipped.
+            int count = complete == data.length ? lines.length : lines.length - 1;
+
+            for (int i = 1; i < count; i++) {
+                // Lines that cannot be parsed are ignored.
+                String[] fields = lines[i].split(" ");
+
+                if (fields.length == 4 && COPIED.equals(fields[0])) {
+                    try {
+                        copied.put(decode(fields[3]), new long[] { Long.parseLong(fields[1]), Long.parseLong(fields[2]) });
+                    } catch (IllegalArgumentException e) {
+                        // ignore damaged line
+                    }
+                }
+            }
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        if (exists && complete < channel.size()) {
+            // Remove the incomplete last line. Terminating it instead would make it look complete the next time the journal is opened.
+            channel.truncate(complete);
+        }
+
+        if (channel.size() == 0) {
+            write(header);
+        }
+
+        channel.force(false);
+    }
+
+    private void write(String line) throws IOException {
+
+        if (channel == null) {
+            throw new IOException("Journal " + file + " is not open");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String entry(String type, Path path, long size, long lastModified) {
+        return type + " " + size + " " + lastModified + " " + encode(path.toString());
+    }
+
+    /**
+     * Check if a file has been copied completely according to the journal.
+     *
+     * @param path
+     *            the path of the file, relative to the source directory.
+     * @param size
+     *            the current size of the source file.
+     * @param lastModified
+     *            the current modification time of the source file.
+     * @return if the file has been copied, and its source has not changed since.
+     */
+    synchronized boolean isCopied(Path path, long size, long lastModified) {
+        long[] entry = copied.get(path.toString());
+        return entry != null && entry[0] == size && entry[1] == lastModified;
+    }
+
+    /**
+     * Record that a file is going to be copied. The entry is only guaranteed to be stored once {@link #sync()} or {@link #copied(Path, long, long)} is
+     * called.
+     *
+     * @param path
+     *            the path of the file, relative to the source directory.
+     * @param size
+     *            the size of the source file.
+     * @param lastModified
+     *            the modification time of the source file.
+     * @throws IOException
+     *             If the journal could not be written.
+     */
+    synchronized void planned(Path path, long size, long lastModified) throws IOException {
+        write(entry(PLANNED, path, size, lastModified));
+    }
+
+    /**
+     * Record that a file has been copied completely, and make sure the journal is stored.
+     *
+     * @param path
+     *            the path of the file, relative to the source directory.
+     * @param size
+     *            the size of the source file.
+     * @param lastModified
+     *            the modification time of the source file.
+     * @throws IOException
+     *             If the journal could not be written.
+     */
+    synchronized void copied(Path path, long size, long lastModified) throws IOException {
+        write(entry(COPIED, path, size, lastModified));
+        channel.force(false);
+        copied.put(path.toString(), new long[] { size, lastModified });
+    }
+
+    /**
+     * Make sure all entries of the journal are stored.
+     *
+     * @throws IOException
+     *             If the journal could not be written.
+     */
+    synchronized void sync() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Close the journal.
+     *
+     * @throws IOException
+     *             If the journal could not be closed.
+     */
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            try {
+                channel.close();
+            } finally {
+                channel = null;
+            }
+        }
+    }
+}
@@ -40,5 +40,24 @@ public enum CopyMode {
     /**
      * Skip the copy if the destination file if it already exists.
      */
-    IGNORE
+    IGNORE,
+
+    /**
+     * If the destination file already exists, it is assumed to contain the first part of the source file (for example, after an interrupted copy). Only the
+     * remaining data is appended to the destination. An {@link InvalidResumeTargetException} is produced if the destination is larger than the source or its
+     * data does not match the source.
+     *
+     * If the source and destination are directories then existing files are resumed and additional files in the destination directory are <b>not</b> touched.
+     * Existing symbolic links are left as is.
+     */
+    RESUME,
+
+    /**
+     * If the destination file already exists, it is updated in place by only transferring the blocks that differ from the source. The blocks of the
+     * destination are compared to the source using checksums, so unchanged data is not transferred again. If the destination does not support writing at an
+     * offset, is larger than the source, or is not a regular file, it is replaced as in <code>REPLACE</code>.
+     *
+     * If the source and destination are directories then additional files in the destination directory are <b>not</b> touched.
+     */
+    DELTA
 }
@@ -51,6 +51,10 @@ public interface CopyStatus {
      *
      * @throws PathAlreadyExistsException
      *            If the target already exists and the mode is {@link CopyMode#CREATE}.
+     * @throws InvalidResumeTargetException
+     *            If the mode is {@link CopyMode#RESUME} and the target does not match the source.
+     * @throws ChecksumMismatchException
+     *            If the copy was verified and the checksum of the target does not match the source.
      * @throws CopyCancelledException
      *				If the copy was cancelled via {@link FileSystem#cancel(String)}
      * @throws NoSuchPathException
@@ -96,4 +100,19 @@ public interface CopyStatus {
      * @return the number of bytes that have been copied.
      */
     long bytesCopied();
+
+    /**
+     * Get the checksum of the destination file, if the copy was verified (see
+     * {@link FileSystem#copy(Path, FileSystem, Path, CopyMode, boolean, int, ChecksumAlgorithm)}).
+     *
+     * The checksum is only available once a verified copy of a single file has completed successfully. For recursive copies every file is verified, but no
+     * checksum is reported.
+     *
+     * Implementations that do not verify copies need not override this method, which returns <code>null</code>.
+     *
+     * @return the verified checksum as a lower case hexadecimal string, or <code>null</code> if it is not available.
+     */
+    default String getVerifiedChecksum() {
+        return null;
+    }
 }
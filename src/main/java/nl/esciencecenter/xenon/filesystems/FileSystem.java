@@ -15,20 +15,36 @@
  */
 package nl.esciencecenter.xenon.filesystems;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -39,12 +55,20 @@ import nl.esciencecenter.xenon.UnknownAdaptorException;
 import nl.esciencecenter.xenon.UnknownPropertyException;
 import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
 import nl.esciencecenter.xenon.adaptors.AdaptorLoader;
 import nl.esciencecenter.xenon.adaptors.NotConnectedException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
+import nl.esciencecenter.xenon.adaptors.filesystems.AttributeCache;
+import nl.esciencecenter.xenon.adaptors.filesystems.BlockChecksum;
 import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
+import nl.esciencecenter.xenon.adaptors.filesystems.RateLimitedInputStream;
+import nl.esciencecenter.xenon.adaptors.filesystems.RateLimitedOutputStream;
+import nl.esciencecenter.xenon.adaptors.filesystems.RateLimiter;
+import nl.esciencecenter.xenon.adaptors.filesystems.RecursiveListIterator;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.utils.BufferPool;
 import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
 
 /**
@@ -52,6 +76,45 @@ import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
  */
 public abstract class FileSystem implements AutoCloseable {
 
+    // The values of the properties below are checked by the adaptor when the FileSystem is created, see FileAdaptor#checkFileSystemProperties.
+
+    /** Property (relative to the adaptor prefix) that sets the number of files to transfer concurrently in a recursive copy. */
+    private static final String COPY_PARALLELISM = "copy.parallelism";
+
+    /** Property (relative to the adaptor prefix) that sets the number of directories to list concurrently in a recursive listing. */
+    private static final String LIST_PARALLELISM = "list.parallelism";
+
+    /** Property (relative to the adaptor prefix) that sets the maximum number of paths in the attribute cache (0 disables the cache). */
+    private static final String CACHE_SIZE = "cache.size";
+
+    /** Property (relative to the adaptor prefix) that sets the time (in milliseconds) after which attribute cache entries expire. */
+    private static final String CACHE_TTL = "cache.ttl";
+
+    private static final int DEFAULT_CACHE_TTL = 5000;
+
+    /** Property (relative to the adaptor prefix) that sets the number of concurrent streams used to copy a single large file. */
+    private static final String COPY_STREAMS = "copy.streams";
+
+    /** Property (relative to the adaptor prefix) that sets the minimum file size for which multiple streams are used. */
+    private static final String COPY_STREAMS_THRESHOLD = "copy.streams.threshold";
+
+    private static final long DEFAULT_COPY_STREAMS_THRESHOLD = 64L * 1024 * 1024;
+
+    /** Property (relative to the adaptor prefix) that enables transferring files of a recursive copy while the source is still being listed. */
+    private static final String COPY_PIPELINE = "copy.pipeline";
+
+    /** Property (relative to the adaptor prefix) that sets the maximum transfer rate (in bytes per second) of this FileSystem (0 means no limit). */
+    private static final String COPY_RATE = "copy.rate";
+
+    /** Property (relative to the adaptor prefix) that sets the maximum transfer rate (in bytes per second) shared by all FileSystems of the same host. */
+    private static final String COPY_RATE_HOST = "copy.rate.host";
+
+    /** Property (relative to the adaptor prefix) that sets the number of bytes that may be transferred in a burst (0 means one second of transfer). */
+    private static final String COPY_RATE_BURST = "copy.rate.burst";
+
+    /** The number of bytes copied per call to {@link #directCopyRange(Path, FileSystem, Path, long, long)}, so progress and cancellation are checked. */
+    private static final long DIRECT_COPY_CHUNK_SIZE = 8L * 1024 * 1024;
+
     private static FileAdaptor getAdaptorByName(String adaptorName) throws UnknownAdaptorException {
         return AdaptorLoader.getFileAdaptor(adaptorName);
     }
@@ -99,13 +162,21 @@ public abstract class FileSystem implements AutoCloseable {
         private final long bytesToCopy;
         private final long bytesCopied;
 
+        private final String verifiedChecksum;
+
         public CopyStatusImplementation(String copyIdentifier, String state, long bytesToCopy, long bytesCopied, XenonException exception) {
+            this(copyIdentifier, state, bytesToCopy, bytesCopied, exception, null);
+        }
+
+        public CopyStatusImplementation(String copyIdentifier, String state, long bytesToCopy, long bytesCopied, XenonException exception,
+                String verifiedChecksum) {
             super();
             this.copyIdentifier = copyIdentifier;
             this.state = state;
             this.bytesToCopy = bytesToCopy;
             this.bytesCopied = bytesCopied;
             this.exception = exception;
+            this.verifiedChecksum = verifiedChecksum;
         }
 
         @Override
@@ -155,10 +226,15 @@ public abstract class FileSystem implements AutoCloseable {
             return bytesCopied;
         }
 
+        @Override
+        public String getVerifiedChecksum() {
+            return verifiedChecksum;
+        }
+
         @Override
         public String toString() {
             return "CopyStatus [copyIdentifier=" + copyIdentifier + ", state=" + state + ", exception=" + exception + ", bytesToCopy=" + bytesToCopy
-                    + ", bytesCopied=" + bytesCopied + "]";
+                    + ", bytesCopied=" + bytesCopied + ", verifiedChecksum=" + verifiedChecksum + "]";
         }
 
         @Override
@@ -169,12 +245,57 @@ public abstract class FileSystem implements AutoCloseable {
                 return false;
             CopyStatusImplementation that = (CopyStatusImplementation) o;
             return bytesToCopy == that.bytesToCopy && bytesCopied == that.bytesCopied && Objects.equals(copyIdentifier, that.copyIdentifier)
-                    && Objects.equals(state, that.state) && Objects.equals(exception, that.exception);
+                    && Objects.equals(state, that.state) && Objects.equals(exception, that.exception)
+                    && Objects.equals(verifiedChecksum, that.verifiedChecksum);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(copyIdentifier, state, exception, bytesToCopy, bytesCopied);
+            return Objects.hash(copyIdentifier, state, exception, bytesToCopy, bytesCopied, verifiedChecksum);
+        }
+    }
+
+    /**
+     * SyncResult contains the outcome of a sync operation.
+     */
+    static class SyncResultImplementation implements SyncResult {
+
+        private final long filesSkipped;
+        private final long filesTransferred;
+        private final long filesDeleted;
+        private final long bytesTransferred;
+
+        public SyncResultImplementation(long filesSkipped, long filesTransferred, long filesDeleted, long bytesTransferred) {
+            this.filesSkipped = filesSkipped;
+            this.filesTransferred = filesTransferred;
+            this.filesDeleted = filesDeleted;
+            this.bytesTransferred = bytesTransferred;
+        }
+
+        @Override
+        public long getFilesSkipped() {
+            return filesSkipped;
+        }
+
+        @Override
+        public long getFilesTransferred() {
+            return filesTransferred;
+        }
+
+        @Override
+        public long getFilesDeleted() {
+            return filesDeleted;
+        }
+
+        @Override
+        public long getBytesTransferred() {
+            return bytesTransferred;
+        }
+
+        @Override
+        public String toString() {
+            return "SyncResult [filesSkipped=" + filesSkipped + ", filesTransferred=" + filesTransferred + ", filesDeleted=" + filesDeleted
+                    + ", bytesTransferred=" + bytesTransferred + "]";
         }
     }
 
@@ -328,12 +449,43 @@ public abstract class FileSystem implements AutoCloseable {
 
     class CopyCallback {
 
+        private final ChecksumAlgorithm verify;
+
+        private final CopyJournal journal;
+
         private long bytesToCopy = 0;
         private long bytesCopied = 0;
 
         private boolean started = false;
         private boolean cancelled = false;
 
+        private String verifiedChecksum = null;
+
+        CopyCallback() {
+            this(null, null);
+        }
+
+        CopyCallback(ChecksumAlgorithm verify, CopyJournal journal) {
+            this.verify = verify;
+            this.journal = journal;
+        }
+
+        ChecksumAlgorithm getVerifyAlgorithm() {
+            return verify;
+        }
+
+        CopyJournal getJournal() {
+            return journal;
+        }
+
+        synchronized void setVerifiedChecksum(String checksum) {
+            this.verifiedChecksum = checksum;
+        }
+
+        synchronized String getVerifiedChecksum() {
+            return verifiedChecksum;
+        }
+
         synchronized void start(long bytesToCopy) {
             if (!started) {
                 started = true;
@@ -341,6 +493,10 @@ public abstract class FileSystem implements AutoCloseable {
             }
         }
 
+        synchronized void addBytesToCopy(long bytes) {
+            this.bytesToCopy += bytes;
+        }
+
         synchronized boolean isStarted() {
             return started;
         }
@@ -353,7 +509,14 @@ public abstract class FileSystem implements AutoCloseable {
             return bytesToCopy;
         }
 
-        synchronized void addBytesCopied(long bytes) {
+        void addBytesCopied(long bytes) {
+            addBytesSkipped(bytes);
+            // Reported outside the lock of this callback, as the TransferManager is shared by all copies.
+            TransferManager.getInstance().addBytesTransferred(bytes);
+        }
+
+        // Counts bytes that are already present at the destination towards the progress of the copy, without reporting them as transferred.
+        synchronized void addBytesSkipped(long bytes) {
             this.bytesCopied += bytes;
         }
 
@@ -370,11 +533,13 @@ public abstract class FileSystem implements AutoCloseable {
 
         Future<Void> future;
         CopyCallback callback;
+        CompletableFuture<Void> done;
 
-        public PendingCopy(Future<Void> future, CopyCallback callback) {
+        public PendingCopy(Future<Void> future, CopyCallback callback, CompletableFuture<Void> done) {
             super();
             this.future = future;
             this.callback = callback;
+            this.done = done;
         }
     }
 
@@ -383,15 +548,19 @@ public abstract class FileSystem implements AutoCloseable {
     private final String location;
     private final Credential credential;
     private final XenonProperties properties;
-    private final ExecutorService pool;
-
     private Path workingDirectory;
 
     private long nextCopyID = 0;
 
     private int bufferSize;
 
-    private final HashMap<String, PendingCopy> pendingCopies = new HashMap<>();
+    private final ConcurrentHashMap<String, PendingCopy> pendingCopies = new ConcurrentHashMap<>();
+
+    private AttributeCache attributeCache;
+
+    private boolean attributeCacheConfigured = false;
+
+    private List<RateLimiter> rateLimiters;
 
     protected FileSystem(String uniqueID, String adaptor, String location, Credential credential, Path workDirectory, int bufferSize,
             XenonProperties properties) {
@@ -427,7 +596,6 @@ public abstract class FileSystem implements AutoCloseable {
         this.workingDirectory = workDirectory;
         this.properties = properties;
         this.bufferSize = bufferSize;
-        this.pool = Executors.newFixedThreadPool(1, new DaemonThreadFactory("CopyThread." + uniqueID));
     }
 
     protected int getBufferSize() {
@@ -528,16 +696,24 @@ public abstract class FileSystem implements AutoCloseable {
     }
 
     /**
-     * Close this FileSystem. If the adaptor does not support closing this is a no-op.
+     * Close this FileSystem. Any copies of this FileSystem that are still queued or running are cancelled. If the adaptor does not support closing this is
+     * a no-op.
      *
      * @throws XenonException
      *             If the FileSystem failed to close or if an I/O error occurred.
      */
     public void close() throws XenonException {
-        try {
-            pool.shutdownNow();
-        } catch (Exception e) {
-            throw new XenonException(getAdaptorName(), "Failed to cleanly shutdown copy thread pool");
+
+        List<PendingCopy> copies;
+
+        synchronized (this) {
+            copies = new ArrayList<>(pendingCopies.values());
+        }
+
+        // Cancelling a copy may run its completion callbacks in this thread, which remove it from pendingCopies.
+        for (PendingCopy copy : copies) {
+            copy.callback.cancel();
+            copy.future.cancel(true);
         }
     }
 
@@ -712,7 +888,7 @@ public abstract class FileSystem implements AutoCloseable {
 
         assertPathExists(absPath);
 
-        if (getAttributes(absPath).isDirectory()) {
+        if (cachedAttributes(absPath).isDirectory()) {
 
             Iterable<PathAttributes> itt = list(absPath, false);
 
@@ -730,6 +906,8 @@ public abstract class FileSystem implements AutoCloseable {
         } else {
             deleteFile(absPath);
         }
+
+        invalidateCachedAttributes(absPath);
     }
 
     /**
@@ -753,7 +931,8 @@ public abstract class FileSystem implements AutoCloseable {
      * List all entries in the directory <code>dir</code>.
      *
      * All entries in the directory are returned, but subdirectories will not be traversed by default. Set <code>recursive</code> to <code>true</code>, include
-     * the listing of all subdirectories.
+     * the listing of all subdirectories. In a recursive listing, subdirectories are listed one at a time, unless the <code>list.parallelism</code> property of
+     * the adaptor is set to a larger value.
      *
      * Symbolic links are not followed.
      *
@@ -782,10 +961,174 @@ public abstract class FileSystem implements AutoCloseable {
         assertDirectoryExists(dir);
 
         ArrayList<PathAttributes> result = new ArrayList<>();
-        list(absolute, result, recursive);
+
+        int parallelism = recursive ? getListParallelism() : 1;
+
+        if (parallelism > 1) {
+            listConcurrently(absolute, result, parallelism);
+        } else {
+            list(absolute, result, recursive);
+        }
+
+        return result;
+    }
+
+    /**
+     * Lazily list all entries in the directory <code>dir</code> and its subdirectories, up to <code>depthLimit</code> levels deep.
+     *
+     * Unlike {@link #list(Path, boolean)}, the tree is not listed up front. Instead, each directory is listed when the iteration reaches it, and the
+     * subdirectories are traversed depth first. As a result, the first entries are available as soon as <code>dir</code> itself has been listed, and only the
+     * remaining entries of the directories on the current path are kept in memory: one directory listing for each level of the tree that the iteration is
+     * in.
+     *
+     * The <code>depthLimit</code> determines which entries are returned: a limit of 1 only returns the entries in <code>dir</code> itself, a limit of 2 also
+     * returns the entries of its subdirectories, and so on. The entries below the limit are left out, not returned later, so the limit is not a memory
+     * window. Each call to {@link Iterable#iterator()} starts a new traversal.
+     *
+     * Symbolic links are not followed.
+     *
+     * Errors that occur after the iteration has started are thrown as a {@link XenonRuntimeException} by the iterator, with the original
+     * {@link XenonException} as its cause.
+     *
+     * @param dir
+     *            the target directory.
+     * @param depthLimit
+     *            the number of directory levels to list. Entries further down are not returned.
+     *
+     * @return an {@link Iterable} that lazily iterates over all entries in the directory <code>dir</code>, up to the given depth.
+     *
+     * @throws NoSuchPathException
+     *             If a directory does not exists.
+     * @throws InvalidPathException
+     *             If <code>dir</code> is not a directory.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path is null or <code>depthLimit</code> is smaller than 1.
+     */
+    public Iterable<PathAttributes> walk(Path dir, int depthLimit) throws XenonException {
+
+        if (depthLimit < 1) {
+            throw new IllegalArgumentException("Depth limit must be 1 or larger: " + depthLimit);
+        }
+
+        Path absolute = toAbsolutePath(dir);
+
+        assertDirectoryExists(dir);
+
+        return () -> new RecursiveListIterator(this::listDirectoryEntries, absolute, depthLimit);
+    }
+
+    /**
+     * Lazily list all entries in the directory <code>dir</code> and all its subdirectories.
+     *
+     * This is equivalent to <code>walk(dir, Integer.MAX_VALUE)</code>. See {@link #walk(Path, int)} for details.
+     *
+     * @param dir
+     *            the target directory.
+     *
+     * @return an {@link Iterable} that lazily iterates over all entries in the directory <code>dir</code> and its subdirectories.
+     *
+     * @throws NoSuchPathException
+     *             If a directory does not exists.
+     * @throws InvalidPathException
+     *             If <code>dir</code> is not a directory.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path is null.
+     */
+    public Iterable<PathAttributes> walk(Path dir) throws XenonException {
+        return walk(dir, Integer.MAX_VALUE);
+    }
+
+    /**
+     * List all entries in the directory <code>dir</code>, and store them in a memory efficient {@link CompactListing}.
+     *
+     * This returns the same entries as {@link #list(Path, boolean)}, but is intended for directories with a very large number of entries. The entries
+     * returned by the adaptor for each directory are stored in the listing one by one, without collecting them in a list first and without adding them to
+     * the attribute cache. Apart from the listing itself, only the paths of the subdirectories that remain to be listed are kept in memory.
+     *
+     * The entries of each directory are stored together. Subdirectories are listed depth first, after all entries of their parent directory.
+     *
+     * Symbolic links are not followed.
+     *
+     * @param dir
+     *            the target directory.
+     * @param recursive
+     *            should the list recursively traverse the subdirectories ?
+     *
+     * @return a {@link CompactListing} containing all entries in the directory <code>dir</code>.
+     *
+     * @throws NoSuchPathException
+     *             If a directory does not exists.
+     * @throws InvalidPathException
+     *             If <code>dir</code> is not a directory.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path is null.
+     */
+    public CompactListing listCompact(Path dir, boolean recursive) throws XenonException {
+
+        Path absolute = toAbsolutePath(dir);
+
+        assertDirectoryExists(absolute);
+
+        CompactListing result = new CompactListing();
+
+        ArrayDeque<Path> todo = new ArrayDeque<>();
+        todo.push(absolute);
+
+        while (!todo.isEmpty()) {
+            for (PathAttributes p : listDirectory(todo.pop())) {
+                if (!isDotDot(p.getPath())) {
+                    result.add(p);
+
+                    if (recursive && p.isDirectory()) {
+                        todo.push(p.getPath());
+                    }
+                }
+            }
+        }
+
+        result.trimToSize();
         return result;
     }
 
+    /**
+     * List the entries of a single directory for {@link #walk(Path, int)}, leaving out "." and "..".
+     *
+     * @param dir
+     *            the directory to list.
+     * @return an {@link Iterator} over the entries in the directory.
+     * @throws XenonRuntimeException
+     *             If the directory could not be listed.
+     */
+    private Iterator<PathAttributes> listDirectoryEntries(Path dir) {
+
+        ArrayList<PathAttributes> result = new ArrayList<>();
+
+        try {
+            for (PathAttributes p : listDirectory(dir)) {
+                if (!isDotDot(p.getPath())) {
+                    result.add(p);
+                    cacheAttributes(p);
+                }
+            }
+        } catch (XenonException e) {
+            throw new XenonRuntimeException(getAdaptorName(), "Failed to list directory: " + dir, e);
+        }
+
+        return result.iterator();
+    }
+
     /**
      * Open an existing file and return an {@link InputStream} to read from this file.
      *
@@ -807,6 +1150,66 @@ public abstract class FileSystem implements AutoCloseable {
      */
     public abstract InputStream readFromFile(Path file) throws XenonException;
 
+    /**
+     * Open an existing file and return an {@link InputStream} to read from this file, starting at <code>offset</code>.
+     *
+     * If <code>offset</code> is equal to or larger than the size of the file, the returned stream is at the end of the file.
+     *
+     * This default implementation skips the first <code>offset</code> bytes of the stream returned by {@link #readFromFile(Path)}. Adaptors that can start
+     * reading at an offset on the server side should override it.
+     *
+     * @param file
+     *            the file to read.
+     * @param offset
+     *            the position in the file at which to start reading.
+     *
+     * @return the {@link InputStream} to read from the file.
+     *
+     * @throws NoSuchPathException
+     *             If the file does not exists.
+     * @throws InvalidPathException
+     *             If the file is not regular file.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path is null or offset is negative.
+     */
+    public InputStream readFromFile(Path file, long offset) throws XenonException {
+
+        assertValidOffset(offset);
+
+        InputStream in = readFromFile(file);
+
+        try {
+            long left = offset;
+
+            while (left > 0) {
+                long skipped = in.skip(left);
+
+                if (skipped <= 0) {
+                    // skip may return 0 before the end of the stream is reached, so fall back to read to detect the end of the file.
+                    if (in.read() < 0) {
+                        break;
+                    }
+                    skipped = 1;
+                }
+
+                left -= skipped;
+            }
+        } catch (IOException e) {
+            try {
+                in.close();
+            } catch (IOException e2) {
+                // ignore
+            }
+            throw new XenonException(getAdaptorName(), "Failed to skip to offset " + offset + " in " + file, e);
+        }
+
+        return in;
+    }
+
     /**
      * Open a file and return an {@link OutputStream} to write to this file.
      * <p>
@@ -895,6 +1298,39 @@ public abstract class FileSystem implements AutoCloseable {
      */
     public abstract OutputStream appendToFile(Path file) throws XenonException;
 
+    /**
+     * Open a file and return an {@link OutputStream} that writes to this file starting at <code>offset</code>. (optional operation)
+     * <p>
+     * If the file does not exist, it will be created. Existing data in the file before <code>offset</code> is not changed. This allows several streams to
+     * write different parts of the same file concurrently.
+     *
+     * This operation may not be supported by all implementations.
+     * </p>
+     *
+     * @param file
+     *            the target file for the OutputStream.
+     * @param offset
+     *            the position in the file at which to start writing.
+     *
+     * @return the {@link OutputStream} to write to the file.
+     *
+     * @throws NoSuchPathException
+     *             if a parent directory does not exist.
+     * @throws InvalidPathException
+     *             if not a regular file
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path is null or offset is negative.
+     * @throws UnsupportedOperationException
+     *             if the adaptor does not support writing at an offset
+     */
+    public OutputStream writeToFileAt(Path file, long offset) throws XenonException {
+        throw new UnsupportedOperationException(getAdaptorName(), "Writing at an offset is not supported");
+    }
+
     /**
      * Get the {@link PathAttributes} of an existing path.
      *
@@ -915,32 +1351,113 @@ public abstract class FileSystem implements AutoCloseable {
     public abstract PathAttributes getAttributes(Path path) throws XenonException;
 
     /**
-     * Reads the target of a symbolic link (optional operation).
+     * Compute the checksum of an existing file.
      *
-     * @param link
-     *            the link to read.
+     * Where possible, the checksum is computed by the server, so the file does not need to be transferred. Otherwise, the file is read and the checksum is
+     * computed locally.
      *
-     * @return a Path representing the target of the link.
+     * @param file
+     *            the existing file.
+     * @param algorithm
+     *            the checksum algorithm to use.
+     *
+     * @return the checksum of the file, as a lower case hexadecimal string.
      *
      * @throws NoSuchPathException
-     *             If the link does not exists.
+     *             If the file does not exists.
      * @throws InvalidPathException
-     *             If the source is not a link.
-     * @throws UnsupportedOperationException
-     *             If this FileSystem does not support symbolic links.
+     *             If the path is not a regular file.
      * @throws NotConnectedException
      *             If file system is closed.
      * @throws XenonException
      *             if an I/O error occurred.
      * @throws IllegalArgumentException
-     *             If path is null.
+     *             If path or algorithm is null.
      */
-    public abstract Path readSymbolicLink(Path link) throws XenonException;
+    public String checksum(Path file, ChecksumAlgorithm algorithm) throws XenonException {
 
-    /**
-     * Sets the POSIX permissions of a path (optional operation).
-     *
-     * @param path
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Checksum algorithm is null");
+        }
+
+        Path absFile = toAbsolutePath(file);
+        assertFileExists(absFile);
+
+        MessageDigest digest = createDigest(algorithm);
+
+        byte[] buffer = BufferPool.getShared().acquire(bufferSize);
+
+        try (InputStream in = readFromFile(absFile)) {
+
+            int length = in.read(buffer);
+
+            while (length >= 0) {
+                digest.update(buffer, 0, length);
+                length = in.read(buffer);
+            }
+        } catch (IOException e) {
+            throw new XenonException(getAdaptorName(), "Failed to compute checksum of " + absFile, e);
+        } finally {
+            BufferPool.getShared().release(buffer);
+        }
+
+        return toHexString(digest.digest());
+    }
+
+    private MessageDigest createDigest(ChecksumAlgorithm algorithm) throws XenonException {
+        try {
+            return MessageDigest.getInstance(algorithm.getAlgorithmName());
+        } catch (NoSuchAlgorithmException e) {
+            throw new XenonException(getAdaptorName(), "Checksum algorithm not available: " + algorithm, e);
+        }
+    }
+
+    /**
+     * Convert a checksum to a lower case hexadecimal string.
+     *
+     * @param data
+     *            the checksum to convert.
+     * @return the checksum as a hexadecimal string.
+     */
+    protected static String toHexString(byte[] data) {
+
+        StringBuilder result = new StringBuilder(data.length * 2);
+
+        for (byte b : data) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16));
+            result.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Reads the target of a symbolic link (optional operation).
+     *
+     * @param link
+     *            the link to read.
+     *
+     * @return a Path representing the target of the link.
+     *
+     * @throws NoSuchPathException
+     *             If the link does not exists.
+     * @throws InvalidPathException
+     *             If the source is not a link.
+     * @throws UnsupportedOperationException
+     *             If this FileSystem does not support symbolic links.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path is null.
+     */
+    public abstract Path readSymbolicLink(Path link) throws XenonException;
+
+    /**
+     * Sets the POSIX permissions of a path (optional operation).
+     *
+     * @param path
      *            the target path.
      * @param permissions
      *            the permissions to set.
@@ -983,7 +1500,8 @@ public abstract class FileSystem implements AutoCloseable {
      * Copy data from <code>in</code> to <code>out</code> using a buffer size of <code>buffersize</code>.
      *
      * After each <code>buffersize</code> block of data, <code>callback.addBytesCopied</code> will be invoked to report the number of bytes copied and
-     * <code>callback.isCancelled</code> will be invoked to determine if the copy should continue.
+     * <code>callback.isCancelled</code> will be invoked to determine if the copy should continue. The copy is also stopped if the current thread is
+     * interrupted.
      *
      * @param in
      *            the stream to copy the data from.
@@ -999,21 +1517,58 @@ public abstract class FileSystem implements AutoCloseable {
      *             if the copy was cancelled by the user.
      */
     protected void streamCopy(InputStream in, OutputStream out, int buffersize, CopyCallback callback) throws IOException, CopyCancelledException {
+        streamCopy(in, out, buffersize, Long.MAX_VALUE, callback);
+    }
+
+    /**
+     * Copy at most <code>length</code> bytes from <code>in</code> to <code>out</code> using a buffer size of <code>buffersize</code>.
+     *
+     * See {@link #streamCopy(InputStream, OutputStream, int, CopyCallback)} for the use of <code>callback</code>.
+     *
+     * @param in
+     *            the stream to copy the data from.
+     * @param out
+     *            the stream to copy the data to.
+     * @param buffersize
+     *            the buffer size to use for copying.
+     * @param length
+     *            the maximum number of bytes to copy.
+     * @param callback
+     *            the callback to report bytes copied to and check cancellation from.
+     * @throws IOException
+     *             if an I/O exception occurred.
+     * @throws CopyCancelledException
+     *             if the copy was cancelled by the user.
+     */
+    protected void streamCopy(InputStream in, OutputStream out, int buffersize, long length, CopyCallback callback) throws IOException, CopyCancelledException {
 
-        byte[] buffer = new byte[buffersize];
+        // Always use a full size buffer, so buffers of the pool can be reused for files of any size.
+        byte[] buffer = BufferPool.getShared().acquire(buffersize);
 
-        int size = in.read(buffer);
+        try {
+            long remaining = length;
 
-        while (size > 0) {
-            out.write(buffer, 0, size);
+            int size = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
 
-            callback.addBytesCopied(size);
+            while (size > 0) {
+                out.write(buffer, 0, size);
 
-            if (callback.isCancelled()) {
-                throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
-            }
+                callback.addBytesCopied(size);
+
+                if (callback.isCancelled() || Thread.currentThread().isInterrupted()) {
+                    throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                }
 
-            size = in.read(buffer);
+                remaining -= size;
+
+                if (remaining <= 0) {
+                    break;
+                }
+
+                size = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            }
+        } finally {
+            BufferPool.getShared().release(buffer);
         }
 
         // Flush the output to ensure all data is written when this method returns.
@@ -1067,8 +1622,10 @@ public abstract class FileSystem implements AutoCloseable {
             case CREATE:
                 throw new PathAlreadyExistsException(getAdaptorName(), "Destination path already exists: " + destination);
             case IGNORE:
+            case RESUME:
                 return;
             case REPLACE:
+            case DELTA:
                 // continue
                 break;
             }
@@ -1125,6 +1682,17 @@ public abstract class FileSystem implements AutoCloseable {
                 destinationFS.delete(destination, true);
                 // continue
                 break;
+            case RESUME:
+                resumeFile(source, attributes, destinationFS, destination, callback);
+                verifyCopy(source, destinationFS, destination, null, callback);
+                return;
+            case DELTA:
+                if (deltaFile(source, attributes, destinationFS, destination, callback)) {
+                    verifyCopy(source, destinationFS, destination, null, callback);
+                    return;
+                }
+                destinationFS.delete(destination, true);
+                break;
             }
         }
 
@@ -1132,164 +1700,1205 @@ public abstract class FileSystem implements AutoCloseable {
             throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
         }
 
+        if (serverSideCopyFile(source, attributes.getSize(), destinationFS, destination, callback)
+                || directCopyFile(source, attributes.getSize(), destinationFS, destination, callback)) {
+            verifyCopy(source, destinationFS, destination, null, callback);
+            return;
+        }
+
+        int streams = getCopyStreams();
+
+        if (streams > 1 && attributes.getSize() >= getSizeProperty(COPY_STREAMS_THRESHOLD, DEFAULT_COPY_STREAMS_THRESHOLD)) {
+
+            OutputStream first = null;
+
+            try {
+                first = destinationFS.writeToFileAt(destination, 0);
+            } catch (UnsupportedOperationException e) {
+                // The destination cannot write at an offset, so copy using a single stream instead.
+            }
+
+            if (first != null) {
+                try {
+                    copyFileInChunks(source, attributes.getSize(), destinationFS, destination, first, streams, callback);
+                } finally {
+                    destinationFS.invalidateCachedAttributes(destination);
+                }
+                verifyCopy(source, destinationFS, destination, null, callback);
+                return;
+            }
+        }
+
+        // Computes the checksum of the source while it is copied, if the copy is verified.
+        MessageDigest digest = callback.getVerifyAlgorithm() == null ? null : createDigest(callback.getVerifyAlgorithm());
+
         try (InputStream in = readFromFile(source); OutputStream out = destinationFS.writeToFile(destination, attributes.getSize())) {
-            streamCopy(in, out, bufferSize, callback);
+            streamCopy(digest == null ? in : new DigestInputStream(in, digest), out, bufferSize, callback);
         } catch (Exception e) {
             throw new XenonException(getAdaptorName(), "Stream copy failed", e);
+        } finally {
+            // The size of the destination has changed while writing.
+            destinationFS.invalidateCachedAttributes(destination);
         }
 
+        verifyCopy(source, destinationFS, destination, digest, callback);
     }
 
     /**
-     * Perform a (possibly) recursive copy from a path on this filesystem to a path on <code>destinationFS</code>.
+     * Verify a copied file, if requested by <code>callback</code>, by comparing the checksum of the source to that of the destination.
      *
      * @param source
-     *            the source path on this FileSystem.
+     *            the source file.
      * @param destinationFS
      *            the destination FileSystem.
      * @param destination
-     *            the destination path.
-     * @param mode
-     *            the copy mode that determines how to react if the destination already exists.
-     * @param recursive
-     *            should the copy be performed recursively ?
+     *            the destination file.
+     * @param digest
+     *            the digest of the data read from the source during the copy, or <code>null</code> to compute the checksum of the source separately.
      * @param callback
-     *            a {@link CopyCallback} used to return status information on the copy.
+     *            the callback of the copy, which provides the checksum algorithm and receives the verified checksum.
+     * @throws ChecksumMismatchException
+     *             If the checksums do not match.
      * @throws XenonException
-     *             if an error occurred.
+     *             If a checksum could not be computed.
      */
-    protected void performCopy(Path source, FileSystem destinationFS, Path destination, CopyMode mode, boolean recursive, CopyCallback callback)
-            throws XenonException {
-
-        if (!exists(source)) {
-            throw new NoSuchPathException(getAdaptorName(), "No such file " + source.toString());
-        }
+    private void verifyCopy(Path source, FileSystem destinationFS, Path destination, MessageDigest digest, CopyCallback callback) throws XenonException {
 
-        PathAttributes attributes = getAttributes(source);
+        ChecksumAlgorithm algorithm = callback.getVerifyAlgorithm();
 
-        // if (attributes.isRegular() || attributes.isSymbolicLink()) {
-        if (attributes.isRegular()) {
-            copyFile(source, destinationFS, destination, mode, callback);
+        if (algorithm == null) {
             return;
         }
 
-        if (attributes.isSymbolicLink()) {
-            copySymbolicLink(source, destinationFS, destination, mode, callback);
-            return;
-        }
+        String expected = digest == null ? checksum(source, algorithm) : toHexString(digest.digest());
+        String actual = destinationFS.checksum(destination, algorithm);
 
-        if (!attributes.isDirectory()) {
-            throw new InvalidPathException(getAdaptorName(), "Source path is not a file, link or directory: " + source);
+        if (!expected.equalsIgnoreCase(actual)) {
+            throw new ChecksumMismatchException(getAdaptorName(),
+                    "Checksum mismatch after copying " + source + " to " + destination + ": expected " + algorithm + " " + expected + " but got " + actual);
         }
 
-        if (!recursive) {
-            throw new InvalidPathException(getAdaptorName(), "Source path is a directory: " + source);
-        }
+        callback.setVerifiedChecksum(actual.toLowerCase(Locale.ROOT));
+    }
 
-        // From here on we know the source is a directory. We should also check the destination type.
-        if (destinationFS.exists(destination)) {
+    /**
+     * Copy a file to a new file on another file system, by letting the server perform the copy (optional operation).
+     *
+     * This is typically only possible if <code>destinationFS</code> is connected to the same server as this FileSystem (see
+     * {@link #hasSameLocation(FileSystem)}). The destination file does not exist yet. This default implementation throws an
+     * {@link UnsupportedOperationException}. Adaptors may override it if their server is able to copy files.
+     *
+     * @param source
+     *            the file to copy.
+     * @param destinationFS
+     *            the destination {@link FileSystem} to copy to.
+     * @param destination
+     *            the destination file on the destination file system.
+     * @throws UnsupportedOperationException
+     *             If the server cannot copy this file to <code>destinationFS</code>.
+     * @throws XenonException
+     *             If the file could not be copied.
+     */
+    protected void serverSideCopy(Path source, FileSystem destinationFS, Path destination) throws XenonException {
+        throw new UnsupportedOperationException(getAdaptorName(), "Server side copy not supported");
+    }
 
-            switch (mode) {
-            case CREATE:
-                throw new PathAlreadyExistsException(getAdaptorName(), "Destination path already exists: " + destination);
-            case IGNORE:
-                return;
-            case REPLACE:
-                // continue
-                break;
-            }
+    /**
+     * Check if <code>other</code> is a FileSystem of the same adaptor that is connected to the same location, with the same credential, as this
+     * FileSystem.
+     *
+     * The credential is compared as well, since a different user may not be allowed to access the files of this FileSystem on the server.
+     *
+     * @param other
+     *            the FileSystem to compare to.
+     * @return if <code>other</code> uses the same adaptor, location and credential as this FileSystem.
+     */
+    protected boolean hasSameLocation(FileSystem other) {
+        return other != null && getAdaptorName().equals(other.getAdaptorName()) && Objects.equals(getLocation(), other.getLocation())
+                && Objects.equals(getCredential(), other.getCredential());
+    }
 
-            attributes = destinationFS.getAttributes(destination);
+    // Copies a file using serverSideCopy. Returns false if a server side copy is not supported.
+    private boolean serverSideCopyFile(Path source, long size, FileSystem destinationFS, Path destination, CopyCallback callback) throws XenonException {
 
-            if (attributes.isRegular() || attributes.isSymbolicLink()) {
-                destinationFS.delete(destination, false);
-                destinationFS.createDirectory(destination);
-            } else if (!attributes.isDirectory()) {
-                throw new InvalidPathException(getAdaptorName(), "Existing destination is not a file, link or directory: " + source);
-            }
-        } else {
-            destinationFS.createDirectory(destination);
+        try {
+            serverSideCopy(source, destinationFS, destination);
+        } catch (UnsupportedOperationException e) {
+            return false;
+        } finally {
+            destinationFS.invalidateCachedAttributes(destination);
         }
 
-        // We are now sure the target directory exists.
-        copyRecursive(source, destinationFS, destination, mode, callback);
+        callback.addBytesCopied(size);
+        return true;
     }
 
-    private void copyRecursive(Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback) throws XenonException {
-        long bytesToCopy = 0;
-        Iterable<PathAttributes> listing = list(source, true);
+    /**
+     * Copy a range of bytes from a file to a file on another file system, without passing the data through a buffer in this JVM (optional operation).
+     *
+     * The destination file is created if it does not exist. Data already present in the destination outside of the range is left as is. This default
+     * implementation throws an {@link UnsupportedOperationException}. Adaptors may override it for destinations they can copy to directly.
+     *
+     * @param source
+     *            the file to copy from.
+     * @param destinationFS
+     *            the destination {@link FileSystem} to copy to.
+     * @param destination
+     *            the destination file on the destination file system.
+     * @param position
+     *            the position of the range in both the source and destination file.
+     * @param count
+     *            the maximum number of bytes to copy.
+     * @return the number of bytes copied, which may be less than <code>count</code>.
+     * @throws UnsupportedOperationException
+     *             If this FileSystem cannot copy directly to <code>destinationFS</code>.
+     * @throws XenonException
+     *             If the data could not be copied.
+     */
+    protected long directCopyRange(Path source, FileSystem destinationFS, Path destination, long position, long count) throws XenonException {
+        throw new UnsupportedOperationException(getAdaptorName(), "Direct copy to " + destinationFS.getAdaptorName() + " not supported");
+    }
 
-        for (PathAttributes p : listing) {
+    // Copies a file using directCopyRange in chunks, so progress is reported and cancellation is checked. Returns false if direct copy is not supported.
+    private boolean directCopyFile(Path source, long size, FileSystem destinationFS, Path destination, CopyCallback callback) throws XenonException {
 
-            if (callback.isCancelled()) {
-                throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
-            }
+        long position = 0;
 
-            if (p.isDirectory() && !isDotDot(p.getPath())) {
+        try {
+            do {
+                if (callback.isCancelled()) {
+                    throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                }
 
-                Path rel = source.relativize(p.getPath());
-                Path dst = destination.resolve(rel);
-                if (destinationFS.exists(dst)) {
-                    if (destinationFS.getAttributes(dst).isDirectory()) {
-                        switch (mode) {
-                        case CREATE:
-                            throw new PathAlreadyExistsException(getAdaptorName(), "Directory already exists: " + dst);
-                        case REPLACE:
-                            break; // leave directory
-                        case IGNORE:
-                            return; // ignore subdir
-                        }
-                    } else {
-                        destinationFS.delete(dst, true);
-                    }
-                } else {
-                    destinationFS.createDirectories(dst);
+                long count = Math.min(DIRECT_COPY_CHUNK_SIZE, size - position);
+                long copied = directCopyRange(source, destinationFS, destination, position, count);
+
+                if (copied <= 0 && count > 0) {
+                    throw new XenonException(getAdaptorName(), "Direct copy of " + source + " stopped at offset " + position + " of " + size);
                 }
-            } else if (p.isRegular()) {
-                bytesToCopy += p.getSize();
+
+                callback.addBytesCopied(copied);
+                position += copied;
+            } while (position < size);
+
+        } catch (UnsupportedOperationException e) {
+            if (position > 0) {
+                throw e;
             }
+            return false;
+        } finally {
+            destinationFS.invalidateCachedAttributes(destination);
         }
 
-        callback.start(bytesToCopy);
+        return true;
+    }
 
-        for (PathAttributes p : listing) {
+    /**
+     * Copy a single file to another file system by splitting it into <code>streams</code> byte ranges that are transferred concurrently.
+     *
+     * Each range is read using {@link #readFromFile(Path, long)} and written using {@link #writeToFileAt(Path, long)} on the destination. As the ranges are
+     * written directly to their position in the destination file, no reassembly step is needed.
+     *
+     * @param source
+     *            the file to copy.
+     * @param size
+     *            the size of the file to copy.
+     * @param destinationFS
+     *            the destination {@link FileSystem} to copy to.
+     * @param destination
+     *            the destination file on the destination file system.
+     * @param first
+     *            the stream that writes the first range to the destination.
+     * @param streams
+     *            the number of ranges to transfer concurrently.
+     * @param callback
+     *            a {@link CopyCallback} used to update the status of the copy, or cancel it while in progress.
+     * @throws XenonException
+     *             If the file could not be copied.
+     */
+    private void copyFileInChunks(Path source, long size, FileSystem destinationFS, Path destination, OutputStream first, int streams,
+            CopyCallback callback) throws XenonException {
 
-            if (callback.isCancelled()) {
-                throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
-            }
+        long chunkSize = (size + streams - 1) / streams;
 
-            if (p.isRegular()) {
+        List<Callable<Void>> chunks = new ArrayList<>(streams);
 
-                Path rel = source.relativize(p.getPath());
-                Path dst = destination.resolve(rel);
+        for (long start = 0; start < size; start += chunkSize) {
 
-                copyFile(p.getPath(), destinationFS, dst, mode, callback);
+            final long offset = start;
+            final long length = Math.min(chunkSize, size - start);
+
+            chunks.add(() -> {
+                try (InputStream in = readFromFile(source, offset);
+                        OutputStream out = (offset == 0 ? first : destinationFS.writeToFileAt(destination, offset))) {
+                    streamCopy(in, out, bufferSize, length, callback);
+                } catch (IOException e) {
+                    throw new XenonException(getAdaptorName(), "Stream copy failed", e);
+                }
+                return null;
+            });
+        }
+
+        try {
+            runConcurrently(chunks, streams, "CopyStream.");
+        } finally {
+            // The first stream is only closed by its own task, which may not have run.
+            try {
+                first.close();
+            } catch (IOException e) {
+                // ignored, the copy result has already been determined
             }
         }
     }
 
     /**
-     * Delete a file. Is only called on existing files
+     * Resume the copy of a single file to a destination file that already contains the first part of the data.
      *
-     * This operation must be implemented by the various implementations of FileSystem.
+     * The existing destination file is assumed to be a partial copy of the source file. Its size determines where the copy continues. Before any data is
+     * appended, the last block of the existing data (up to the buffer size of this FileSystem) is compared to the source. Only the remaining part of the
+     * source file is then read (starting at the offset) and appended to the destination. The bytes already present in the destination are reported to the
+     * <code>callback</code> as copied.
      *
-     * @param file
-     *            the file to remove
-     * @throws InvalidPathException
-     *             if the provided path is not a file.
-     * @throws NoSuchPathException
-     *             if the provided file does not exist.
+     * @param source
+     *            the file to copy.
+     * @param attributes
+     *            the attributes of the source file.
+     * @param destinationFS
+     *            the destination {@link FileSystem} to copy to.
+     * @param destination
+     *            the existing (partial) destination file.
+     * @param callback
+     *            a {@link CopyCallback} used to update the status of the copy, or cancel it while in progress.
+     *
+     * @throws InvalidResumeTargetException
+     *             if the destination is not a regular file, is larger than the source, or does not match the start of the source.
      * @throws XenonException
-     *             If the file could not be removed.
+     *             If the file could not be copied.
      */
-    protected abstract void deleteFile(Path file) throws XenonException;
+    protected void resumeFile(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
 
-    /**
-     * Delete an empty directory. Is only called on empty directories
-     *
-     * This operation can only delete empty directories (analogous to <code>rmdir</code> in Linux).
-     *
-     * This operation must be implemented by the various implementations of FileSystem.
+        PathAttributes target = destinationFS.getAttributes(destination);
+
+        if (!target.isRegular()) {
+            throw new InvalidResumeTargetException(getAdaptorName(), "Resume target is not a regular file: " + destination);
+        }
+
+        long offset = target.getSize();
+
+        if (offset > attributes.getSize()) {
+            throw new InvalidResumeTargetException(getAdaptorName(),
+                    "Resume target " + destination + " is larger than source " + source + " (" + offset + " > " + attributes.getSize() + ")");
+        }
+
+        if (offset > 0 && !samePrefixTail(source, destinationFS, destination, offset)) {
+            throw new InvalidResumeTargetException(getAdaptorName(), "Data in resume target " + destination + " does not match source " + source);
+        }
+
+        callback.addBytesSkipped(offset);
+
+        if (offset == attributes.getSize()) {
+            return;
+        }
+
+        if (callback.isCancelled()) {
+            throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+        }
+
+        try (InputStream in = readFromFile(source, offset); OutputStream out = destinationFS.appendToFile(destination)) {
+            streamCopy(in, out, bufferSize, callback);
+        } catch (Exception e) {
+            throw new XenonException(getAdaptorName(), "Stream copy failed", e);
+        } finally {
+            destinationFS.invalidateCachedAttributes(destination);
+        }
+    }
+
+    /**
+     * Update an existing destination file in place, by only transferring the blocks that differ from the source.
+     *
+     * The destination is split into blocks the size of the buffer size of this FileSystem. The checksums of these blocks are retrieved using
+     * {@link #computeBlockChecksums(Path, int)} on the destination file system. The source is then read block by block, and only the blocks whose checksums
+     * do not match are written to the destination using {@link #writeToFileAt(Path, long)}. All blocks are reported to the <code>callback</code> as copied.
+     *
+     * As the data is updated in place, blocks are only compared at the same offset. Data that has shifted to another offset in the source is transferred
+     * again.
+     *
+     * @param source
+     *            the file to copy.
+     * @param attributes
+     *            the attributes of the source file.
+     * @param destinationFS
+     *            the destination {@link FileSystem} to copy to.
+     * @param destination
+     *            the existing destination file.
+     * @param callback
+     *            a {@link CopyCallback} used to update the status of the copy, or cancel it while in progress.
+     * @return <code>false</code> if the destination cannot be updated in place and should be replaced instead, <code>true</code> otherwise.
+     * @throws XenonException
+     *             If the file could not be copied.
+     */
+    protected boolean deltaFile(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
+
+        PathAttributes target = destinationFS.getAttributes(destination);
+
+        // There is no way to truncate the destination, so a larger destination is replaced.
+        if (!target.isRegular() || target.getSize() > attributes.getSize()) {
+            return false;
+        }
+
+        try {
+            destinationFS.writeToFileAt(destination, target.getSize()).close();
+        } catch (UnsupportedOperationException e) {
+            return false;
+        } catch (IOException e) {
+            throw new XenonException(getAdaptorName(), "Failed to open delta target " + destination, e);
+        }
+
+        List<BlockChecksum> checksums = destinationFS.computeBlockChecksums(destination, bufferSize);
+
+        byte[] buffer = BufferPool.getShared().acquire(bufferSize);
+        long offset = 0;
+        int block = 0;
+        OutputStream out = null;
+
+        try (InputStream in = readFromFile(source)) {
+
+            int length = fill(in, buffer);
+
+            while (length > 0) {
+
+                if (callback.isCancelled()) {
+                    throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                }
+
+                if (block < checksums.size() && checksums.get(block).matches(buffer, length)) {
+                    if (out != null) {
+                        out.close();
+                        out = null;
+                    }
+                    callback.addBytesSkipped(length);
+                } else {
+                    // Consecutive mismatching blocks are written using the same stream.
+                    if (out == null) {
+                        out = destinationFS.writeToFileAt(destination, offset);
+                    }
+                    out.write(buffer, 0, length);
+                    callback.addBytesCopied(length);
+                }
+
+                offset += length;
+                block++;
+                length = fill(in, buffer);
+            }
+
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        } catch (IOException e) {
+            throw new XenonException(getAdaptorName(), "Delta copy failed", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignored, the copy has already failed
+                }
+            }
+            BufferPool.getShared().release(buffer);
+            destinationFS.invalidateCachedAttributes(destination);
+        }
+
+        return true;
+    }
+
+    /**
+     * Compute the checksums of each block of <code>file</code>.
+     *
+     * This default implementation reads the file and computes the checksums locally. Adaptors that are able to compute checksums on the remote side may
+     * override this method to avoid transferring the file.
+     *
+     * @param file
+     *            the file to compute the checksums for.
+     * @param blockSize
+     *            the size of the blocks. Only the last block may be smaller.
+     * @return the checksums of the blocks in the file, in order.
+     * @throws XenonException
+     *             If the checksums could not be computed.
+     */
+    protected List<BlockChecksum> computeBlockChecksums(Path file, int blockSize) throws XenonException {
+
+        List<BlockChecksum> result = new ArrayList<>();
+        byte[] buffer = BufferPool.getShared().acquire(blockSize);
+
+        try (InputStream in = readFromFile(file)) {
+
+            int length = fill(in, buffer);
+
+            while (length > 0) {
+                result.add(BlockChecksum.compute(buffer, length));
+                length = fill(in, buffer);
+            }
+        } catch (IOException e) {
+            throw new XenonException(getAdaptorName(), "Failed to compute block checksums of " + file, e);
+        } finally {
+            BufferPool.getShared().release(buffer);
+        }
+
+        return result;
+    }
+
+    // Reads until the buffer is full or the end of the stream is reached, and returns the number of bytes read.
+    private static int fill(InputStream in, byte[] buffer) throws IOException {
+
+        int filled = 0;
+
+        while (filled < buffer.length) {
+            int size = in.read(buffer, filled, buffer.length - filled);
+
+            if (size < 0) {
+                break;
+            }
+
+            filled += size;
+        }
+
+        return filled;
+    }
+
+    // Compares the last block before offset in both files.
+    private boolean samePrefixTail(Path source, FileSystem destinationFS, Path destination, long offset) throws XenonException {
+
+        int length = (int) Math.min(bufferSize, offset);
+        long start = offset - length;
+
+        try (InputStream in = readFromFile(source, start); InputStream existing = destinationFS.readFromFile(destination, start)) {
+            return Arrays.equals(readBlock(in, length), readBlock(existing, length));
+        } catch (IOException e) {
+            throw new XenonException(getAdaptorName(), "Failed to compare resume target " + destination + " to source " + source, e);
+        }
+    }
+
+    private static byte[] readBlock(InputStream in, int length) throws IOException {
+
+        byte[] buffer = new byte[length];
+        int filled = 0;
+
+        while (filled < length) {
+            int size = in.read(buffer, filled, length - filled);
+
+            if (size < 0) {
+                return Arrays.copyOf(buffer, filled);
+            }
+
+            filled += size;
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Perform a (possibly) recursive copy from a path on this filesystem to a path on <code>destinationFS</code>.
+     *
+     * @param source
+     *            the source path on this FileSystem.
+     * @param destinationFS
+     *            the destination FileSystem.
+     * @param destination
+     *            the destination path.
+     * @param mode
+     *            the copy mode that determines how to react if the destination already exists.
+     * @param recursive
+     *            should the copy be performed recursively ?
+     * @param callback
+     *            a {@link CopyCallback} used to return status information on the copy.
+     * @throws XenonException
+     *             if an error occurred.
+     */
+    protected void performCopy(Path source, FileSystem destinationFS, Path destination, CopyMode mode, boolean recursive, CopyCallback callback)
+            throws XenonException {
+
+        if (!exists(source)) {
+            throw new NoSuchPathException(getAdaptorName(), "No such file " + source.toString());
+        }
+
+        PathAttributes attributes = getAttributes(source);
+
+        // if (attributes.isRegular() || attributes.isSymbolicLink()) {
+        if (attributes.isRegular()) {
+            copyFile(source, destinationFS, destination, mode, callback);
+            return;
+        }
+
+        if (attributes.isSymbolicLink()) {
+            copySymbolicLink(source, destinationFS, destination, mode, callback);
+            return;
+        }
+
+        if (!attributes.isDirectory()) {
+            throw new InvalidPathException(getAdaptorName(), "Source path is not a file, link or directory: " + source);
+        }
+
+        if (!recursive) {
+            throw new InvalidPathException(getAdaptorName(), "Source path is a directory: " + source);
+        }
+
+        // From here on we know the source is a directory. We should also check the destination type.
+        if (destinationFS.exists(destination)) {
+
+            switch (mode) {
+            case CREATE:
+                throw new PathAlreadyExistsException(getAdaptorName(), "Destination path already exists: " + destination);
+            case IGNORE:
+                return;
+            case REPLACE:
+            case RESUME:
+            case DELTA:
+                // continue
+                break;
+            }
+
+            attributes = destinationFS.getAttributes(destination);
+
+            if (attributes.isRegular() || attributes.isSymbolicLink()) {
+                destinationFS.delete(destination, false);
+                destinationFS.createDirectory(destination);
+            } else if (!attributes.isDirectory()) {
+                throw new InvalidPathException(getAdaptorName(), "Existing destination is not a file, link or directory: " + source);
+            }
+        } else {
+            destinationFS.createDirectory(destination);
+        }
+
+        // We are now sure the target directory exists.
+        CopyJournal journal = callback.getJournal();
+
+        if (journal == null) {
+            copyRecursive(source, destinationFS, destination, mode, callback);
+        } else {
+            try {
+                journal.open(getLocation() + source, destinationFS.getAdaptorName() + ":" + destinationFS.getLocation() + destination);
+            } catch (IOException e) {
+                throw new XenonException(getAdaptorName(), "Failed to open copy journal " + journal.getFile(), e);
+            }
+
+            try {
+                copyRecursive(source, destinationFS, destination, mode, callback);
+            } finally {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    // ignored, all completed files have already been stored
+                }
+            }
+        }
+
+        // Every file has been verified, but there is no single checksum to report.
+        callback.setVerifiedChecksum(null);
+    }
+
+    private void copyRecursive(Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback) throws XenonException {
+
+        if (getBooleanProperty(COPY_PIPELINE, false)) {
+            copyRecursivePipelined(source, destinationFS, destination, mode, callback);
+            return;
+        }
+
+        long bytesToCopy = 0;
+        List<PathAttributes> files = new ArrayList<>();
+
+        for (PathAttributes p : list(source, true)) {
+
+            if (callback.isCancelled()) {
+                throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+            }
+
+            if (p.isDirectory() && !isDotDot(p.getPath())) {
+
+                if (!prepareDirectory(destinationFS, destination.resolve(source.relativize(p.getPath())), mode)) {
+                    return; // ignore subdir
+                }
+            } else if (p.isRegular() && planFile(p, source, destinationFS, destination, callback)) {
+                files.add(p);
+                bytesToCopy += p.getSize();
+            }
+        }
+
+        syncJournal(callback);
+
+        callback.start(bytesToCopy);
+
+        int parallelism = getCopyParallelism();
+
+        if (parallelism > 1) {
+            copyFilesConcurrently(files, source, destinationFS, destination, mode, callback, parallelism);
+            return;
+        }
+
+        for (PathAttributes p : files) {
+
+            if (callback.isCancelled()) {
+                throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+            }
+
+            copyPlannedFile(p, source, destinationFS, destination, mode, callback);
+        }
+    }
+
+    /**
+     * Decide if a file of a recursive copy needs to be copied, and record it in the journal of the copy (if any).
+     *
+     * @param p
+     *            the attributes of the source file.
+     * @param source
+     *            the source directory of the recursive copy.
+     * @param destinationFS
+     *            the destination FileSystem.
+     * @param destination
+     *            the destination directory of the recursive copy.
+     * @param callback
+     *            the callback of the copy, which provides the journal.
+     * @return <code>false</code> if the journal shows the file has already been copied, <code>true</code> otherwise.
+     * @throws XenonException
+     *             If the journal could not be written.
+     */
+    private boolean planFile(PathAttributes p, Path source, FileSystem destinationFS, Path destination, CopyCallback callback) throws XenonException {
+
+        CopyJournal journal = callback.getJournal();
+
+        if (journal == null) {
+            return true;
+        }
+
+        Path rel = source.relativize(p.getPath());
+
+        if (journal.isCopied(rel, p.getSize(), p.getLastModifiedTime()) && destinationFS.exists(destination.resolve(rel))) {
+            return false;
+        }
+
+        try {
+            journal.planned(rel, p.getSize(), p.getLastModifiedTime());
+        } catch (IOException e) {
+            throw new XenonException(getAdaptorName(), "Failed to write copy journal " + journal.getFile(), e);
+        }
+
+        return true;
+    }
+
+    // Stores all entries written to the journal of the copy (if any).
+    private void syncJournal(CopyCallback callback) throws XenonException {
+
+        CopyJournal journal = callback.getJournal();
+
+        if (journal != null) {
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                throw new XenonException(getAdaptorName(), "Failed to write copy journal " + journal.getFile(), e);
+            }
+        }
+    }
+
+    /**
+     * Copy a file of a recursive copy, and record it as completed in the journal of the copy (if any).
+     *
+     * @param p
+     *            the attributes of the source file.
+     * @param source
+     *            the source directory of the recursive copy.
+     * @param destinationFS
+     *            the destination FileSystem.
+     * @param destination
+     *            the destination directory of the recursive copy.
+     * @param mode
+     *            the copy mode that determines how to react if the destination file already exists.
+     * @param callback
+     *            the callback of the copy.
+     * @throws XenonException
+     *             If the file could not be copied, or the journal could not be written.
+     */
+    private void copyPlannedFile(PathAttributes p, Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback)
+            throws XenonException {
+
+        Path rel = source.relativize(p.getPath());
+
+        copyFile(p.getPath(), destinationFS, destination.resolve(rel), mode, callback);
+
+        CopyJournal journal = callback.getJournal();
+
+        if (journal != null) {
+            try {
+                journal.copied(rel, p.getSize(), p.getLastModifiedTime());
+            } catch (IOException e) {
+                throw new XenonException(getAdaptorName(), "Failed to write copy journal " + journal.getFile(), e);
+            }
+        }
+    }
+
+    /**
+     * Make sure the destination directory <code>dst</code> of a recursive copy exists.
+     *
+     * @param destinationFS
+     *            the destination FileSystem.
+     * @param dst
+     *            the destination directory.
+     * @param mode
+     *            the copy mode that determines how to react if the destination directory already exists.
+     * @return <code>false</code> if the directory already exists and the mode is {@link CopyMode#IGNORE}, <code>true</code> otherwise.
+     * @throws XenonException
+     *             if the directory already exists and the mode is {@link CopyMode#CREATE}, or the directory could not be created.
+     */
+    private boolean prepareDirectory(FileSystem destinationFS, Path dst, CopyMode mode) throws XenonException {
+
+        if (destinationFS.exists(dst)) {
+            if (destinationFS.getAttributes(dst).isDirectory()) {
+                switch (mode) {
+                case CREATE:
+                    throw new PathAlreadyExistsException(getAdaptorName(), "Directory already exists: " + dst);
+                case REPLACE:
+                case RESUME:
+                case DELTA:
+                    break; // leave directory
+                case IGNORE:
+                    return false;
+                }
+            } else {
+                destinationFS.delete(dst, true);
+            }
+        } else {
+            destinationFS.createDirectories(dst);
+        }
+
+        return true;
+    }
+
+    /**
+     * Recursively copy a directory, transferring files while the source directory is still being listed.
+     *
+     * The source is listed lazily using {@link #walk(Path)}. Each file is handed to one of <code>copy.parallelism</code> worker threads as soon as it is
+     * listed, and its size is added to the number of bytes to copy. Directories are created before any of their content is listed. As in
+     * {@link #copyRecursive(Path, FileSystem, Path, CopyMode, CopyCallback)}, the journal entry of a file is stored before the file is transferred, and the
+     * copy stops if a destination directory already exists and the mode is {@link CopyMode#IGNORE}. In that case no further files are submitted, but
+     * the transfers that were already submitted are completed before returning.
+     *
+     * Like {@link #runConcurrently(List, int, String)}, the worker threads belong to this copy only, so the whole copy counts as a single transfer in
+     * the {@link TransferManager}.
+     *
+     * @param source
+     *            the source directory on this FileSystem.
+     * @param destinationFS
+     *            the destination FileSystem.
+     * @param destination
+     *            the destination directory.
+     * @param mode
+     *            the copy mode that determines how to react if a destination path already exists.
+     * @param callback
+     *            a {@link CopyCallback} used to return status information on the copy.
+     * @throws XenonException
+     *             if one of the transfers failed or the copy was cancelled.
+     */
+    private void copyRecursivePipelined(Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback)
+            throws XenonException {
+
+        callback.start(0);
+
+        ExecutorService workers = Executors.newFixedThreadPool(getCopyParallelism(), new DaemonThreadFactory("CopyWorker." + uniqueID));
+        CompletionService<Void> completion = new ExecutorCompletionService<>(workers);
+
+        int submitted = 0;
+        int completed = 0;
+        boolean finished = false;
+
+        try {
+            for (PathAttributes p : walk(source)) {
+
+                if (callback.isCancelled()) {
+                    throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                }
+
+                // Report failed transfers as soon as possible.
+                for (Future<Void> done = completion.poll(); done != null; done = completion.poll()) {
+                    done.get();
+                    completed++;
+                }
+
+                final Path dst = destination.resolve(source.relativize(p.getPath()));
+
+                if (p.isDirectory()) {
+                    if (!prepareDirectory(destinationFS, dst, mode)) {
+                        syncJournal(callback);
+                        break; // ignore subdir, but let the submitted transfers finish
+                    }
+                } else if (p.isRegular() && planFile(p, source, destinationFS, destination, callback)) {
+
+                    syncJournal(callback);
+                    callback.addBytesToCopy(p.getSize());
+
+                    completion.submit(() -> {
+
+                        if (callback.isCancelled()) {
+                            throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                        }
+
+                        copyPlannedFile(p, source, destinationFS, destination, mode, callback);
+                        return null;
+                    });
+
+                    submitted++;
+                }
+            }
+
+            while (completed < submitted) {
+                completion.take().get();
+                completed++;
+            }
+
+            finished = true;
+        } catch (XenonRuntimeException e) {
+            // Thrown by the walk if a directory could not be listed.
+            if (e.getCause() instanceof XenonException) {
+                throw (XenonException) e.getCause();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof XenonException) {
+                throw (XenonException) cause;
+            }
+            throw new XenonException(getAdaptorName(), "Concurrent copy failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CopyCancelledException(getAdaptorName(), "Copy interrupted by user");
+        } finally {
+            if (finished) {
+                workers.shutdown();
+            } else {
+                // Stops any transfers that are still running or queued.
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Copy all regular files in <code>listing</code> using <code>parallelism</code> concurrent transfers.
+     *
+     * All transfers report to the same <code>callback</code>. If one of the transfers fails, or the copy is cancelled, all remaining transfers are stopped.
+     *
+     * @param listing
+     *            the (recursive) listing of the source directory.
+     * @param source
+     *            the source directory on this FileSystem.
+     * @param destinationFS
+     *            the destination FileSystem.
+     * @param destination
+     *            the destination directory.
+     * @param mode
+     *            the copy mode that determines how to react if a destination file already exists.
+     * @param callback
+     *            a {@link CopyCallback} used to return status information on the copy.
+     * @param parallelism
+     *            the number of files to transfer concurrently.
+     * @throws XenonException
+     *             if one of the transfers failed or the copy was cancelled.
+     */
+    private void copyFilesConcurrently(Iterable<PathAttributes> listing, Path source, FileSystem destinationFS, Path destination, CopyMode mode,
+            CopyCallback callback, int parallelism) throws XenonException {
+
+        List<Callable<Void>> transfers = new ArrayList<>();
+
+        for (PathAttributes p : listing) {
+            if (p.isRegular()) {
+                transfers.add(() -> {
+
+                    if (callback.isCancelled()) {
+                        throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                    }
+
+                    copyPlannedFile(p, source, destinationFS, destination, mode, callback);
+                    return null;
+                });
+            }
+        }
+
+        runConcurrently(transfers, parallelism, "CopyWorker.");
+    }
+
+    /**
+     * Run <code>tasks</code> using at most <code>parallelism</code> threads, and wait until they are all done.
+     *
+     * The threads are private to the calling copy. They are not taken from the {@link TransferManager}, and the tasks do not count towards its
+     * maximum number of transfers or its host limits.
+     *
+     * If one of the tasks fails, or the current thread is interrupted, all remaining tasks are stopped.
+     *
+     * @param tasks
+     *            the tasks to run.
+     * @param parallelism
+     *            the maximum number of tasks to run at the same time.
+     * @param threadName
+     *            the prefix of the names of the threads used to run the tasks.
+     * @throws XenonException
+     *             if one of the tasks failed or the current thread was interrupted.
+     */
+    private void runConcurrently(List<Callable<Void>> tasks, int parallelism, String threadName) throws XenonException {
+
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()), new DaemonThreadFactory(threadName + uniqueID));
+        CompletionService<Void> completion = new ExecutorCompletionService<>(workers);
+
+        try {
+            for (Callable<Void> task : tasks) {
+                completion.submit(task);
+            }
+
+            for (int i = 0; i < tasks.size(); i++) {
+                completion.take().get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof XenonException) {
+                throw (XenonException) cause;
+            }
+            throw new XenonException(getAdaptorName(), "Concurrent copy failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CopyCancelledException(getAdaptorName(), "Copy interrupted by user");
+        } finally {
+            // Stops any tasks that are still running or queued.
+            workers.shutdownNow();
+        }
+    }
+
+    private int getCopyParallelism() throws XenonException {
+        return getIntegerProperty(COPY_PARALLELISM, 1);
+    }
+
+    private int getCopyStreams() throws XenonException {
+        return getIntegerProperty(COPY_STREAMS, 1);
+    }
+
+    /**
+     * Get the rate limiters of this FileSystem, as configured by the <code>copy.rate</code>, <code>copy.rate.host</code> and <code>copy.rate.burst</code>
+     * properties.
+     *
+     * The host rate limiter is shared by all FileSystems connected to the same host. It is created by the first FileSystem that uses it, so its rate is
+     * determined by the properties of that FileSystem. A warning is logged if a later FileSystem of the same host asks for a different rate. As the limits
+     * are applied to the streams of each FileSystem, a copy between two FileSystems of the same host counts against the host rate twice, once for reading
+     * and once for writing.
+     *
+     * @return the rate limiters of this FileSystem, which may be empty.
+     * @throws XenonException
+     *             if the rate properties cannot be read.
+     */
+    private synchronized List<RateLimiter> getRateLimiters() throws XenonException {
+
+        if (rateLimiters == null) {
+
+            long rate = getSizeProperty(COPY_RATE, 0);
+            long hostRate = getSizeProperty(COPY_RATE_HOST, 0);
+            long burst = getSizeProperty(COPY_RATE_BURST, 0);
+
+            List<RateLimiter> result = new ArrayList<>(2);
+
+            if (rate > 0) {
+                result.add(new RateLimiter(rate, burst > 0 ? burst : rate));
+            }
+
+            if (hostRate > 0) {
+                result.add(RateLimiter.shared(getHost(location), hostRate, burst > 0 ? burst : hostRate));
+            }
+
+            rateLimiters = result;
+        }
+
+        return rateLimiters;
+    }
+
+    /**
+     * Wrap a stream that reads from this FileSystem, so it is read no faster than the <code>copy.rate</code> and <code>copy.rate.host</code> properties
+     * allow.
+     *
+     * Adaptors that support these properties should call this method for the streams returned by {@link #readFromFile(Path)} and
+     * {@link #readFromFile(Path, long)}. This limits both the copies of this FileSystem and the users of the streams. If no rate is set, <code>in</code> is
+     * returned unchanged.
+     *
+     * @param in
+     *            the stream to limit.
+     * @return the rate limited stream.
+     * @throws XenonException
+     *             if the rate properties cannot be read.
+     */
+    protected InputStream limitRate(InputStream in) throws XenonException {
+
+        List<RateLimiter> limiters = getRateLimiters();
+
+        if (limiters.isEmpty()) {
+            return in;
+        }
+
+        return new RateLimitedInputStream(in, limiters);
+    }
+
+    /**
+     * Wrap a stream that writes to this FileSystem, so it is written no faster than the <code>copy.rate</code> and <code>copy.rate.host</code> properties
+     * allow.
+     *
+     * Adaptors that support these properties should call this method for the streams returned by {@link #writeToFile(Path, long)},
+     * {@link #appendToFile(Path)} and {@link #writeToFileAt(Path, long)}. If no rate is set, <code>out</code> is returned unchanged.
+     *
+     * @param out
+     *            the stream to limit.
+     * @return the rate limited stream.
+     * @throws XenonException
+     *             if the rate properties cannot be read.
+     */
+    protected OutputStream limitRate(OutputStream out) throws XenonException {
+
+        List<RateLimiter> limiters = getRateLimiters();
+
+        if (limiters.isEmpty()) {
+            return out;
+        }
+
+        return new RateLimitedOutputStream(out, limiters);
+    }
+
+    /**
+     * Extract the host (and port) from a location, such as <code>host:port/workdir</code> or <code>https://host/path</code>.
+     *
+     * @param location
+     *            the location to extract the host from.
+     * @return the host part of the location, or an empty string if the location is <code>null</code>.
+     */
+    static String getHost(String location) {
+
+        if (location == null) {
+            return "";
+        }
+
+        String host = location;
+
+        int index = host.indexOf("://");
+
+        if (index >= 0) {
+            host = host.substring(index + 3);
+        }
+
+        index = host.indexOf('/');
+
+        if (index >= 0) {
+            host = host.substring(0, index);
+        }
+
+        index = host.lastIndexOf('@');
+
+        if (index >= 0) {
+            host = host.substring(index + 1);
+        }
+
+        return host.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Retrieve the value of an integer property of this FileSystem.
+     *
+     * The <code>name</code> is relative to the property prefix of the adaptor (for example <code>"copy.parallelism"</code>). If the adaptor does not support
+     * the property, <code>defaultValue</code> is returned.
+     *
+     * @param name
+     *            the name of the property, relative to the adaptor prefix.
+     * @param defaultValue
+     *            the value to return if the property is not supported.
+     * @return the value of the property.
+     * @throws XenonException
+     *             if the property has an invalid value.
+     */
+    protected int getIntegerProperty(String name, int defaultValue) throws XenonException {
+
+        String key = FileAdaptor.ADAPTORS_PREFIX + adaptor + "." + name;
+
+        if (properties == null || !properties.supportsProperty(key)) {
+            return defaultValue;
+        }
+
+        return properties.getIntegerProperty(key);
+    }
+
+    /**
+     * Retrieve the value of a boolean property of this FileSystem.
+     *
+     * See {@link #getIntegerProperty(String, int)} for the use of <code>name</code> and <code>defaultValue</code>.
+     *
+     * @param name
+     *            the name of the property, relative to the adaptor prefix.
+     * @param defaultValue
+     *            the value to return if the property is not supported.
+     * @return the value of the property.
+     * @throws XenonException
+     *             if the property has an invalid value.
+     */
+    protected boolean getBooleanProperty(String name, boolean defaultValue) throws XenonException {
+
+        String key = FileAdaptor.ADAPTORS_PREFIX + adaptor + "." + name;
+
+        if (properties == null || !properties.supportsProperty(key)) {
+            return defaultValue;
+        }
+
+        return properties.getBooleanProperty(key);
+    }
+
+    /**
+     * Retrieve the value of a size property of this FileSystem.
+     *
+     * See {@link #getIntegerProperty(String, int)} for the use of <code>name</code> and <code>defaultValue</code>.
+     *
+     * @param name
+     *            the name of the property, relative to the adaptor prefix.
+     * @param defaultValue
+     *            the value to return if the property is not supported.
+     * @return the value of the property in bytes.
+     * @throws XenonException
+     *             if the property has an invalid value.
+     */
+    protected long getSizeProperty(String name, long defaultValue) throws XenonException {
+
+        String key = FileAdaptor.ADAPTORS_PREFIX + adaptor + "." + name;
+
+        if (properties == null || !properties.supportsProperty(key)) {
+            return defaultValue;
+        }
+
+        return properties.getSizeProperty(key);
+    }
+
+    /**
+     * Delete a file. Is only called on existing files
+     *
+     * This operation must be implemented by the various implementations of FileSystem.
+     *
+     * @param file
+     *            the file to remove
+     * @throws InvalidPathException
+     *             if the provided path is not a file.
+     * @throws NoSuchPathException
+     *             if the provided file does not exist.
+     * @throws XenonException
+     *             If the file could not be removed.
+     */
+    protected abstract void deleteFile(Path file) throws XenonException;
+
+    /**
+     * Delete an empty directory. Is only called on empty directories
+     *
+     * This operation can only delete empty directories (analogous to <code>rmdir</code> in Linux).
+     *
+     * This operation must be implemented by the various implementations of FileSystem.
      *
      * @param path
      *            the directory to remove
@@ -1338,6 +2947,7 @@ public abstract class FileSystem implements AutoCloseable {
         for (PathAttributes p : tmp) {
             if (!isDotDot(p.getPath())) {
                 list.add(p);
+                cacheAttributes(p);
             }
         }
 
@@ -1351,6 +2961,90 @@ public abstract class FileSystem implements AutoCloseable {
         }
     }
 
+    /**
+     * Returns a recursive listing of the entries in a directory <code>dir</code>, listing sibling subdirectories concurrently.
+     *
+     * The directories are listed by a {@link ForkJoinPool} with the given parallelism, using <code>listDirectory</code> to provide listings of individual
+     * directories. The entries are returned in the same order as {@link #list(Path, ArrayList, boolean)} would return them.
+     *
+     * @param dir
+     *            the directory to list.
+     * @param list
+     *            the list to which the directory entries will be added.
+     * @param parallelism
+     *            the maximum number of directories to list concurrently.
+     * @throws XenonException
+     *             If the list could not be retrieved.
+     */
+    private void listConcurrently(Path dir, ArrayList<PathAttributes> list, int parallelism) throws XenonException {
+
+        ForkJoinPool workers = new ForkJoinPool(parallelism);
+
+        try {
+            list.addAll(workers.invoke(new ListTask(dir)));
+        } catch (XenonRuntimeException e) {
+            if (e.getCause() instanceof XenonException) {
+                throw (XenonException) e.getCause();
+            }
+            throw e;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Lists a single directory, and forks a new task for each of its subdirectories.
+     */
+    private class ListTask extends RecursiveTask<List<PathAttributes>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+
+        ListTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected List<PathAttributes> compute() {
+
+            Iterable<PathAttributes> tmp;
+
+            try {
+                tmp = listDirectory(dir);
+            } catch (XenonException e) {
+                throw new XenonRuntimeException(getAdaptorName(), "Failed to list directory: " + dir, e);
+            }
+
+            ArrayList<PathAttributes> result = new ArrayList<>();
+            ArrayList<ListTask> subdirs = new ArrayList<>();
+
+            for (PathAttributes p : tmp) {
+                // traverse subdirs provided they are not "." or "..".
+                if (!isDotDot(p.getPath())) {
+                    result.add(p);
+                    cacheAttributes(p);
+
+                    if (p.isDirectory()) {
+                        subdirs.add(new ListTask(dir.resolve(p.getPath().getFileNameAsString())));
+                    }
+                }
+            }
+
+            invokeAll(subdirs);
+
+            for (ListTask t : subdirs) {
+                result.addAll(t.join());
+            }
+
+            return result;
+        }
+    }
+
+    private int getListParallelism() throws XenonException {
+        return getIntegerProperty(LIST_PARALLELISM, 1);
+    }
+
     /**
      * Asynchronously Copy an existing source path to a target path on a different file system.
      *
@@ -1358,10 +3052,113 @@ public abstract class FileSystem implements AutoCloseable {
      *
      * If the source path is a directory, it will only be copied if <code>recursive</code> is set to <code>true</code>. Otherwise, an exception will be thrown.
      * When copying recursively, the directory and its content (both files and subdirectories with content), will be copied to <code>destination</code>.
+     * The files are transferred one at a time, unless the <code>copy.parallelism</code> property of the adaptor is set to a larger value.
+     * Files larger than the <code>copy.streams.threshold</code> property are split into <code>copy.streams</code> byte ranges that are transferred
+     * concurrently, provided the destination file system supports {@link #writeToFileAt(Path, long)}.
+     * The transfer rate is limited by the <code>copy.rate</code> and <code>copy.rate.host</code> properties of both file systems, if set.
+     * If the <code>copy.pipeline</code> property is set, files are transferred while the source directory is still being listed, and the number of bytes
+     * to copy grows as the listing progresses.
      *
      * Exceptions that occur during copying will not be thrown by this function, but instead are contained in a {@link CopyStatus} object which can be obtained
      * with {@link FileSystem#getStatus(String)}
      *
+     * The copy is queued in the {@link TransferManager} with the default priority. The limits of the TransferManager count the copy as a whole, no matter
+     * how many files or byte ranges it transfers concurrently.
+     *
+     * @param source
+     *            the source path (on this filesystem) to copy from.
+     * @param destinationFS
+     *            the destination filesystem to copy to.
+     * @param destination
+     *            the destination path (on the destination filesystem) to copy to.
+     * @param mode
+     *            how to react if the destination already exists.
+     * @param recursive
+     *            if the copy should be recursive.
+     *
+     * @return a {@link String} that identifies this copy and be used to inspect its progress.
+     *
+     * @throws IllegalArgumentException
+     *             If source, destinationFS, destination or mode is null.
+     */
+    public String copy(final Path source, final FileSystem destinationFS, final Path destination, final CopyMode mode, final boolean recursive) {
+        return copy(source, destinationFS, destination, mode, recursive, TransferManager.DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Asynchronously Copy an existing source path to a target path on a different file system, using the given priority.
+     *
+     * This is the same as {@link #copy(Path, FileSystem, Path, CopyMode, boolean)}, except that the copy is queued in the {@link TransferManager} with the
+     * given priority. Queued copies with a higher priority are started before those with a lower priority.
+     *
+     * @param source
+     *            the source path (on this filesystem) to copy from.
+     * @param destinationFS
+     *            the destination filesystem to copy to.
+     * @param destination
+     *            the destination path (on the destination filesystem) to copy to.
+     * @param mode
+     *            how to react if the destination already exists.
+     * @param recursive
+     *            if the copy should be recursive.
+     * @param priority
+     *            the priority of the copy.
+     *
+     * @return a {@link String} that identifies this copy and be used to inspect its progress.
+     *
+     * @throws IllegalArgumentException
+     *             If source, destinationFS, destination or mode is null.
+     */
+    public String copy(final Path source, final FileSystem destinationFS, final Path destination, final CopyMode mode, final boolean recursive,
+            final int priority) {
+        return copy(source, destinationFS, destination, mode, recursive, priority, null);
+    }
+
+    /**
+     * Asynchronously Copy an existing source path to a target path on a different file system, using the given priority, and verify the copied data.
+     *
+     * This is the same as {@link #copy(Path, FileSystem, Path, CopyMode, boolean, int)}, except that every copied file is verified using the checksum
+     * algorithm <code>verify</code>. The checksum of the source is computed while the data is transferred. Once a file is copied, its checksum is computed by
+     * the destination file system (remotely, if the adaptor supports it, see {@link #checksum(Path, ChecksumAlgorithm)}) and compared to the source. If the
+     * data is not transferred through this JVM (for example when the server copies the file, or the mode is {@link CopyMode#RESUME}), the checksum of the
+     * source is computed separately.
+     *
+     * If the checksums differ, the copy fails with a {@link ChecksumMismatchException}. If a single file was copied, the verified checksum is available
+     * through {@link CopyStatus#getVerifiedChecksum()}. Files skipped because of {@link CopyMode#IGNORE} are not verified.
+     *
+     * @param source
+     *            the source path (on this filesystem) to copy from.
+     * @param destinationFS
+     *            the destination filesystem to copy to.
+     * @param destination
+     *            the destination path (on the destination filesystem) to copy to.
+     * @param mode
+     *            how to react if the destination already exists.
+     * @param recursive
+     *            if the copy should be recursive.
+     * @param priority
+     *            the priority of the copy.
+     * @param verify
+     *            the checksum algorithm used to verify the copy, or <code>null</code> to copy without verification.
+     *
+     * @return a {@link String} that identifies this copy and be used to inspect its progress.
+     *
+     * @throws IllegalArgumentException
+     *             If source, destinationFS, destination or mode is null.
+     */
+    public String copy(final Path source, final FileSystem destinationFS, final Path destination, final CopyMode mode, final boolean recursive,
+            final int priority, final ChecksumAlgorithm verify) {
+        return copy(source, destinationFS, destination, mode, recursive, priority, verify, null);
+    }
+
+    /**
+     * Asynchronously Copy an existing source path to a target path on a different file system, using the given priority, verification and journal.
+     *
+     * This is the same as {@link #copy(Path, FileSystem, Path, CopyMode, boolean, int, ChecksumAlgorithm)}, except that a recursive copy records its
+     * progress in <code>journal</code>. If the copy is interrupted (for example because the JVM died), it can be continued by starting a new copy with the
+     * same journal, which skips the files that were already copied completely. See {@link CopyJournal} for details. The journal is not used when copying a
+     * single file.
+     *
      * @param source
      *            the source path (on this filesystem) to copy from.
      * @param destinationFS
@@ -1372,13 +3169,20 @@ public abstract class FileSystem implements AutoCloseable {
      *            how to react if the destination already exists.
      * @param recursive
      *            if the copy should be recursive.
+     * @param priority
+     *            the priority of the copy.
+     * @param verify
+     *            the checksum algorithm used to verify the copy, or <code>null</code> to copy without verification.
+     * @param journal
+     *            the journal of the copy, or <code>null</code> to copy without a journal.
      *
      * @return a {@link String} that identifies this copy and be used to inspect its progress.
      *
      * @throws IllegalArgumentException
      *             If source, destinationFS, destination or mode is null.
      */
-    public synchronized String copy(final Path source, final FileSystem destinationFS, final Path destination, final CopyMode mode, final boolean recursive) {
+    public synchronized String copy(final Path source, final FileSystem destinationFS, final Path destination, final CopyMode mode, final boolean recursive,
+            final int priority, final ChecksumAlgorithm verify, final CopyJournal journal) {
 
         if (source == null) {
             throw new IllegalArgumentException("Source path is null");
@@ -1398,9 +3202,10 @@ public abstract class FileSystem implements AutoCloseable {
 
         String copyID = getNextCopyID();
 
-        final CopyCallback callback = new CopyCallback();
+        final CopyCallback callback = new CopyCallback(verify, journal);
+        final CompletableFuture<Void> done = new CompletableFuture<>();
 
-        Future<Void> future = pool.submit(() -> {
+        Future<Void> future = TransferManager.getInstance().submit(() -> {
 
             if (Thread.currentThread().isInterrupted()) {
                 throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
@@ -1408,12 +3213,209 @@ public abstract class FileSystem implements AutoCloseable {
 
             performCopy(toAbsolutePath(source), destinationFS, toAbsolutePath(destination), mode, recursive, callback);
             return null;
-        });
+        }, () -> done.complete(null), priority, this, getHost(location), getHost(destinationFS.getLocation()));
 
-        pendingCopies.put(copyID, new PendingCopy(future, callback));
+        pendingCopies.put(copyID, new PendingCopy(future, callback, done));
         return copyID;
     }
 
+    /**
+     * Get a {@link CompletableFuture} that completes when the copy <code>copyIdentifier</code> has completed, failed or was cancelled.
+     *
+     * The future completes normally in all cases. Use {@link #waitUntilDone(String, long)} or {@link #getStatus(String)} to retrieve the outcome.
+     *
+     * @param copyIdentifier
+     *            the identifier of the copy.
+     * @return a future that completes when the copy is done.
+     * @throws NoSuchCopyException
+     *             If the copy is not known.
+     */
+    synchronized CompletableFuture<Void> whenCopyDone(String copyIdentifier) throws NoSuchCopyException {
+
+        PendingCopy copy = pendingCopies.get(copyIdentifier);
+
+        if (copy == null) {
+            throw new NoSuchCopyException(getAdaptorName(), "Copy not found: " + copyIdentifier);
+        }
+
+        return copy.done;
+    }
+
+    /**
+     * Synchronize the directory <code>destination</code> on <code>destinationFS</code> with the directory <code>source</code> on this file system.
+     *
+     * The recursive listings of both directories are compared, and only the files that are missing in the destination, or that differ from the source, are
+     * copied. A file is considered changed if its size differs, or if the source was modified after the destination. Directories missing in the destination
+     * are created. Destination entries whose type differs from the source (for example a file where the source has a directory) are replaced.
+     *
+     * If <code>mirror</code> is set, destination entries that do not exist in the source are deleted.
+     *
+     * Symbolic links in the source are not followed or copied, and are counted as skipped.
+     *
+     * Unlike {@link #copy(Path, FileSystem, Path, CopyMode, boolean)}, this method blocks until the synchronization is complete. The files are transferred as
+     * in a recursive copy, so the <code>copy.parallelism</code> and <code>copy.streams</code> properties apply.
+     *
+     * @param source
+     *            the source directory (on this filesystem) to synchronize from.
+     * @param destinationFS
+     *            the destination filesystem to synchronize to.
+     * @param destination
+     *            the destination directory (on the destination filesystem) to synchronize to. It is created if it does not exist.
+     * @param mirror
+     *            if destination entries that do not exist in the source should be deleted.
+     *
+     * @return a {@link SyncResult} with the number of files skipped, transferred and deleted.
+     *
+     * @throws NoSuchPathException
+     *             If the source directory does not exist.
+     * @throws InvalidPathException
+     *             If the source or an existing destination is not a directory.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If source, destinationFS or destination is null.
+     */
+    public SyncResult sync(Path source, FileSystem destinationFS, Path destination, boolean mirror) throws XenonException {
+
+        if (destinationFS == null) {
+            throw new IllegalArgumentException("Destination filesystem is null");
+        }
+
+        assertNotNull(source);
+        assertNotNull(destination);
+
+        Path absSource = toAbsolutePath(source);
+        Path absDestination = destinationFS.toAbsolutePath(destination);
+
+        assertDirectoryExists(absSource);
+
+        // Index the existing destination entries by their path relative to the destination directory.
+        HashMap<Path, PathAttributes> existing = new HashMap<>();
+
+        if (destinationFS.exists(absDestination)) {
+            destinationFS.assertPathIsDirectory(absDestination);
+
+            for (PathAttributes p : destinationFS.list(absDestination, true)) {
+                existing.put(absDestination.relativize(p.getPath()), p);
+            }
+        } else {
+            destinationFS.createDirectories(absDestination);
+        }
+
+        Iterable<PathAttributes> listing = list(absSource, true);
+
+        HashSet<Path> inSource = new HashSet<>();
+        HashSet<Path> replacedDirs = new HashSet<>();
+        ArrayList<PathAttributes> changed = new ArrayList<>();
+
+        long skipped = 0;
+        long bytesToCopy = 0;
+
+        for (PathAttributes p : listing) {
+
+            Path rel = absSource.relativize(p.getPath());
+            Path dst = absDestination.resolve(rel);
+            PathAttributes current = existing.get(rel);
+
+            inSource.add(rel);
+
+            if (p.isDirectory()) {
+                if (current == null) {
+                    destinationFS.createDirectory(dst);
+                } else if (!current.isDirectory()) {
+                    destinationFS.delete(dst, false);
+                    destinationFS.createDirectory(dst);
+                }
+            } else if (p.isRegular()) {
+                if (current != null && current.isRegular() && current.getSize() == p.getSize()
+                        && current.getLastModifiedTime() >= p.getLastModifiedTime()) {
+                    skipped++;
+                } else {
+                    if (current != null && current.isDirectory()) {
+                        destinationFS.delete(dst, true);
+                        replacedDirs.add(rel);
+                    }
+                    changed.add(p);
+                    bytesToCopy += p.getSize();
+                }
+            } else {
+                skipped++;
+            }
+        }
+
+        long deleted = 0;
+
+        if (mirror) {
+            deleted = deleteNotInSource(existing, inSource, replacedDirs, destinationFS, absDestination);
+        }
+
+        CopyCallback callback = new CopyCallback();
+        callback.start(bytesToCopy);
+
+        int parallelism = getCopyParallelism();
+
+        if (parallelism > 1) {
+            copyFilesConcurrently(changed, absSource, destinationFS, absDestination, CopyMode.REPLACE, callback, parallelism);
+        } else {
+            for (PathAttributes p : changed) {
+                copyFile(p.getPath(), destinationFS, absDestination.resolve(absSource.relativize(p.getPath())), CopyMode.REPLACE, callback);
+            }
+        }
+
+        return new SyncResultImplementation(skipped, changed.size(), deleted, callback.getBytesCopied());
+    }
+
+    // Deletes the destination entries that do not exist in the source, and returns the number of files (not directories) that were deleted. Entries
+    // below replacedDirs have already been removed together with their directory.
+    private long deleteNotInSource(Map<Path, PathAttributes> existing, Set<Path> inSource, Set<Path> replacedDirs, FileSystem destinationFS,
+            Path destination) throws XenonException {
+
+        HashSet<Path> deletedDirs = new HashSet<>(replacedDirs);
+        long deleted = 0;
+
+        // The listing is not ordered, so first determine the topmost directories to delete.
+        for (Map.Entry<Path, PathAttributes> e : existing.entrySet()) {
+            if (e.getValue().isDirectory() && !inSource.contains(e.getKey())) {
+                deletedDirs.add(e.getKey());
+            }
+        }
+
+        for (Map.Entry<Path, PathAttributes> e : existing.entrySet()) {
+
+            Path rel = e.getKey();
+
+            if (inSource.contains(rel)) {
+                continue;
+            }
+
+            if (!e.getValue().isDirectory()) {
+                deleted++;
+            }
+
+            if (!hasAncestorIn(rel, deletedDirs)) {
+                destinationFS.delete(destination.resolve(rel), true);
+            }
+        }
+
+        return deleted;
+    }
+
+    private boolean hasAncestorIn(Path path, Set<Path> dirs) {
+
+        Path parent = path.getParent();
+
+        while (parent != null) {
+            if (dirs.contains(parent)) {
+                return true;
+            }
+            parent = parent.getParent();
+        }
+
+        return false;
+    }
+
     /**
      * Cancel a copy operation. Afterwards, the copy is forgotten and subsequent queries with this copy string will lead to {@link NoSuchCopyException}
      *
@@ -1461,7 +3463,8 @@ public abstract class FileSystem implements AutoCloseable {
             state = "FAILED";
             Thread.currentThread().interrupt();
         }
-        return new CopyStatusImplementation(copyIdentifier, state, copy.callback.getBytesToCopy(), copy.callback.getBytesCopied(), ex);
+        return new CopyStatusImplementation(copyIdentifier, state, copy.callback.getBytesToCopy(), copy.callback.getBytesCopied(), ex,
+                copy.callback.getVerifiedChecksum());
     }
 
     /**
@@ -1536,7 +3539,8 @@ public abstract class FileSystem implements AutoCloseable {
             pendingCopies.remove(copyIdentifier);
         }
 
-        return new CopyStatusImplementation(copyIdentifier, state, copy.callback.getBytesToCopy(), copy.callback.getBytesCopied(), ex);
+        return new CopyStatusImplementation(copyIdentifier, state, copy.callback.getBytesToCopy(), copy.callback.getBytesCopied(), ex,
+                copy.callback.getVerifiedChecksum());
     }
 
     /**
@@ -1594,7 +3598,163 @@ public abstract class FileSystem implements AutoCloseable {
             state = "RUNNING";
         }
 
-        return new CopyStatusImplementation(copyIdentifier, state, copy.callback.getBytesToCopy(), copy.callback.getBytesCopied(), ex);
+        return new CopyStatusImplementation(copyIdentifier, state, copy.callback.getBytesToCopy(), copy.callback.getBytesCopied(), ex,
+                copy.callback.getVerifiedChecksum());
+    }
+
+    /**
+     * Returns the attribute cache of this FileSystem, or <code>null</code> if caching is disabled.
+     *
+     * The cache is enabled by setting the <code>cache.size</code> property of the adaptor to a value larger than 0. Entries expire after
+     * <code>cache.ttl</code> milliseconds.
+     *
+     * @return the attribute cache, or <code>null</code> if caching is disabled.
+     * @throws XenonException
+     *             if the cache properties cannot be read.
+     */
+    private synchronized AttributeCache getAttributeCache() throws XenonException {
+
+        if (!attributeCacheConfigured) {
+
+            int size = getIntegerProperty(CACHE_SIZE, 0);
+            int ttl = getIntegerProperty(CACHE_TTL, DEFAULT_CACHE_TTL);
+
+            if (size > 0) {
+                attributeCache = new AttributeCache(size, ttl);
+            }
+
+            attributeCacheConfigured = true;
+        }
+
+        return attributeCache;
+    }
+
+    /**
+     * Tests if a path exists, using the attribute cache if it is enabled.
+     *
+     * @param path
+     *            the (absolute) path to test.
+     * @return If the path exists.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     */
+    protected boolean cachedExists(Path path) throws XenonException {
+
+        AttributeCache cache = getAttributeCache();
+
+        if (cache == null) {
+            return exists(path);
+        }
+
+        Boolean cached = cache.exists(path);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        boolean result = exists(path);
+        cache.putExists(path, result);
+        return result;
+    }
+
+    /**
+     * Get the {@link PathAttributes} of an existing path, using the attribute cache if it is enabled.
+     *
+     * @param path
+     *            the existing (absolute) path.
+     * @return the attributes of the path.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     */
+    protected PathAttributes cachedAttributes(Path path) throws XenonException {
+
+        AttributeCache cache = getAttributeCache();
+
+        if (cache == null) {
+            return getAttributes(path);
+        }
+
+        PathAttributes result = cache.getAttributes(path);
+
+        if (result == null) {
+            result = getAttributes(path);
+
+            if (result != null) {
+                cache.putAttributes(path, result);
+            }
+        }
+
+        return result;
+    }
+
+    // Returns the attribute cache if it has already been configured, without reading the properties.
+    private synchronized AttributeCache configuredAttributeCache() {
+        return attributeCache;
+    }
+
+    private void cacheAttributes(PathAttributes attributes) {
+
+        AttributeCache cache = configuredAttributeCache();
+
+        if (cache != null) {
+            cache.putAttributes(attributes.getPath(), attributes);
+        }
+    }
+
+    /**
+     * Remove a path, all paths below it, and its parent from the attribute cache.
+     *
+     * Adaptors that support the <code>cache.size</code> property must call this method in any operation that creates, changes or removes <code>path</code>.
+     * Deletes are handled by {@link #delete(Path, boolean)}.
+     *
+     * @param path
+     *            the (absolute) path that was changed.
+     */
+    protected void invalidateCachedAttributes(Path path) {
+
+        AttributeCache cache = configuredAttributeCache();
+
+        if (cache != null) {
+            cache.invalidate(path);
+        }
+    }
+
+    /**
+     * Wrap a stream that writes to <code>path</code>, so that <code>path</code> is also removed from the attribute cache when the stream is closed.
+     *
+     * The size and modification time of a file change while it is written, so adaptors should call this method for the streams returned by
+     * {@link #writeToFile(Path, long)}, {@link #appendToFile(Path)} and {@link #writeToFileAt(Path, long)}. If the cache is disabled, <code>out</code> is
+     * returned unchanged.
+     *
+     * @param path
+     *            the (absolute) path the stream writes to.
+     * @param out
+     *            the stream that writes to <code>path</code>.
+     * @return a stream that invalidates <code>path</code> when it is closed.
+     * @throws XenonException
+     *             if the cache properties cannot be read.
+     */
+    protected OutputStream invalidateCachedAttributesOnClose(Path path, OutputStream out) throws XenonException {
+
+        if (getAttributeCache() == null) {
+            return out;
+        }
+
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    invalidateCachedAttributes(path);
+                }
+            }
+        };
     }
 
     protected void assertNotNull(Path path) {
@@ -1603,11 +3763,17 @@ public abstract class FileSystem implements AutoCloseable {
         }
     }
 
+    protected void assertValidOffset(long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset may not be negative: " + offset);
+        }
+    }
+
     protected void assertPathExists(Path path) throws XenonException {
 
         assertNotNull(path);
 
-        if (!exists(path)) {
+        if (!cachedExists(path)) {
             throw new NoSuchPathException(getAdaptorName(), "Path does not exist: " + path);
         }
     }
@@ -1616,7 +3782,7 @@ public abstract class FileSystem implements AutoCloseable {
 
         assertNotNull(path);
 
-        if (exists(path)) {
+        if (cachedExists(path)) {
             throw new PathAlreadyExistsException(getAdaptorName(), "Path already exists: " + path);
         }
     }
@@ -1625,9 +3791,9 @@ public abstract class FileSystem implements AutoCloseable {
 
         assertNotNull(path);
 
-        if (exists(path)) {
+        if (cachedExists(path)) {
 
-            PathAttributes a = getAttributes(path);
+            PathAttributes a = cachedAttributes(path);
             if (a.isDirectory()) {
                 throw new InvalidPathException(getAdaptorName(), "Was expecting a regular file, but got a directory: " + path.toString());
             }
@@ -1638,7 +3804,7 @@ public abstract class FileSystem implements AutoCloseable {
 
         assertNotNull(path);
 
-        if (!getAttributes(path).isRegular()) {
+        if (!cachedAttributes(path).isRegular()) {
             throw new InvalidPathException(getAdaptorName(), "Path is not a file: " + path);
         }
     }
@@ -1647,7 +3813,7 @@ public abstract class FileSystem implements AutoCloseable {
 
         assertNotNull(path);
 
-        PathAttributes a = getAttributes(path);
+        PathAttributes a = cachedAttributes(path);
 
         if (a == null) {
             throw new InvalidPathException(getAdaptorName(), "Path failed to produce attributes: " + path);
@@ -1681,7 +3847,7 @@ public abstract class FileSystem implements AutoCloseable {
     protected void assertFileIsSymbolicLink(Path link) throws XenonException {
         assertNotNull(link);
         assertPathExists(link);
-        if (!getAttributes(link).isSymbolicLink()) {
+        if (!cachedAttributes(link).isSymbolicLink()) {
             throw new InvalidPathException(getAdaptorName(), "Not a symbolic link: " + link);
         }
     }
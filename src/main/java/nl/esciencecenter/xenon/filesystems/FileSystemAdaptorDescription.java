@@ -61,5 +61,17 @@ public interface FileSystemAdaptorDescription extends AdaptorDescription {
 
     boolean canAppend();
 
+    /**
+     * Can this adaptor write to a file starting at an arbitrary offset ?
+     *
+     * Returns <code>false</code> by default, so existing implementations of this interface remain valid.
+     *
+     * @return
+     *          if this adaptor supports {@link FileSystem#writeToFileAt(Path, long)}.
+     */
+    default boolean canWriteAtOffset() {
+        return false;
+    }
+
     boolean needsSizeBeforehand();
 }
@@ -17,7 +17,6 @@ package nl.esciencecenter.xenon.filesystems;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -26,7 +25,9 @@ import java.util.StringTokenizer;
 /**
  * Path contains a sequence of path elements separated by a separator.
  *
- * It is designed to be immutable.
+ * It is designed to be immutable. The path elements are stored as a chain of nodes, where each node refers to the node of its parent. Paths derived from
+ * another Path, for example using {@link #resolve(Path)} or {@link #getParent()}, share the nodes of their common prefix, so the entries of a large listing
+ * do not each hold a copy of the directory they are in.
  *
  * @version 1.0
  * @since 1.0
@@ -36,24 +37,48 @@ public class Path implements Iterable<Path> {
     /** The default separator to use. */
     public static final char DEFAULT_SEPARATOR = '/';
 
-    /** The path elements in this path */
-    private final List<String> elements;
+    /** Estimate of path element String length. */
+    private static final int PATH_ELEMENT_LENGTH = 25;
+
+    /** A path element and the elements that precede it. Nodes are immutable and shared between paths. */
+    private static final class Node {
+
+        private final Node parent;
+
+        private final String name;
+
+        /** The number of elements up to and including this one. */
+        private final int depth;
+
+        /** Equal to the <code>hashCode</code> of a List containing the elements up to and including this one. */
+        private final int hash;
+
+        private Node(Node parent, String name) {
+            this.parent = parent;
+            this.name = name;
+            this.depth = parent == null ? 1 : parent.depth + 1;
+            this.hash = 31 * (parent == null ? 1 : parent.hash) + name.hashCode();
+        }
+    }
+
+    /** The last path element in this path, or <code>null</code> if the path is empty */
+    private final Node last;
 
     /** The separator used in this path */
     private final char separator;
 
     /** Does path start with / ? **/
-    private boolean isAbsolute;
+    private final boolean isAbsolute;
 
-    /** Estimate of path element String length. */
-    private static final int PATH_ELEMENT_LENGTH = 25;
+    /** Cached result of {@link #toString()} */
+    private String string;
 
     private class PathIterator implements Iterator<Path> {
         private int index = 1;
 
         @Override
         public boolean hasNext() {
-            return index <= elements.size();
+            return index <= getNameCount();
         }
 
         @Override
@@ -75,7 +100,7 @@ public class Path implements Iterable<Path> {
      * Create a new empty Path using the default separator.
      */
     public Path() {
-        this(DEFAULT_SEPARATOR, false, new ArrayList<String>(0));
+        this(DEFAULT_SEPARATOR, false, (Node) null);
     }
 
     /**
@@ -108,16 +133,18 @@ public class Path implements Iterable<Path> {
 
         if (path == null || path.isEmpty()) {
             this.isAbsolute = false;
-            this.elements = new ArrayList<>(0);
+            this.last = null;
         } else {
             this.isAbsolute = (path.indexOf(separator) == 0);
             StringTokenizer tok = new StringTokenizer(path, "" + separator);
 
-            this.elements = new ArrayList<>(tok.countTokens());
+            Node node = null;
 
             while (tok.hasMoreTokens()) {
-                this.elements.add(tok.nextToken());
+                node = new Node(node, tok.nextToken());
             }
+
+            this.last = node;
         }
     }
 
@@ -182,9 +209,70 @@ public class Path implements Iterable<Path> {
      *            the path elements to use.
      */
     public Path(char separator, boolean isAbsolute, List<String> elements) {
+        this(separator, isAbsolute, append(null, checkForNullAndSeparator(separator, elements)));
+    }
+
+    private Path(char separator, boolean isAbsolute, Node last) {
         this.separator = separator;
         this.isAbsolute = isAbsolute;
-        this.elements = checkForNullAndSeparator(separator, elements);
+        this.last = last;
+    }
+
+    private static Node append(Node parent, List<String> elements) {
+        Node node = parent;
+
+        for (String s : elements) {
+            node = new Node(node, s);
+        }
+
+        return node;
+    }
+
+    private static int depth(Node node) {
+        return node == null ? 0 : node.depth;
+    }
+
+    /**
+     * Get the node of the element at the given depth, which must be between 0 and the depth of <code>node</code>.
+     */
+    private static Node ancestor(Node node, int depth) {
+        Node result = node;
+
+        while (depth(result) > depth) {
+            result = result.parent;
+        }
+
+        return result;
+    }
+
+    /**
+     * Compare the elements of two nodes of equal depth.
+     */
+    private static boolean sameElements(Node a, Node b) {
+        Node x = a;
+        Node y = b;
+
+        // Stops at the first shared node, which is at the latest at the (null) root.
+        while (x != y) {
+            if (x.hash != y.hash || !x.name.equals(y.name)) {
+                return false;
+            }
+
+            x = x.parent;
+            y = y.parent;
+        }
+
+        return true;
+    }
+
+    private List<String> elements() {
+        String[] result = new String[depth(last)];
+
+        for (Node node = last; node != null; node = node.parent) {
+            result[node.depth - 1] = node.name;
+        }
+
+        return Arrays.asList(result);
     }
 
     protected static List<String> checkForNullAndSeparator(char separator, List<String> elements) {
@@ -241,7 +329,7 @@ public class Path implements Iterable<Path> {
             return null;
         }
 
-        return elements.get(elements.size() - 1);
+        return last.name;
     }
 
     /**
@@ -261,11 +349,11 @@ public class Path implements Iterable<Path> {
      * @return a Path representing this Paths parent.
      */
     public Path getParent() {
-        if (isEmpty() || elements.size() == 1) {
+        if (isEmpty() || last.parent == null) {
             return null;
         }
 
-        return new Path(separator, isAbsolute, elements.subList(0, elements.size() - 1));
+        return new Path(separator, isAbsolute, last.parent);
     }
 
     /**
@@ -274,7 +362,7 @@ public class Path implements Iterable<Path> {
      * @return the number of elements in the Path, or 0 if this path is empty.
      */
     public int getNameCount() {
-        return elements.size();
+        return depth(last);
     }
 
     /**
@@ -289,8 +377,12 @@ public class Path implements Iterable<Path> {
      *             If the index is negative or greater or equal to the number of elements in the path.
      */
     public Path getName(int index) {
+        if (index < 0 || index >= getNameCount()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getNameCount());
+        }
+
         boolean alsoAbsolute = (index == 0 && isAbsolute);
-        return new Path(separator, alsoAbsolute, Collections.singletonList(elements.get(index)));
+        return new Path(separator, alsoAbsolute, new Node(null, ancestor(last, index + 1).name));
     }
 
     /**
@@ -313,7 +405,13 @@ public class Path implements Iterable<Path> {
             throw new IllegalArgumentException("beginIndex " + beginIndex + " equal to endIndex " + endIndex);
         }
         boolean alsoAbsolute = beginIndex == 0 && isAbsolute;
-        return new Path(separator, alsoAbsolute, elements.subList(beginIndex, endIndex));
+
+        if (beginIndex == 0 && endIndex > 0 && endIndex <= getNameCount()) {
+            // A prefix of this path, which shares its nodes.
+            return new Path(separator, alsoAbsolute, ancestor(last, endIndex));
+        }
+
+        return new Path(separator, alsoAbsolute, elements().subList(beginIndex, endIndex));
     }
 
     /**
@@ -331,7 +429,7 @@ public class Path implements Iterable<Path> {
      * @return If this Path start with the name elements in the other Path and has the same absoluteness.
      */
     public boolean startsWith(Path other) {
-        return other.isAbsolute == isAbsolute && other.elements.size() <= elements.size() && elements.subList(0, other.elements.size()).equals(other.elements);
+        return other.isAbsolute == isAbsolute && other.getNameCount() <= getNameCount() && sameElements(ancestor(last, other.getNameCount()), other.last);
     }
 
     /**
@@ -349,9 +447,21 @@ public class Path implements Iterable<Path> {
         if (other.isAbsolute) {
             return equals(other);
         }
-        int offset = elements.size() - other.elements.size();
+        if (other.getNameCount() > getNameCount()) {
+            return false;
+        }
+
+        Node x = last;
+
+        for (Node y = other.last; y != null; y = y.parent) {
+            if (!x.name.equals(y.name)) {
+                return false;
+            }
+
+            x = x.parent;
+        }
 
-        return other.elements.size() <= elements.size() && this.elements.subList(offset, elements.size()).equals(other.elements);
+        return true;
     }
 
     /**
@@ -399,10 +509,14 @@ public class Path implements Iterable<Path> {
             return this;
         }
 
-        ArrayList<String> tmp = new ArrayList<>(elements.size() + other.elements.size());
-        tmp.addAll(elements);
-        tmp.addAll(other.elements);
-        return new Path(separator, isAbsolute, tmp);
+        List<String> tmp = other.elements();
+
+        if (other.separator != separator) {
+            // The elements of other may contain our separator.
+            tmp = checkForNullAndSeparator(separator, tmp);
+        }
+
+        return new Path(separator, isAbsolute, append(last, tmp));
     }
 
     /**
@@ -430,7 +544,7 @@ public class Path implements Iterable<Path> {
      * @return If this Path is empty.
      */
     public boolean isEmpty() {
-        return elements.isEmpty();
+        return last == null;
     }
 
     /**
@@ -480,20 +594,26 @@ public class Path implements Iterable<Path> {
             return other;
         }
 
-        List<String> normalized = normalize().elements;
-        List<String> normalizedOther = other.normalize().elements;
+        Node normalized = normalize().last;
+        Node normalizedOther = other.normalize().last;
 
         // The source may not be longer that target
-        if (normalized.size() > normalizedOther.size()) {
+        if (depth(normalized) > depth(normalizedOther)) {
             throw new IllegalArgumentException("Cannot relativize " + other + " to " + this);
         }
 
         // Source and target must have the same start.
-        if (!normalizedOther.subList(0, normalized.size()).equals(normalized)) {
+        if (!sameElements(ancestor(normalizedOther, depth(normalized)), normalized)) {
             throw new IllegalArgumentException("Cannot relativize " + other + " to " + this);
         }
 
-        return new Path(separator, false, normalizedOther.subList(normalized.size(), normalizedOther.size()));
+        String[] remaining = new String[depth(normalizedOther) - depth(normalized)];
+
+        for (Node node = normalizedOther; depth(node) > depth(normalized); node = node.parent) {
+            remaining[node.depth - depth(normalized) - 1] = node.name;
+        }
+
+        return new Path(separator, false, append(null, Arrays.asList(remaining)));
     }
 
     /**
@@ -515,11 +635,11 @@ public class Path implements Iterable<Path> {
      * @return a String representation of this Path interpreted as a relative path.
      */
     private String getRelativePath() {
-        StringBuilder tmp = new StringBuilder(elements.size() * PATH_ELEMENT_LENGTH);
+        StringBuilder tmp = new StringBuilder(getNameCount() * PATH_ELEMENT_LENGTH);
 
         String sep = "";
 
-        for (String element : elements) {
+        for (String element : elements()) {
             tmp.append(sep);
             tmp.append(element);
             sep = String.valueOf(separator);
@@ -549,11 +669,11 @@ public class Path implements Iterable<Path> {
      * @return the normalize path.
      */
     public Path normalize() {
-        if (isEmpty()) {
+        if (isEmpty() || !containsDots()) {
             return this;
         }
 
-        ArrayList<String> stack = new ArrayList<>(elements);
+        ArrayList<String> stack = new ArrayList<>(elements());
 
         boolean change = true;
 
@@ -584,12 +704,22 @@ public class Path implements Iterable<Path> {
         return new Path(separator, isAbsolute, stack);
     }
 
+    private boolean containsDots() {
+        for (Node node = last; node != null; node = node.parent) {
+            if (".".equals(node.name) || "..".equals(node.name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /* Generated */
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + elements.hashCode();
+        result = prime * result + (last == null ? 1 : last.hash);
         result = prime * result + separator;
         return result;
     }
@@ -605,17 +735,21 @@ public class Path implements Iterable<Path> {
         }
 
         Path other = (Path) obj;
-        return isAbsolute == other.isAbsolute && separator == other.separator && elements.equals(other.elements);
+        return isAbsolute == other.isAbsolute && separator == other.separator && getNameCount() == other.getNameCount() && sameElements(last, other.last);
     }
 
     @Override
     public String toString() {
 
-        if (isAbsolute) {
-            return getAbsolutePath();
-        } else {
-            return getRelativePath();
+        // Computing the string more than once in a race is harmless, as the result is the same.
+        String result = string;
+
+        if (result == null) {
+            result = isAbsolute ? getAbsolutePath() : getRelativePath();
+            string = result;
         }
+
+        return result;
     }
 
     public boolean isAbsolute() {
@@ -623,10 +757,10 @@ public class Path implements Iterable<Path> {
     }
 
     public Path toRelativePath() {
-        return new Path(separator, false, elements);
+        return new Path(separator, false, last);
     }
 
     public Path toAbsolutePath() {
-        return new Path(separator, true, elements);
+        return new Path(separator, true, last);
     }
 }
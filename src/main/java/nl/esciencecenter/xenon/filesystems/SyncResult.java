@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+/**
+ * SyncResult contains the outcome of a {@link FileSystem#sync(Path, FileSystem, Path, boolean)} operation.
+ */
+public interface SyncResult {
+
+    /**
+     * Get the number of files that were already up to date in the destination.
+     *
+     * @return the number of files that were skipped.
+     */
+    long getFilesSkipped();
+
+    /**
+     * Get the number of files that were new or changed, and were copied to the destination.
+     *
+     * @return the number of files that were transferred.
+     */
+    long getFilesTransferred();
+
+    /**
+     * Get the number of files in the destination that were deleted because they no longer exist in the source.
+     *
+     * This is always 0 unless <code>mirror</code> was set.
+     *
+     * @return the number of files that were deleted.
+     */
+    long getFilesDeleted();
+
+    /**
+     * Get the number of bytes that were copied to the destination.
+     *
+     * @return the number of bytes that were transferred.
+     */
+    long getBytesTransferred();
+}
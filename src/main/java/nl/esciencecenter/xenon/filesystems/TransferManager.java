@@ -0,0 +1,401 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+
+/**
+ * TransferManager runs the asynchronous copies of all {@link FileSystem}s on a single, bounded pool of threads.
+ *
+ * Copies are queued and started in order of priority (highest first), and in order of submission for equal priorities. A copy is only started if fewer
+ * than {@link #getMaxTransfers()} copies are running, and the limits of the hosts it uses allow it. The copies of a single FileSystem are run one at a
+ * time, in the order they were submitted (unless a higher priority is used).
+ *
+ * All limits apply to copy operations, not to connections or threads. A single recursive copy may transfer up to <code>copy.parallelism</code> files at
+ * the same time, each using up to <code>copy.streams</code> concurrent streams, on worker threads that belong to that copy. It still only counts as one
+ * copy for {@link #setMaxTransfers(int)} and the host limits. Use the <code>copy.rate</code> and <code>copy.rate.host</code> properties to limit the
+ * bandwidth used instead.
+ *
+ * The TransferManager also keeps track of the total number of bytes copied, which can be used to determine the aggregate throughput of all copies.
+ */
+public final class TransferManager {
+
+    /** The priority used by {@link FileSystem#copy(Path, FileSystem, Path, CopyMode, boolean)}. */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    /** The default maximum number of copies that run concurrently. */
+    public static final int DEFAULT_MAX_TRANSFERS = 8;
+
+    /** The number of seconds over which the throughput is averaged. */
+    private static final int THROUGHPUT_WINDOW = 10;
+
+    private static final TransferManager INSTANCE = new TransferManager();
+
+    private class Transfer extends FutureTask<Void> {
+
+        final int priority;
+        final List<Object> keys;
+        final Runnable whenDone;
+
+        boolean started = false;
+
+        Transfer(Callable<Void> task, int priority, List<Object> keys, Runnable whenDone) {
+            super(task);
+            this.priority = priority;
+            this.keys = keys;
+            this.whenDone = whenDone;
+        }
+
+        @Override
+        protected void done() {
+            cancelledBeforeStart(this);
+
+            if (whenDone != null) {
+                whenDone.run();
+            }
+        }
+    }
+
+    private final ExecutorService threads = Executors.newCachedThreadPool(new DaemonThreadFactory("TransferThread."));
+
+    private final List<Transfer> queue = new ArrayList<>();
+
+    // The number of running transfers per owner and per host.
+    private final Map<Object, Integer> active = new HashMap<>();
+
+    private final Map<String, Integer> hostLimits = new HashMap<>();
+
+    private int maxTransfers = DEFAULT_MAX_TRANSFERS;
+
+    private int defaultHostLimit = Integer.MAX_VALUE;
+
+    private int running = 0;
+
+    private long bytesTransferred = 0;
+
+    private final long[] windowBytes = new long[THROUGHPUT_WINDOW];
+
+    private final long[] windowSeconds = new long[THROUGHPUT_WINDOW];
+
+    TransferManager() {
+        // Only used by getInstance and unit tests.
+    }
+
+    /**
+     * Get the TransferManager shared by all FileSystems.
+     *
+     * @return the TransferManager.
+     */
+    public static TransferManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the maximum number of copies that run concurrently.
+     *
+     * @return the maximum number of concurrent copies.
+     */
+    public synchronized int getMaxTransfers() {
+        return maxTransfers;
+    }
+
+    /**
+     * Set the maximum number of copies that run concurrently. Copies that are already running are not affected. A copy that transfers several files or
+     * byte ranges in parallel counts as a single copy.
+     *
+     * @param maxTransfers
+     *            the maximum number of concurrent copies.
+     * @throws IllegalArgumentException
+     *             If <code>maxTransfers</code> is smaller than 1.
+     */
+    public synchronized void setMaxTransfers(int maxTransfers) {
+
+        if (maxTransfers < 1) {
+            throw new IllegalArgumentException("Maximum number of transfers must be 1 or larger: " + maxTransfers);
+        }
+
+        this.maxTransfers = maxTransfers;
+        dispatch();
+    }
+
+    /**
+     * Set the maximum number of copies that use a host concurrently, either as source or as destination. This limits the number of copies, not the
+     * number of connections; a single copy may open several streams to the host if <code>copy.parallelism</code> or <code>copy.streams</code> is set.
+     *
+     * @param host
+     *            the host, optionally followed by a port (as in <code>host:port</code>).
+     * @param limit
+     *            the maximum number of concurrent copies for this host.
+     * @throws IllegalArgumentException
+     *             If <code>host</code> is null or <code>limit</code> is smaller than 1.
+     */
+    public synchronized void setHostLimit(String host, int limit) {
+
+        if (host == null) {
+            throw new IllegalArgumentException("Host may not be null");
+        }
+
+        if (limit < 1) {
+            throw new IllegalArgumentException("Host limit must be 1 or larger: " + limit);
+        }
+
+        hostLimits.put(FileSystem.getHost(host), limit);
+        dispatch();
+    }
+
+    /**
+     * Set the maximum number of copies that use a single host concurrently, for all hosts that do not have a limit set by
+     * {@link #setHostLimit(String, int)}. By default there is no limit.
+     *
+     * @param limit
+     *            the maximum number of concurrent copies per host.
+     * @throws IllegalArgumentException
+     *             If <code>limit</code> is smaller than 1.
+     */
+    public synchronized void setDefaultHostLimit(int limit) {
+
+        if (limit < 1) {
+            throw new IllegalArgumentException("Host limit must be 1 or larger: " + limit);
+        }
+
+        defaultHostLimit = limit;
+        dispatch();
+    }
+
+    /**
+     * Get the number of copies that are waiting to be started.
+     *
+     * @return the number of queued copies.
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Get the number of copies that are currently running.
+     *
+     * @return the number of running copies.
+     */
+    public synchronized int getActiveTransfers() {
+        return running;
+    }
+
+    /**
+     * Get the total number of bytes copied by all FileSystems. Data that was already present at the destination, such as the part of a file skipped by
+     * {@link CopyMode#RESUME} or the matching blocks of a {@link CopyMode#DELTA} copy, is not included.
+     *
+     * @return the total number of bytes copied.
+     */
+    public synchronized long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * Get the number of bytes copied per second by all FileSystems, averaged over the last 10 seconds.
+     *
+     * @return the aggregate throughput in bytes per second.
+     */
+    public synchronized long getThroughput() {
+        return getThroughput(currentSecond());
+    }
+
+    // The time is passed explicitly, so the window can be tested with any clock value.
+    synchronized long getThroughput(long now) {
+
+        long total = 0;
+
+        for (int i = 0; i < THROUGHPUT_WINDOW; i++) {
+            // Only complete seconds are counted.
+            if (windowSeconds[i] < now && windowSeconds[i] >= now - THROUGHPUT_WINDOW) {
+                total += windowBytes[i];
+            }
+        }
+
+        return total / THROUGHPUT_WINDOW;
+    }
+
+    /**
+     * Returns the current time in seconds. Used to determine the throughput.
+     *
+     * @return the current time in seconds.
+     */
+    long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
+    synchronized void addBytesTransferred(long bytes) {
+        addBytesTransferred(bytes, currentSecond());
+    }
+
+    synchronized void addBytesTransferred(long bytes, long now) {
+
+        bytesTransferred += bytes;
+
+        // System.nanoTime may be negative, so the remainder may be too.
+        int index = Math.floorMod(now, THROUGHPUT_WINDOW);
+
+        if (windowSeconds[index] != now) {
+            windowSeconds[index] = now;
+            windowBytes[index] = 0;
+        }
+
+        windowBytes[index] += bytes;
+    }
+
+    /**
+     * Queue a copy.
+     *
+     * @param task
+     *            the copy to perform.
+     * @param priority
+     *            the priority of the copy. Copies with a higher priority are started first.
+     * @param owner
+     *            the FileSystem performing the copy. Only one copy of each owner runs at a time.
+     * @param hosts
+     *            the hosts used by the copy.
+     * @return a {@link Future} representing the copy.
+     */
+    Future<Void> submit(Callable<Void> task, int priority, FileSystem owner, String... hosts) {
+        return submit(task, null, priority, owner, hosts);
+    }
+
+    /**
+     * Queue a copy, and run <code>whenDone</code> once it has completed, failed or was cancelled.
+     *
+     * @param task
+     *            the copy to perform.
+     * @param whenDone
+     *            the action to run when the copy is done, or <code>null</code>.
+     * @param priority
+     *            the priority of the copy. Copies with a higher priority are started first.
+     * @param owner
+     *            the FileSystem performing the copy. Only one copy of each owner runs at a time.
+     * @param hosts
+     *            the hosts used by the copy.
+     * @return a {@link Future} representing the copy.
+     */
+    synchronized Future<Void> submit(Callable<Void> task, Runnable whenDone, int priority, FileSystem owner, String... hosts) {
+
+        List<Object> keys = new ArrayList<>(1 + hosts.length);
+        keys.add(owner);
+
+        for (String host : hosts) {
+            String key = "host:" + host;
+
+            if (!host.isEmpty() && !keys.contains(key)) {
+                keys.add(key);
+            }
+        }
+
+        Transfer transfer = new Transfer(task, priority, keys, whenDone);
+
+        // Insert after all transfers of the same or higher priority, so equal priorities are started in order of submission.
+        int index = 0;
+
+        while (index < queue.size() && queue.get(index).priority >= priority) {
+            index++;
+        }
+
+        queue.add(index, transfer);
+        dispatch();
+        return transfer;
+    }
+
+    private int limit(Object key) {
+
+        if (key instanceof FileSystem) {
+            return 1;
+        }
+
+        Integer limit = hostLimits.get(((String) key).substring("host:".length()));
+        return limit == null ? defaultHostLimit : limit;
+    }
+
+    private boolean canStart(Transfer transfer) {
+
+        for (Object key : transfer.keys) {
+            if (active.getOrDefault(key, 0) >= limit(key)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Start queued transfers, in order, as long as the limits allow it.
+    private void dispatch() {
+
+        Iterator<Transfer> it = queue.iterator();
+
+        while (running < maxTransfers && it.hasNext()) {
+
+            Transfer transfer = it.next();
+
+            if (canStart(transfer)) {
+                it.remove();
+                start(transfer);
+            }
+        }
+    }
+
+    private void start(Transfer transfer) {
+
+        transfer.started = true;
+        running++;
+
+        for (Object key : transfer.keys) {
+            active.merge(key, 1, Integer::sum);
+        }
+
+        threads.execute(() -> {
+            try {
+                transfer.run();
+            } finally {
+                finished(transfer);
+            }
+        });
+    }
+
+    private synchronized void finished(Transfer transfer) {
+
+        running--;
+
+        for (Object key : transfer.keys) {
+            active.merge(key, -1, Integer::sum);
+        }
+
+        active.values().removeIf(v -> v == 0);
+        dispatch();
+    }
+
+    private synchronized void cancelledBeforeStart(Transfer transfer) {
+        if (!transfer.started) {
+            queue.remove(transfer);
+        }
+    }
+}
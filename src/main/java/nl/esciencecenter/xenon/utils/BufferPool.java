@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of transfer buffers, used to avoid allocating a new buffer for every copy or forwarded stream.
+ *
+ * Both heap buffers (<code>byte[]</code>) and direct {@link ByteBuffer}s are pooled, each by their exact size. The total size of the buffers kept in the
+ * pool is bounded. Buffers that are released while the pool is full are left to the garbage collector.
+ *
+ * A buffer must not be used after it has been released, and must be released at most once.
+ */
+public final class BufferPool {
+
+    /** The default maximum number of bytes kept in the pool. */
+    public static final long DEFAULT_MAX_POOLED_BYTES = 16L * 1024 * 1024;
+
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_MAX_POOLED_BYTES);
+
+    private final long maxPooledBytes;
+
+    private final Map<Integer, ArrayDeque<byte[]>> heapBuffers = new HashMap<>();
+
+    private final Map<Integer, ArrayDeque<ByteBuffer>> directBuffers = new HashMap<>();
+
+    private long pooledBytes = 0;
+
+    /**
+     * Create a new BufferPool.
+     *
+     * @param maxPooledBytes
+     *            the maximum total size of the buffers kept in the pool.
+     * @throws IllegalArgumentException
+     *             If <code>maxPooledBytes</code> is negative.
+     */
+    public BufferPool(long maxPooledBytes) {
+
+        if (maxPooledBytes < 0) {
+            throw new IllegalArgumentException("Maximum pool size may not be negative: " + maxPooledBytes);
+        }
+
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * Get the BufferPool shared by all copies and stream forwarders.
+     *
+     * @return the shared BufferPool.
+     */
+    public static BufferPool getShared() {
+        return SHARED;
+    }
+
+    private static void checkSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Buffer size must be 1 or larger: " + size);
+        }
+    }
+
+    private static <T> T take(Map<Integer, ArrayDeque<T>> buffers, int size) {
+        ArrayDeque<T> free = buffers.get(size);
+        return free == null ? null : free.pollLast();
+    }
+
+    private <T> void put(Map<Integer, ArrayDeque<T>> buffers, int size, T buffer) {
+
+        if (pooledBytes + size > maxPooledBytes) {
+            return;
+        }
+
+        buffers.computeIfAbsent(size, s -> new ArrayDeque<>()).addLast(buffer);
+        pooledBytes += size;
+    }
+
+    /**
+     * Get a heap buffer of <code>size</code> bytes. The content of the buffer is undefined.
+     *
+     * @param size
+     *            the size of the buffer.
+     * @return a buffer of exactly <code>size</code> bytes.
+     * @throws IllegalArgumentException
+     *             If <code>size</code> is smaller than 1.
+     */
+    public byte[] acquire(int size) {
+
+        checkSize(size);
+
+        synchronized (this) {
+            byte[] buffer = take(heapBuffers, size);
+
+            if (buffer != null) {
+                pooledBytes -= size;
+                return buffer;
+            }
+        }
+
+        return new byte[size];
+    }
+
+    /**
+     * Return a heap buffer obtained from {@link #acquire(int)} to the pool.
+     *
+     * @param buffer
+     *            the buffer to return, may be <code>null</code>.
+     */
+    public synchronized void release(byte[] buffer) {
+        if (buffer != null && buffer.length > 0) {
+            put(heapBuffers, buffer.length, buffer);
+        }
+    }
+
+    /**
+     * Get a direct {@link ByteBuffer} with a capacity of <code>size</code> bytes. The buffer is cleared, but its content is undefined.
+     *
+     * @param size
+     *            the capacity of the buffer.
+     * @return a direct buffer with a capacity of exactly <code>size</code> bytes.
+     * @throws IllegalArgumentException
+     *             If <code>size</code> is smaller than 1.
+     */
+    public ByteBuffer acquireDirect(int size) {
+
+        checkSize(size);
+
+        synchronized (this) {
+            ByteBuffer buffer = take(directBuffers, size);
+
+            if (buffer != null) {
+                pooledBytes -= size;
+                buffer.clear();
+                return buffer;
+            }
+        }
+
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Return a direct buffer obtained from {@link #acquireDirect(int)} to the pool.
+     *
+     * @param buffer
+     *            the buffer to return, may be <code>null</code>. Buffers that are not direct are ignored.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() > 0) {
+            put(directBuffers, buffer.capacity(), buffer);
+        }
+    }
+
+    /**
+     * Get the total size of the buffers currently kept in the pool.
+     *
+     * @return the number of bytes pooled.
+     */
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+}
@@ -15,9 +15,11 @@
  */
 package nl.esciencecenter.xenon.utils;
 
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 
+/**
+ * A ThreadFactory that creates named daemon threads, or virtual threads if these are enabled (see {@link VirtualThreads}).
+ */
 public class DaemonThreadFactory implements ThreadFactory {
 
     private final String name;
@@ -32,9 +34,6 @@ public class DaemonThreadFactory implements ThreadFactory {
     }
 
     public Thread newThread(Runnable runnable) {
-        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
-        thread.setDaemon(true);
-        thread.setName(name + "-" + getCount());
-        return thread;
+        return VirtualThreads.newThread(name + "-" + getCount(), runnable);
     }
 }
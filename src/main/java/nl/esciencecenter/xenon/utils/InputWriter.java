@@ -18,6 +18,8 @@ package nl.esciencecenter.xenon.utils;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,8 +27,10 @@ import org.slf4j.LoggerFactory;
 /**
  * A simple input writer that uses a daemon thread to write from an {@link java.lang.String} to an {@link java.io.OutputStream}.
  * Once the end of the string is reached, the destination stream will be closed.
+ *
+ * The thread is a virtual thread if these are enabled (see {@link VirtualThreads}).
  */
-public final class InputWriter extends Thread {
+public final class InputWriter implements Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(InputWriter.class);
 
@@ -37,6 +41,12 @@ public final class InputWriter extends Thread {
     // written all content or got exception.
     private boolean finished = false;
 
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    /** The thread that runs this InputWriter. */
+    private final Thread thread;
+
     /**
      * Create a new InputWriter that writes <code>content</code> to the <code>destination</code>.
      *
@@ -52,14 +62,17 @@ public final class InputWriter extends Thread {
         this.content = content;
         this.destination = destination;
 
-        setDaemon(true);
-        setName("Input Writer");
-        start();
+        thread = VirtualThreads.start("Input Writer", this);
     }
 
-    private synchronized void setFinished() {
-        finished = true;
-        notifyAll();
+    private void setFinished() {
+        lock.lock();
+        try {
+            finished = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -68,24 +81,78 @@ public final class InputWriter extends Thread {
      * @return
      *          if the InputWriter has finished writing.
      */
-    public synchronized boolean isFinished() {
-        return finished;
+    public boolean isFinished() {
+        lock.lock();
+        try {
+            return finished;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Wait until the InputWriter has finished writing.
      */
-    public synchronized void waitUntilFinished() {
-        while (!finished) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
+    public void waitUntilFinished() {
+        lock.lock();
+        try {
+            while (!finished) {
+                try {
+                    changed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Waits for the thread of this InputWriter to die.
+     *
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting.
+     * @see Thread#join()
+     */
+    public void join() throws InterruptedException {
+        thread.join();
+    }
+
+    /**
+     * Waits at most <code>millis</code> milliseconds for the thread of this InputWriter to die.
+     *
+     * @param millis
+     *            the time to wait in milliseconds, or 0 to wait forever.
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting.
+     * @see Thread#join(long)
+     */
+    public void join(long millis) throws InterruptedException {
+        thread.join(millis);
+    }
+
+    /**
+     * Tests if the thread of this InputWriter is alive.
+     *
+     * @return
+     *          if the thread is alive.
+     * @see Thread#isAlive()
+     */
+    public boolean isAlive() {
+        return thread.isAlive();
+    }
+
+    /**
+     * Interrupts the thread of this InputWriter.
+     *
+     * @see Thread#interrupt()
+     */
+    public void interrupt() {
+        thread.interrupt();
+    }
+
     /**
      * Entry point for the Daemon thread.
      */
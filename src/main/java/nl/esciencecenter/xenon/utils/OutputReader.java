@@ -20,14 +20,18 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A simple output reader that uses a daemon thread to read from an {@link java.io.InputStream} and buffer this data. Once
  * end-of-stream is reached, this data will be made available as a {@link java.lang.String}.
  *
  * Note that since the data is buffered in memory, so it is not advisable to use this OutputReader to read large amounts of data.
+ *
+ * The thread is a virtual thread if these are enabled (see {@link VirtualThreads}).
  */
-public final class OutputReader extends Thread {
+public final class OutputReader implements Runnable {
 
     private static final int BUFFER_SIZE = 1024;
 
@@ -38,6 +42,12 @@ public final class OutputReader extends Thread {
     // Reached End Of File or got exception.
     private boolean finished = false;
 
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    /** The thread that runs this OutputReader. */
+    private final Thread thread;
+
     /**
      * Create an OutputReader that reads from <code>source</code>.
      *
@@ -55,14 +65,17 @@ public final class OutputReader extends Thread {
 
         buffer = ByteBuffer.allocate(BUFFER_SIZE);
 
-        setDaemon(true);
-        setName("Output reader");
-        start();
+        thread = VirtualThreads.start("Output reader", this);
     }
 
-    private synchronized void setFinished() {
-        finished = true;
-        notifyAll();
+    private void setFinished() {
+        lock.lock();
+        try {
+            finished = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -72,45 +85,105 @@ public final class OutputReader extends Thread {
      * @return
      *          if the OutputReader has finished reading.
      */
-    public synchronized boolean isFinished() {
-        return finished;
+    public boolean isFinished() {
+        lock.lock();
+        try {
+            return finished;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Waits until the OutputReader has finished (i.e., has reached the end-of-stream on the input). After this method returns,
      * the data that has been read is available through {@link #getResultAsString()}.
      */
-    public synchronized void waitUntilFinished() {
-        while (!finished) {
-            try {
-                wait();
-            } catch (InterruptedException t) {
-                Thread.currentThread().interrupt();
-                break;
+    public void waitUntilFinished() {
+        lock.lock();
+        try {
+            while (!finished) {
+                try {
+                    changed.await();
+                } catch (InterruptedException t) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
+        } finally {
+            lock.unlock();
         }
     }
 
-    private synchronized void addToBuffer(byte[] bytes, int length) {
-        while (buffer.remaining() < length) {
-            // create new buffer with double the capacity of the old buffer
-            ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+    private void addToBuffer(byte[] bytes, int length) {
+        lock.lock();
+        try {
+            while (buffer.remaining() < length) {
+                // create new buffer with double the capacity of the old buffer
+                ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
 
-            // copy data into new buffer
-            buffer.flip();
-            newBuffer.put(buffer);
+                // copy data into new buffer
+                buffer.flip();
+                newBuffer.put(buffer);
 
-            // replace old buffer
-            buffer = newBuffer;
+                // replace old buffer
+                buffer = newBuffer;
+            }
+            buffer.put(bytes, 0, length);
+        } finally {
+            lock.unlock();
         }
-        buffer.put(bytes, 0, length);
+    }
+
+    /**
+     * Waits for the thread of this OutputReader to die.
+     *
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting.
+     * @see Thread#join()
+     */
+    public void join() throws InterruptedException {
+        thread.join();
+    }
+
+    /**
+     * Waits at most <code>millis</code> milliseconds for the thread of this OutputReader to die.
+     *
+     * @param millis
+     *            the time to wait in milliseconds, or 0 to wait forever.
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting.
+     * @see Thread#join(long)
+     */
+    public void join(long millis) throws InterruptedException {
+        thread.join(millis);
+    }
+
+    /**
+     * Tests if the thread of this OutputReader is alive.
+     *
+     * @return
+     *          if the thread is alive.
+     * @see Thread#isAlive()
+     */
+    public boolean isAlive() {
+        return thread.isAlive();
+    }
+
+    /**
+     * Interrupts the thread of this OutputReader.
+     *
+     * @see Thread#interrupt()
+     */
+    public void interrupt() {
+        thread.interrupt();
     }
 
     /**
      * Entry method for daemon thread.
      */
+    @Override
     public void run() {
-        byte[] bytes = new byte[BUFFER_SIZE];
+        byte[] bytes = BufferPool.getShared().acquire(BUFFER_SIZE);
 
         try {
             while (true) {
@@ -132,6 +205,7 @@ public final class OutputReader extends Thread {
                 // ignore
             }
 
+            BufferPool.getShared().release(bytes);
             setFinished();
         }
     }
@@ -143,9 +217,14 @@ public final class OutputReader extends Thread {
      * @return
      *          the data that has been read.
      */
-    public synchronized String getResultAsString() {
-        waitUntilFinished();
-        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    public String getResultAsString() {
+        lock.lock();
+        try {
+            waitUntilFinished();
+            return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -155,9 +234,14 @@ public final class OutputReader extends Thread {
      * @return
      *          the data that has been read.
      */
-    public synchronized byte [] getResult() {
-        waitUntilFinished();
-        return Arrays.copyOfRange(buffer.array(), 0, buffer.position());
+    public byte [] getResult() {
+        lock.lock();
+        try {
+            waitUntilFinished();
+            return Arrays.copyOfRange(buffer.array(), 0, buffer.position());
+        } finally {
+            lock.unlock();
+        }
     }
 
 
@@ -19,6 +19,9 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,8 +29,10 @@ import org.slf4j.LoggerFactory;
 /**
  * A simple stream forwarder that uses a daemon thread to read from an {@link java.io.InputStream} and write it to a {@link java.io.OutputStream}. A small
  * buffer is used (typically 1 KB) to improve performance. Any exceptions will be ignored.
+ *
+ * The thread is a virtual thread if these are enabled (see {@link VirtualThreads}).
  */
-public final class StreamForwarder extends Thread {
+public final class StreamForwarder implements Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(StreamForwarder.class);
 
@@ -38,6 +43,12 @@ public final class StreamForwarder extends Thread {
 
     private final int bufferSize;
 
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition finished = lock.newCondition();
+
+    /** The thread that runs this StreamForwarder. */
+    private final Thread thread;
+
     private boolean done = false;
 
     /**
@@ -72,9 +83,7 @@ public final class StreamForwarder extends Thread {
         this.in = in;
         this.out = out;
 
-        setDaemon(true);
-        setName(name);
-        start();
+        thread = VirtualThreads.start(name, this);
     }
 
     /**
@@ -110,9 +119,14 @@ public final class StreamForwarder extends Thread {
     /**
      * Tell the daemon thread that we are done.
      */
-    private synchronized void done() {
-        done = true;
-        notifyAll();
+    private void done() {
+        lock.lock();
+        try {
+            done = true;
+            finished.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -122,45 +136,96 @@ public final class StreamForwarder extends Thread {
      * @param timeout
      *            The number of milliseconds to wait for termination.
      */
-    public synchronized void terminate(long timeout) {
+    public void terminate(long timeout) {
+        lock.lock();
+        try {
+            if (done) {
+                return;
+            }
 
-        if (done) {
-            return;
-        }
+            if (timeout > 0) {
+                long deadline = System.currentTimeMillis() + timeout;
+                long left = timeout;
 
-        if (timeout > 0) {
-            long deadline = System.currentTimeMillis() + timeout;
-            long left = timeout;
+                while (!done && left > 0) {
 
-            while (!done && left > 0) {
+                    try {
+                        finished.await(left, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        LOGGER.warn("StreamForwarder.terminate was interrupted!");
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
 
-                try {
-                    wait(left);
-                } catch (InterruptedException e) {
-                    LOGGER.warn("StreamForwarder.terminate was interrupted!");
-                    Thread.currentThread().interrupt();
-                    break;
+                    left = deadline - System.currentTimeMillis();
                 }
-
-                left = deadline - System.currentTimeMillis();
             }
-        }
 
-        if (!done) {
-            close(in, "InputStream did not close within " + timeout + " ms. Forcing close!");
+            if (!done) {
+                close(in, "InputStream did not close within " + timeout + " ms. Forcing close!");
 
-            if (out != null) {
-                close(out, null);
+                if (out != null) {
+                    close(out, null);
+                }
             }
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Waits for the thread of this StreamForwarder to die.
+     *
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting.
+     * @see Thread#join()
+     */
+    public void join() throws InterruptedException {
+        thread.join();
+    }
+
+    /**
+     * Waits at most <code>millis</code> milliseconds for the thread of this StreamForwarder to die.
+     *
+     * @param millis
+     *            the time to wait in milliseconds, or 0 to wait forever.
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting.
+     * @see Thread#join(long)
+     */
+    public void join(long millis) throws InterruptedException {
+        thread.join(millis);
+    }
+
+    /**
+     * Tests if the thread of this StreamForwarder is alive.
+     *
+     * @return
+     *          if the thread is alive.
+     * @see Thread#isAlive()
+     */
+    public boolean isAlive() {
+        return thread.isAlive();
+    }
+
+    /**
+     * Interrupts the thread of this StreamForwarder.
+     *
+     * @see Thread#interrupt()
+     */
+    public void interrupt() {
+        thread.interrupt();
+    }
+
     /**
      * Main entry method for the daemon thread.
      */
+    @Override
     public void run() {
+
+        byte[] buffer = BufferPool.getShared().acquire(bufferSize);
+
         try {
-            byte[] buffer = new byte[bufferSize];
 
             while (true) {
                 int read = in.read(buffer);
@@ -188,6 +253,8 @@ public final class StreamForwarder extends Thread {
             if (out != null) {
                 close(out, null);
             }
+        } finally {
+            BufferPool.getShared().release(buffer);
         }
     }
 }
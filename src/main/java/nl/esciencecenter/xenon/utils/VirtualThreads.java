@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the threads used internally by Xenon, such as the threads of the copy pool, the job executors of the schedulers and the stream pumps.
+ *
+ * By default these are daemon platform threads. When the system property {@value #PROPERTY} is set to <code>true</code> and the JVM supports virtual
+ * threads, virtual threads are created instead. Virtual threads are always daemon threads. On a JVM without virtual threads the property is ignored.
+ */
+public final class VirtualThreads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+
+    /** System property that enables virtual threads. */
+    public static final String PROPERTY = "xenon.threads.virtual";
+
+    // Thread.ofVirtual().name(name).unstarted(runnable), looked up once. Null if the JVM does not support virtual threads.
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method UNSTARTED;
+
+    private static final boolean ENABLED;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method unstarted = null;
+
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+        } catch (ReflectiveOperationException e) {
+            ofVirtual = null;
+        }
+
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        UNSTARTED = unstarted;
+
+        boolean requested = Boolean.getBoolean(PROPERTY);
+
+        if (requested && OF_VIRTUAL == null) {
+            LOGGER.warn("Virtual threads requested with {}, but not supported by this JVM. Using platform threads instead.", PROPERTY);
+        }
+
+        ENABLED = requested && OF_VIRTUAL != null;
+    }
+
+    private VirtualThreads() {
+        // utility class
+    }
+
+    /**
+     * Returns if the JVM supports virtual threads.
+     *
+     * @return if the JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Returns if virtual threads are used, that is, if they are enabled with {@value #PROPERTY} and supported by the JVM.
+     *
+     * @return if virtual threads are used.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Create a new, unstarted, thread that runs <code>runnable</code>. This is a virtual thread if virtual threads are enabled, or a daemon platform
+     * thread otherwise.
+     *
+     * @param name
+     *            the name of the thread.
+     * @param runnable
+     *            the task to run.
+     * @return the new thread.
+     */
+    public static Thread newThread(String name, Runnable runnable) {
+        return newThread(ENABLED, name, runnable);
+    }
+
+    static Thread newThread(boolean virtual, String name, Runnable runnable) {
+
+        if (virtual && OF_VIRTUAL != null) {
+            try {
+                return (Thread) UNSTARTED.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), name), runnable);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.warn("Failed to create virtual thread, using a platform thread instead", e);
+            }
+        }
+
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setDaemon(true);
+        thread.setName(name);
+        return thread;
+    }
+
+    /**
+     * Create and start a new thread that runs <code>runnable</code>.
+     *
+     * @param name
+     *            the name of the thread.
+     * @param runnable
+     *            the task to run.
+     * @return the started thread.
+     * @see #newThread(String, Runnable)
+     */
+    public static Thread start(String name, Runnable runnable) {
+        Thread thread = newThread(name, runnable);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.filesystems.Path;
+
+public class AttributeCacheTest {
+
+    static class ClockedCache extends AttributeCache {
+
+        long now = 0;
+
+        ClockedCache(int maxEntries, long ttl) {
+            super(maxEntries, ttl);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    private static PathAttributesImplementation attributes(String path) {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(new Path(path));
+        a.setRegular(true);
+        return a;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidSize() {
+        new AttributeCache(0, 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidTTL() {
+        new AttributeCache(10, -1);
+    }
+
+    @Test
+    public void test_unknown() {
+        AttributeCache c = new AttributeCache(10, 1000);
+        assertNull(c.exists(new Path("/aap")));
+        assertNull(c.getAttributes(new Path("/aap")));
+    }
+
+    @Test
+    public void test_putAttributes() {
+        AttributeCache c = new AttributeCache(10, 1000);
+        PathAttributesImplementation a = attributes("/aap");
+        c.putAttributes(a.getPath(), a);
+        assertTrue(c.exists(a.getPath()));
+        assertSame(a, c.getAttributes(a.getPath()));
+    }
+
+    @Test
+    public void test_putExists_keepsAttributes() {
+        AttributeCache c = new AttributeCache(10, 1000);
+        PathAttributesImplementation a = attributes("/aap");
+        c.putAttributes(a.getPath(), a);
+        c.putExists(a.getPath(), true);
+        assertSame(a, c.getAttributes(a.getPath()));
+    }
+
+    @Test
+    public void test_putExists_false() {
+        AttributeCache c = new AttributeCache(10, 1000);
+        PathAttributesImplementation a = attributes("/aap");
+        c.putAttributes(a.getPath(), a);
+        c.putExists(a.getPath(), false);
+        assertFalse(c.exists(a.getPath()));
+        assertNull(c.getAttributes(a.getPath()));
+    }
+
+    @Test
+    public void test_expires() {
+        ClockedCache c = new ClockedCache(10, 1000);
+        c.putExists(new Path("/aap"), true);
+
+        c.now = 999;
+        assertTrue(c.exists(new Path("/aap")));
+
+        c.now = 1000;
+        assertNull(c.exists(new Path("/aap")));
+        assertEquals(0, c.size());
+    }
+
+    @Test
+    public void test_evictsLeastRecentlyUsed() {
+        AttributeCache c = new AttributeCache(2, 1000);
+        c.putExists(new Path("/aap"), true);
+        c.putExists(new Path("/noot"), true);
+
+        // Makes /noot the least recently used entry.
+        c.exists(new Path("/aap"));
+
+        c.putExists(new Path("/mies"), true);
+
+        assertEquals(2, c.size());
+        assertTrue(c.exists(new Path("/aap")));
+        assertNull(c.exists(new Path("/noot")));
+        assertTrue(c.exists(new Path("/mies")));
+    }
+
+    @Test
+    public void test_invalidate() {
+        AttributeCache c = new AttributeCache(10, 1000);
+        c.putExists(new Path("/aap"), true);
+        c.putExists(new Path("/aap/noot"), true);
+        c.putExists(new Path("/aap/noot/mies"), true);
+        c.putExists(new Path("/aap/nootje"), true);
+        c.putExists(new Path("/zus"), true);
+
+        c.invalidate(new Path("/aap/noot"));
+
+        assertNull(c.exists(new Path("/aap")));
+        assertNull(c.exists(new Path("/aap/noot")));
+        assertNull(c.exists(new Path("/aap/noot/mies")));
+        assertTrue(c.exists(new Path("/aap/nootje")));
+        assertTrue(c.exists(new Path("/zus")));
+    }
+
+    @Test
+    public void test_invalidateUncachedDirectory() {
+        AttributeCache c = new AttributeCache(10, 1000);
+        c.putExists(new Path("/aap/noot/mies"), true);
+        c.putExists(new Path("/aap/noot/wim"), true);
+        c.putExists(new Path("/aapje/noot"), true);
+
+        // Neither /aap nor /aap/noot is cached, but the paths below them are.
+        c.invalidate(new Path("/aap"));
+
+        assertNull(c.exists(new Path("/aap/noot/mies")));
+        assertNull(c.exists(new Path("/aap/noot/wim")));
+        assertTrue(c.exists(new Path("/aapje/noot")));
+        assertEquals(1, c.size());
+    }
+
+    @Test
+    public void test_invalidateAfterEvictionAndExpiry() {
+        ClockedCache c = new ClockedCache(2, 1000);
+        c.putExists(new Path("/aap/noot"), true);
+        c.putExists(new Path("/aap/mies"), true);
+        c.putExists(new Path("/aap/wim"), true);
+
+        c.now = 2000;
+        assertNull(c.exists(new Path("/aap/wim")));
+
+        c.now = 0;
+        c.putExists(new Path("/aap/zus"), true);
+        c.invalidate(new Path("/aap"));
+
+        assertEquals(0, c.size());
+    }
+
+    @Test
+    public void test_clear() {
+        AttributeCache c = new AttributeCache(10, 1000);
+        c.putExists(new Path("/aap"), true);
+        c.clear();
+        assertEquals(0, c.size());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    static class ClockedLimiter extends RateLimiter {
+
+        long now = 0;
+        List<Long> sleeps = new ArrayList<>();
+
+        ClockedLimiter(long bytesPerSecond, long burst) {
+            super(bytesPerSecond, burst);
+        }
+
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+
+        @Override
+        protected void sleep(long nanos) {
+            sleeps.add(nanos);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidRate() {
+        new RateLimiter(0, 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidBurst() {
+        new RateLimiter(1000, 0);
+    }
+
+    @Test
+    public void test_withinBurst() throws InterruptedException {
+        ClockedLimiter l = new ClockedLimiter(1000, 1000);
+        l.acquire(600);
+        l.acquire(400);
+        assertEquals(0, l.sleeps.size());
+    }
+
+    @Test
+    public void test_beyondBurst() throws InterruptedException {
+        ClockedLimiter l = new ClockedLimiter(1000, 1000);
+        l.acquire(1000);
+        l.acquire(500);
+        assertEquals(Arrays.asList(500_000_000L), l.sleeps);
+    }
+
+    @Test
+    public void test_refill() throws InterruptedException {
+        ClockedLimiter l = new ClockedLimiter(1000, 1000);
+        l.acquire(1000);
+
+        l.now = 250_000_000L;
+        l.acquire(250);
+        assertEquals(0, l.sleeps.size());
+
+        l.acquire(100);
+        assertEquals(Arrays.asList(100_000_000L), l.sleeps);
+    }
+
+    @Test
+    public void test_refillLimitedByBurst() throws InterruptedException {
+        ClockedLimiter l = new ClockedLimiter(1000, 100);
+
+        l.now = 10_000_000_000L;
+        l.acquire(200);
+        assertEquals(Arrays.asList(100_000_000L), l.sleeps);
+    }
+
+    @Test
+    public void test_shared() {
+        RateLimiter a = RateLimiter.shared("RateLimiterTest.aap", 1000, 1000);
+        RateLimiter b = RateLimiter.shared("RateLimiterTest.aap", 2000, 2000);
+        RateLimiter c = RateLimiter.shared("RateLimiterTest.noot", 1000, 1000);
+
+        assertSame(a, b);
+        assertEquals(1000, b.getBytesPerSecond());
+        assertNotSame(a, c);
+    }
+
+    @Test
+    public void test_outputStream() throws IOException {
+        ClockedLimiter l1 = new ClockedLimiter(1000, 1000);
+        ClockedLimiter l2 = new ClockedLimiter(100, 100);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (OutputStream out = new RateLimitedOutputStream(bytes, Arrays.asList(l1, l2))) {
+            out.write(new byte[] { 1, 2, 3 }, 0, 3);
+            out.write(4);
+            out.write(new byte[200]);
+        }
+
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, Arrays.copyOf(bytes.toByteArray(), 4));
+        assertEquals(204, bytes.size());
+        assertEquals(0, l1.sleeps.size());
+        assertEquals(Arrays.asList(1_040_000_000L), l2.sleeps);
+    }
+
+    @Test
+    public void test_inputStream() throws IOException {
+        ClockedLimiter l1 = new ClockedLimiter(1000, 1000);
+        ClockedLimiter l2 = new ClockedLimiter(100, 100);
+
+        byte[] data = new byte[204];
+        data[0] = 1;
+
+        try (InputStream in = new RateLimitedInputStream(new ByteArrayInputStream(data), Arrays.asList(l1, l2))) {
+            assertEquals(1, in.read());
+            assertEquals(3, in.read(new byte[3], 0, 3));
+            assertEquals(200, in.read(new byte[300]));
+
+            // The end of the stream is not counted.
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(new byte[10]));
+        }
+
+        assertEquals(0, l1.sleeps.size());
+        assertEquals(Arrays.asList(1_040_000_000L), l2.sleeps);
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sshd.client.subsystem.sftp.RawSftpClient;
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.subsystem.sftp.SftpException;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.junit.Test;
+
+public class PipelinedSftpStreamTest {
+
+    /** A fake SFTP server holding a single file, which answers each request as soon as it is sent. */
+    private static class FakeServer implements RawSftpClient {
+
+        private byte[] file;
+
+        /** The maximum number of bytes returned by a single read. */
+        private final int maxRead;
+
+        /** Writes that extend beyond this offset fail. */
+        private long failAt = Long.MAX_VALUE;
+
+        private final Map<Integer, Buffer> responses = new HashMap<>();
+        private int nextId = 0;
+        private int maxOutstanding = 0;
+
+        FakeServer(byte[] file, int maxRead) {
+            this.file = file;
+            this.maxRead = maxRead;
+        }
+
+        private Buffer response(int type, int id) {
+            Buffer b = new ByteArrayBuffer();
+            b.putInt(0);
+            b.putByte((byte) type);
+            b.putInt(id);
+            return b;
+        }
+
+        private Buffer status(int id, int status) {
+            Buffer b = response(SftpConstants.SSH_FXP_STATUS, id);
+            b.putInt(status);
+            b.putString("status " + status);
+            b.putString("");
+            return b;
+        }
+
+        @Override
+        public int send(int cmd, Buffer buffer) throws IOException {
+
+            int id = nextId++;
+
+            buffer.getBytes(); // handle
+            long offset = buffer.getLong();
+
+            Buffer response;
+
+            if (cmd == SftpConstants.SSH_FXP_READ) {
+                int len = Math.min(buffer.getInt(), maxRead);
+
+                if (offset >= file.length) {
+                    response = status(id, SftpConstants.SSH_FX_EOF);
+                } else {
+                    len = (int) Math.min(len, file.length - offset);
+                    response = response(SftpConstants.SSH_FXP_DATA, id);
+                    response.putBytes(file, (int) offset, len);
+                }
+            } else if (cmd == SftpConstants.SSH_FXP_WRITE) {
+                byte[] data = buffer.getBytes();
+
+                if (offset + data.length > failAt) {
+                    response = status(id, SftpConstants.SSH_FX_NO_SPACE_ON_FILESYSTEM);
+                } else {
+                    if (offset + data.length > file.length) {
+                        file = Arrays.copyOf(file, (int) offset + data.length);
+                    }
+
+                    System.arraycopy(data, 0, file, (int) offset, data.length);
+                    response = status(id, SftpConstants.SSH_FX_OK);
+                }
+            } else {
+                throw new IOException("Unexpected command " + cmd);
+            }
+
+            responses.put(id, response);
+            maxOutstanding = Math.max(maxOutstanding, responses.size());
+            return id;
+        }
+
+        @Override
+        public Buffer receive(int id) throws IOException {
+            Buffer b = responses.remove(id);
+
+            if (b == null) {
+                throw new IOException("No response for request " + id);
+            }
+
+            return b;
+        }
+    }
+
+    private static class FakeHandle extends SftpClient.CloseableHandle {
+
+        private boolean open = true;
+
+        FakeHandle() {
+            super("/test", new byte[] { 1, 2, 3, 4 });
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    private static byte[] data(int size) {
+        byte[] result = new byte[size];
+
+        for (int i = 0; i < size; i++) {
+            result[i] = (byte) (i * 31);
+        }
+
+        return result;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+
+        int n = in.read(buffer);
+
+        while (n != -1) {
+            out.write(buffer, 0, n);
+            n = in.read(buffer);
+        }
+
+        return out.toByteArray();
+    }
+
+    @Test
+    public void test_read() throws IOException {
+        byte[] expected = data(10000);
+        FakeServer server = new FakeServer(expected, Integer.MAX_VALUE);
+        FakeHandle handle = new FakeHandle();
+
+        try (InputStream in = new PipelinedSftpInputStream(server, handle, 0, 256, 8)) {
+            assertArrayEquals(expected, readAll(in));
+        }
+
+        assertEquals(8, server.maxOutstanding);
+        assertTrue(server.responses.isEmpty());
+        assertFalse(handle.isOpen());
+    }
+
+    @Test
+    public void test_readEmpty() throws IOException {
+        FakeServer server = new FakeServer(new byte[0], Integer.MAX_VALUE);
+
+        try (InputStream in = new PipelinedSftpInputStream(server, new FakeHandle(), 0, 256, 4)) {
+            assertEquals(-1, in.read());
+        }
+
+        assertTrue(server.responses.isEmpty());
+    }
+
+    @Test
+    public void test_readShort() throws IOException {
+        // The server returns less than requested, so the stream must reissue its requests.
+        byte[] expected = data(10000);
+        FakeServer server = new FakeServer(expected, 100);
+
+        try (InputStream in = new PipelinedSftpInputStream(server, new FakeHandle(), 0, 256, 4)) {
+            assertArrayEquals(expected, readAll(in));
+        }
+
+        assertTrue(server.responses.isEmpty());
+
+        // Only the first window is reissued, after which the requests match what the server returns.
+        assertTrue("too many requests: " + server.nextId, server.nextId <= 100 + 2 * 4 + 1);
+    }
+
+    @Test
+    public void test_readAtOffset() throws IOException {
+        byte[] expected = data(10000);
+        FakeServer server = new FakeServer(expected, Integer.MAX_VALUE);
+
+        try (InputStream in = new PipelinedSftpInputStream(server, new FakeHandle(), 4321, 256, 4)) {
+            assertArrayEquals(Arrays.copyOfRange(expected, 4321, expected.length), readAll(in));
+        }
+
+        assertTrue(server.responses.isEmpty());
+    }
+
+    @Test
+    public void test_readAtOffsetBeyondEnd() throws IOException {
+        FakeServer server = new FakeServer(data(100), Integer.MAX_VALUE);
+
+        try (InputStream in = new PipelinedSftpInputStream(server, new FakeHandle(), 1000, 256, 4)) {
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void test_skip() throws IOException {
+        byte[] expected = data(10000);
+        FakeServer server = new FakeServer(expected, Integer.MAX_VALUE);
+
+        try (InputStream in = new PipelinedSftpInputStream(server, new FakeHandle(), 0, 256, 4)) {
+            assertEquals(expected[0] & 0xFF, in.read());
+
+            // Within the data that was already received.
+            assertEquals(99, in.skip(99));
+            assertEquals(expected[100] & 0xFF, in.read());
+
+            // Beyond the data that was already received.
+            assertEquals(5000, in.skip(5000));
+            assertArrayEquals(Arrays.copyOfRange(expected, 5101, expected.length), readAll(in));
+        }
+
+        // The skipped part was not requested.
+        assertTrue("too many requests: " + server.nextId, server.nextId < 10000 / 256);
+        assertTrue(server.responses.isEmpty());
+    }
+
+    @Test
+    public void test_skipBeyondEnd() throws IOException {
+        FakeServer server = new FakeServer(data(100), Integer.MAX_VALUE);
+
+        try (InputStream in = new PipelinedSftpInputStream(server, new FakeHandle(), 0, 256, 4)) {
+            assertEquals(0, in.read());
+            assertEquals(1000, in.skip(1000));
+            assertEquals(-1, in.read());
+            assertEquals(0, in.skip(10));
+        }
+
+        assertTrue(server.responses.isEmpty());
+    }
+
+    @Test
+    public void test_readSingleBytes() throws IOException {
+        byte[] expected = data(10);
+        FakeServer server = new FakeServer(expected, Integer.MAX_VALUE);
+
+        try (InputStream in = new PipelinedSftpInputStream(server, new FakeHandle(), 0, 4, 2)) {
+            for (byte b : expected) {
+                assertEquals(b & 0xFF, in.read());
+            }
+
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void test_closeBeforeEnd() throws IOException {
+        FakeServer server = new FakeServer(data(10000), Integer.MAX_VALUE);
+
+        InputStream in = new PipelinedSftpInputStream(server, new FakeHandle(), 0, 256, 8);
+        in.read();
+        in.close();
+        in.close();
+
+        assertTrue(server.responses.isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_readAfterClose() throws IOException {
+        InputStream in = new PipelinedSftpInputStream(new FakeServer(data(10), 10), new FakeHandle(), 0, 256, 8);
+        in.close();
+        in.read();
+    }
+
+    @Test
+    public void test_write() throws IOException {
+        FakeServer server = new FakeServer(new byte[0], Integer.MAX_VALUE);
+        FakeHandle handle = new FakeHandle();
+        byte[] expected = data(10000);
+
+        try (OutputStream out = new PipelinedSftpOutputStream(server, handle, 0, 256, 8)) {
+            out.write(expected, 0, 5000);
+            out.write(expected[5000]);
+            out.write(expected, 5001, expected.length - 5001);
+        }
+
+        assertArrayEquals(expected, server.file);
+        assertEquals(8, server.maxOutstanding);
+        assertTrue(server.responses.isEmpty());
+        assertFalse(handle.isOpen());
+    }
+
+    @Test
+    public void test_writeAtOffset() throws IOException {
+        FakeServer server = new FakeServer(new byte[] { 9, 9, 9, 9 }, Integer.MAX_VALUE);
+
+        try (OutputStream out = new PipelinedSftpOutputStream(server, new FakeHandle(), 2, 256, 8)) {
+            out.write(new byte[] { 1, 2, 3 });
+        }
+
+        assertArrayEquals(new byte[] { 9, 9, 1, 2, 3 }, server.file);
+    }
+
+    @Test
+    public void test_writeFails() throws IOException {
+        FakeServer server = new FakeServer(new byte[0], Integer.MAX_VALUE);
+        server.failAt = 1000;
+        FakeHandle handle = new FakeHandle();
+
+        OutputStream out = new PipelinedSftpOutputStream(server, handle, 0, 256, 4);
+
+        try {
+            out.write(data(10000));
+            out.close();
+            fail("Expected an SftpException");
+        } catch (SftpException e) {
+            assertEquals(SftpConstants.SSH_FX_NO_SPACE_ON_FILESYSTEM, e.getStatus());
+        }
+
+        try {
+            out.close();
+        } catch (SftpException e) {
+            // The remaining data cannot be written either.
+        }
+
+        assertTrue(server.responses.isEmpty());
+        assertFalse(handle.isOpen());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_writeAfterClose() throws IOException {
+        OutputStream out = new PipelinedSftpOutputStream(new FakeServer(new byte[0], 10), new FakeHandle(), 0, 256, 8);
+        out.close();
+        out.write(1);
+    }
+}
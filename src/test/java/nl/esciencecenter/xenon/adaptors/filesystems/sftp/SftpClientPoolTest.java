@@ -0,0 +1,218 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.junit.Test;
+
+public class SftpClientPoolTest {
+
+    /** A connection that opens a new client for each channel, up to a limit. */
+    private static class PoolSSHConnection extends MockSSHConnection {
+
+        private final int limit;
+        private int created = 0;
+
+        PoolSSHConnection(int limit) {
+            super(null);
+            this.limit = limit;
+        }
+
+        @Override
+        public SftpClient createSftpClient() throws IOException {
+            if (created >= limit) {
+                throw new IOException("Too many channels");
+            }
+
+            created++;
+            return new MockSftpClient();
+        }
+    }
+
+    /** A connection that waits until the test allows it to open a channel. */
+    private static class SlowSSHConnection extends MockSSHConnection {
+
+        final CountDownLatch opening = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+
+        SlowSSHConnection() {
+            super(null);
+        }
+
+        @Override
+        public SftpClient createSftpClient() throws IOException {
+            opening.countDown();
+
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+
+            return new MockSftpClient();
+        }
+    }
+
+    private static InputStream open(SftpClientPool pool) throws IOException {
+        return pool.openInputStream(c -> new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidSize() {
+        new SftpClientPool(new PoolSSHConnection(0), new MockSftpClient(), 0);
+    }
+
+    @Test
+    public void test_singleChannel() throws IOException {
+        SftpClient first = new MockSftpClient();
+        SftpClientPool pool = new SftpClientPool(new PoolSSHConnection(10), first, 1);
+
+        InputStream in = open(pool);
+        assertSame(first, pool.get());
+        assertEquals(1, pool.getOpened());
+        in.close();
+    }
+
+    @Test
+    public void test_noNewChannelWhenIdle() throws IOException {
+        SftpClient first = new MockSftpClient();
+        SftpClientPool pool = new SftpClientPool(new PoolSSHConnection(10), first, 4);
+
+        assertSame(first, pool.get());
+        assertSame(first, pool.get());
+        assertEquals(1, pool.getOpened());
+    }
+
+    @Test
+    public void test_streamsSpread() throws IOException {
+        SftpClient first = new MockSftpClient();
+        SftpClientPool pool = new SftpClientPool(new PoolSSHConnection(10), first, 4);
+
+        InputStream in = open(pool);
+
+        // The first channel is busy with a stream, so a second one is opened.
+        SftpClient other = pool.get();
+        assertNotSame(first, other);
+        assertEquals(2, pool.getOpened());
+
+        in.close();
+        in.close();
+
+        // Both channels are idle again.
+        pool.get();
+        pool.get();
+        assertEquals(2, pool.getOpened());
+    }
+
+    @Test
+    public void test_maximum() throws IOException {
+        SftpClientPool pool = new SftpClientPool(new PoolSSHConnection(10), new MockSftpClient(), 2);
+
+        InputStream a = open(pool);
+        InputStream b = open(pool);
+        InputStream c = open(pool);
+
+        assertEquals(2, pool.getOpened());
+
+        a.close();
+        b.close();
+        c.close();
+    }
+
+    @Test
+    public void test_serverLimit() throws IOException {
+        SftpClientPool pool = new SftpClientPool(new PoolSSHConnection(1), new MockSftpClient(), 4);
+
+        InputStream a = open(pool);
+        InputStream b = open(pool);
+        InputStream c = open(pool);
+
+        assertEquals(2, pool.getOpened());
+
+        a.close();
+        b.close();
+        c.close();
+    }
+
+    @Test
+    public void test_outputStream() throws IOException {
+        SftpClientPool pool = new SftpClientPool(new PoolSSHConnection(10), new MockSftpClient(), 2);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        OutputStream out = pool.openOutputStream(c -> target);
+        out.write(new byte[] { 1, 2, 3 }, 0, 3);
+        out.close();
+
+        assertEquals(3, target.size());
+    }
+
+    @Test
+    public void test_failedOpenReleases() throws IOException {
+        SftpClient first = new MockSftpClient();
+        SftpClientPool pool = new SftpClientPool(new PoolSSHConnection(10), first, 2);
+
+        try {
+            pool.openInputStream(c -> {
+                throw new IOException("test");
+            });
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertSame(first, pool.get());
+        assertEquals(1, pool.getOpened());
+    }
+
+    @Test
+    public void test_openWithoutLock() throws Exception {
+        SftpClient first = new MockSftpClient();
+        SlowSSHConnection connection = new SlowSSHConnection();
+        SftpClientPool pool = new SftpClientPool(connection, first, 2);
+
+        InputStream in = open(pool);
+
+        // The first channel is busy with a stream, so a second channel is opened, which waits for the test.
+        FutureTask<SftpClient> second = new FutureTask<>(pool::get);
+        new Thread(second).start();
+        assertTrue(connection.opening.await(5, TimeUnit.SECONDS));
+
+        // Meanwhile, the channel that is open can still be used.
+        assertSame(first, pool.get());
+        assertEquals(1, pool.getOpened());
+
+        connection.proceed.countDown();
+        assertNotSame(first, second.get(5, TimeUnit.SECONDS));
+        assertEquals(2, pool.getOpened());
+
+        in.close();
+    }
+}
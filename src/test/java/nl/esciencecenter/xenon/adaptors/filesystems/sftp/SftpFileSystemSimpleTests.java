@@ -15,11 +15,16 @@
  */
 package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.HashSet;
 
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.subsystem.sftp.SftpException;
 import org.junit.Test;
@@ -31,8 +36,10 @@ import nl.esciencecenter.xenon.adaptors.NotConnectedException;
 import nl.esciencecenter.xenon.adaptors.filesystems.EndOfFileException;
 import nl.esciencecenter.xenon.adaptors.filesystems.NoSpaceException;
 import nl.esciencecenter.xenon.adaptors.filesystems.PermissionDeniedException;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
 import nl.esciencecenter.xenon.credentials.PasswordCredential;
 import nl.esciencecenter.xenon.filesystems.DirectoryNotEmptyException;
+import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.InvalidPathException;
 import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
 import nl.esciencecenter.xenon.filesystems.Path;
@@ -60,6 +67,86 @@ public class SftpFileSystemSimpleTests {
         new SftpFileAdaptor().createFileSystem("", new PasswordCredential("aap", "noot".toCharArray()), null);
     }
 
+    /** A client for a server whose home directory is /home/xenon. */
+    private static class HomeSftpClient extends MockSftpClient {
+        @Override
+        public String canonicalPath(String path) {
+            return "/home/xenon";
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+
+    /** A connection that counts its users, like a real one. */
+    private static class SharedSSHConnection extends SSHConnection {
+
+        private final SftpClient client;
+
+        SharedSSHConnection(SftpClient client) {
+            super(SshClient.setUpDefaultClient(), 0);
+            this.client = client;
+        }
+
+        @Override
+        public SftpClient createSftpClient() {
+            return client;
+        }
+    }
+
+    @Test
+    public void test_createOnSharedConnection() throws XenonException {
+        SharedSSHConnection connection = new SharedSSHConnection(new HomeSftpClient());
+
+        FileSystem fs = new SftpFileAdaptor().createFileSystem("localhost", new PasswordCredential("aap", "noot".toCharArray()), null, connection);
+
+        assertEquals(new Path("/home/xenon"), fs.getWorkingDirectory());
+        assertEquals(2, connection.getReferences());
+
+        fs.close();
+
+        assertEquals(1, connection.getReferences());
+        assertTrue(connection.isOpen());
+    }
+
+    @Test
+    public void test_closeTwiceOnSharedConnection() throws XenonException {
+        SharedSSHConnection connection = new SharedSSHConnection(new HomeSftpClient());
+
+        FileSystem fs = new SftpFileAdaptor().createFileSystem("localhost", new PasswordCredential("aap", "noot".toCharArray()), null, connection);
+
+        fs.close();
+        fs.close();
+
+        assertFalse(fs.isOpen());
+        assertEquals(1, connection.getReferences());
+        assertTrue(connection.isOpen());
+    }
+
+    @Test
+    public void test_createOnSharedConnectionFails() {
+        SharedSSHConnection connection = new SharedSSHConnection(new MockSftpClient());
+
+        try {
+            new SftpFileAdaptor().createFileSystem("localhost", new PasswordCredential("aap", "noot".toCharArray()), null, connection);
+            fail("Expected XenonException");
+        } catch (XenonException e) {
+            // expected
+        }
+
+        assertEquals(1, connection.getReferences());
+        assertTrue(connection.isOpen());
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_createOnClosedConnection() throws XenonException {
+        SharedSSHConnection connection = new SharedSSHConnection(new HomeSftpClient());
+        connection.close();
+        new SftpFileAdaptor().createFileSystem("localhost", new PasswordCredential("aap", "noot".toCharArray()), null, connection);
+    }
+
     @Test
     public void test_exception_eof() {
         XenonException e = SftpFileSystem.sftpExceptionToXenonException(generateSftpException(SftpConstants.SSH_FX_EOF), "");
@@ -52,6 +52,20 @@ public class JobQueueSchedulerTest {
         }
     }
 
+    @Test
+    public void test_closeClosesFileSystem() throws Exception {
+
+        MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+
+        MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory();
+
+        JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", new DefaultCredential(), factory, fs, new Path("/home/xenon"), 2, 100,
+                10000L, null);
+        s.close();
+
+        assertFalse(fs.isOpen());
+    }
+
     @Test(expected = BadParameterException.class)
     public void test_create_invalidMultiQThreads() throws Exception {
 
@@ -52,6 +52,38 @@ public class SshInteractiveProcessFactoryTest {
         assertFalse(p.isOpen());
     }
 
+    @Test
+    public void test_closeSharedConnection() throws XenonException {
+        MockSSHConnection conn = new MockSSHConnection();
+        conn.setSession(new MockClientSession(false));
+        SshInteractiveProcessFactory p = new SshInteractiveProcessFactory(conn);
+
+        // Another user, such as the file system of the scheduler, shares the connection.
+        conn.acquire();
+
+        p.close();
+        assertFalse(p.isOpen());
+        assertTrue(conn.isOpen());
+
+        conn.close();
+        assertTrue(conn.isClosed());
+    }
+
+    @Test(expected = SchedulerClosedException.class)
+    public void test_createProcessFailsClosedShared() throws XenonException {
+        MockSSHConnection conn = new MockSSHConnection();
+        conn.setSession(new MockClientSession(false));
+        SshInteractiveProcessFactory p = new SshInteractiveProcessFactory(conn);
+        conn.acquire();
+        p.close();
+
+        JobDescription desc = new JobDescription();
+        desc.setWorkingDirectory("workdir");
+        desc.setExecutable("exec");
+
+        p.createInteractiveProcess(desc, "workdir", "JOB-42", 10000L);
+    }
+
     @Test(expected = SchedulerClosedException.class)
     public void test_doublecloseFails() throws XenonException {
         MockSSHConnection conn = new MockSSHConnection();
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.session.ClientSession;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.credentials.PasswordCredential;
+
+public class SSHConnectionCacheTest {
+
+    private static final List<Boolean> OPTIONS = Arrays.asList(true, false);
+
+    /** A cache with a clock that is set by the test. */
+    private static class TestCache extends SSHConnectionCache {
+        long time = 0;
+
+        @Override
+        protected long currentTimeMillis() {
+            return time;
+        }
+    }
+
+    /** A connection with a session that is open until the test closes it. */
+    private static class TestConnection extends SSHConnection {
+
+        boolean sessionOpen = true;
+
+        TestConnection() {
+            super(SshClient.setUpDefaultClient(), 0);
+            setSession((ClientSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ClientSession.class },
+                    (proxy, method, args) -> "isOpen".equals(method.getName()) ? sessionOpen : null));
+        }
+    }
+
+    private int connects = 0;
+
+    private SSHConnection connect() {
+        connects++;
+        return new TestConnection();
+    }
+
+    private SSHConnection get(SSHConnectionCache cache, String location, String user) throws XenonException {
+        return cache.get("ssh", location, new PasswordCredential(user, "secret"), OPTIONS, 1000, this::connect);
+    }
+
+    @Test
+    public void test_missThenHit() throws XenonException {
+        TestCache cache = new TestCache();
+
+        SSHConnection a = get(cache, "host:22", "aap");
+        SSHConnection b = get(cache, "host:22", "aap");
+
+        assertSame(a, b);
+        assertEquals(1, connects);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(3, a.getReferences());
+    }
+
+    @Test
+    public void test_defaultPortAndWorkdir() throws XenonException {
+        TestCache cache = new TestCache();
+        assertSame(get(cache, "host/home/a", "aap"), get(cache, "host:22/tmp", "aap"));
+    }
+
+    @Test
+    public void test_differentUser() throws XenonException {
+        TestCache cache = new TestCache();
+        assertNotSame(get(cache, "host", "aap"), get(cache, "host", "noot"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void test_differentGateway() throws XenonException {
+        TestCache cache = new TestCache();
+        assertNotSame(get(cache, "host", "aap"), get(cache, "host via:gateway", "aap"));
+    }
+
+    @Test
+    public void test_differentOptions() throws XenonException {
+        TestCache cache = new TestCache();
+        SSHConnection a = get(cache, "host", "aap");
+        SSHConnection b = cache.get("ssh", "host", new PasswordCredential("aap", "secret"), Arrays.asList(false, false), 1000, this::connect);
+        assertNotSame(a, b);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidTimeout() throws XenonException {
+        new TestCache().get("ssh", "host", new PasswordCredential("aap", "secret"), OPTIONS, 0, this::connect);
+    }
+
+    @Test
+    public void test_idleEviction() throws XenonException {
+        TestCache cache = new TestCache();
+
+        SSHConnection a = get(cache, "host", "aap");
+        a.close();
+
+        cache.time = 100;
+        cache.evictIdle();
+        cache.time = 1099;
+        cache.evictIdle();
+        assertTrue(a.isOpen());
+
+        cache.time = 1100;
+        cache.evictIdle();
+        assertTrue(a.isClosed());
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void test_inUseNotEvicted() throws XenonException {
+        TestCache cache = new TestCache();
+
+        SSHConnection a = get(cache, "host", "aap");
+
+        cache.evictIdle();
+        cache.time = 5000;
+        cache.evictIdle();
+        assertTrue(a.isOpen());
+        assertEquals(1, cache.size());
+
+        // Reusing an idle connection resets its idle time.
+        a.close();
+        cache.time = 6000;
+        cache.evictIdle();
+        assertSame(a, get(cache, "host", "aap"));
+        a.close();
+        cache.time = 6500;
+        cache.evictIdle();
+        cache.time = 7000;
+        cache.evictIdle();
+        assertTrue(a.isOpen());
+    }
+
+    @Test
+    public void test_staleConnectionReplaced() throws XenonException {
+        TestCache cache = new TestCache();
+
+        TestConnection a = (TestConnection) get(cache, "host", "aap");
+        a.sessionOpen = false;
+
+        SSHConnection b = get(cache, "host", "aap");
+
+        assertNotSame(a, b);
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+
+        // The cache released its reference, the user still holds one.
+        assertEquals(1, a.getReferences());
+    }
+
+    @Test
+    public void test_clear() throws XenonException {
+        TestCache cache = new TestCache();
+
+        SSHConnection a = get(cache, "host", "aap");
+        SSHConnection b = get(cache, "other", "aap");
+        b.close();
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertTrue(a.isOpen());
+        assertTrue(b.isClosed());
+
+        a.close();
+        assertTrue(a.isClosed());
+    }
+}
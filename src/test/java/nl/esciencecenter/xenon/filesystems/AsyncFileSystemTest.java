@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+
+public class AsyncFileSystemTest {
+
+    private static Throwable failure(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("Future did not fail");
+        return null;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_nullFileSystem() {
+        new AsyncFileSystem(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_nullExecutor() throws XenonException {
+        new AsyncFileSystem(new MockFileSystem("0", "TEST0", "MEM", new Path("/test")), null);
+    }
+
+    @Test
+    public void test_getFileSystem() throws XenonException {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        assertSame(f, new AsyncFileSystem(f).getFileSystem());
+    }
+
+    @Test
+    public void test_metadata() throws Exception {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        AsyncFileSystem a = new AsyncFileSystem(f);
+
+        a.createDirectory(new Path("/test/aap")).get(5, TimeUnit.SECONDS);
+        a.createFile(new Path("/test/aap/noot")).get(5, TimeUnit.SECONDS);
+
+        assertTrue(a.exists(new Path("/test/aap/noot")).get(5, TimeUnit.SECONDS));
+        assertTrue(a.getAttributes(new Path("/test/aap")).get(5, TimeUnit.SECONDS).isDirectory());
+
+        List<PathAttributes> list = a.list(new Path("/test/aap"), false).get(5, TimeUnit.SECONDS);
+        assertEquals(1, list.size());
+        assertEquals(new Path("/test/aap/noot"), list.get(0).getPath());
+
+        a.delete(new Path("/test/aap"), true).get(5, TimeUnit.SECONDS);
+        assertFalse(a.exists(new Path("/test/aap")).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_failure() throws Exception {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        AsyncFileSystem a = new AsyncFileSystem(f);
+
+        assertThat(failure(a.getAttributes(new Path("/test/aap"))), instanceOf(NoSuchPathException.class));
+    }
+
+    @Test
+    public void test_executor() throws Exception {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+
+        // Runs operations in the calling thread.
+        AsyncFileSystem a = new AsyncFileSystem(f, Runnable::run);
+
+        CompletableFuture<Boolean> result = a.exists(new Path("/test"));
+        assertTrue(result.isDone());
+        assertTrue(result.get());
+    }
+
+    @Test
+    public void test_rejected() throws Exception {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+
+        AsyncFileSystem a = new AsyncFileSystem(f, r -> {
+            throw new RejectedExecutionException("full");
+        });
+
+        assertThat(failure(a.exists(new Path("/test"))), instanceOf(RejectedExecutionException.class));
+    }
+
+    @Test
+    public void test_copy() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        Path file = new Path("/test/aap");
+        f0.createFile(file);
+        f0.addData(file, new byte[] { 1, 2, 3 });
+
+        CopyStatus s = new AsyncFileSystem(f0).copy(file, f1, file, CopyMode.CREATE, false).get(5, TimeUnit.SECONDS);
+
+        assertTrue(s.isDone());
+        assertEquals(3, s.bytesCopied());
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, f1.getData(file)));
+    }
+
+    @Test
+    public void test_copyFails() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        CompletableFuture<CopyStatus> result = new AsyncFileSystem(f0).copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, false);
+
+        assertThat(failure(result), instanceOf(NoSuchPathException.class));
+    }
+
+    @Test
+    public void test_copyInvalidArguments() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+
+        CompletableFuture<CopyStatus> result = new AsyncFileSystem(f0).copy(new Path("/test/aap"), null, new Path("/test/aap"), CopyMode.CREATE, false);
+
+        assertThat(failure(result), instanceOf(IllegalArgumentException.class));
+    }
+
+    /** An InputStream that blocks until the reading thread is interrupted. */
+    private static class BlockingInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new InterruptedIOException("interrupted");
+        }
+    }
+
+    @Test
+    public void test_closeWithPendingCopies() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        AsyncFileSystem a = new AsyncFileSystem(f0);
+
+        List<CompletableFuture<CopyStatus>> results = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            Path file = new Path("/test/file" + i);
+            f0.createFile(file);
+            f0.addData(file, new byte[] { 1, 2, 3 });
+            f0.addInputStream(file, new BlockingInputStream());
+            results.add(a.copy(file, f1, file, CopyMode.CREATE, false));
+        }
+
+        f0.close();
+
+        for (CompletableFuture<CopyStatus> result : results) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("Copy should have been cancelled");
+            } catch (ExecutionException | CancellationException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
+
+public class CompactListingTest {
+
+    private static PathAttributesImplementation file(String path, long size) {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(new Path(path));
+        a.setRegular(true);
+        a.setReadable(true);
+        a.setSize(size);
+        a.setCreationTime(1);
+        a.setLastAccessTime(2);
+        a.setLastModifiedTime(3);
+        return a;
+    }
+
+    @Test
+    public void test_empty() {
+        CompactListing l = new CompactListing();
+        l.trimToSize();
+        assertEquals(0, l.size());
+        assertFalse(l.iterator().hasNext());
+    }
+
+    @Test
+    public void test_attributes() throws Exception {
+        PathAttributesImplementation a = file("/aap/noot", 42);
+        a.setOwner("jan");
+        a.setGroup("users");
+        a.setPermissions(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OTHERS_EXECUTE));
+
+        CompactListing l = new CompactListing();
+        l.add(a);
+
+        PathAttributes p = l.get(0);
+        assertEquals(new Path("/aap/noot"), p.getPath());
+        assertTrue(p.isRegular());
+        assertFalse(p.isDirectory());
+        assertFalse(p.isSymbolicLink());
+        assertFalse(p.isOther());
+        assertTrue(p.isReadable());
+        assertFalse(p.isWritable());
+        assertFalse(p.isExecutable());
+        assertFalse(p.isHidden());
+        assertEquals(42, p.getSize());
+        assertEquals(1, p.getCreationTime());
+        assertEquals(2, p.getLastAccessTime());
+        assertEquals(3, p.getLastModifiedTime());
+        assertEquals("jan", p.getOwner());
+        assertEquals("users", p.getGroup());
+        assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OTHERS_EXECUTE), p.getPermissions());
+    }
+
+    @Test
+    public void test_unavailableAttributes() throws Exception {
+        CompactListing l = new CompactListing();
+        l.add(file("/aap/noot", 42));
+
+        PathAttributes p = l.get(0);
+        assertNull(p.getOwner());
+        assertNull(p.getGroup());
+        assertNull(p.getPermissions());
+    }
+
+    @Test
+    public void test_manyEntries() {
+        CompactListing l = new CompactListing();
+
+        for (int i = 0; i < 1000; i++) {
+            l.add(file("/dir" + (i % 7) + "/file" + i, i));
+        }
+
+        l.trimToSize();
+
+        assertEquals(1000, l.size());
+
+        int i = 0;
+
+        for (PathAttributes p : l) {
+            assertEquals(new Path("/dir" + (i % 7) + "/file" + i), p.getPath());
+            assertEquals("file" + i, l.getName(i));
+            assertEquals(i, p.getSize());
+            i++;
+        }
+    }
+
+    @Test
+    public void test_rootEntry() {
+        CompactListing l = new CompactListing();
+        l.add(file("/aap", 0));
+        l.add(file("noot", 0));
+        assertEquals(new Path("/aap"), l.getPath(0));
+        assertEquals(new Path("noot"), l.getPath(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void test_getOutOfBounds() {
+        CompactListing l = new CompactListing();
+        l.add(file("/aap", 0));
+        l.get(1);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void test_iteratorPastEnd() {
+        CompactListing l = new CompactListing();
+        l.add(file("/aap", 0));
+
+        Iterator<PathAttributes> it = l.iterator();
+        it.next();
+        it.next();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CopyJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private java.nio.file.Path journalFile() {
+        return folder.getRoot().toPath().resolve("journal");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_nullFile() {
+        new CopyJournal(null);
+    }
+
+    @Test
+    public void test_copiedSurvivesReopen() throws IOException {
+        CopyJournal j = new CopyJournal(journalFile());
+        j.open("src", "dst");
+        j.planned(new Path("aap"), 10, 100);
+        j.planned(new Path("noot mies"), 20, 200);
+        j.copied(new Path("noot mies"), 20, 200);
+        j.close();
+
+        CopyJournal j2 = new CopyJournal(journalFile());
+        j2.open("src", "dst");
+        assertFalse(j2.isCopied(new Path("aap"), 10, 100));
+        assertTrue(j2.isCopied(new Path("noot mies"), 20, 200));
+        j2.close();
+    }
+
+    @Test
+    public void test_changedSource() throws IOException {
+        CopyJournal j = new CopyJournal(journalFile());
+        j.open("src", "dst");
+        j.copied(new Path("aap"), 10, 100);
+        j.close();
+
+        j.open("src", "dst");
+        assertFalse(j.isCopied(new Path("aap"), 11, 100));
+        assertFalse(j.isCopied(new Path("aap"), 10, 101));
+        j.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void test_differentCopy() throws IOException {
+        CopyJournal j = new CopyJournal(journalFile());
+        j.open("src", "dst");
+        j.close();
+
+        j.open("src", "other");
+    }
+
+    @Test(expected = IOException.class)
+    public void test_alreadyOpen() throws IOException {
+        CopyJournal j = new CopyJournal(journalFile());
+        j.open("src", "dst");
+        j.open("src", "dst");
+    }
+
+    @Test(expected = IOException.class)
+    public void test_notOpen() throws IOException {
+        new CopyJournal(journalFile()).planned(new Path("aap"), 10, 100);
+    }
+
+    @Test
+    public void test_incompleteLine() throws IOException {
+        CopyJournal j = new CopyJournal(journalFile());
+        j.open("src", "dst");
+        j.copied(new Path("aap"), 10, 100);
+        j.close();
+
+        // Simulates a JVM that died while writing an entry.
+        Files.write(journalFile(), "C 20 2".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        j.open("src", "dst");
+        assertTrue(j.isCopied(new Path("aap"), 10, 100));
+        j.copied(new Path("noot"), 20, 200);
+        j.close();
+
+        j.open("src", "dst");
+        assertTrue(j.isCopied(new Path("noot"), 20, 200));
+        j.close();
+    }
+
+    @Test
+    public void test_incompleteLineWithTruncatedPath() throws IOException {
+        CopyJournal j = new CopyJournal(journalFile());
+        j.open("src", "dst");
+        j.copied(new Path("aap"), 10, 100);
+        j.close();
+
+        // The JVM died while writing the path of an entry, which leaves a line that can be parsed.
+        Files.write(journalFile(), "C 20 200 noo".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        j.open("src", "dst");
+        assertTrue(j.isCopied(new Path("aap"), 10, 100));
+        assertFalse(j.isCopied(new Path("noo"), 20, 200));
+        j.close();
+
+        // The incomplete line was removed, so it is not read as a complete line either.
+        j.open("src", "dst");
+        assertFalse(j.isCopied(new Path("noo"), 20, 200));
+        j.copied(new Path("noot"), 20, 200);
+        j.close();
+
+        j.open("src", "dst");
+        assertTrue(j.isCopied(new Path("aap"), 10, 100));
+        assertTrue(j.isCopied(new Path("noot"), 20, 200));
+        j.close();
+    }
+}
@@ -20,6 +20,7 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
@@ -113,12 +114,24 @@ public class CopyStatusTest {
         long bytesCopied = 3;
 
         String expected = "CopyStatus [copyIdentifier=ID" + ", state=" + state + ", exception=" + e +
-                ", bytesToCopy=" + bytesToCopy + ", bytesCopied=" + bytesCopied + "]";
+                ", bytesToCopy=" + bytesToCopy + ", bytesCopied=" + bytesCopied + ", verifiedChecksum=null]";
 
         CopyStatus s = new FileSystem.CopyStatusImplementation("ID", state, bytesToCopy, bytesCopied, e);
         assertEquals(expected, s.toString());
     }
 
+    @Test
+    public void test_verifiedChecksumDefault() {
+        CopyStatus s = new FileSystem.CopyStatusImplementation("ID", "DONE", 42, 42, null);
+        assertNull(s.getVerifiedChecksum());
+    }
+
+    @Test
+    public void test_verifiedChecksum() {
+        CopyStatus s = new FileSystem.CopyStatusImplementation("ID", "DONE", 42, 42, null, "abcd");
+        assertEquals("abcd", s.getVerifiedChecksum());
+    }
+
 
 
 
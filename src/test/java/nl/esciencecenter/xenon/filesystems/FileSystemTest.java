@@ -19,28 +19,46 @@ import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.UnknownAdaptorException;
+import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription;
 import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
+import nl.esciencecenter.xenon.adaptors.filesystems.BlockChecksum;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
+import nl.esciencecenter.xenon.adaptors.filesystems.RateLimitedInputStream;
+import nl.esciencecenter.xenon.adaptors.filesystems.RateLimitedOutputStream;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.credentials.PasswordCredential;
 
 public class FileSystemTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     class CountIgnoreOutputStream extends OutputStream {
 
         long bytes = 0;
@@ -129,6 +147,46 @@ public class FileSystemTest {
         }
     }
 
+    class SlowInputStream extends InputStream {
+
+        final long size;
+        long bytes = 0;
+
+        public SlowInputStream(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0];
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            if (bytes >= size) {
+                return -1;
+            }
+
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                // Behaves like an interruptible channel.
+                throw new InterruptedIOException("Read interrupted");
+            }
+
+            len = (int) Math.min(Math.min(len, 16), size - bytes);
+
+            for (int i = 0; i < len; i++) {
+                b[off + i] = 42;
+            }
+
+            bytes += len;
+            return len;
+        }
+    }
+
     class DelayInputStream extends InputStream {
 
         final long deadline;
@@ -447,6 +505,314 @@ public class FileSystemTest {
         assertTrue(list.isEmpty());
     }
 
+    /**
+     * Create the properties of a MockFileSystem of <code>adaptor</code>, which supports the copy, listing and cache properties. Each key in
+     * <code>keyValues</code> (relative to the adaptor prefix) is followed by its value.
+     */
+    private static XenonProperties properties(String adaptor, String... keyValues) throws XenonException {
+        String prefix = "xenon.adaptors.filesystems." + adaptor + ".";
+
+        XenonPropertyDescription[] d = new XenonPropertyDescription[] {
+                new XenonPropertyDescription(prefix + "copy.parallelism", Type.INTEGER, "1", "test"),
+                new XenonPropertyDescription(prefix + "copy.pipeline", Type.BOOLEAN, "false", "test"),
+                new XenonPropertyDescription(prefix + "list.parallelism", Type.INTEGER, "1", "test"),
+                new XenonPropertyDescription(prefix + "cache.size", Type.INTEGER, "0", "test"),
+                new XenonPropertyDescription(prefix + "cache.ttl", Type.INTEGER, "60000", "test"),
+                new XenonPropertyDescription(prefix + "copy.streams", Type.INTEGER, "1", "test"),
+                new XenonPropertyDescription(prefix + "copy.streams.threshold", Type.SIZE, "64M", "test"),
+                new XenonPropertyDescription(prefix + "copy.rate", Type.SIZE, "0", "test"),
+                new XenonPropertyDescription(prefix + "copy.rate.host", Type.SIZE, "0", "test"),
+                new XenonPropertyDescription(prefix + "copy.rate.burst", Type.SIZE, "0", "test") };
+
+        HashMap<String, String> p = new HashMap<>();
+
+        for (int i = 0; i < keyValues.length; i += 2) {
+            p.put(prefix + keyValues[i], keyValues[i + 1]);
+        }
+
+        return new XenonProperties(d, p);
+    }
+
+    @Test
+    public void test_listParallelSameAsSequential() throws XenonException {
+        Path entry = new Path("/test");
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, properties("TEST0", "list.parallelism", "4"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        for (MockFileSystem f : new MockFileSystem[] { f0, f1 }) {
+            for (int i = 0; i < 4; i++) {
+                f.createDirectory(new Path("/test/dir" + i));
+                f.forceCreateDirectory(new Path("/test/dir" + i + "/.."));
+                for (int j = 0; j < 4; j++) {
+                    f.createDirectory(new Path("/test/dir" + i + "/sub" + j));
+                    f.createFile(new Path("/test/dir" + i + "/sub" + j + "/file"));
+                }
+            }
+        }
+
+        List<Path> parallel = new ArrayList<>();
+        for (PathAttributes p : f0.list(entry, true)) {
+            parallel.add(p.getPath());
+        }
+
+        List<Path> sequential = new ArrayList<>();
+        for (PathAttributes p : f1.list(entry, true)) {
+            sequential.add(p.getPath());
+        }
+
+        assertEquals(4 + 16 + 16, parallel.size());
+        assertEquals(sequential, parallel);
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_listParallelInvalid() throws XenonException {
+        FileSystem.create("file", null, null, Collections.singletonMap("xenon.adaptors.filesystems.file.list.parallelism", "0"));
+    }
+
+    @Test
+    public void test_walkWithDotDot() throws XenonException {
+        Path entry = new Path("/test");
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", entry);
+
+        f.forceCreateDirectory(new Path("/test/."));
+        f.forceCreateDirectory(new Path("/test/.."));
+        f.forceCreateDirectory(new Path("/test/aap"));
+        f.forceCreateDirectory(new Path("/test/aap/."));
+        f.forceCreateDirectory(new Path("/test/aap/.."));
+        f.forceCreateDirectory(new Path("/test/aap/noot"));
+        f.createFile(new Path("/test/aap/noot/file0"));
+
+        List<PathAttributes> list = new ArrayList<>();
+
+        for (PathAttributes p : f.walk(new Path("/test"))) {
+            list.add(p);
+        }
+
+        // Depth first, and dot and dotdot should be removed here!
+        assertEquals(3, list.size());
+        assertEquals(new Path("/test/aap"), list.get(0).getPath());
+        assertEquals(new Path("/test/aap/noot"), list.get(1).getPath());
+        assertEquals(new Path("/test/aap/noot/file0"), list.get(2).getPath());
+    }
+
+    @Test
+    public void test_walkMaxDepth() throws XenonException {
+        Path entry = new Path("/test");
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", entry);
+
+        f.createDirectory(new Path("/test/aap"));
+        f.createDirectory(new Path("/test/aap/noot"));
+        f.createFile(new Path("/test/aap/noot/file0"));
+
+        List<PathAttributes> list = new ArrayList<>();
+
+        for (PathAttributes p : f.walk(new Path("/test"), 2)) {
+            list.add(p);
+        }
+
+        assertTrue(remove(list, "/test/aap/noot"));
+        assertTrue(remove(list, "/test/aap"));
+        assertTrue(list.isEmpty());
+    }
+
+    @Test
+    public void test_listCompactSameAsList() throws XenonException {
+        Path entry = new Path("/test");
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", entry);
+
+        f.createDirectory(new Path("/test/aap"));
+        f.createDirectory(new Path("/test/aap/noot"));
+        f.createFile(new Path("/test/aap/noot/file0"));
+        f.createFile(new Path("/test/file1"));
+        f.addData(new Path("/test/file1"), new byte[] { 1, 2, 3 });
+
+        for (boolean recursive : new boolean[] { false, true }) {
+            HashMap<Path, PathAttributes> expected = new HashMap<>();
+
+            for (PathAttributes p : f.list(entry, recursive)) {
+                expected.put(p.getPath(), p);
+            }
+
+            CompactListing listing = f.listCompact(entry, recursive);
+
+            assertEquals(expected.size(), listing.size());
+
+            for (PathAttributes p : listing) {
+                PathAttributes e = expected.remove(p.getPath());
+                assertNotNull(e);
+                assertEquals(e.isDirectory(), p.isDirectory());
+                assertEquals(e.isRegular(), p.isRegular());
+                assertEquals(e.getSize(), p.getSize());
+                assertEquals(e.getLastModifiedTime(), p.getLastModifiedTime());
+            }
+        }
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_listCompactNonExistent() throws XenonException {
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", new Path("/test"));
+        f.listCompact(new Path("/test/aap"), true);
+    }
+
+    @Test
+    public void test_walkIsLazy() throws XenonException {
+        Path entry = new Path("/test");
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", entry);
+
+        f.createDirectory(new Path("/test/aap"));
+        f.createDirectory(new Path("/test/noot"));
+        f.createFile(new Path("/test/noot/file0"));
+
+        Iterator<PathAttributes> it = f.walk(new Path("/test")).iterator();
+
+        // Changes to directories that have not been reached yet are visible in the listing.
+        f.createFile(new Path("/test/noot/file1"));
+
+        List<PathAttributes> list = new ArrayList<>();
+
+        while (it.hasNext()) {
+            list.add(it.next());
+        }
+
+        assertEquals(4, list.size());
+        assertTrue(remove(list, "/test/noot/file1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_walkInvalidDepth() throws XenonException {
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", new Path("/test"));
+        f.walk(new Path("/test"), 0);
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_walkNoDirectory() throws XenonException {
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", new Path("/test"));
+        f.walk(new Path("/test/aap"));
+    }
+
+    // Counts the number of lookups that reach the (remote) file system.
+    private static class CountingFileSystem extends MockFileSystem {
+
+        int exists = 0;
+        int attributes = 0;
+
+        CountingFileSystem(XenonProperties p) throws XenonException {
+            super("0", "TEST0", "MEM", new Path("/test"), p);
+        }
+
+        @Override
+        public boolean exists(Path path) throws XenonException {
+            exists++;
+            return super.exists(path);
+        }
+
+        @Override
+        public synchronized PathAttributes getAttributes(Path path) throws XenonException {
+            attributes++;
+            return super.getAttributes(path);
+        }
+    }
+
+    @Test
+    public void test_cacheDisabled() throws XenonException {
+        CountingFileSystem f = new CountingFileSystem(null);
+        f.createFile(new Path("/test/aap"));
+        f.exists = 0;
+        f.attributes = 0;
+
+        f.assertFileExists(new Path("/test/aap"));
+        f.assertFileExists(new Path("/test/aap"));
+
+        assertEquals(2, f.exists);
+        assertEquals(2, f.attributes);
+    }
+
+    @Test
+    public void test_cacheAssertFileExists() throws XenonException {
+        CountingFileSystem f = new CountingFileSystem(properties("TEST0", "cache.size", "100"));
+        f.createFile(new Path("/test/aap"));
+        f.exists = 0;
+        f.attributes = 0;
+
+        f.assertFileExists(new Path("/test/aap"));
+        f.assertFileExists(new Path("/test/aap"));
+
+        assertEquals(1, f.exists);
+        assertEquals(1, f.attributes);
+    }
+
+    @Test
+    public void test_cacheFilledByList() throws XenonException {
+        CountingFileSystem f = new CountingFileSystem(properties("TEST0", "cache.size", "100"));
+        f.createDirectory(new Path("/test/aap"));
+        f.createFile(new Path("/test/aap/noot"));
+
+        f.list(new Path("/test"), true);
+        f.exists = 0;
+        f.attributes = 0;
+
+        f.assertFileExists(new Path("/test/aap/noot"));
+        f.assertDirectoryExists(new Path("/test/aap"));
+
+        assertEquals(0, f.exists);
+        assertEquals(0, f.attributes);
+    }
+
+    @Test
+    public void test_cacheNotFilledByListCompact() throws XenonException {
+        CountingFileSystem f = new CountingFileSystem(properties("TEST0", "cache.size", "100"));
+        f.createDirectory(new Path("/test/aap"));
+        f.createFile(new Path("/test/aap/noot"));
+
+        assertEquals(2, f.listCompact(new Path("/test"), true).size());
+        f.exists = 0;
+        f.attributes = 0;
+
+        f.assertFileExists(new Path("/test/aap/noot"));
+
+        assertEquals(1, f.exists);
+        assertEquals(1, f.attributes);
+    }
+
+    @Test
+    public void test_cacheInvalidatedByDelete() throws XenonException {
+        CountingFileSystem f = new CountingFileSystem(properties("TEST0", "cache.size", "100"));
+        f.createFile(new Path("/test/aap"));
+
+        f.assertFileExists(new Path("/test/aap"));
+        f.delete(new Path("/test/aap"), false);
+
+        f.assertPathNotExists(new Path("/test/aap"));
+    }
+
+    @Test
+    public void test_cacheInvalidatedOnClose() throws Exception {
+        CountingFileSystem f = new CountingFileSystem(properties("TEST0", "cache.size", "100"));
+        Path file = new Path("/test/aap");
+        f.createFile(file);
+
+        OutputStream out = f.invalidateCachedAttributesOnClose(file, new ByteArrayOutputStream());
+        f.cachedAttributes(file);
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+
+        f.attributes = 0;
+        f.cachedAttributes(file);
+        assertEquals(1, f.attributes);
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_cacheInvalidSize() throws XenonException {
+        // The properties are checked before the adaptor connects.
+        FileSystem.create("ftp", "localhost", new DefaultCredential(), Collections.singletonMap("xenon.adaptors.filesystems.ftp.cache.size", "-1"));
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_cacheInvalidTTL() throws XenonException {
+        FileSystem.create("webdav", "http://localhost", new DefaultCredential(),
+                Collections.singletonMap("xenon.adaptors.filesystems.webdav.cache.ttl", "-1"));
+    }
+
     // assertPathExists
 
     @Test
@@ -765,91 +1131,687 @@ public class FileSystemTest {
         f0.copyFile(f, f1, f, CopyMode.CREATE, f0.createCallback(1024));
     }
 
-    @Test(expected = InvalidPathException.class)
-    public void test_copyFileFailsSourceDir() throws XenonException {
-        Path entry = new Path("/test");
+    @Test
+    public void test_readFromFileOffset() throws Exception {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
 
-        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
-        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+        Path file = new Path("/test/aap");
+        f.createFile(file);
+        f.addData(file, new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 });
 
-        Path f = new Path("/test/aap");
-        f0.createDirectory(f);
+        try (InputStream in = f.readFromFile(file, 5)) {
+            assertEquals(5, in.read());
+            assertEquals(6, in.read());
+            assertEquals(7, in.read());
+            assertEquals(-1, in.read());
+        }
+    }
 
-        // should fail
-        f0.copyFile(f, f1, f, CopyMode.CREATE, f0.createCallback(1024));
+    @Test(expected = IllegalArgumentException.class)
+    public void test_readFromFileNegativeOffset() throws Exception {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+
+        Path file = new Path("/test/aap");
+        f.createFile(file);
+        f.readFromFile(file, -1);
     }
 
-    @Test(expected = PathAlreadyExistsException.class)
-    public void test_copyFileFailsDestExists() throws XenonException {
-        Path entry = new Path("/test");
+    @Test(expected = UnsupportedOperationException.class)
+    public void test_writeToFileAtUnsupported() throws Exception {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        f.writeToFileAt(new Path("/test/aap"), 0);
+    }
 
-        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
-        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+    @Test
+    public void test_streamCopyLength() throws Exception {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
 
-        Path f = new Path("/test/aap");
-        f0.createFile(f);
-        f1.createFile(f);
+        ByteArrayInputStream in = new ByteArrayInputStream(new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
-        // should fail
-        f0.copyFile(f, f1, f, CopyMode.CREATE, f0.createCallback(1024));
+        f.streamCopy(in, out, 3, 5, f.createCallback(1024));
+
+        assertTrue(Arrays.equals(new byte[] { 0, 1, 2, 3, 4 }, out.toByteArray()));
+        assertEquals(5, in.read());
     }
 
     @Test
-    public void test_copyFileReplaceOK() throws XenonException {
+    public void test_copyFileStreamsFallback() throws XenonException {
         Path entry = new Path("/test");
 
-        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, properties("TEST0", "copy.streams", "4", "copy.streams.threshold", "0"));
         MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
 
         Path f = new Path("/test/aap");
-
-        byte[] data = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 };
-
         f0.createFile(f);
-        f0.addData(f, data);
+        f0.addData(f, new byte[] { 0, 1, 2, 3 });
 
-        f1.createFile(f);
-        byte[] data1 = new byte[] { 42, 42 };
-        f1.addData(f, data1);
+        // Destination does not support writing at an offset, so a single stream is used.
+        f0.copyFile(f, f1, f, CopyMode.CREATE, f0.createCallback(1024));
 
-        // should replace
-        f0.copyFile(f, f1, f, CopyMode.REPLACE, f0.createCallback(1024));
+        assertTrue(Arrays.equals(new byte[] { 0, 1, 2, 3 }, f1.getData(f)));
+    }
 
-        assertTrue(Arrays.equals(data, f1.getData(f)));
+    @Test(expected = InvalidPropertyException.class)
+    public void test_copyFileStreamsInvalid() throws XenonException {
+        FileSystem.create("file", null, null, Collections.singletonMap("xenon.adaptors.filesystems.file.copy.streams", "0"));
     }
 
-    @Test
-    public void test_copyFileIgnoreOK() throws XenonException {
-        Path entry = new Path("/test");
+    private static class DirectCopyFileSystem extends MockFileSystem {
 
-        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
-        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+        List<Long> positions = new ArrayList<>();
+        long progress;
+
+        DirectCopyFileSystem(long progress) throws XenonException {
+            super("0", "TEST0", "MEM", new Path("/test"));
+            this.progress = progress;
+        }
+
+        @Override
+        protected long directCopyRange(Path source, FileSystem destinationFS, Path destination, long position, long count) {
+            positions.add(position);
+            return Math.min(progress, count);
+        }
+    }
 
+    private static Path createSizedFile(MockFileSystem fs, long size) throws XenonException {
         Path f = new Path("/test/aap");
+        fs.createFile(f);
 
-        byte[] data = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 };
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(f);
+        a.setRegular(true);
+        a.setSize(size);
+        fs.addAttributes(f, a);
+        return f;
+    }
 
-        f0.createFile(f);
-        f0.addData(f, data);
+    @Test
+    public void test_copyFileDirect() throws XenonException {
+        DirectCopyFileSystem f0 = new DirectCopyFileSystem(Long.MAX_VALUE);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
 
-        f1.createFile(f);
-        byte[] data1 = new byte[] { 42, 42 };
-        f1.addData(f, data1);
+        long mb = 1024 * 1024;
+        Path f = createSizedFile(f0, 20 * mb);
 
-        // should replace
-        f0.copyFile(f, f1, f, CopyMode.IGNORE, f0.createCallback(1024));
+        MockFileSystem.Callback c = f0.createCallback(Long.MAX_VALUE);
+        f0.copyFile(f, f1, f, CopyMode.CREATE, c);
 
-        assertTrue(Arrays.equals(data1, f1.getData(f)));
+        assertEquals(Arrays.asList(0L, 8 * mb, 16 * mb), f0.positions);
+        assertEquals(20 * mb, c.getBytesCopied());
     }
 
-    @Test(expected = XenonException.class)
-    public void test_copyFileCancelOK() throws XenonException {
-        Path entry = new Path("/test");
+    @Test
+    public void test_copyFileDirectEmpty() throws XenonException {
+        DirectCopyFileSystem f0 = new DirectCopyFileSystem(Long.MAX_VALUE);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
 
-        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
-        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+        Path f = createSizedFile(f0, 0);
+        f0.copyFile(f, f1, f, CopyMode.CREATE, f0.createCallback(1024));
 
-        Path f = new Path("/test/aap");
+        // A single call is still needed to create the destination.
+        assertEquals(Arrays.asList(0L), f0.positions);
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_copyFileDirectNoProgress() throws XenonException {
+        DirectCopyFileSystem f0 = new DirectCopyFileSystem(0);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        Path f = createSizedFile(f0, 10);
+        f0.copyFile(f, f1, f, CopyMode.CREATE, f0.createCallback(1024));
+    }
+
+    @Test(expected = CopyCancelledException.class)
+    public void test_copyFileDirectCancel() throws XenonException {
+        DirectCopyFileSystem f0 = new DirectCopyFileSystem(Long.MAX_VALUE);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        Path f = createSizedFile(f0, 20 * 1024 * 1024);
+        f0.copyFile(f, f1, f, CopyMode.CREATE, f0.createCallback(1));
+    }
+
+    @Test
+    public void test_copyFileRateLimited() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry, properties("TEST1", "copy.rate", "1G"));
+
+        Path f = new Path("/test/aap");
+        f0.createFile(f);
+        f0.addData(f, new byte[] { 0, 1, 2, 3 });
+
+        // The rate limit of the destination applies as well.
+        f0.copyFile(f, f1, f, CopyMode.CREATE, f0.createCallback(1024));
+
+        assertTrue(Arrays.equals(new byte[] { 0, 1, 2, 3 }, f1.getData(f)));
+    }
+
+    @Test
+    public void test_streamsRateLimited() throws Exception {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, properties("TEST0", "copy.rate", "1G"));
+
+        Path f = new Path("/test/aap");
+
+        // Streams used directly by the caller are limited, not only those used by a copy.
+        try (OutputStream out = f0.writeToFile(f)) {
+            assertThat(out, instanceOf(RateLimitedOutputStream.class));
+            out.write(new byte[] { 0, 1, 2, 3 });
+        }
+
+        try (InputStream in = f0.readFromFile(f)) {
+            assertThat(in, instanceOf(RateLimitedInputStream.class));
+        }
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_copyFileRateInvalid() throws XenonException {
+        // The properties are checked before the adaptor connects.
+        FileSystem.create("sftp", "localhost", new PasswordCredential("aap", "noot".toCharArray()),
+                Collections.singletonMap("xenon.adaptors.filesystems.sftp.copy.rate.host", "-1"));
+    }
+
+    @Test
+    public void test_getHost() {
+        assertEquals("", FileSystem.getHost(null));
+        assertEquals("host", FileSystem.getHost("host"));
+        assertEquals("host:22", FileSystem.getHost("Host:22/workdir"));
+        assertEquals("host:8080", FileSystem.getHost("https://host:8080/path/to"));
+        assertEquals("host", FileSystem.getHost("user@host/workdir"));
+    }
+
+    @Test
+    public void test_copyFileServerSide() throws XenonException {
+        List<Path> copied = new ArrayList<>();
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test")) {
+            @Override
+            protected void serverSideCopy(Path source, FileSystem destinationFS, Path destination) throws XenonException {
+                if (!hasSameLocation(destinationFS)) {
+                    super.serverSideCopy(source, destinationFS, destination);
+                }
+                copied.add(destination);
+            }
+        };
+
+        Path f = createSizedFile(f0, 42);
+
+        MockFileSystem.Callback c = f0.createCallback(Long.MAX_VALUE);
+        f0.copyFile(f, f0, new Path("/test/noot"), CopyMode.CREATE, c);
+
+        assertEquals(Arrays.asList(new Path("/test/noot")), copied);
+        assertEquals(42, c.getBytesCopied());
+    }
+
+    @Test
+    public void test_copyFileServerSideFallback() throws XenonException {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        Path f = new Path("/test/aap");
+        f0.createFile(f);
+        f0.addData(f, new byte[] { 0, 1, 2, 3 });
+
+        f0.copyFile(f, f1, f, CopyMode.CREATE, f0.createCallback(1024));
+
+        assertTrue(Arrays.equals(new byte[] { 0, 1, 2, 3 }, f1.getData(f)));
+    }
+
+    @Test
+    public void test_hasSameLocation() throws XenonException {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST0", "MEM", new Path("/other"));
+        MockFileSystem f2 = new MockFileSystem("2", "TEST0", "DISK", new Path("/test"));
+        MockFileSystem f3 = new MockFileSystem("3", "TEST1", "MEM", new Path("/test"));
+        MockFileSystem f4 = new MockFileSystem("4", "TEST0", "MEM", new PasswordCredential("aap", "noot".toCharArray()), new Path("/test"), null);
+
+        assertTrue(f0.hasSameLocation(f1));
+        assertFalse(f0.hasSameLocation(f2));
+        assertFalse(f0.hasSameLocation(f3));
+        assertFalse(f0.hasSameLocation(f4));
+        assertFalse(f0.hasSameLocation(null));
+    }
+
+    @Test
+    public void test_callbackBytesSkipped() throws XenonException {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+
+        MockFileSystem.Callback c = f0.createCallback(1024);
+
+        long before = TransferManager.getInstance().getBytesTransferred();
+
+        c.addBytesSkipped(100);
+        c.addBytesCopied(10);
+
+        // Skipped bytes count towards the progress of the copy, but were not transferred.
+        assertEquals(110, c.getBytesCopied());
+        assertEquals(10, TransferManager.getInstance().getBytesTransferred() - before);
+    }
+
+    @Test
+    public void test_copyFileDeltaFallback() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+        f0.createFile(f);
+        f0.addData(f, new byte[] { 0, 1, 2, 3 });
+        f1.createFile(f);
+        f1.addData(f, new byte[] { 0, 1, 4, 5 });
+
+        // Destination does not support writing at an offset, so the file is replaced.
+        f0.copyFile(f, f1, f, CopyMode.DELTA, f0.createCallback(1024));
+
+        assertTrue(Arrays.equals(new byte[] { 0, 1, 2, 3 }, f1.getData(f)));
+    }
+
+    @Test
+    public void test_computeBlockChecksums() throws XenonException {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+
+        byte[] data = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+
+        Path f = new Path("/test/aap");
+        f0.createFile(f);
+        f0.addData(f, data);
+
+        List<BlockChecksum> result = f0.computeBlockChecksums(f, 4);
+
+        assertEquals(3, result.size());
+        assertTrue(result.get(0).matches(data, 4));
+        assertFalse(result.get(1).matches(data, 4));
+        assertTrue(result.get(2).matches(new byte[] { 8, 9 }, 2));
+    }
+
+    @Test
+    public void test_checksum() throws XenonException {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+
+        Path f = new Path("/test/aap");
+        f0.createFile(f);
+        f0.addData(f, "abc".getBytes());
+
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", f0.checksum(f, ChecksumAlgorithm.SHA256));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_checksumNullAlgorithm() throws XenonException {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        f0.checksum(new Path("/test/aap"), null);
+    }
+
+    @Test
+    public void test_toHexString() {
+        assertEquals("00ff7f80", FileSystem.toHexString(new byte[] { 0, -1, 127, -128 }));
+    }
+
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Test
+    public void test_copyVerified() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+        f0.createFile(f);
+        f0.addData(f, "abc".getBytes());
+
+        String h = f0.copy(f, f1, f, CopyMode.CREATE, false, TransferManager.DEFAULT_PRIORITY, ChecksumAlgorithm.SHA256);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(ABC_SHA256, s.getVerifiedChecksum());
+    }
+
+    @Test
+    public void test_copyNotVerified() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+        f0.createFile(f);
+        f0.addData(f, "abc".getBytes());
+
+        String h = f0.copy(f, f1, f, CopyMode.CREATE, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertNull(s.getVerifiedChecksum());
+    }
+
+    @Test
+    public void test_copyVerifiedMismatch() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+
+        // Simulates a destination that stored different data than it received.
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry) {
+            @Override
+            public String checksum(Path file, ChecksumAlgorithm algorithm) {
+                return "00";
+            }
+        };
+
+        Path f = new Path("/test/aap");
+        f0.createFile(f);
+        f0.addData(f, "abc".getBytes());
+
+        String h = f0.copy(f, f1, f, CopyMode.CREATE, false, TransferManager.DEFAULT_PRIORITY, ChecksumAlgorithm.SHA256);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertThat(s.getException(), instanceOf(ChecksumMismatchException.class));
+        assertNull(s.getVerifiedChecksum());
+    }
+
+    @Test
+    public void test_copyVerifiedServerSide() throws XenonException {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test")) {
+            @Override
+            protected void serverSideCopy(Path source, FileSystem destinationFS, Path destination) throws XenonException {
+                createFile(destination);
+                addData(destination, getData(source));
+            }
+        };
+
+        Path f = new Path("/test/aap");
+        f0.createFile(f);
+        f0.addData(f, "abc".getBytes());
+
+        String h = f0.copy(f, f0, new Path("/test/noot"), CopyMode.CREATE, false, TransferManager.DEFAULT_PRIORITY, ChecksumAlgorithm.SHA256);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(ABC_SHA256, s.getVerifiedChecksum());
+    }
+
+    private CopyStatus copyJournaled(MockFileSystem f0, MockFileSystem f1, CopyMode mode, CopyJournal journal) throws XenonException {
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), mode, true, TransferManager.DEFAULT_PRIORITY, null, journal);
+        return f0.waitUntilDone(h, 5 * 1000);
+    }
+
+    @Test
+    public void test_copyJournaled() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/aap"));
+        f0.createDirectory(new Path("/test/aap/noot"));
+        createFileWithData(f0, new Path("/test/aap/file0"), new byte[] { 1, 2 });
+        createFileWithData(f0, new Path("/test/aap/noot/file1"), new byte[] { 3, 4, 5 });
+
+        CopyJournal journal = new CopyJournal(folder.getRoot().toPath().resolve("journal"));
+
+        CopyStatus s = copyJournaled(f0, f1, CopyMode.CREATE, journal);
+        assertFalse(s.hasException());
+        assertEquals(5, s.bytesToCopy());
+
+        // Files recorded as copied in the journal are not copied again.
+        f1.addData(new Path("/test/aap/file0"), new byte[] { 42 });
+        createFileWithData(f0, new Path("/test/aap/noot/file2"), new byte[] { 6 });
+
+        s = copyJournaled(f0, f1, CopyMode.REPLACE, journal);
+        assertFalse(s.hasException());
+        assertEquals(1, s.bytesToCopy());
+        assertEquals(1, s.bytesCopied());
+
+        assertTrue(Arrays.equals(new byte[] { 42 }, f1.getData(new Path("/test/aap/file0"))));
+        assertTrue(Arrays.equals(new byte[] { 3, 4, 5 }, f1.getData(new Path("/test/aap/noot/file1"))));
+        assertTrue(Arrays.equals(new byte[] { 6 }, f1.getData(new Path("/test/aap/noot/file2"))));
+    }
+
+    @Test
+    public void test_copyJournaledMissingDestination() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/aap"));
+        createFileWithData(f0, new Path("/test/aap/file0"), new byte[] { 1, 2 });
+
+        CopyJournal journal = new CopyJournal(folder.getRoot().toPath().resolve("journal"));
+
+        assertFalse(copyJournaled(f0, f1, CopyMode.CREATE, journal).hasException());
+
+        // A file that was removed from the destination is copied again.
+        f1.delete(new Path("/test/aap/file0"), false);
+
+        assertFalse(copyJournaled(f0, f1, CopyMode.REPLACE, journal).hasException());
+        assertTrue(Arrays.equals(new byte[] { 1, 2 }, f1.getData(new Path("/test/aap/file0"))));
+    }
+
+    @Test
+    public void test_copyJournaledOtherCopy() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+        MockFileSystem f2 = new MockFileSystem("2", "TEST2", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/aap"));
+
+        CopyJournal journal = new CopyJournal(folder.getRoot().toPath().resolve("journal"));
+
+        assertFalse(copyJournaled(f0, f1, CopyMode.CREATE, journal).hasException());
+
+        // The journal belongs to the copy to f1.
+        CopyStatus s = copyJournaled(f0, f2, CopyMode.CREATE, journal);
+        assertTrue(s.hasException());
+    }
+
+    @Test
+    public void test_copyVerifiedRecursive() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/aap"));
+        f0.createFile(new Path("/test/aap/file0"));
+        f0.addData(new Path("/test/aap/file0"), "abc".getBytes());
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true, TransferManager.DEFAULT_PRIORITY,
+                ChecksumAlgorithm.SHA256);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertNull(s.getVerifiedChecksum());
+        assertTrue(Arrays.equals("abc".getBytes(), f1.getData(new Path("/test/aap/file0"))));
+    }
+
+    @Test
+    public void test_syncMirror() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/src"));
+        f0.createDirectory(new Path("/test/src/aap"));
+        f0.createFile(new Path("/test/src/same"));
+        f0.createFile(new Path("/test/src/aap/new"));
+        f0.addData(new Path("/test/src/aap/new"), new byte[] { 1, 2 });
+
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(new Path("/test/src/changed"));
+        a.setRegular(true);
+        a.setSize(3);
+        f0.addAttributes(a.getPath(), a);
+        f0.addData(a.getPath(), new byte[] { 1, 2, 3 });
+
+        f1.createDirectory(new Path("/test/dst"));
+        f1.createFile(new Path("/test/dst/same"));
+        f1.createFile(new Path("/test/dst/changed"));
+        f1.createFile(new Path("/test/dst/gone"));
+        f1.createDirectory(new Path("/test/dst/noot"));
+        f1.createFile(new Path("/test/dst/noot/gone"));
+
+        SyncResult r = f0.sync(new Path("/test/src"), f1, new Path("/test/dst"), true);
+
+        assertEquals(1, r.getFilesSkipped());
+        assertEquals(2, r.getFilesTransferred());
+        assertEquals(2, r.getFilesDeleted());
+        assertEquals(5, r.getBytesTransferred());
+
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, f1.getData(new Path("/test/dst/changed"))));
+        assertTrue(Arrays.equals(new byte[] { 1, 2 }, f1.getData(new Path("/test/dst/aap/new"))));
+        assertTrue(f1.exists(new Path("/test/dst/same")));
+        assertFalse(f1.exists(new Path("/test/dst/gone")));
+        assertFalse(f1.exists(new Path("/test/dst/noot")));
+    }
+
+    @Test
+    public void test_syncNoMirror() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/src"));
+        f0.createFile(new Path("/test/src/aap"));
+        f0.addData(new Path("/test/src/aap"), new byte[] { 1 });
+        f1.createDirectory(new Path("/test/dst"));
+        f1.createFile(new Path("/test/dst/gone"));
+
+        SyncResult r = f0.sync(new Path("/test/src"), f1, new Path("/test/dst"), false);
+
+        assertEquals(0, r.getFilesSkipped());
+        assertEquals(1, r.getFilesTransferred());
+        assertEquals(0, r.getFilesDeleted());
+        assertTrue(f1.exists(new Path("/test/dst/aap")));
+        assertTrue(f1.exists(new Path("/test/dst/gone")));
+    }
+
+    @Test
+    public void test_syncCreatesDestination() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/src"));
+        f0.createFile(new Path("/test/src/aap"));
+        f0.addData(new Path("/test/src/aap"), new byte[] { 1 });
+
+        SyncResult r = f0.sync(new Path("/test/src"), f1, new Path("/test/a/b"), false);
+
+        assertEquals(1, r.getFilesTransferred());
+        assertTrue(f1.exists(new Path("/test/a/b/aap")));
+    }
+
+    @Test(expected = InvalidPathException.class)
+    public void test_syncSourceNotDirectory() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createFile(new Path("/test/aap"));
+        f0.sync(new Path("/test/aap"), f1, new Path("/test/dst"), false);
+    }
+
+    @Test(expected = InvalidPathException.class)
+    public void test_copyFileFailsSourceDir() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+        f0.createDirectory(f);
+
+        // should fail
+        f0.copyFile(f, f1, f, CopyMode.CREATE, f0.createCallback(1024));
+    }
+
+    @Test(expected = PathAlreadyExistsException.class)
+    public void test_copyFileFailsDestExists() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+        f0.createFile(f);
+        f1.createFile(f);
+
+        // should fail
+        f0.copyFile(f, f1, f, CopyMode.CREATE, f0.createCallback(1024));
+    }
+
+    @Test
+    public void test_copyFileReplaceOK() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+
+        byte[] data = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 };
+
+        f0.createFile(f);
+        f0.addData(f, data);
+
+        f1.createFile(f);
+        byte[] data1 = new byte[] { 42, 42 };
+        f1.addData(f, data1);
+
+        // should replace
+        f0.copyFile(f, f1, f, CopyMode.REPLACE, f0.createCallback(1024));
+
+        assertTrue(Arrays.equals(data, f1.getData(f)));
+    }
+
+    @Test
+    public void test_copyFileIgnoreOK() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+
+        byte[] data = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 };
+
+        f0.createFile(f);
+        f0.addData(f, data);
+
+        f1.createFile(f);
+        byte[] data1 = new byte[] { 42, 42 };
+        f1.addData(f, data1);
+
+        // should replace
+        f0.copyFile(f, f1, f, CopyMode.IGNORE, f0.createCallback(1024));
+
+        assertTrue(Arrays.equals(data1, f1.getData(f)));
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_copyFileCancelOK() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
 
         f0.createFile(f);
         f0.addInputStream(f, new CountJunkInputStream(1024 * 1024));
@@ -1150,6 +2112,203 @@ public class FileSystemTest {
         assertTrue(Arrays.equals(data1, f1.getData(new Path("/test/aap/noot/file1"))));
     }
 
+    @Test
+    public void test_copyDirParallelOK() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, properties("TEST0", "copy.parallelism", "4"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/aap"));
+        f0.createDirectory(new Path("/test/aap/noot"));
+
+        for (int i = 0; i < 10; i++) {
+            Path file = new Path("/test/aap/noot/file" + i);
+            f0.createFile(file);
+            f0.addData(file, new byte[] { (byte) i, 1, 2, 3 });
+        }
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(40, s.bytesCopied());
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(Arrays.equals(new byte[] { (byte) i, 1, 2, 3 }, f1.getData(new Path("/test/aap/noot/file" + i))));
+        }
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_copyDirParallelInvalid() throws XenonException {
+        FileSystem.create("file", null, null, Collections.singletonMap("xenon.adaptors.filesystems.file.copy.parallelism", "0"));
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_copyDirPipelineInvalid() throws XenonException {
+        FileSystem.create("file", null, null, Collections.singletonMap("xenon.adaptors.filesystems.file.copy.pipeline", "maybe"));
+    }
+
+    @Test
+    public void test_copyDirParallelCancel() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, properties("TEST0", "copy.parallelism", "2"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/aap"));
+
+        DelayInputStream[] inputs = new DelayInputStream[4];
+
+        for (int i = 0; i < inputs.length; i++) {
+            Path file = new Path("/test/aap/file" + i);
+            inputs[i] = new DelayInputStream(10000);
+            f0.createFile(file);
+            f0.addInputStream(file, inputs[i]);
+        }
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true);
+
+        sleep(1000);
+
+        CopyStatus s = f0.cancel(h);
+
+        assertTrue(s.isDone());
+        assertTrue(s.hasException());
+
+        // Two transfers were running concurrently, the others should never start.
+        sleep(500);
+        long started = Arrays.stream(inputs).filter(in -> in.bytes > 0).count();
+        assertEquals(2, started);
+    }
+
+    private static void createFileWithData(MockFileSystem fs, Path file, byte[] data) throws XenonException {
+        fs.createFile(file);
+
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(file);
+        a.setRegular(true);
+        a.setSize(data.length);
+        fs.addAttributes(file, a);
+        fs.addData(file, data);
+    }
+
+    @Test
+    public void test_copyDirPipelinedOK() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, properties("TEST0", "copy.parallelism", "4", "copy.pipeline", "true"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/aap"));
+
+        for (int d = 0; d < 3; d++) {
+            f0.createDirectory(new Path("/test/aap/noot" + d));
+
+            for (int i = 0; i < 5; i++) {
+                createFileWithData(f0, new Path("/test/aap/noot" + d + "/file" + i), new byte[] { (byte) d, (byte) i, 2, 3 });
+            }
+        }
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(60, s.bytesToCopy());
+        assertEquals(60, s.bytesCopied());
+
+        for (int d = 0; d < 3; d++) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(Arrays.equals(new byte[] { (byte) d, (byte) i, 2, 3 }, f1.getData(new Path("/test/aap/noot" + d + "/file" + i))));
+            }
+        }
+    }
+
+    @Test
+    public void test_copyDirPipelinedCancel() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, properties("TEST0", "copy.parallelism", "2", "copy.pipeline", "true"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/aap"));
+
+        DelayInputStream[] inputs = new DelayInputStream[4];
+
+        for (int i = 0; i < inputs.length; i++) {
+            Path file = new Path("/test/aap/file" + i);
+            inputs[i] = new DelayInputStream(10000);
+            f0.createFile(file);
+            f0.addInputStream(file, inputs[i]);
+        }
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true);
+
+        sleep(1000);
+
+        CopyStatus s = f0.cancel(h);
+
+        assertTrue(s.isDone());
+        assertTrue(s.hasException());
+
+        // Two transfers were running concurrently, the others should never start.
+        sleep(500);
+        long started = Arrays.stream(inputs).filter(in -> in.bytes > 0).count();
+        assertEquals(2, started);
+    }
+
+    @Test
+    public void test_copyDirPipelinedIgnoreWaitsForTransfers() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, properties("TEST0", "copy.parallelism", "1", "copy.pipeline", "true"));
+
+        // The subdirectory shows up at the destination as soon as the copy creates its parent.
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry) {
+            @Override
+            public synchronized void createDirectory(Path dir) throws XenonException {
+                super.createDirectory(dir);
+
+                if (dir.equals(new Path("/test/aap"))) {
+                    super.createDirectory(new Path("/test/aap/vuur"));
+                }
+            }
+        };
+
+        f0.createDirectory(new Path("/test/aap"));
+
+        // The files are listed before the subdirectory.
+        for (int i = 0; i < 2; i++) {
+            Path file = new Path("/test/aap/file" + i);
+            f0.createFile(file);
+
+            PathAttributesImplementation a = new PathAttributesImplementation();
+            a.setPath(file);
+            a.setRegular(true);
+            a.setSize(256);
+            f0.addAttributes(file, a);
+            f0.addInputStream(file, new SlowInputStream(256));
+        }
+
+        f0.createDirectory(new Path("/test/aap/vuur"));
+        createFileWithData(f0, new Path("/test/aap/vuur/file2"), new byte[] { 1, 2, 3 });
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.IGNORE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(512, s.bytesToCopy());
+        assertEquals(512, s.bytesCopied());
+
+        // The transfers submitted before the existing subdirectory was found must be complete.
+        assertEquals(256, f1.getData(new Path("/test/aap/file0")).length);
+        assertEquals(256, f1.getData(new Path("/test/aap/file1")).length);
+        assertFalse(f1.exists(new Path("/test/aap/vuur/file2")));
+    }
+
     @Test
     public void test_copyDirReplace() throws XenonException {
         Path entry = new Path("/test");
@@ -29,6 +29,7 @@ import java.util.Set;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
+import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
 
 public class MockFileSystem extends FileSystem {
@@ -299,12 +300,16 @@ public class MockFileSystem extends FileSystem {
 
     private DirEntry root;
 
-    public MockFileSystem(String uniqueID, String name, String location, Path entryPath, XenonProperties p) throws XenonException {
-        super(uniqueID, name, location, new DefaultCredential(), entryPath, 4096, p);
+    public MockFileSystem(String uniqueID, String name, String location, Credential credential, Path entryPath, XenonProperties p) throws XenonException {
+        super(uniqueID, name, location, credential, entryPath, 4096, p);
         root = new DirEntry("", getDirAttributes(new Path("/")));
         ensureDirectories(entryPath);
     }
 
+    public MockFileSystem(String uniqueID, String name, String location, Path entryPath, XenonProperties p) throws XenonException {
+        this(uniqueID, name, location, new DefaultCredential(), entryPath, p);
+    }
+
     public MockFileSystem(String uniqueID, String name, String location, Path entryPath) throws XenonException {
         this(uniqueID, name, location, entryPath, null);
     }
@@ -503,7 +508,7 @@ public class MockFileSystem extends FileSystem {
 
     @Override
     public synchronized InputStream readFromFile(Path file) throws XenonException {
-        return getFileEntry(toAbsolutePath(file)).getInput();
+        return limitRate(getFileEntry(toAbsolutePath(file)).getInput());
     }
 
     @Override
@@ -515,7 +520,7 @@ public class MockFileSystem extends FileSystem {
             createFile(file);
         }
 
-        return getFileEntry(file).getOutput();
+        return limitRate(getFileEntry(file).getOutput());
     }
 
     @Override
@@ -961,4 +961,65 @@ public class PathTest {
         assertEquals(s, q.toString());
     }
 
+    @Test
+    public void testSharedPrefix_equalsParsed() {
+        Path dir = new Path("/aap/noot");
+        Path a = dir.resolve("mies");
+        Path b = new Path("/aap/noot/mies");
+        assertEquals(b, a);
+        assertEquals(b.hashCode(), a.hashCode());
+        assertEquals("/aap/noot/mies", a.toString());
+    }
+
+    @Test
+    public void testSharedPrefix_siblingsNotEqual() {
+        Path dir = new Path("/aap/noot");
+        assertFalse(dir.resolve("mies").equals(dir.resolve("zus")));
+    }
+
+    @Test
+    public void testSharedPrefix_getParent() {
+        Path dir = new Path("/aap/noot");
+        assertEquals(dir, dir.resolve("mies").getParent());
+        assertEquals(new Path("/aap"), dir.resolve("mies").getParent().getParent());
+    }
+
+    @Test
+    public void testSharedPrefix_startsWith() {
+        Path dir = new Path("/aap/noot");
+        assertTrue(dir.resolve("mies/zus").startsWith(dir));
+        assertTrue(dir.resolve("mies/zus").startsWith(new Path("/aap/noot/mies")));
+        assertFalse(dir.resolve("mies/zus").startsWith(new Path("/aap/mies")));
+    }
+
+    @Test
+    public void testRelativize_sharedPrefix() {
+        Path dir = new Path("/aap/noot");
+        assertEquals(new Path("mies/zus"), dir.relativize(dir.resolve("mies/zus")));
+    }
+
+    @Test
+    public void testRelativize_differentPrefix() {
+        thrown.expect(IllegalArgumentException.class);
+        new Path("/aap/noot").relativize(new Path("/aap/mies/zus"));
+    }
+
+    @Test
+    public void testNormalize_noDots() {
+        Path p = new Path("/aap/noot");
+        assertTrue(p == p.normalize());
+    }
+
+    @Test
+    public void testResolve_otherSeparator() {
+        thrown.expect(IllegalArgumentException.class);
+        new Path("/aap").resolve(new Path('\\', false, "no/ot"));
+    }
+
+    @Test
+    public void testGetName_outOfBounds() {
+        thrown.expect(IndexOutOfBoundsException.class);
+        new Path("/aap").getName(1);
+    }
+
 }
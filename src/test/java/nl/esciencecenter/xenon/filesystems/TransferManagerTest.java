@@ -0,0 +1,172 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+
+public class TransferManagerTest {
+
+    private static MockFileSystem fs(String id) throws XenonException {
+        return new MockFileSystem(id, "TEST" + id, "MEM", new Path("/test"));
+    }
+
+    private static Callable<Void> await(CountDownLatch latch) {
+        return () -> {
+            latch.await();
+            return null;
+        };
+    }
+
+    private static Callable<Void> record(List<String> order, String name) {
+        return () -> {
+            order.add(name);
+            return null;
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidMaxTransfers() {
+        new TransferManager().setMaxTransfers(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidHostLimit() {
+        new TransferManager().setHostLimit("host", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidDefaultHostLimit() {
+        new TransferManager().setDefaultHostLimit(0);
+    }
+
+    @Test
+    public void test_sameOwnerRunsInOrder() throws Exception {
+        TransferManager m = new TransferManager();
+        MockFileSystem a = fs("0");
+
+        CountDownLatch latch = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        Future<Void> first = m.submit(await(latch), 0, a);
+        Future<Void> second = m.submit(record(order, "second"), 0, a);
+
+        assertEquals(1, m.getActiveTransfers());
+        assertEquals(1, m.getQueueDepth());
+
+        latch.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("second"), order);
+    }
+
+    @Test
+    public void test_priority() throws Exception {
+        TransferManager m = new TransferManager();
+        m.setMaxTransfers(1);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        Future<Void> blocker = m.submit(await(latch), 0, fs("0"));
+        Future<Void> low = m.submit(record(order, "low"), 0, fs("1"));
+        Future<Void> high = m.submit(record(order, "high"), 10, fs("2"));
+
+        assertEquals(2, m.getQueueDepth());
+
+        latch.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        low.get(5, TimeUnit.SECONDS);
+        high.get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("high", "low"), order);
+    }
+
+    @Test
+    public void test_hostLimit() throws Exception {
+        TransferManager m = new TransferManager();
+        m.setHostLimit("Host:22", 1);
+
+        CountDownLatch latch = new CountDownLatch(1);
+
+        Future<Void> first = m.submit(await(latch), 0, fs("0"), "host:22", "");
+        Future<Void> second = m.submit(await(latch), 0, fs("1"), "", "host:22");
+        Future<Void> other = m.submit(await(latch), 0, fs("2"), "otherhost");
+
+        assertEquals(2, m.getActiveTransfers());
+        assertEquals(1, m.getQueueDepth());
+
+        latch.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        other.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void test_cancelQueued() throws Exception {
+        TransferManager m = new TransferManager();
+        MockFileSystem a = fs("0");
+
+        CountDownLatch latch = new CountDownLatch(1);
+
+        Future<Void> first = m.submit(await(latch), 0, a);
+        Future<Void> second = m.submit(await(latch), 0, a);
+
+        assertEquals(1, m.getQueueDepth());
+
+        second.cancel(true);
+
+        assertEquals(0, m.getQueueDepth());
+        assertTrue(second.isCancelled());
+
+        latch.countDown();
+        first.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void test_bytesTransferred() {
+        TransferManager m = new TransferManager();
+        m.addBytesTransferred(100);
+        m.addBytesTransferred(23);
+        assertEquals(123, m.getBytesTransferred());
+    }
+
+    @Test
+    public void test_throughputNegativeClock() {
+        TransferManager m = new TransferManager();
+        m.addBytesTransferred(1000, -25);
+        m.addBytesTransferred(500, -11);
+
+        // Second -25 is complete at second -24, and has left the window at second -15.
+        assertEquals(100, m.getThroughput(-24));
+        assertEquals(50, m.getThroughput(-10));
+        assertEquals(1500, m.getBytesTransferred());
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidMaxPooled() {
+        new BufferPool(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidSize() {
+        new BufferPool(1024).acquire(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidDirectSize() {
+        new BufferPool(1024).acquireDirect(0);
+    }
+
+    @Test
+    public void test_acquireSize() {
+        BufferPool pool = new BufferPool(1024);
+        assertEquals(100, pool.acquire(100).length);
+    }
+
+    @Test
+    public void test_reuse() {
+        BufferPool pool = new BufferPool(1024);
+        byte[] b = pool.acquire(100);
+        pool.release(b);
+        assertEquals(100, pool.getPooledBytes());
+        assertSame(b, pool.acquire(100));
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void test_noReuseOtherSize() {
+        BufferPool pool = new BufferPool(1024);
+        byte[] b = pool.acquire(100);
+        pool.release(b);
+        assertNotSame(b, pool.acquire(200));
+        assertEquals(100, pool.getPooledBytes());
+    }
+
+    @Test
+    public void test_bounded() {
+        BufferPool pool = new BufferPool(150);
+        pool.release(new byte[100]);
+        pool.release(new byte[100]);
+        assertEquals(100, pool.getPooledBytes());
+    }
+
+    @Test
+    public void test_releaseNull() {
+        BufferPool pool = new BufferPool(1024);
+        pool.release((byte[]) null);
+        pool.release((ByteBuffer) null);
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void test_direct() {
+        BufferPool pool = new BufferPool(1024);
+        ByteBuffer b = pool.acquireDirect(100);
+        assertTrue(b.isDirect());
+        assertEquals(100, b.capacity());
+
+        b.put((byte) 42);
+        pool.release(b);
+
+        ByteBuffer c = pool.acquireDirect(100);
+        assertSame(b, c);
+        assertEquals(0, c.position());
+        assertEquals(100, c.limit());
+    }
+
+    @Test
+    public void test_releaseHeapByteBuffer() {
+        BufferPool pool = new BufferPool(1024);
+        pool.release(ByteBuffer.allocate(100));
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void test_shared() {
+        assertSame(BufferPool.getShared(), BufferPool.getShared());
+    }
+}
@@ -16,6 +16,7 @@
 package nl.esciencecenter.xenon.utils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -37,4 +38,16 @@ public class StreamForwarderTest {
         String output = out.toString();
         assertEquals(input, output);
     }
+
+    @Test
+    public void test_join() throws InterruptedException {
+        String input = "Some content to forward";
+        InputStream in = new ByteArrayInputStream(input.getBytes(Charset.defaultCharset()));
+        OutputStream out = new ByteArrayOutputStream();
+        StreamForwarder forwarder = new StreamForwarder(in, out);
+        forwarder.join(5000);
+
+        assertFalse(forwarder.isAlive());
+        assertEquals(input, out.toString());
+    }
 }
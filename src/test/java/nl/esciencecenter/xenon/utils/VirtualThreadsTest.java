@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void test_enabledOnlyIfSupported() {
+        assertTrue(VirtualThreads.isSupported() || !VirtualThreads.isEnabled());
+    }
+
+    @Test
+    public void test_platformThread() {
+        Thread t = VirtualThreads.newThread(false, "aap", () -> {
+        });
+        assertEquals("aap", t.getName());
+        assertTrue(t.isDaemon());
+        assertFalse(t.isAlive());
+    }
+
+    @Test
+    public void test_virtualThread() {
+        // Falls back to a daemon platform thread if virtual threads are not supported.
+        Thread t = VirtualThreads.newThread(true, "noot", () -> {
+        });
+        assertEquals("noot", t.getName());
+        assertTrue(t.isDaemon());
+        assertFalse(t.isAlive());
+    }
+
+    @Test
+    public void test_start() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        Thread t = VirtualThreads.start("mies", latch::countDown);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        t.join(5000);
+        assertFalse(t.isAlive());
+    }
+
+    @Test
+    public void test_daemonThreadFactory() {
+        DaemonThreadFactory f = new DaemonThreadFactory("aap");
+        assertEquals("aap-0", f.newThread(() -> {
+        }).getName());
+        Thread t = f.newThread(() -> {
+        });
+        assertEquals("aap-1", t.getName());
+        assertTrue(t.isDaemon());
+    }
+}
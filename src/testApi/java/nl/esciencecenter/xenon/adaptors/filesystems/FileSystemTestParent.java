@@ -37,19 +37,24 @@ import org.junit.Assume;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.NotConnectedException;
+import nl.esciencecenter.xenon.filesystems.ChecksumAlgorithm;
 import nl.esciencecenter.xenon.filesystems.CopyMode;
 import nl.esciencecenter.xenon.filesystems.CopyStatus;
 import nl.esciencecenter.xenon.filesystems.DirectoryNotEmptyException;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.InvalidPathException;
+import nl.esciencecenter.xenon.filesystems.InvalidResumeTargetException;
 import nl.esciencecenter.xenon.filesystems.NoSuchCopyException;
 import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAlreadyExistsException;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
 import nl.esciencecenter.xenon.filesystems.PosixFilePermission;
+import nl.esciencecenter.xenon.filesystems.SyncResult;
+import nl.esciencecenter.xenon.filesystems.TransferManager;
 import nl.esciencecenter.xenon.utils.LocalFileSystemUtils;
 import nl.esciencecenter.xenon.utils.OutputReader;
 
@@ -227,6 +232,148 @@ public abstract class FileSystemTestParent extends FileSystemTestInfrastructure
         Assert.assertEquals(expected, reader.getResultAsString());
     }
 
+    @Test
+    public void test_readFromFile_offset() throws Exception {
+        generateAndCreateTestDir();
+        Path file = createTestFile(testDir, "Hello World!".getBytes());
+
+        try (InputStream in = fileSystem.readFromFile(file, 6)) {
+            assertEquals("World!", new String(readAllBytes(in)));
+        }
+    }
+
+    @Test
+    public void test_readFromFile_offsetBeyondEnd_empty() throws Exception {
+        generateAndCreateTestDir();
+        Path file = createTestFile(testDir, "Hello World!".getBytes());
+
+        try (InputStream in = fileSystem.readFromFile(file, 100)) {
+            assertEquals(0, readAllBytes(in).length);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_readFromFile_negativeOffset_throwsException() throws Exception {
+        generateAndCreateTestDir();
+        Path file = createTestFile(testDir, "Hello World!".getBytes());
+        fileSystem.readFromFile(file, -1);
+    }
+
+    @Test
+    public void test_sync_copiesOnlyChanges() throws Exception {
+        generateAndCreateTestDir();
+        Path source = createTestSubDir(testDir);
+        Path file = createTestFile(source, "Hello World!".getBytes());
+        Path sub = createTestSubDir(source);
+        createTestFile(sub, "Use Xenon!".getBytes());
+
+        Path target = createNewTestFileName(testDir);
+
+        SyncResult first = fileSystem.sync(source, fileSystem, target, false);
+        assertEquals(2, first.getFilesTransferred());
+        assertEquals(0, first.getFilesSkipped());
+        assertSameContentsDir(source, target);
+
+        // Change the size of one file, so it is transferred again.
+        fileSystem.delete(file, false);
+        createNamedTestFile(file, "Hello Xenon World!".getBytes());
+
+        SyncResult second = fileSystem.sync(source, fileSystem, target, false);
+        assertEquals(1, second.getFilesTransferred());
+        assertEquals(1, second.getFilesSkipped());
+        assertSameContentsDir(source, target);
+    }
+
+    @Test
+    public void test_sync_mirror_deletesExtraFiles() throws Exception {
+        generateAndCreateTestDir();
+        Path source = createTestSubDir(testDir);
+        createTestFile(source, "Hello World!".getBytes());
+
+        Path target = createTestSubDir(testDir);
+        createTestFile(target, "Remove me".getBytes());
+        createTestFile(createTestSubDir(target), "Remove me too".getBytes());
+
+        SyncResult result = fileSystem.sync(source, fileSystem, target, true);
+        assertEquals(1, result.getFilesTransferred());
+        assertEquals(2, result.getFilesDeleted());
+        assertSameContentsDir(source, target);
+        assertEquals(1, listSet(target, true).size());
+    }
+
+    @Test
+    public void test_checksum_md5() throws Exception {
+        generateAndCreateTestDir();
+        Path file = createTestFile(testDir, "abc".getBytes());
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", fileSystem.checksum(file, ChecksumAlgorithm.MD5));
+    }
+
+    @Test
+    public void test_checksum_sha1() throws Exception {
+        generateAndCreateTestDir();
+        Path file = createTestFile(testDir, "abc".getBytes());
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", fileSystem.checksum(file, ChecksumAlgorithm.SHA1));
+    }
+
+    @Test
+    public void test_checksum_sha256() throws Exception {
+        generateAndCreateTestDir();
+        Path file = createTestFile(testDir, "abc".getBytes());
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", fileSystem.checksum(file, ChecksumAlgorithm.SHA256));
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_checksum_nonExistentFile_throwsException() throws Exception {
+        generateAndCreateTestDir();
+        fileSystem.checksum(createNewTestFileName(testDir), ChecksumAlgorithm.MD5);
+    }
+
+    @Test(expected = InvalidPathException.class)
+    public void test_checksum_directory_throwsException() throws Exception {
+        generateAndCreateTestDir();
+        fileSystem.checksum(testDir, ChecksumAlgorithm.MD5);
+    }
+
+    @Test
+    public void test_writeToFileAt_existingFile() throws Exception {
+        assumeTrue(description.canWriteAtOffset());
+        generateAndCreateTestDir();
+        Path file = createTestFile(testDir, "Hello World!".getBytes());
+
+        try (OutputStream out = fileSystem.writeToFileAt(file, 6)) {
+            out.write("Xenon".getBytes());
+        }
+
+        assertContents(file, "Hello Xenon!".getBytes());
+    }
+
+    @Test
+    public void test_writeToFileAt_nonExistingFile() throws Exception {
+        assumeTrue(description.canWriteAtOffset());
+        generateAndCreateTestDir();
+        Path file = createNewTestFileName(testDir);
+
+        try (OutputStream out = fileSystem.writeToFileAt(file, 0)) {
+            out.write("Hello World!".getBytes());
+        }
+
+        assertContents(file, "Hello World!".getBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_writeToFileAt_negativeOffset_throwsException() throws Exception {
+        assumeTrue(description.canWriteAtOffset());
+        generateAndCreateTestDir();
+        fileSystem.writeToFileAt(createNewTestFileName(testDir), -1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void test_writeToFileAt_notSupported_throwsException() throws Exception {
+        assumeFalse(description.canWriteAtOffset());
+        generateAndCreateTestDir();
+        fileSystem.writeToFileAt(createNewTestFileName(testDir), 0);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void test_exists_null_throwsException() throws Exception {
         fileSystem.exists(null);
@@ -457,6 +604,73 @@ public abstract class FileSystemTestParent extends FileSystemTestInfrastructure
         assertEquals(set1, set2);
     }
 
+    private Set<PathAttributes> walkSet(Path dir, int depthLimit) throws XenonException {
+        Set<PathAttributes> res = new HashSet<>();
+        for (PathAttributes p : fileSystem.walk(dir, depthLimit)) {
+            res.add(p);
+        }
+        return res;
+    }
+
+    @Test
+    public void test_walk_sameAsRecursiveList() throws Exception {
+        generateAndCreateTestDir();
+        Path source = createTestSubDir(testDir);
+        createTestFile(source, "Hello World!".getBytes());
+
+        Path testSubDir = createTestSubDir(source);
+        createTestFile(testSubDir, "Use Xenon!".getBytes());
+        createTestSubDir(testSubDir);
+        createTestSubDir(testDir);
+
+        assertListSetEqual(walkSet(testDir, Integer.MAX_VALUE), listSet(testDir, true));
+    }
+
+    @Test
+    public void test_walk_depthOne_sameAsList() throws Exception {
+        generateAndCreateTestDir();
+        Path source = createTestSubDir(testDir);
+        createTestFile(source, "Hello World!".getBytes());
+        createTestFile(testDir, "Use Xenon!".getBytes());
+
+        assertListSetEqual(walkSet(testDir, 1), listSet(testDir, false));
+    }
+
+    private static String describe(PathAttributes p) {
+        return p.getPath() + " " + p.isDirectory() + " " + p.isRegular() + " " + p.isSymbolicLink() + " " + p.getSize() + " " + p.getLastModifiedTime();
+    }
+
+    @Test
+    public void test_listCompact_sameAsRecursiveList() throws Exception {
+        generateAndCreateTestDir();
+        Path source = createTestSubDir(testDir);
+        createTestFile(source, "Hello World!".getBytes());
+
+        Path testSubDir = createTestSubDir(source);
+        createTestFile(testSubDir, "Use Xenon!".getBytes());
+        createTestSubDir(testDir);
+
+        Set<String> expected = new HashSet<>();
+
+        for (PathAttributes p : fileSystem.list(testDir, true)) {
+            expected.add(describe(p));
+        }
+
+        Set<String> result = new HashSet<>();
+
+        for (PathAttributes p : fileSystem.listCompact(testDir, true)) {
+            result.add(describe(p));
+        }
+
+        assertEquals(expected, result);
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_walk_nonExistentDir_throwsException() throws Exception {
+        generateAndCreateTestDir();
+        fileSystem.walk(createNewTestFileName(testDir));
+    }
+
     @Test
     public void test_list_existingEmptyDir() throws Exception {
         generateAndCreateTestDir();
@@ -1016,6 +1230,77 @@ public abstract class FileSystemTestParent extends FileSystemTestInfrastructure
         assertContents(file1, data2);
     }
 
+    @Test
+    public void test_copy_existingTarget_resume() throws Throwable {
+        assumeTrue(description.canAppend());
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, "Hello World!".getBytes());
+        Path file1 = createTestFile(testDir, "Hello ".getBytes());
+        copySync(file0, file1, CopyMode.RESUME, false);
+        assertSameContents(file0, file1);
+    }
+
+    @Test
+    public void test_copy_completeTarget_resume() throws Throwable {
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, "Hello World!".getBytes());
+        Path file1 = createTestFile(testDir, "Hello World!".getBytes());
+        copySync(file0, file1, CopyMode.RESUME, false);
+        assertSameContents(file0, file1);
+    }
+
+    @Test
+    public void test_copy_nonExistingTarget_resume() throws Throwable {
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, "Hello World!".getBytes());
+        Path file1 = createNewTestFileName(testDir);
+        copySync(file0, file1, CopyMode.RESUME, false);
+        assertSameContents(file0, file1);
+    }
+
+    @Test(expected = InvalidResumeTargetException.class)
+    public void test_copy_differentTarget_resume_throwsException() throws Throwable {
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, "Hello World!".getBytes());
+        Path file1 = createTestFile(testDir, "Bye ".getBytes());
+        copySync(file0, file1, CopyMode.RESUME, false);
+    }
+
+    @Test(expected = InvalidResumeTargetException.class)
+    public void test_copy_largerTarget_resume_throwsException() throws Throwable {
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, "Hello".getBytes());
+        Path file1 = createTestFile(testDir, "Hello World!".getBytes());
+        copySync(file0, file1, CopyMode.RESUME, false);
+    }
+
+    @Test
+    public void test_copy_existingTarget_delta() throws Throwable {
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, "Hello World!".getBytes());
+        Path file1 = createTestFile(testDir, "Hello Earth".getBytes());
+        copySync(file0, file1, CopyMode.DELTA, false);
+        assertSameContents(file0, file1);
+    }
+
+    @Test
+    public void test_copy_nonExistingTarget_delta() throws Throwable {
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, "Hello World!".getBytes());
+        Path file1 = createNewTestFileName(testDir);
+        copySync(file0, file1, CopyMode.DELTA, false);
+        assertSameContents(file0, file1);
+    }
+
+    @Test
+    public void test_copy_largerTarget_delta() throws Throwable {
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, "Hello".getBytes());
+        Path file1 = createTestFile(testDir, "Hello World!".getBytes());
+        copySync(file0, file1, CopyMode.DELTA, false);
+        assertSameContents(file0, file1);
+    }
+
     @Test
     public void test_copy() throws Throwable {
         byte[] data = "Hello World!".getBytes();
@@ -1026,6 +1311,23 @@ public abstract class FileSystemTestParent extends FileSystemTestInfrastructure
         assertSameContents(file0, file1);
     }
 
+    @Test
+    public void test_copy_verified() throws Throwable {
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, "abc".getBytes());
+        Path file1 = createNewTestFileName(testDir);
+
+        String s = fileSystem.copy(file0, fileSystem, file1, CopyMode.CREATE, false, TransferManager.DEFAULT_PRIORITY, ChecksumAlgorithm.SHA256);
+        CopyStatus status = fileSystem.waitUntilDone(s, 1000);
+
+        if (status.hasException()) {
+            throw status.getException();
+        }
+
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", status.getVerifiedChecksum());
+        assertSameContents(file0, file1);
+    }
+
     @Test
     public void test_copy_rec() throws Throwable {
         byte[] data = "Hello World!".getBytes();